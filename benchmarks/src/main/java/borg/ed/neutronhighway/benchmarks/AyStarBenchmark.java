@@ -0,0 +1,101 @@
+package borg.ed.neutronhighway.benchmarks;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import borg.ed.neutronhighway.aystar.AyStar;
+import borg.ed.neutronhighway.aystar.ParallelAyStar;
+import borg.ed.neutronhighway.aystar.Path;
+import borg.ed.neutronhighway.aystar.SearchStatus;
+import borg.ed.neutronhighway.helper.FuelAndJumpRangeLookup;
+
+/**
+ * One complete route search between two anchors of a synthetic galaxy. RIM_A-CORE runs from the
+ * sparse rim into the dense core, RIM_A-RIM_B right through it.
+ * <p>
+ * threads=0 is the single-threaded {@link AyStar}, which reuses its state between searches like
+ * the routing engine does. Any other value is a {@link ParallelAyStar} with that many workers,
+ * threads=1 shows its overhead against the serial search.
+ * A search on a million systems takes seconds, so each iteration is a single search.
+ *
+ * @author <a href="mailto:b.guenther@xsite.de">Boris Guenther</a>
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2)
+@Measurement(iterations = 5)
+@Fork(1)
+public class AyStarBenchmark {
+
+	@Param({ "RIM_A-CORE", "RIM_A-RIM_B" })
+	public String route;
+
+	@Param({ "0", "1", "2", "4", "8", "16" })
+	public int threads;
+
+	private final FuelAndJumpRangeLookup lut = new FuelAndJumpRangeLookup(96, 8.0f, 70.8f, 81.59f);
+	private final AyStar ayStar = new AyStar();
+	private ParallelAyStar parallelAyStar;
+	private int source;
+	private int goal;
+
+	@Setup
+	public void setUp(GalaxyState state) {
+		String[] anchors = this.route.split("-");
+		this.source = state.findId(anchor(anchors[0]));
+		this.goal = state.findId(anchor(anchors[1]));
+		this.parallelAyStar = this.threads > 0 ? new ParallelAyStar(this.threads) : null;
+	}
+
+	private static String anchor(String constant) {
+		switch (constant) {
+		case "CORE":
+			return SyntheticGalaxyGenerator.CORE;
+		case "CORE_NEAR":
+			return SyntheticGalaxyGenerator.CORE_NEAR;
+		case "MID":
+			return SyntheticGalaxyGenerator.MID;
+		case "RIM_A":
+			return SyntheticGalaxyGenerator.RIM_A;
+		case "RIM_A_NEAR":
+			return SyntheticGalaxyGenerator.RIM_A_NEAR;
+		case "RIM_B":
+			return SyntheticGalaxyGenerator.RIM_B;
+		case "RIM_C":
+			return SyntheticGalaxyGenerator.RIM_C;
+		default:
+			throw new IllegalArgumentException("Unknown anchor " + constant);
+		}
+	}
+
+	@Benchmark
+	public Path search(GalaxyState state) throws InterruptedException {
+		if (this.parallelAyStar != null) {
+			this.parallelAyStar.initialize(this.source, this.goal, state.galaxy, this.lut);
+			Path path = this.parallelAyStar.findPath();
+			if (path == null) {
+				throw new IllegalStateException("No route for " + this.route + " in " + state.generator.getSnapshotName());
+			}
+			return path;
+		} else {
+			this.ayStar.initialize(this.source, this.goal, state.galaxy, this.lut);
+			if (this.ayStar.search() != SearchStatus.FOUND) {
+				throw new IllegalStateException("No route for " + this.route + " in " + state.generator.getSnapshotName());
+			}
+			return this.ayStar.getPath();
+		}
+	}
+
+}
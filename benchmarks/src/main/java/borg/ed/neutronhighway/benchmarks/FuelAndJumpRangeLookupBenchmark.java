@@ -0,0 +1,79 @@
+package borg.ed.neutronhighway.benchmarks;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import borg.ed.neutronhighway.helper.FuelAndJumpRangeLookup;
+import borg.ed.neutronhighway.ship.FrameShiftDrive;
+import borg.ed.neutronhighway.ship.ShipProfile;
+
+/**
+ * Cost of a single jump range or fuel usage lookup, as done for every neighbour of every expanded
+ * system. The inputs are random so that the lookups do not hit the same table entry again and
+ * again.
+ *
+ * @author <a href="mailto:b.guenther@xsite.de">Boris Guenther</a>
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class FuelAndJumpRangeLookupBenchmark {
+
+	private static final int MASK = 4095;
+
+	/** estimate: from two outfitting values, profile: from the FSD parameters */
+	@Param({ "estimate", "profile" })
+	public String source;
+
+	private FuelAndJumpRangeLookup lut;
+	private final float[] fuelLevels = new float[MASK + 1];
+	private final float[] jumpDistances = new float[MASK + 1];
+	private int i = 0;
+
+	@Setup
+	public void setUp() {
+		if ("estimate".equals(this.source)) {
+			this.lut = new FuelAndJumpRangeLookup(96, 8.0f, 70.8f, 81.59f);
+		} else {
+			this.lut = new ShipProfile("Type-10", 1150f, 96, 0f, FrameShiftDrive.stock("7A"), 0f).toLookup();
+		}
+		Random random = new Random(42);
+		for (int n = 0; n <= MASK; n++) {
+			this.fuelLevels[n] = random.nextFloat() * this.lut.getMaxFuelTons();
+			this.jumpDistances[n] = random.nextFloat() * this.lut.getJumpRangeFuelFull();
+		}
+	}
+
+	@Benchmark
+	public float lookupMaxJumpRange() {
+		return this.lut.lookupMaxJumpRange(this.fuelLevels[this.i++ & MASK]);
+	}
+
+	@Benchmark
+	public float lookupFuelUsage() {
+		final int n = this.i++ & MASK;
+		return this.lut.lookupFuelUsage(this.jumpDistances[n], this.fuelLevels[n]);
+	}
+
+	@Benchmark
+	public float lookupFuelUsageWithKnownMaxJumpRange() {
+		final int n = this.i++ & MASK;
+		return this.lut.lookupFuelUsageWithKnownMaxJumpRange(this.jumpDistances[n], this.lut.getJumpRangeFuelFull());
+	}
+
+}
@@ -0,0 +1,50 @@
+package borg.ed.neutronhighway.benchmarks;
+
+import java.io.File;
+import java.io.IOException;
+
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import borg.ed.neutronhighway.index.GalaxyIndex;
+import borg.ed.neutronhighway.index.GalaxySnapshot;
+
+/**
+ * A synthetic galaxy shared by all threads of a benchmark. The snapshots are kept in the
+ * directory given by the system property <code>nh.bench.galaxies</code>, by default
+ * <code>target/synthetic-galaxies</code>, so each size is only generated once.
+ *
+ * @author <a href="mailto:b.guenther@xsite.de">Boris Guenther</a>
+ */
+@State(Scope.Benchmark)
+public class GalaxyState {
+
+	public static final long SEED = 42L;
+
+	@Param({ "100000", "1000000" })
+	public int size;
+
+	@Param({ "0.02" })
+	public float neutronFraction;
+
+	SyntheticGalaxyGenerator generator;
+	GalaxyIndex galaxy;
+
+	@Setup
+	public void setUp() throws IOException {
+		this.generator = new SyntheticGalaxyGenerator(SEED, this.size, this.neutronFraction);
+		GalaxySnapshot snapshot = this.generator.openOrGenerate(new File(System.getProperty("nh.bench.galaxies", "target/synthetic-galaxies")));
+		this.galaxy = new GalaxyIndex(snapshot.getGalaxy(), snapshot.getOctreeIndex());
+	}
+
+	int findId(String name) {
+		int id = this.galaxy.findId(name);
+		if (id < 0) {
+			throw new IllegalStateException(name + " not in " + this.generator.getSnapshotName());
+		}
+		return id;
+	}
+
+}
@@ -0,0 +1,56 @@
+package borg.ed.neutronhighway.benchmarks;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import borg.ed.neutronhighway.index.MinimizedGalaxy;
+import borg.ed.neutronhighway.index.OctreeIndex;
+
+/**
+ * Building the index after the systems have been read: sorting them into Morton order
+ * ({@link MinimizedGalaxy.Builder#build()}) and building the octree on top.
+ *
+ * @author <a href="mailto:b.guenther@xsite.de">Boris Guenther</a>
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2)
+@Measurement(iterations = 5)
+@Fork(value = 1, jvmArgsAppend = "-Xmx8g")
+public class IndexBuildBenchmark {
+
+	@Param({ "100000", "1000000", "10000000" })
+	public int size;
+
+	private MinimizedGalaxy.Builder builder;
+	private MinimizedGalaxy galaxy;
+
+	@Setup
+	public void setUp() {
+		this.builder = new SyntheticGalaxyGenerator(GalaxyState.SEED, this.size).fill(new MinimizedGalaxy.Builder());
+		this.galaxy = this.builder.build();
+	}
+
+	@Benchmark
+	public MinimizedGalaxy buildGalaxy() {
+		return this.builder.build();
+	}
+
+	@Benchmark
+	public OctreeIndex buildOctree() {
+		return OctreeIndex.build(this.galaxy);
+	}
+
+}
@@ -0,0 +1,68 @@
+package borg.ed.neutronhighway.benchmarks;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import borg.ed.neutronhighway.index.GalaxyIndex;
+import borg.ed.neutronhighway.index.NeighbourVisitor;
+
+/**
+ * One range query around a random system, as done for every expansion of a search. 70 Ly is a
+ * normal jump, 280 Ly a neutron boosted one.
+ *
+ * @author <a href="mailto:b.guenther@xsite.de">Boris Guenther</a>
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class NeighbourSearchBenchmark {
+
+	private static final int MASK = 4095;
+
+	@Param({ "15", "70", "280" })
+	public float range;
+
+	private final int[] centers = new int[MASK + 1];
+	private int i = 0;
+	private int visited = 0;
+
+	private final NeighbourVisitor counter = new NeighbourVisitor() {
+		@Override
+		public void visit(int id, float distance) {
+			NeighbourSearchBenchmark.this.visited++;
+		}
+	};
+
+	@Setup
+	public void setUp(GalaxyState state) {
+		Random random = new Random(GalaxyState.SEED);
+		for (int n = 0; n <= MASK; n++) {
+			this.centers[n] = random.nextInt(state.galaxy.size());
+		}
+	}
+
+	@Benchmark
+	public int forEachInRange(GalaxyState state) {
+		final GalaxyIndex galaxy = state.galaxy;
+		final int center = this.centers[this.i++ & MASK];
+		this.visited = 0;
+		galaxy.forEachInRange(galaxy.getX(center), galaxy.getY(center), galaxy.getZ(center), this.range, this.counter);
+		return this.visited;
+	}
+
+}
@@ -0,0 +1,391 @@
+package borg.ed.neutronhighway.benchmarks;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.Writer;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.management.MemoryType;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import borg.ed.neutronhighway.aystar.AyStar;
+import borg.ed.neutronhighway.aystar.MinimizedStarSystem;
+import borg.ed.neutronhighway.aystar.Path;
+import borg.ed.neutronhighway.aystar.SearchStatus;
+import borg.ed.neutronhighway.helper.FuelAndJumpRangeLookup;
+import borg.ed.neutronhighway.index.GalaxyIndex;
+import borg.ed.neutronhighway.index.GalaxySnapshot;
+import borg.ed.neutronhighway.ship.ShipProfileRegistry;
+
+/**
+ * Runs a fixed set of routing scenarios end to end and compares them to golden results.
+ * <p>
+ * The scenario directory contains <code>scenarios.tsv</code> (name, source, goal, ship),
+ * <code>ships.tsv</code> (see {@link ShipProfileRegistry#load(File)}) and
+ * <code>golden.tsv</code> with the expected jumps and expansions per dataset and scenario. Each
+ * scenario is loaded, initialized, searched, materialized into a list of systems and exported to
+ * <code>target/scenario-routes</code>. Wall time, expansions, peak heap and the route are
+ * appended to a history file together with the current git commit, so a regression can be traced
+ * to the commit which introduced it.
+ * <p>
+ * A scenario regresses if it finds no route or more jumps than the golden result, or needs more
+ * than {@link #MAX_EXPANSIONS_RATIO} times the golden expansions. Times are only recorded, as
+ * they depend on the machine. The exit code is 1 if any scenario regressed.
+ * <p>
+ * Usage: <code>RoutingScenarioRunner [scenario dir] [--update-golden]</code>. The dataset is the
+ * synthetic galaxy of size <code>-Dnh.scenario.size</code> (default 300000), or the snapshot
+ * given by <code>-Dnh.scenario.galaxy</code>.
+ *
+ * @author <a href="mailto:b.guenther@xsite.de">Boris Guenther</a>
+ */
+public class RoutingScenarioRunner {
+
+	static final Logger logger = LoggerFactory.getLogger(RoutingScenarioRunner.class);
+
+	public static final File DEFAULT_HISTORY_FILE = new File(System.getProperty("user.home"), ".eddbdata/scenario-history.tsv");
+	public static final float MAX_EXPANSIONS_RATIO = 1.5f;
+
+	private static final int DEFAULT_SIZE = 300000;
+	private static final File ROUTES_DIR = new File("target/scenario-routes");
+	private static final String HISTORY_HEADER = "time\tcommit\tdataset\tscenario\tstatus\tloadMs\tsearchMs\tmaterializeMs\texportMs\twallMs\texpansions\tpeakHeapMb\tjumps\tdistanceLy\n";
+
+	private final GalaxyIndex galaxy;
+	private final String dataset;
+	private final long loadMillis;
+	private final ShipProfileRegistry ships;
+	private final AyStar ayStar = new AyStar();
+
+	public RoutingScenarioRunner(GalaxyIndex galaxy, String dataset, long loadMillis, ShipProfileRegistry ships) {
+		this.galaxy = galaxy;
+		this.dataset = dataset;
+		this.loadMillis = loadMillis;
+		this.ships = ships;
+	}
+
+	public static void main(String[] args) throws IOException {
+		List<String> argList = new ArrayList<>(Arrays.asList(args));
+		final boolean updateGolden = argList.remove("--update-golden");
+		final File dir = new File(argList.isEmpty() ? "scenarios" : argList.get(0));
+
+		ShipProfileRegistry ships = ShipProfileRegistry.load(new File(dir, "ships.tsv"));
+		List<Scenario> scenarios = Scenario.load(new File(dir, "scenarios.tsv"));
+		File goldenFile = new File(dir, "golden.tsv");
+		Map<String, Golden> golden = Golden.load(goldenFile);
+
+		final long start = System.currentTimeMillis();
+		GalaxySnapshot snapshot;
+		String dataset;
+		if (System.getProperty("nh.scenario.galaxy") != null) {
+			File file = new File(System.getProperty("nh.scenario.galaxy"));
+			snapshot = GalaxySnapshot.open(file);
+			dataset = file.getName();
+		} else {
+			SyntheticGalaxyGenerator generator = new SyntheticGalaxyGenerator(GalaxyState.SEED, Integer.getInteger("nh.scenario.size", DEFAULT_SIZE));
+			snapshot = generator.openOrGenerate(new File(System.getProperty("nh.bench.galaxies", "target/synthetic-galaxies")));
+			dataset = generator.getSnapshotName();
+		}
+		GalaxyIndex galaxy = new GalaxyIndex(snapshot.getGalaxy(), snapshot.getOctreeIndex());
+		RoutingScenarioRunner runner = new RoutingScenarioRunner(galaxy, dataset, System.currentTimeMillis() - start, ships);
+
+		final String commit = gitDescribe();
+		int regressions = 0;
+		List<ScenarioResult> results = new ArrayList<>();
+		for (Scenario scenario : scenarios) {
+			ScenarioResult result = runner.run(scenario);
+			result.status = result.compareTo(golden.get(Golden.key(dataset, scenario.name)));
+			if (result.status.isRegression()) {
+				regressions++;
+			}
+			logger.info(result.toString());
+			runner.appendHistory(DEFAULT_HISTORY_FILE, commit, result);
+			results.add(result);
+		}
+		if (updateGolden) {
+			for (ScenarioResult result : results) {
+				if (result.path != null) {
+					golden.put(Golden.key(dataset, result.scenario.name), new Golden(dataset, result.scenario.name, result.path.getTotalJumps(), result.expansions));
+				}
+			}
+			Golden.write(goldenFile, golden);
+			logger.info("Updated " + goldenFile);
+		}
+		logger.info(String.format(Locale.US, "%d of %d scenarios regressed, history in %s", regressions, scenarios.size(), DEFAULT_HISTORY_FILE));
+		System.exit(regressions > 0 ? 1 : 0);
+	}
+
+	public ScenarioResult run(Scenario scenario) throws IOException {
+		FuelAndJumpRangeLookup lut = this.ships.getLookup(scenario.ship);
+		if (lut == null) {
+			throw new IllegalArgumentException("Unknown ship " + scenario.ship + " in scenario " + scenario.name);
+		}
+		ScenarioResult result = new ScenarioResult(scenario);
+		System.gc();
+		resetPeakHeap();
+		final long start = System.nanoTime();
+
+		this.ayStar.initialize(this.galaxy.findId(scenario.source), this.galaxy.findId(scenario.goal), this.galaxy, lut);
+		SearchStatus status = this.ayStar.search();
+		result.path = status == SearchStatus.FOUND ? this.ayStar.getPath() : null;
+		result.expansions = this.ayStar.getNumberOfExpansions();
+		final long searched = System.nanoTime();
+
+		List<Path> hops = result.path == null ? new ArrayList<>() : result.path.toSortedList();
+		List<MinimizedStarSystem> systems = new ArrayList<>(hops.size());
+		for (Path hop : hops) {
+			systems.add(hop.getMinimizedStarSystem());
+		}
+		final long materialized = System.nanoTime();
+
+		StringBuilder tsv = new StringBuilder("jump\tsystem\tx\ty\tz\tneutron\ttravelledLy\tfuelTons\n");
+		for (int i = 0; i < hops.size(); i++) {
+			Path hop = hops.get(i);
+			MinimizedStarSystem system = systems.get(i);
+			tsv.append(String.format(Locale.US, "%d\t%s\t%.5f\t%.5f\t%.5f\t%b\t%.2f\t%.2f\n", hop.getTotalJumps(), system.getName(), system.getCoord().getX(),
+					system.getCoord().getY(), system.getCoord().getZ(), this.galaxy.isNeutron(hop.getStarSystemId()), hop.getTravelledDistanceLy(), hop.getFuelLevel()));
+		}
+		if (!ROUTES_DIR.exists() && !ROUTES_DIR.mkdirs()) {
+			throw new IOException("Cannot create " + ROUTES_DIR);
+		}
+		Files.write(new File(ROUTES_DIR, scenario.name + ".tsv").toPath(), tsv.toString().getBytes(StandardCharsets.UTF_8));
+		final long exported = System.nanoTime();
+
+		result.searchMillis = (searched - start) / 1_000_000L;
+		result.materializeMillis = (materialized - searched) / 1_000_000L;
+		result.exportMillis = (exported - materialized) / 1_000_000L;
+		result.wallMillis = (exported - start) / 1_000_000L;
+		result.peakHeapBytes = peakHeapBytes();
+		return result;
+	}
+
+	void appendHistory(File file, String commit, ScenarioResult result) throws IOException {
+		if (!file.getParentFile().exists() && !file.getParentFile().mkdirs()) {
+			throw new IOException("Cannot create " + file.getParentFile());
+		}
+		final boolean newFile = !file.exists();
+		try (Writer writer = Files.newBufferedWriter(file.toPath(), StandardCharsets.UTF_8, StandardOpenOption.CREATE, StandardOpenOption.APPEND)) {
+			if (newFile) {
+				writer.write(HISTORY_HEADER);
+			}
+			writer.write(String.format(Locale.US, "%s\t%s\t%s\t%s\t%s\t%d\t%d\t%d\t%d\t%d\t%d\t%.1f\t%d\t%.2f\n",
+					new SimpleDateFormat("yyyy-MM-dd'T'HH:mm:ss").format(new Date()), commit, this.dataset, result.scenario.name, result.status, this.loadMillis,
+					result.searchMillis, result.materializeMillis, result.exportMillis, result.wallMillis, result.expansions, result.peakHeapBytes / 1048576.0,
+					result.path == null ? -1 : result.path.getTotalJumps(), result.path == null ? -1f : result.path.getTravelledDistanceLy()));
+		}
+	}
+
+	private static void resetPeakHeap() {
+		for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+			if (pool.getType() == MemoryType.HEAP) {
+				pool.resetPeakUsage();
+			}
+		}
+	}
+
+	/**
+	 * Sum of the peaks of all heap pools, which is higher than the actual peak but comparable
+	 * between runs with the same collector.
+	 */
+	private static long peakHeapBytes() {
+		long bytes = 0;
+		for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+			if (pool.getType() == MemoryType.HEAP) {
+				bytes += pool.getPeakUsage().getUsed();
+			}
+		}
+		return bytes;
+	}
+
+	private static String gitDescribe() {
+		try {
+			Process process = new ProcessBuilder("git", "describe", "--always", "--dirty").redirectErrorStream(true).start();
+			try (BufferedReader reader = new BufferedReader(new InputStreamReader(process.getInputStream(), StandardCharsets.UTF_8))) {
+				String line = reader.readLine();
+				return process.waitFor() == 0 && line != null ? line.trim() : "unknown";
+			}
+		} catch (IOException e) {
+			return "unknown";
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			return "unknown";
+		}
+	}
+
+	public static class Scenario {
+
+		private final String name;
+		private final String source;
+		private final String goal;
+		private final String ship;
+
+		public Scenario(String name, String source, String goal, String ship) {
+			this.name = name;
+			this.source = source;
+			this.goal = goal;
+			this.ship = ship;
+		}
+
+		static List<Scenario> load(File file) throws IOException {
+			List<Scenario> scenarios = new ArrayList<>();
+			for (String line : Files.readAllLines(file.toPath(), StandardCharsets.UTF_8)) {
+				if (!line.trim().isEmpty() && !line.startsWith("#")) {
+					String[] fields = line.split("\t");
+					if (fields.length != 4) {
+						throw new IllegalArgumentException("Malformed scenario: " + line);
+					}
+					scenarios.add(new Scenario(fields[0].trim(), fields[1].trim(), fields[2].trim(), fields[3].trim()));
+				}
+			}
+			return scenarios;
+		}
+
+		public String getName() {
+			return this.name;
+		}
+
+	}
+
+	public enum Status {
+
+		/** Same number of jumps as the golden result */
+		OK(false),
+		/** No golden result for this dataset yet */
+		NEW(false),
+		/** Fewer jumps than the golden result, which should then be updated */
+		BETTER(false),
+		NO_ROUTE(true),
+		MORE_JUMPS(true),
+		MORE_EXPANSIONS(true);
+
+		private final boolean regression;
+
+		private Status(boolean regression) {
+			this.regression = regression;
+		}
+
+		public boolean isRegression() {
+			return this.regression;
+		}
+
+	}
+
+	public static class ScenarioResult {
+
+		private final Scenario scenario;
+		private Status status = Status.NEW;
+		private Path path = null;
+		private int expansions = 0;
+		private long searchMillis = 0;
+		private long materializeMillis = 0;
+		private long exportMillis = 0;
+		private long wallMillis = 0;
+		private long peakHeapBytes = 0;
+
+		ScenarioResult(Scenario scenario) {
+			this.scenario = scenario;
+		}
+
+		Status compareTo(Golden golden) {
+			if (golden == null) {
+				return this.path == null ? Status.NO_ROUTE : Status.NEW;
+			} else if (this.path == null) {
+				return Status.NO_ROUTE;
+			} else if (this.path.getTotalJumps() > golden.jumps) {
+				return Status.MORE_JUMPS;
+			} else if (this.path.getTotalJumps() < golden.jumps) {
+				return Status.BETTER;
+			} else if (this.expansions > golden.expansions * MAX_EXPANSIONS_RATIO) {
+				return Status.MORE_EXPANSIONS;
+			} else {
+				return Status.OK;
+			}
+		}
+
+		@Override
+		public String toString() {
+			return String.format(Locale.US, "%-16s %-15s %3d jumps %,9.1f Ly %,10d expansions %,8d ms (search %,d ms) %,7.1f MB peak heap", this.scenario.name, this.status,
+					this.path == null ? -1 : this.path.getTotalJumps(), this.path == null ? -1f : this.path.getTravelledDistanceLy(), this.expansions, this.wallMillis,
+					this.searchMillis, this.peakHeapBytes / 1048576.0);
+		}
+
+		public Status getStatus() {
+			return this.status;
+		}
+
+		public Path getPath() {
+			return this.path;
+		}
+
+		public int getExpansions() {
+			return this.expansions;
+		}
+
+		public long getWallMillis() {
+			return this.wallMillis;
+		}
+
+		public long getPeakHeapBytes() {
+			return this.peakHeapBytes;
+		}
+
+	}
+
+	static class Golden {
+
+		private final String dataset;
+		private final String scenario;
+		private final int jumps;
+		private final int expansions;
+
+		Golden(String dataset, String scenario, int jumps, int expansions) {
+			this.dataset = dataset;
+			this.scenario = scenario;
+			this.jumps = jumps;
+			this.expansions = expansions;
+		}
+
+		static String key(String dataset, String scenario) {
+			return dataset + "\t" + scenario;
+		}
+
+		static Map<String, Golden> load(File file) throws IOException {
+			Map<String, Golden> golden = new LinkedHashMap<>();
+			if (file.exists()) {
+				for (String line : Files.readAllLines(file.toPath(), StandardCharsets.UTF_8)) {
+					if (!line.trim().isEmpty() && !line.startsWith("#")) {
+						String[] fields = line.split("\t");
+						if (fields.length != 4) {
+							throw new IllegalArgumentException("Malformed golden result: " + line);
+						}
+						golden.put(key(fields[0], fields[1]), new Golden(fields[0], fields[1], Integer.parseInt(fields[2]), Integer.parseInt(fields[3])));
+					}
+				}
+			}
+			return golden;
+		}
+
+		static void write(File file, Map<String, Golden> golden) throws IOException {
+			StringBuilder tsv = new StringBuilder("# dataset\tscenario\tjumps\texpansions\n");
+			for (Golden g : golden.values()) {
+				tsv.append(g.dataset).append('\t').append(g.scenario).append('\t').append(g.jumps).append('\t').append(g.expansions).append('\n');
+			}
+			Files.write(file.toPath(), tsv.toString().getBytes(StandardCharsets.UTF_8));
+		}
+
+	}
+
+}
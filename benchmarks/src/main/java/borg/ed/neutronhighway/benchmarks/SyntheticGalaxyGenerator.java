@@ -0,0 +1,190 @@
+package borg.ed.neutronhighway.benchmarks;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Locale;
+import java.util.Random;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import borg.ed.galaxy.data.Coord;
+import borg.ed.neutronhighway.index.GalaxySnapshot;
+import borg.ed.neutronhighway.index.MinimizedGalaxy;
+import borg.ed.neutronhighway.index.OctreeIndex;
+
+/**
+ * Generates reproducible galaxies for benchmarks, so no galaxy database is needed.
+ * <p>
+ * Systems are spread over a disc with an exponential distribution of the radius and the height,
+ * plus a flattened gaussian bulge. This gives a dense core and a sparse rim like the
+ * real galaxy. The disc radius grows with the number of systems so that the mean density stays
+ * at {@link #DEFAULT_MEAN_DENSITY}, which keeps the rim routable with a normal jump range. The
+ * same seed and parameters always give the same systems.
+ * <p>
+ * Besides the random systems there are a few named anchors to route between: {@link #CORE} at
+ * the center, {@link #MID} at 35% of the radius, and {@link #RIM_A}, {@link #RIM_B} and
+ * {@link #RIM_C} at 70% of the radius. {@link #CORE_NEAR} and {@link #RIM_A_NEAR} are 5% of the
+ * radius away from their partners, for short trips.
+ *
+ * @author <a href="mailto:b.guenther@xsite.de">Boris Guenther</a>
+ */
+public class SyntheticGalaxyGenerator {
+
+	static final Logger logger = LoggerFactory.getLogger(SyntheticGalaxyGenerator.class);
+
+	public static final String CORE = "Synthetic Core";
+	public static final String CORE_NEAR = "Synthetic Core Near";
+	public static final String MID = "Synthetic Mid";
+	public static final String RIM_A = "Synthetic Rim A";
+	public static final String RIM_A_NEAR = "Synthetic Rim A Near";
+	public static final String RIM_B = "Synthetic Rim B";
+	public static final String RIM_C = "Synthetic Rim C";
+
+	/** Part of the snapshot name, increment whenever the generated systems change */
+	public static final int GENERATOR_VERSION = 2;
+
+	public static final float DEFAULT_NEUTRON_FRACTION = 0.02f;
+	/** Systems per Ly³, averaged over the disc */
+	public static final double DEFAULT_MEAN_DENSITY = 5e-5;
+	public static final double SCALE_HEIGHT_LY = 100;
+	/** MinimizedGalaxy cannot hold more than 2^27 systems */
+	public static final int MAX_SIZE = (1 << 27) - 7;
+
+	private static final float SCOOPABLE_FRACTION = 0.7f;
+	private static final double BULGE_FRACTION = 0.15;
+	private static final double RIM_ANCHOR_RADIUS = 0.7;
+	private static final double NEAR_ANCHOR_DISTANCE = 0.05;
+
+	private final long seed;
+	private final int size;
+	private final float neutronFraction;
+	private final double radiusLy;
+
+	public SyntheticGalaxyGenerator(long seed, int size) {
+		this(seed, size, DEFAULT_NEUTRON_FRACTION);
+	}
+
+	/**
+	 * @param size
+	 *      Number of random systems, the anchors come on top
+	 * @param neutronFraction
+	 *      Share of neutron stars, 0..1
+	 */
+	public SyntheticGalaxyGenerator(long seed, int size, float neutronFraction) {
+		if (size < 1 || size > MAX_SIZE) {
+			throw new IllegalArgumentException("size must be 1.." + MAX_SIZE + ", was " + size);
+		} else if (neutronFraction < 0 || neutronFraction > 1) {
+			throw new IllegalArgumentException("neutronFraction must be 0..1, was " + neutronFraction);
+		}
+		this.seed = seed;
+		this.size = size;
+		this.neutronFraction = neutronFraction;
+		this.radiusLy = Math.sqrt(size / (DEFAULT_MEAN_DENSITY * Math.PI * 2 * SCALE_HEIGHT_LY));
+	}
+
+	/**
+	 * Usage: <code>SyntheticGalaxyGenerator size seed [neutronFraction] out.galaxy</code>, writes a
+	 * snapshot which can be used instead of the real galaxy, e.g. by the batch router.
+	 */
+	public static void main(String[] args) throws IOException {
+		if (args.length < 3) {
+			System.err.println("Usage: SyntheticGalaxyGenerator size seed [neutronFraction] out.galaxy");
+			System.exit(1);
+		}
+		float neutronFraction = args.length > 3 ? Float.parseFloat(args[2]) : DEFAULT_NEUTRON_FRACTION;
+		SyntheticGalaxyGenerator generator = new SyntheticGalaxyGenerator(Long.parseLong(args[1]), Integer.parseInt(args[0]), neutronFraction);
+		generator.writeSnapshot(new File(args[args.length - 1]));
+	}
+
+	/**
+	 * Opens the snapshot of this galaxy in the given directory, generating it first if it does not
+	 * exist yet. Large galaxies take minutes to generate, so benchmark forks share them this way.
+	 */
+	public GalaxySnapshot openOrGenerate(File dir) throws IOException {
+		File file = new File(dir, this.getSnapshotName());
+		if (!file.exists()) {
+			if (!dir.exists() && !dir.mkdirs()) {
+				throw new IOException("Cannot create " + dir);
+			}
+			File tmp = new File(dir, file.getName() + ".tmp");
+			this.writeSnapshot(tmp);
+			if (!tmp.renameTo(file)) {
+				throw new IOException("Cannot rename " + tmp + " to " + file);
+			}
+		}
+		return GalaxySnapshot.open(file);
+	}
+
+	public void writeSnapshot(File file) throws IOException {
+		final long start = System.currentTimeMillis();
+		MinimizedGalaxy galaxy = this.generate();
+		GalaxySnapshot.write(file, galaxy, OctreeIndex.build(galaxy));
+		logger.info(String.format(Locale.US, "Wrote %,d systems (%,d neutron stars) within %,.0f Ly to %s in %,d ms", galaxy.size(), galaxy.countNeutronStars(),
+				this.radiusLy, file, System.currentTimeMillis() - start));
+	}
+
+	public MinimizedGalaxy generate() {
+		return this.fill(new MinimizedGalaxy.Builder()).build();
+	}
+
+	/**
+	 * Adds the anchors and all random systems to the builder. The builder can then be built any
+	 * number of times, e.g. to measure the index build alone.
+	 */
+	public MinimizedGalaxy.Builder fill(MinimizedGalaxy.Builder builder) {
+		final float rim = (float) (RIM_ANCHOR_RADIUS * this.radiusLy);
+		final float near = (float) (NEAR_ANCHOR_DISTANCE * this.radiusLy);
+		builder.add(CORE, new Coord(0, 0, 0), false, true);
+		builder.add(CORE_NEAR, new Coord(near, 0, 0), false, true);
+		builder.add(MID, new Coord(-rim / 2, 0, 0), false, true);
+		builder.add(RIM_A, new Coord(-rim, 0, 0), false, true);
+		builder.add(RIM_A_NEAR, new Coord(-rim, 0, near), false, true);
+		builder.add(RIM_B, new Coord(rim, 0, 0), false, true);
+		builder.add(RIM_C, new Coord(0, 0, rim), false, true);
+
+		Random random = new Random(this.seed);
+		final double scaleLength = this.radiusLy / 3;
+		final double maxCdf = 1 - Math.exp(-this.radiusLy / scaleLength);
+		for (int i = 0; i < this.size; i++) {
+			double x, y, z;
+			if (random.nextDouble() < BULGE_FRACTION) {
+				x = random.nextGaussian() * this.radiusLy / 8;
+				y = random.nextGaussian() * this.radiusLy / 16;
+				z = random.nextGaussian() * this.radiusLy / 8;
+			} else {
+				// Exponential radius, i.e. a surface density ~ exp(-r / scaleLength) / r, and exponential height
+				double r = -scaleLength * Math.log(1 - random.nextDouble() * maxCdf);
+				double angle = random.nextDouble() * 2 * Math.PI;
+				x = r * Math.cos(angle);
+				z = r * Math.sin(angle);
+				y = -SCALE_HEIGHT_LY * Math.log(1 - random.nextDouble()) * (random.nextBoolean() ? 1 : -1);
+			}
+			boolean neutron = random.nextFloat() < this.neutronFraction;
+			boolean scoopable = !neutron && random.nextFloat() < SCOOPABLE_FRACTION;
+			builder.add(Integer.toString(i, 36), new Coord((float) x, (float) y, (float) z), neutron, scoopable);
+		}
+		return builder;
+	}
+
+	public String getSnapshotName() {
+		return String.format(Locale.US, "synthetic-v%d-%d-%d-%.4f.galaxy", GENERATOR_VERSION, this.seed, this.size, this.neutronFraction);
+	}
+
+	public long getSeed() {
+		return this.seed;
+	}
+
+	public int getSize() {
+		return this.size;
+	}
+
+	public float getNeutronFraction() {
+		return this.neutronFraction;
+	}
+
+	public double getRadiusLy() {
+		return this.radiusLy;
+	}
+
+}
@@ -3,19 +3,22 @@ package borg.ed.neutronhighway;
 import java.io.File;
 import java.io.IOException;
 import java.io.Serializable;
+import java.io.StringWriter;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
 import java.text.SimpleDateFormat;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
 import java.util.Date;
-import java.util.HashSet;
 import java.util.List;
 import java.util.Locale;
+import java.util.Map;
 import java.util.Optional;
-import java.util.Set;
 
 import org.apache.commons.io.FileUtils;
-import org.apache.commons.lang.StringEscapeUtils;
-import org.apache.commons.lang.StringUtils;
 import org.apache.commons.lang.time.DurationFormatUtils;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -23,19 +26,33 @@ import org.springframework.context.ApplicationContext;
 import org.springframework.context.annotation.AnnotationConfigApplicationContext;
 import org.springframework.context.annotation.Configuration;
 import org.springframework.context.annotation.Import;
-import org.springframework.data.util.CloseableIterator;
 
 import borg.ed.galaxy.GalaxyApplication;
-import borg.ed.galaxy.constants.StarClass;
 import borg.ed.galaxy.data.Coord;
 import borg.ed.galaxy.exceptions.NonUniqueResultException;
 import borg.ed.galaxy.model.Body;
 import borg.ed.galaxy.model.StarSystem;
 import borg.ed.galaxy.service.GalaxyService;
 import borg.ed.neutronhighway.aystar.AyStar;
-import borg.ed.neutronhighway.aystar.MinimizedStarSystem;
 import borg.ed.neutronhighway.aystar.Path;
+import borg.ed.neutronhighway.engine.CorridorRouter;
+import borg.ed.neutronhighway.engine.StarSystemDetailsCache;
+import borg.ed.neutronhighway.engine.StarSystemDetailsCache.StarSystemDetails;
+import borg.ed.neutronhighway.export.HtmlRouteExporter;
+import borg.ed.neutronhighway.export.RouteExportPipeline;
+import borg.ed.neutronhighway.export.RouteExporter;
+import borg.ed.neutronhighway.export.VoiceAttackRouteExporter;
 import borg.ed.neutronhighway.helper.FuelAndJumpRangeLookup;
+import borg.ed.neutronhighway.highway.HighwayGraph;
+import borg.ed.neutronhighway.highway.HighwayGraphBuilder;
+import borg.ed.neutronhighway.highway.HighwayRouter;
+import borg.ed.neutronhighway.index.GalaxyIndex;
+import borg.ed.neutronhighway.index.GalaxyLoader;
+import borg.ed.neutronhighway.index.GalaxySnapshot;
+import borg.ed.neutronhighway.index.LiveGalaxyIndex;
+import borg.ed.neutronhighway.ingest.DiscoveryEventTailer;
+import borg.ed.neutronhighway.metrics.SearchMetrics;
+import borg.ed.neutronhighway.metrics.SearchPhase;
 
 @Configuration
 @Import(GalaxyApplication.class)
@@ -47,6 +64,15 @@ public class NeutronHighwayApplication {
 
 	private static final File ROUTES_DIR = new File(System.getProperty("user.home"), "Google Drive\\Elite Dangerous\\Routes");
 
+	private static final File GALAXY_SNAPSHOT_FILE = new File(System.getProperty("user.home"), ".eddbdata/neutronhighway.galaxy");
+
+	private static final File HIGHWAY_GRAPH_FILE = new File(System.getProperty("user.home"), ".eddbdata/neutronhighway.highway");
+
+	/** Shorter trips only load the galaxy around the line between source and destination */
+	private static final float CORRIDOR_MAX_DIRECT_DISTANCE_LY = 2000f;
+
+	private static final File DISCOVERY_EVENTS_FILE = new File(System.getProperty("user.home"), ".eddbdata/discoveries.tsv");
+
 	public static void main(String[] args) throws NonUniqueResultException, IOException {
 		//		final String fromName = "Sphiesi RR-N d6-0";
 		//		final String toName = "Sphiesi HX-L d7-0";
@@ -73,45 +99,47 @@ public class NeutronHighwayApplication {
 		writeWaypointsFile(fromSystem, toSystem, galaxyService);
 
 		// Try to find a route
-		Set<MinimizedStarSystem> minimizedNeutronStarSystems = new HashSet<>();
-		Set<MinimizedStarSystem> minimizedScoopableStarSystems = new HashSet<>();
-		minimizedScoopableStarSystems.add(new MinimizedStarSystem(fromSystem));
-		minimizedScoopableStarSystems.add(new MinimizedStarSystem(toSystem));
-		logger.debug("Loading known entry stars...");
-		try (CloseableIterator<Body> stream = galaxyService.streamStarsWithin(-100000f, 100000f, -100000f, 100000f, -100000f, 100000f, /* isMainStar = */ true, null)) {
-			while (stream.hasNext()) {
-				Body star = stream.next();
-				if (StringUtils.isNotEmpty(star.getStarSystemName()) && star.getCoord() != null && star.getStarClass() != null) {
-					if (StarClass.N.equals(star.getStarClass())) {
-						minimizedNeutronStarSystems.add(new MinimizedStarSystem(star));
-					} else if (!StarClass.AEBE.equals(star.getStarClass()) && !star.getStarClass().name().startsWith("C") && !star.getStarClass().name().startsWith("D")
-							&& !star.getStarClass().name().startsWith("W") && !StarClass.H.equals(star.getStarClass()) && !StarClass.L.equals(star.getStarClass())
-							&& !StarClass.MS.equals(star.getStarClass()) && !StarClass.S.equals(star.getStarClass()) && !StarClass.T.equals(star.getStarClass())
-							&& !StarClass.TTS.equals(star.getStarClass()) && !StarClass.Y.equals(star.getStarClass())) {
-						minimizedScoopableStarSystems.add(new MinimizedStarSystem(star));
-					}
-				}
+		final File eddbDumpFile = new File(System.getProperty("user.home"), ".eddbdata/systems.csv");
+		final int nKnownArrivalNeutronStars;
+		final long start;
+		Path path;
+		if (fromSystem.distanceTo(toSystem) <= CORRIDOR_MAX_DIRECT_DISTANCE_LY) {
+			logger.info("Short trip, loading only the corridor between source and destination");
+			start = System.currentTimeMillis();
+			CorridorRouter corridorRouter = new CorridorRouter(new GalaxyLoader(galaxyService), fuelJumpLUT);
+			path = corridorRouter.findPath(fromSystem, toSystem);
+			nKnownArrivalNeutronStars = corridorRouter.getGalaxy().countNeutronStars();
+			logger.debug("Known neutron stars within " + corridorRouter.getCorridor() + ": " + nKnownArrivalNeutronStars);
+		} else {
+			GalaxySnapshot snapshot = new GalaxyLoader(galaxyService).loadSnapshot(GALAXY_SNAPSHOT_FILE, eddbDumpFile);
+			LiveGalaxyIndex liveIndex = new LiveGalaxyIndex(new GalaxyIndex(snapshot.getGalaxy(), snapshot.getOctreeIndex()));
+			if (DISCOVERY_EVENTS_FILE.exists()) {
+				DiscoveryEventTailer tailer = new DiscoveryEventTailer(DISCOVERY_EVENTS_FILE, liveIndex, 1000L);
+				tailer.poll(); // Catch up before the first search
+				tailer.start();
 			}
-		}
-		logger.debug("Loading known systems...");
-		try (CloseableIterator<StarSystem> stream = galaxyService.streamAllSystemsWithin(-100000f, 100000f, -100000f, 100000f, -100000f, 100000f)) {
-			while (stream.hasNext()) {
-				minimizedScoopableStarSystems.add(new MinimizedStarSystem(stream.next()));
+			GalaxyIndex galaxy = liveIndex.current();
+			nKnownArrivalNeutronStars = galaxy.countNeutronStars();
+			logger.debug("Total known neutron stars: " + nKnownArrivalNeutronStars);
+
+			start = System.currentTimeMillis();
+			HighwayGraph highwayGraph = HighwayGraphBuilder.loadOrBuild(HIGHWAY_GRAPH_FILE, galaxy, fuelJumpLUT);
+			path = new HighwayRouter(highwayGraph, galaxy, fuelJumpLUT).findPath(fromSystem, toSystem);
+			if (path == null) {
+				logger.info("Source or destination not connected to the highway, searching the whole galaxy");
+				AyStar ayStar = new AyStar();
+				ayStar.initialize(fromSystem, toSystem, galaxy, fuelJumpLUT);
+				ayStar.setProgressListener(progress -> {
+					logger.debug(progress.toString());
+					//            routeViewPanel.updatePath(progress.getBestPath());
+					//            topViewPanel.updatePath(progress.getBestPath());
+					//            leftViewPanel.updatePath(progress.getBestPath());
+					//            frontViewPanel.updatePath(progress.getBestPath());
+				}, 5000L);
+				ayStar.search();
+				path = ayStar.getPath();
 			}
 		}
-		logger.debug("Total known neutron stars: " + minimizedNeutronStarSystems.size());
-
-		AyStar ayStar = new AyStar();
-		ayStar.initialize(fromSystem, toSystem, minimizedNeutronStarSystems, minimizedScoopableStarSystems, fuelJumpLUT);
-		final long start = System.currentTimeMillis();
-		Path path = null;
-		while ((path = ayStar.findPath()) != null && !path.getMinimizedStarSystem().getName().equals(toSystem.getName())) {
-			logger.debug("...searching...");
-			//            routeViewPanel.updatePath(path);
-			//            topViewPanel.updatePath(path);
-			//            leftViewPanel.updatePath(path);
-			//            frontViewPanel.updatePath(path);
-		}
 		final long end = System.currentTimeMillis();
 		logger.info("Took " + DurationFormatUtils.formatDuration(end - start, "H:mm:ss"));
 		if (path == null) {
@@ -135,15 +163,19 @@ public class NeutronHighwayApplication {
 		}
 		logger.info("maxJumpDistance=" + maxJumpDistance);
 
+		final long materializeStart = System.nanoTime();
 		Route route = Route.fromPath(sortedPaths, fuelJumpLUT/*, journal*/, galaxyService);
+		SearchMetrics.SHARED.recordPhaseSince(SearchPhase.MATERIALIZE, materializeStart, route.getElements().size(), null);
 
-		// Write route as VoiceAttack TXT file
-		FileUtils.write(new File(ROUTES_DIR, baseFilename + " Route.txt"), route.toVoiceAttackTxt(), "UTF-8");
-
-		// Write route as human readable HTML file
-		Date eddbDumpDate = new Date(new File(System.getProperty("user.home"), ".eddbdata/systems.csv").lastModified());
-		int nKnownArrivalNeutronStars = minimizedNeutronStarSystems.size();
-		FileUtils.write(new File(ROUTES_DIR, baseFilename + " Route.html"), route.toHumanReadableHtml(eddbDumpDate, nKnownArrivalNeutronStars), "UTF-8");
+		// Write route as VoiceAttack TXT file and as human readable HTML file
+		final long exportStart = System.nanoTime();
+		Date eddbDumpDate = new Date(eddbDumpFile.lastModified());
+		List<RouteExporter> exporters = Arrays.asList(new VoiceAttackRouteExporter(), new HtmlRouteExporter(eddbDumpDate, nKnownArrivalNeutronStars));
+		try (RouteExportPipeline exportPipeline = new RouteExportPipeline(exporters.size(), exporters.size())) {
+			exportPipeline.export(route, ROUTES_DIR, baseFilename, exporters).join();
+		}
+		SearchMetrics.SHARED.recordPhaseSince(SearchPhase.EXPORT, exportStart, exporters.size(), baseFilename);
+		logger.debug("Phase timings in us: " + SearchMetrics.SHARED.getPhaseMicros());
 	}
 
 	private static void writeWaypointsFile(StarSystem fromSystem, StarSystem toSystem, GalaxyService galaxyService) throws IOException {
@@ -153,18 +185,20 @@ public class NeutronHighwayApplication {
 					+ fromSystem.getName().replaceAll("[^\\w\\s\\-\\+\\.]", "_") + " to " + toSystem.getName().replaceAll("[^\\w\\s\\-\\+\\.]", "_") + ".txt");
 			int waypointsNeeded = (int) (directDistance / 2000) + 1;
 			float waypointSeparation = directDistance / waypointsNeeded;
-			FileUtils.write(waypointsFile,
-					String.format(Locale.US, "Direct distance: %.0f Ly\nWaypoints needed: %d\nWaypoint separation: %.0f Ly\n\n", directDistance, waypointsNeeded, waypointSeparation), "UTF-8",
-					false);
-			Coord fromCoord = fromSystem.getCoord();
-			Coord toCoord = toSystem.getCoord();
-			float stepX = (toCoord.getX() - fromCoord.getX()) / waypointsNeeded;
-			float stepY = (toCoord.getY() - fromCoord.getY()) / waypointsNeeded;
-			float stepZ = (toCoord.getZ() - fromCoord.getZ()) / waypointsNeeded;
-			for (int wp = 1; wp <= waypointsNeeded; wp++) {
-				Coord coord = new Coord(fromCoord.getX() + wp * stepX, fromCoord.getY() + wp * stepY, fromCoord.getZ() + wp * stepZ);
-				StarSystem closestSystem = galaxyService.findNearestSystem(coord);
-				FileUtils.write(waypointsFile, String.format(Locale.US, "Waypoint %2d: %s\n", wp, closestSystem.getName()), "UTF-8", true);
+			FileUtils.forceMkdir(ROUTES_DIR);
+			try (Writer out = Files.newBufferedWriter(waypointsFile.toPath(), StandardCharsets.UTF_8)) {
+				out.write(String.format(Locale.US, "Direct distance: %.0f Ly\nWaypoints needed: %d\nWaypoint separation: %.0f Ly\n\n", directDistance, waypointsNeeded,
+						waypointSeparation));
+				Coord fromCoord = fromSystem.getCoord();
+				Coord toCoord = toSystem.getCoord();
+				float stepX = (toCoord.getX() - fromCoord.getX()) / waypointsNeeded;
+				float stepY = (toCoord.getY() - fromCoord.getY()) / waypointsNeeded;
+				float stepZ = (toCoord.getZ() - fromCoord.getZ()) / waypointsNeeded;
+				for (int wp = 1; wp <= waypointsNeeded; wp++) {
+					Coord coord = new Coord(fromCoord.getX() + wp * stepX, fromCoord.getY() + wp * stepY, fromCoord.getZ() + wp * stepZ);
+					StarSystem closestSystem = galaxyService.findNearestSystem(coord);
+					out.write(String.format(Locale.US, "Waypoint %2d: %s\n", wp, closestSystem.getName()));
+				}
 			}
 		}
 	}
@@ -178,21 +212,33 @@ public class NeutronHighwayApplication {
 		//		private final Journal journal;
 
 		public static Route fromPath(List<Path> sortedPaths, FuelAndJumpRangeLookup fuelJumpLUT/*, Journal journal*/, GalaxyService galaxyService) throws NonUniqueResultException {
-			Route route = new Route(fuelJumpLUT/*, journal*/);
+			try (StarSystemDetailsCache detailsCache = new StarSystemDetailsCache(galaxyService, sortedPaths.size(), StarSystemDetailsCache.DEFAULT_PARALLELISM)) {
+				return fromPath(sortedPaths, fuelJumpLUT/*, journal*/, detailsCache);
+			}
+		}
 
-			Path prevPath = null;
-			for (Path currPath : sortedPaths) {
-				if (prevPath != null) {
-					StarSystem fromSystem = galaxyService.findStarSystemByName(prevPath.getMinimizedStarSystem().getName());
-					List<Body> fromBodies = galaxyService.findBodiesByStarSystemName(prevPath.getMinimizedStarSystem().getName());
+		/**
+		 * Looks up all systems of the path at once, so every system is only looked up once, and
+		 * not at all if it is still cached from an earlier route.
+		 */
+		public static Route fromPath(List<Path> sortedPaths, FuelAndJumpRangeLookup fuelJumpLUT/*, Journal journal*/, StarSystemDetailsCache detailsCache)
+				throws NonUniqueResultException {
+			Route route = new Route(fuelJumpLUT/*, journal*/);
 
-					StarSystem toSystem = galaxyService.findStarSystemByName(currPath.getMinimizedStarSystem().getName());
-					List<Body> toBodies = galaxyService.findBodiesByStarSystemName(currPath.getMinimizedStarSystem().getName());
+			List<String> names = new ArrayList<>(sortedPaths.size());
+			for (Path path : sortedPaths) {
+				names.add(path.getMinimizedStarSystem().getName());
+			}
+			Map<String, StarSystemDetails> detailsByName = detailsCache.getAll(names);
 
-					route.add(new RouteElement(route, currPath.getTotalJumps(), fromSystem, fromBodies, toSystem, toBodies, currPath.getFuelLevel(), currPath.getTravelledDistanceLy(),
-							currPath.getRemainingDistanceLy()));
+			StarSystemDetails prevDetails = null;
+			for (Path currPath : sortedPaths) {
+				StarSystemDetails currDetails = detailsByName.get(currPath.getMinimizedStarSystem().getName());
+				if (prevDetails != null) {
+					route.add(new RouteElement(route, currPath.getTotalJumps(), prevDetails.getStarSystem(), prevDetails.getBodies(), currDetails.getStarSystem(),
+							currDetails.getBodies(), currPath.getFuelLevel(), currPath.getTravelledDistanceLy(), currPath.getRemainingDistanceLy()));
 				}
-				prevPath = currPath;
+				prevDetails = currDetails;
 			}
 
 			return route.markDryPeriods();
@@ -248,57 +294,24 @@ public class NeutronHighwayApplication {
 		//		}
 
 		public String toVoiceAttackTxt() {
-			StringBuilder txt = new StringBuilder();
-
-			RouteElement last = null;
-			for (RouteElement curr : this.getElements()) {
-				if (curr.getDryPeriod() != DryPeriod.PART_OF) {
-					txt.append(curr.toVoiceAttackRow(last));
-					last = curr;
-				}
-			}
-
-			return txt.toString();
+			return this.export(new VoiceAttackRouteExporter());
 		}
 
 		public String toHumanReadableHtml(Date eddbDumpDate, int nKnownArrivalNeutronStars) {
-			StringBuilder html = new StringBuilder();
-
-			StarSystem fromSystem = this.getElements().get(0).getFromSystem();
-			StarSystem toSystem = this.getElements().get(this.getElements().size() - 1).getToSystem();
-			String fromName = fromSystem.getName();
-			String toName = toSystem.getName();
-			float directDistance = fromSystem.distanceTo(toSystem);
-			int jumpsUsingHighway = this.getElements().get(this.getElements().size() - 1).getJumpNo();
-			int jumpsTraditional = Math.round(directDistance / fuelJumpLUT.getJumpRangeFuelFull());
-			int jumpsSaved = jumpsTraditional - jumpsUsingHighway;
-			float jumpsSavedPercent = 100f * jumpsSaved / jumpsTraditional;
-
-			String title = StringEscapeUtils.escapeHtml(String.format(Locale.US, "%s → %s (%.0f Ly, %d jumps)", fromName, toName, directDistance, jumpsUsingHighway));
-			String h2 = String.format(Locale.US, "EDDB data from %td-%tb-%tY, %d known neutron star systems", eddbDumpDate, eddbDumpDate, eddbDumpDate, nKnownArrivalNeutronStars);
-			String h3 = String.format(Locale.US, "Jump range: %.1f to %.1f Ly | Fuel usage: Max %.2f of %d tons | Jumps saved: %d of %d (%.0f%%)", fuelJumpLUT.getJumpRangeFuelFull(),
-					fuelJumpLUT.getJumpRangeFuelOpt(), fuelJumpLUT.getMaxFuelPerJump(), fuelJumpLUT.getMaxFuelTons(), jumpsSaved, jumpsTraditional, jumpsSavedPercent);
-
-			html.append("<html>\n");
-			html.append("<head>\n");
-			html.append("<meta http-equiv=\"content-type\" content=\"text/html; charset=utf-8\" />\n");
-			html.append("<link href=\"route.css\" rel=\"stylesheet\" type=\"text/css\" />\n");
-			html.append("<title>").append(title).append("</title>\n");
-			html.append("</head>\n");
-			html.append("<body>\n");
-			html.append("<h1>").append(title).append("</h1>\n");
-			html.append("<h2>").append(h2).append("</h2>\n");
-			html.append("<h3>").append(h3).append("</h3>\n");
-			html.append("<table id=\"jumpTable\">\n");
-			html.append(RouteElement.toHtmlTableHeadline());
-			for (RouteElement e : this.getElements()) {
-				html.append(e.toHtmlTableRow());
+			return this.export(new HtmlRouteExporter(eddbDumpDate, nKnownArrivalNeutronStars));
+		}
+
+		/**
+		 * Only for short routes, use {@link RouteExportPipeline} to write files.
+		 */
+		public String export(RouteExporter exporter) {
+			StringWriter out = new StringWriter();
+			try {
+				exporter.export(this, out);
+			} catch (IOException e) {
+				throw new UncheckedIOException(e);
 			}
-			html.append("</table>\n");
-			html.append("</body>\n");
-			html.append("</html>");
-
-			return html.toString();
+			return out.toString();
 		}
 
 	}
@@ -360,110 +373,6 @@ public class NeutronHighwayApplication {
 			this.remainingLy = remainingLy;
 		}
 
-		public String toVoiceAttackRow(RouteElement last) {
-			float jumpDistance = last != null ? last.getToSystem().distanceTo(this.getToSystem()) : this.getFromSystem().distanceTo(this.getToSystem());
-			String flags = "";
-			if (this.getDryPeriod() == DryPeriod.END) {
-				flags += "R";
-			}
-			if (this.getToSystem().getName().replaceAll("[^\\-]", "").length() < 2) {
-				flags += "N"; // Pron name
-			}
-			if (this.getFuelLevelOnArrival() <= (this.getRoute().getFuelJumpLUT().getMaxFuelPerJump() * 1.25f)) {
-				flags += "F";
-			}
-			//			List<Body> valuableBodies = findValuableBodies(this.getToBodies());
-			//			if (valuableBodies.size() > 0) {
-			//				for (Body body : valuableBodies) {
-			//					if (!this.getRoute().getJournal().getScannedBodies().contains(body.getName())) {
-			//						flags += "P"; // Planets
-			//						break;
-			//					}
-			//				}
-			//			}
-			return String.format(Locale.US, "%-50s%5.0f%10s%10s\n", this.getToSystem().getName().replace("'", " "), jumpDistance, this.getToSpectralClass(), flags);
-		}
-
-		public static String toHtmlTableHeadline() {
-			StringBuilder html = new StringBuilder();
-
-			html.append("<tr>");
-			html.append("<th class=\"numeric jumpNo\">#</th>");
-			html.append("<th class=\"starName\">From</th>");
-			html.append("<th class=\"starClass\">Class</th>");
-			html.append("<th class=\"numeric jumpDistance\">Jump</th>");
-			html.append("<th class=\"starClass\">Class</th>");
-			html.append("<th class=\"starName\">To</th>");
-			html.append("<th class=\"notes\">Notes</th>");
-			html.append("<th class=\"numeric distance\">Dist</th>");
-			html.append("</tr>\n");
-
-			return html.toString();
-		}
-
-		public String toHtmlTableRow() {
-			StringBuilder html = new StringBuilder();
-
-			String evenOddCss = this.getJumpNo() % 2 == 0 ? "even" : "odd";
-			String neutronJumpCss = "NS".equals(this.getFromSpectralClass()) ? "neutronJump" : "normalJump";
-			//			String firstDiscoveredCss = this.getFromStar() != null && this.getRoute().getJournal().getFirstDiscoveries().contains(this.getFromStar().getName())
-			//					? " firstDiscovered"
-			//					: "";
-			String firstDiscoveredCss = "";
-			//			String prevKnownCss = this.getRoute().getJournal().getVisitedSystems().contains(this.getFromSystem().getName()) ? " known" : "";
-			//			String currKnownCss = this.getRoute().getJournal().getVisitedSystems().contains(this.getToSystem().getName()) ? " known" : "";
-			String prevKnownCss = "";
-			String currKnownCss = "";
-			String flags = "";
-			String notes = "";
-			if (this.getDryPeriod() == DryPeriod.END) {
-				flags += "R";
-				notes += "&lt;Route END&gt;&nbsp;";
-			} else if (this.getDryPeriod() == DryPeriod.START) {
-				//flags += "R";
-				notes += "&lt;Route START&gt;&nbsp;";
-			} else if (this.getDryPeriod() == DryPeriod.PART_OF) {
-				//flags += "R";
-				notes += "&lt;Route PART&gt;&nbsp;";
-			}
-			if (this.getToSystem().getName().replaceAll("[^\\-]", "").length() < 2) {
-				flags += "N"; // Pron name
-			}
-			if (this.getFuelLevelOnArrival() <= (this.getRoute().getFuelJumpLUT().getMaxFuelPerJump() * 1.25f)) {
-				flags += "F";
-				notes += "<span class=\"fuelWarning\">" + String.format(Locale.US, "%.1ft", this.getFuelLevelOnArrival()) + "</span>";
-			}
-			//			List<Body> valuableBodies = findValuableBodies(this.getToBodies());
-			//			if (valuableBodies.size() > 0) {
-			//				int unknown = 0;
-			//				for (Body body : valuableBodies) {
-			//					if (!this.getRoute().getJournal().getScannedBodies().contains(body.getName())) {
-			//						unknown++;
-			//					}
-			//					String knownCss = this.getRoute().getJournal().getScannedBodies().contains(body.getName()) ? "known" : "";
-			//					String typeCss = body.getTypeName() == null ? "" : body.getTypeName().toLowerCase().replaceAll("\\W", "-");
-			//					notes += "<span class=\"valuablePlanet " + typeCss + " " + knownCss + "\">"
-			//							+ StringEscapeUtils.escapeHtml(body.getName().replace(this.getToSystem().getName() + " ", "")) + "</span>";
-			//				}
-			//				if (unknown > 0) {
-			//					flags += "P"; // Planets
-			//				}
-			//			}
-
-			html.append("<tr class=\"" + evenOddCss + " " + neutronJumpCss + " " + firstDiscoveredCss + "\">");
-			html.append("<td class=\"numeric jumpNo\">" + this.getJumpNo() + "</td>");
-			html.append("<td class=\"starName " + prevKnownCss + "\">" + StringEscapeUtils.escapeHtml(this.getFromSystem().getName()) + "</td>");
-			html.append("<td class=\"starClass spectralClass-" + this.getFromSpectralClass() + "\">" + this.getFromSpectralClass() + "</td>");
-			html.append("<td class=\"numeric jumpDistance\">" + String.format(Locale.US, "%.1f Ly", this.getFromSystem().distanceTo(this.getToSystem())) + "</td>");
-			html.append("<td class=\"starClass spectralClass-" + this.getToSpectralClass() + "\">" + this.getToSpectralClass() + "</td>");
-			html.append("<td class=\"starName " + currKnownCss + "\">" + StringEscapeUtils.escapeHtml(this.getToSystem().getName()) + "</td>");
-			html.append("<td class=\"notes\">" + "[" + flags + "] " + notes + "</td>");
-			html.append("<td class=\"numeric distance\">" + String.format(Locale.US, "%.0f Ly", this.getTravelledLy()) + "</td>");
-			html.append("</tr>\n");
-
-			return html.toString();
-		}
-
 		public Route getRoute() {
 			return this.route;
 		}
@@ -0,0 +1,340 @@
+package borg.ed.neutronhighway.aystar;
+
+import java.util.BitSet;
+import java.util.Locale;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import borg.ed.neutronhighway.helper.FuelAndJumpRangeLookup;
+import borg.ed.neutronhighway.helper.IntIntHashMap;
+import borg.ed.neutronhighway.index.GalaxyIndex;
+import borg.ed.neutronhighway.index.NeighbourVisitor;
+
+/**
+ * Anytime repairing A* (ARA*) with the same jump and fuel rules as {@link AyStar}.
+ * <p>
+ * The first route is searched with the jump estimate inflated by epsilon, which makes the search
+ * run straight for the goal and finds a route with at most epsilon times the optimal number of
+ * jumps very quickly. Then epsilon is lowered step by step down to 1. Each step continues with
+ * the search nodes of the previous ones: systems which got a shorter path after they had been
+ * expanded are remembered as inconsistent and reopened, all open systems are re-keyed, and only
+ * what is needed to prove the next bound is expanded.
+ * <p>
+ * Every improved route is reported to an {@link ImprovedRouteListener} together with its current
+ * suboptimality bound, which is the number of jumps divided by the smallest un-inflated estimate
+ * of all open and inconsistent systems.
+ * <p>
+ * Closed systems cannot be passed to the index as tombstones here, because shorter paths to them
+ * have to be noticed.
+ *
+ * @author <a href="mailto:b.guenther@xsite.de">Boris Guenther</a>
+ */
+public class AnytimeAyStar {
+
+	static final Logger logger = LoggerFactory.getLogger(AnytimeAyStar.class);
+
+	public static final float DEFAULT_INITIAL_EPSILON = 2.5f;
+	public static final float DEFAULT_EPSILON_STEP = 0.5f;
+
+	private GalaxyIndex galaxy = null;
+	private FuelAndJumpRangeLookup fuelJumpLUT = null;
+	private int goal = -1;
+	private float maxTotalDistanceLy = 0;
+	private float maxJumpRangeBoosted = 0;
+	private float epsilon = 1.0f;
+	private float epsilonStep = DEFAULT_EPSILON_STEP;
+
+	private SearchNodeArena nodes = null;
+	private BucketQueue open = null;
+	private BitSet openSystems = null;
+	private BitSet closed = null;
+	private BitSet inconsistent = null;
+	private IntIntHashMap bestNodeBySystem = null;
+	private int goalNode = -1;
+	private float suboptimalityBound = Float.POSITIVE_INFINITY;
+	private int counter = 0;
+	private SearchStatus status = null;
+	private long initializedNanos = 0;
+
+	// Settings, kept between searches
+	private ImprovedRouteListener listener = null;
+	private long maxNanos = 0;
+	private int maxExpansions = 0;
+	private volatile boolean cancelled = false;
+
+	// State of the current expansion, read by neighbourExpander
+	private int expandedNode = -1;
+	private float expandedBoostValue = 1.0f;
+	private boolean expandedMustScoop = false;
+
+	public void initialize(int sourceId, int goalId, GalaxyIndex galaxy, FuelAndJumpRangeLookup fuelJumpLUT) {
+		this.initialize(sourceId, goalId, galaxy, fuelJumpLUT, DEFAULT_INITIAL_EPSILON, DEFAULT_EPSILON_STEP);
+	}
+
+	/**
+	 * @param initialEpsilon
+	 *      Inflation of the jump estimate for the first route, &gt;= 1
+	 * @param epsilonStep
+	 *      How much epsilon is lowered after each route, &gt; 0
+	 */
+	public void initialize(int sourceId, int goalId, GalaxyIndex galaxy, FuelAndJumpRangeLookup fuelJumpLUT, float initialEpsilon, float epsilonStep) {
+		if (sourceId < 0) {
+			throw new IllegalArgumentException("source not in useable star systems");
+		} else if (goalId < 0) {
+			throw new IllegalArgumentException("goal not in useable star systems");
+		} else if (initialEpsilon < 1.0f || epsilonStep <= 0) {
+			throw new IllegalArgumentException("epsilon must be >= 1 and the step > 0");
+		}
+		this.galaxy = galaxy;
+		this.fuelJumpLUT = fuelJumpLUT;
+		this.goal = goalId;
+		this.maxJumpRangeBoosted = 4f * fuelJumpLUT.getJumpRangeFuelOpt();
+		this.maxTotalDistanceLy = 10.0f * galaxy.distance(sourceId, goalId);
+		this.epsilon = initialEpsilon;
+		this.epsilonStep = epsilonStep;
+
+		if (this.nodes == null) {
+			this.nodes = new SearchNodeArena();
+			this.open = new BucketQueue();
+			this.openSystems = new BitSet(galaxy.size());
+			this.closed = new BitSet(galaxy.size());
+			this.inconsistent = new BitSet(galaxy.size());
+			this.bestNodeBySystem = new IntIntHashMap(1024, -1);
+		} else {
+			this.nodes.clear();
+			this.open.clear();
+			this.openSystems.clear();
+			this.closed.clear();
+			this.inconsistent.clear();
+			this.bestNodeBySystem.clear();
+		}
+		this.goalNode = -1;
+		this.suboptimalityBound = Float.POSITIVE_INFINITY;
+		this.counter = 0;
+		this.status = SearchStatus.RUNNING;
+		this.cancelled = false;
+		this.initializedNanos = System.nanoTime();
+
+		final float directDistanceLy = galaxy.distance(sourceId, goalId);
+		final int sourceNode = this.nodes.add(SearchNodeArena.NO_PARENT, sourceId, 0, 0, directDistanceLy, fuelJumpLUT.getMaxFuelTons());
+		this.bestNodeBySystem.put(sourceId, sourceNode);
+		if (sourceId == goalId) {
+			this.goalNode = sourceNode;
+		} else {
+			this.open.put(sourceNode, this.keyOf(sourceNode));
+			this.openSystems.set(sourceId);
+		}
+	}
+
+	public void setImprovedRouteListener(ImprovedRouteListener listener) {
+		this.listener = listener;
+	}
+
+	/**
+	 * Limits every call of {@link #search()}. 0 means unlimited.
+	 */
+	public void setBudget(long maxMillis, int maxExpansions) {
+		this.maxNanos = maxMillis * 1000000L;
+		this.maxExpansions = maxExpansions;
+	}
+
+	/**
+	 * Stops the running search at the next expansion. May be called from any thread.
+	 */
+	public void cancel() {
+		this.cancelled = true;
+	}
+
+	public int getNumberOfExpansions() {
+		return this.counter;
+	}
+
+	public SearchStatus getStatus() {
+		return this.status;
+	}
+
+	/**
+	 * @return
+	 *      The best route so far, or null if none has been found yet
+	 */
+	public Path getPath() {
+		return this.nodes.toPath(this.galaxy, this.goalNode);
+	}
+
+	/**
+	 * @return
+	 *      How many times the optimal number of jumps the current route has at most
+	 */
+	public float getSuboptimalityBound() {
+		return this.suboptimalityBound;
+	}
+
+	public float getEpsilon() {
+		return this.epsilon;
+	}
+
+	/**
+	 * Runs or continues the search until the route is proven to be optimal. If the budget is
+	 * exhausted or the search is cancelled before, {@link #getPath()} is the best route so far.
+	 *
+	 * @return
+	 *      {@link SearchStatus#FOUND} once the route is optimal
+	 */
+	public SearchStatus search() {
+		if (this.status != SearchStatus.RUNNING && !this.status.isResumable()) {
+			return this.status;
+		}
+		this.status = SearchStatus.RUNNING;
+		final long startNanos = System.nanoTime();
+		final int expansionLimit = this.maxExpansions > 0 ? this.counter + this.maxExpansions : Integer.MAX_VALUE;
+
+		while (true) {
+			// Improve the path with the current epsilon
+			while (!this.open.isEmpty() && (this.goalNode < 0 || this.open.peekKey() < this.keyOf(this.goalNode))) {
+				if (this.cancelled) {
+					return this.status = SearchStatus.CANCELLED;
+				} else if (this.counter >= expansionLimit) {
+					return this.status = SearchStatus.BUDGET_EXHAUSTED;
+				}
+
+				final int node = this.open.poll();
+				final int starSystemId = this.nodes.getStarSystemId(node);
+				this.openSystems.clear(starSystemId);
+				this.closed.set(starSystemId);
+				this.expandNeighbours(node);
+
+				if ((++this.counter & 0xFF) == 0 && this.maxNanos > 0 && System.nanoTime() - startNanos >= this.maxNanos) {
+					return this.status = SearchStatus.BUDGET_EXHAUSTED;
+				}
+			}
+
+			this.publishBound();
+			if (this.epsilon <= 1.0f) {
+				return this.status = this.goalNode >= 0 ? SearchStatus.FOUND : SearchStatus.NO_PATH;
+			}
+			this.epsilon = Math.max(1.0f, this.epsilon - this.epsilonStep);
+			this.reopen();
+		}
+	}
+
+	/**
+	 * Inflated estimate. The goal itself has an estimate of 0, so its key is its number of jumps.
+	 */
+	private int keyOf(int node) {
+		final float jumpsToGoal = this.nodes.getRemainingDistanceLy(node) / this.maxJumpRangeBoosted;
+		return (int) ((this.nodes.getTotalJumps(node) + this.epsilon * jumpsToGoal) * AyStar.TIE_BREAK_BUCKETS);
+	}
+
+	/**
+	 * Computes the bound of the current route and reports it if anything improved.
+	 */
+	private void publishBound() {
+		if (this.goalNode < 0) {
+			return;
+		}
+		float minEstimate = Float.POSITIVE_INFINITY;
+		for (int id = this.openSystems.nextSetBit(0); id >= 0; id = this.openSystems.nextSetBit(id + 1)) {
+			minEstimate = Math.min(minEstimate, this.estimateOf(this.bestNodeBySystem.get(id)));
+		}
+		for (int id = this.inconsistent.nextSetBit(0); id >= 0; id = this.inconsistent.nextSetBit(id + 1)) {
+			minEstimate = Math.min(minEstimate, this.estimateOf(this.bestNodeBySystem.get(id)));
+		}
+		final int goalJumps = this.nodes.getTotalJumps(this.goalNode);
+		float bound = Math.min(this.epsilon, minEstimate > 0 ? goalJumps / minEstimate : this.epsilon);
+		if (this.epsilon <= 1.0f || bound < 1.0f) {
+			// Nothing left which could beat it
+			bound = 1.0f;
+		}
+		if (bound < this.suboptimalityBound) {
+			this.suboptimalityBound = bound;
+			final long elapsedMillis = (System.nanoTime() - this.initializedNanos) / 1000000L;
+			if (logger.isDebugEnabled()) {
+				logger.debug(String.format(Locale.US, "%d jumps, bound %.2f, epsilon %.2f after %,d expansions in %,d ms", goalJumps, bound, this.epsilon, this.counter,
+						elapsedMillis));
+			}
+			if (this.listener != null) {
+				this.listener.onImprovedRoute(this.getPath(), bound, elapsedMillis);
+			}
+		}
+	}
+
+	private float estimateOf(int node) {
+		return this.nodes.getTotalJumps(node) + this.nodes.getRemainingDistanceLy(node) / this.maxJumpRangeBoosted;
+	}
+
+	/**
+	 * Moves the inconsistent systems back into the open list, re-keys everything with the new
+	 * epsilon and forgets which systems have been expanded.
+	 */
+	private void reopen() {
+		for (int id = this.inconsistent.nextSetBit(0); id >= 0; id = this.inconsistent.nextSetBit(id + 1)) {
+			this.openSystems.set(id);
+		}
+		this.inconsistent.clear();
+		for (int id = this.openSystems.nextSetBit(0); id >= 0; id = this.openSystems.nextSetBit(id + 1)) {
+			final int node = this.bestNodeBySystem.get(id);
+			this.open.put(node, this.keyOf(node));
+		}
+		this.closed.clear();
+	}
+
+	private void expandNeighbours(int node) {
+		final int starSystemId = this.nodes.getStarSystemId(node);
+		final float fuelLevel = this.nodes.getFuelLevel(node);
+		final boolean haveSuperchargedFsd = this.galaxy.isNeutron(starSystemId);
+		this.expandedNode = node;
+		this.expandedBoostValue = haveSuperchargedFsd ? 4.0f : 1.0f;
+		this.expandedMustScoop = fuelLevel <= this.fuelJumpLUT.getMaxFuelPerJump(); // Do we need to scoop?
+		this.galaxy.forEachInRange(this.galaxy.getX(starSystemId), this.galaxy.getY(starSystemId), this.galaxy.getZ(starSystemId),
+				AyStar.maxJumpRange(this.fuelJumpLUT, fuelLevel, haveSuperchargedFsd), this.neighbourExpander);
+		this.expandedNode = -1;
+	}
+
+	private final NeighbourVisitor neighbourExpander = new NeighbourVisitor() {
+		@Override
+		public void visit(int neighbour, float extraTravelledDistanceLy) {
+			final AnytimeAyStar search = AnytimeAyStar.this;
+			final SearchNodeArena nodes = search.nodes;
+			final int node = search.expandedNode;
+			if (search.expandedMustScoop && !search.galaxy.isScoopable(neighbour)) {
+				return;
+			}
+			float remainingDistanceLy = search.galaxy.distance(neighbour, search.goal);
+			if (remainingDistanceLy >= nodes.getRemainingDistanceLy(node)) {
+				return;
+			}
+			float travelledDistanceLy = nodes.getTravelledDistanceLy(node) + extraTravelledDistanceLy;
+			if (travelledDistanceLy + remainingDistanceLy > search.maxTotalDistanceLy) {
+				return;
+			}
+			int totalJumps = nodes.getTotalJumps(node) + 1;
+			int oldNode = search.bestNodeBySystem.get(neighbour);
+			if (oldNode >= 0 && totalJumps >= nodes.getTotalJumps(oldNode)) {
+				// Not better than the path we already have
+				return;
+			}
+			if (search.goalNode >= 0 && totalJumps + (int) (remainingDistanceLy / search.maxJumpRangeBoosted) >= nodes.getTotalJumps(search.goalNode)) {
+				// Cannot beat the route we already have
+				return;
+			}
+			float fuelLevel = AyStar.fuelLevelAfterJump(search.fuelJumpLUT, nodes.getFuelLevel(node), extraTravelledDistanceLy, search.expandedBoostValue,
+					search.galaxy.isNeutron(neighbour));
+			int newNode = nodes.add(node, neighbour, totalJumps, travelledDistanceLy, remainingDistanceLy, fuelLevel);
+			search.bestNodeBySystem.put(neighbour, newNode);
+			if (neighbour == search.goal) {
+				search.goalNode = newNode;
+			} else if (search.closed.get(neighbour)) {
+				// Already expanded with this epsilon, repair it in the next one
+				search.inconsistent.set(neighbour);
+			} else {
+				if (oldNode >= 0) {
+					search.open.remove(oldNode);
+				}
+				search.open.put(newNode, search.keyOf(newNode));
+				search.openSystems.set(neighbour);
+			}
+		}
+	};
+
+}
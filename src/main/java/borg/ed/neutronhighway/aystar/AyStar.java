@@ -1,25 +1,28 @@
 package borg.ed.neutronhighway.aystar;
 
-import java.util.ArrayList;
-import java.util.Collection;
-import java.util.HashMap;
-import java.util.HashSet;
-import java.util.List;
-import java.util.Locale;
-import java.util.Map;
-import java.util.PriorityQueue;
-import java.util.Set;
-import java.util.stream.Collectors;
+import java.util.BitSet;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-import borg.ed.galaxy.data.Coord;
 import borg.ed.galaxy.model.StarSystem;
 import borg.ed.neutronhighway.helper.FuelAndJumpRangeLookup;
+import borg.ed.neutronhighway.helper.IntIntHashMap;
+import borg.ed.neutronhighway.index.GalaxyIndex;
+import borg.ed.neutronhighway.index.MinimizedGalaxy;
+import borg.ed.neutronhighway.index.NeighbourVisitor;
+import borg.ed.neutronhighway.index.OctreeIndex;
+import borg.ed.neutronhighway.index.SectorPrefetcher;
+import borg.ed.neutronhighway.metrics.SearchMetrics;
+import borg.ed.neutronhighway.metrics.SearchPhase;
+import borg.ed.neutronhighway.metrics.SearchStats;
 
 /**
  * AyStar
+ * <p>
+ * {@link #search()} runs until the goal is found, the open list is empty, the budget is used up or
+ * the search is cancelled from another thread. A {@link SearchProgressListener} receives throttled
+ * snapshots in the meantime. Counters and phase timings are published to {@link SearchMetrics}.
  *
  * @author <a href="mailto:b.guenther@xsite.de">Boris Guenther</a>
  */
@@ -27,222 +30,384 @@ public class AyStar {
 
 	static final Logger logger = LoggerFactory.getLogger(AyStar.class);
 
-	private static final int SECTOR_SIZE = 50; // ly
+	/** Number of sub-buckets per jump count, used to prefer paths closer to the goal */
+	public static final int TIE_BREAK_BUCKETS = 64;
 
-	private MinimizedStarSystem goal = null;
-	private PriorityQueue<Path> open = null;
-	private Map<String, Path> openBySystem = null;
-	private Set<String> closed = null;
-	private Set<String> neutronStarIDs = null;
-	private Map<Coord, List<MinimizedStarSystem>> starSystemsWithNeutronStarsBySector = null;
-	private Map<Coord, List<MinimizedStarSystem>> starSystemsWithScoopableStarsBySector = null;
+	private GalaxyIndex galaxy = null;
+	private int goal = -1;
+	private SearchNodeArena nodes = null;
+	private BucketQueue open = null;
+	private IntIntHashMap openNodeBySystem = null;
+	private BitSet closed = null;
 	private FuelAndJumpRangeLookup fuelJumpLUT = null;
 	private float maxTotalDistanceLy = 0;
 	private float maxJumpRangeBoosted = 0;
+	private float directDistanceLy = 0;
 	private int counter = 0;
-	private Path closestToGoalSoFar = null;
+	private int closestToGoalSoFar = -1;
+	private int goalNode = -1;
+	private SearchStatus status = null;
+	private long lastSector = -1;
 
-	public void initialize(StarSystem source, StarSystem goal, Set<MinimizedStarSystem> minimizedNeutronStarSystems,
-			Set<MinimizedStarSystem> minimizedScoopableStarSystems, FuelAndJumpRangeLookup fuelJumpLUT) {
-		if (!minimizedNeutronStarSystems.contains(new MinimizedStarSystem(goal)) && !minimizedScoopableStarSystems.contains(new MinimizedStarSystem(goal))) {
+	// Settings, kept between searches
+	private SearchProgressListener progressListener = null;
+	private long progressIntervalNanos = 0;
+	private long maxNanos = 0;
+	private int maxExpansions = 0;
+	private volatile boolean cancelled = false;
+	private SearchMetrics metrics = SearchMetrics.SHARED;
+	private SectorPrefetcher prefetcher = null;
+	private final SearchStats stats = new SearchStats();
+
+	// Progress throttling
+	private long startNanos = 0;
+	private long lastProgressNanos = 0;
+	private int lastProgressCounter = 0;
+
+	// State of the current expansion, read by neighbourExpander
+	private int expandedNode = -1;
+	private float expandedBoostValue = 1.0f;
+	private boolean expandedMustScoop = false;
+	private int expandedScanned = 0;
+	private int expandedAccepted = 0;
+	private int expandedDecreaseKeys = 0;
+
+	public void initialize(StarSystem source, StarSystem goal, MinimizedGalaxy galaxy, FuelAndJumpRangeLookup fuelJumpLUT) {
+		this.initialize(source, goal, galaxy, OctreeIndex.build(galaxy), fuelJumpLUT);
+	}
+
+	public void initialize(StarSystem source, StarSystem goal, MinimizedGalaxy galaxy, OctreeIndex octreeIndex, FuelAndJumpRangeLookup fuelJumpLUT) {
+		this.initialize(source, goal, new GalaxyIndex(galaxy, octreeIndex), fuelJumpLUT);
+	}
+
+	/**
+	 * @param galaxy
+	 *      The epoch of the galaxy to search in. It will not change during the search, even if a
+	 *      newer epoch is published in the meantime.
+	 */
+	public void initialize(StarSystem source, StarSystem goal, GalaxyIndex galaxy, FuelAndJumpRangeLookup fuelJumpLUT) {
+		this.initialize(galaxy.findId(source), galaxy.findId(goal), galaxy, fuelJumpLUT);
+	}
+
+	/**
+	 * Resets the search state. The arena, open list and closed set of the previous search are
+	 * reused, so one instance per thread can serve any number of queries.
+	 */
+	public void initialize(int sourceId, int goalId, GalaxyIndex galaxy, FuelAndJumpRangeLookup fuelJumpLUT) {
+		final long initializeStart = System.nanoTime();
+		if (sourceId < 0) {
+			throw new IllegalArgumentException("source not in useable star systems");
+		} else if (goalId < 0) {
 			throw new IllegalArgumentException("goal not in useable star systems");
 		} else {
 			this.maxJumpRangeBoosted = 4f * fuelJumpLUT.getJumpRangeFuelOpt();
-			this.goal = new MinimizedStarSystem(goal);
-			this.open = new PriorityQueue<>(new LeastJumpsComparator(source.distanceTo(goal), this.maxJumpRangeBoosted));
-			this.openBySystem = new HashMap<>();
-			this.closed = new HashSet<>();
-			this.neutronStarIDs = minimizedNeutronStarSystems.stream().map(ss -> ss.getName()).collect(Collectors.toSet());
-			this.starSystemsWithNeutronStarsBySector = mapBySector(minimizedNeutronStarSystems);
-			this.starSystemsWithScoopableStarsBySector = mapBySector(minimizedScoopableStarSystems);
+			this.galaxy = galaxy;
+			this.goal = goalId;
+			this.directDistanceLy = galaxy.distance(sourceId, goalId);
+			if (this.nodes == null) {
+				this.nodes = new SearchNodeArena();
+				this.open = new BucketQueue();
+				this.openNodeBySystem = new IntIntHashMap(1024, -1);
+				this.closed = new BitSet(galaxy.size());
+			} else {
+				this.nodes.clear();
+				this.open.clear();
+				this.openNodeBySystem.clear();
+				this.closed.clear();
+			}
 			this.fuelJumpLUT = fuelJumpLUT;
-			this.maxTotalDistanceLy = 10.0f * source.distanceTo(goal);
-			this.closestToGoalSoFar = null;
+			this.maxTotalDistanceLy = 10.0f * this.directDistanceLy;
+			this.counter = 0;
+			this.closestToGoalSoFar = -1;
+			this.goalNode = -1;
+			this.lastSector = -1;
+			this.status = SearchStatus.RUNNING;
+			this.cancelled = false;
 
-			this.open.add(new Path(new MinimizedStarSystem(source), source.distanceTo(goal), fuelJumpLUT.getMaxFuelTons()));
+			int sourceNode = this.nodes.add(SearchNodeArena.NO_PARENT, sourceId, 0, 0, this.directDistanceLy, fuelJumpLUT.getMaxFuelTons());
+			this.open.put(sourceNode, this.priorityOf(0, this.directDistanceLy));
+			this.openNodeBySystem.put(sourceId, sourceNode);
+			this.stats.clear();
+			if (this.metrics != null) {
+				this.metrics.recordPhaseSince(SearchPhase.INITIALIZE, initializeStart, 0, null);
+			}
 		}
 	}
 
-	public Path findPath() {
-		while (this.open.size() > 0) {
-			Path path = this.open.poll();
+	/**
+	 * @param listener
+	 *      Receives a snapshot at most every intervalMillis, and when the search stops. Null to
+	 *      disable.
+	 */
+	public void setProgressListener(SearchProgressListener listener, long intervalMillis) {
+		this.progressListener = listener;
+		this.progressIntervalNanos = intervalMillis * 1000000L;
+	}
 
-			if (path.getMinimizedStarSystem().equals(this.goal)) {
-				// We reached our destination
-				return path;
+	/**
+	 * Limits every call of {@link #search()}. 0 means unlimited.
+	 */
+	public void setBudget(long maxMillis, int maxExpansions) {
+		this.maxNanos = maxMillis * 1000000L;
+		this.maxExpansions = maxExpansions;
+	}
+
+	/**
+	 * @param prefetcher
+	 *      Loads the sectors towards the goal in the background whenever the search enters a new
+	 *      sector. Null to disable.
+	 */
+	public void setPrefetcher(SectorPrefetcher prefetcher) {
+		this.prefetcher = prefetcher;
+	}
+
+	/**
+	 * @param metrics
+	 *      Where to publish counters and timings, {@link SearchMetrics#SHARED} by default. Null to
+	 *      disable.
+	 */
+	public void setMetrics(SearchMetrics metrics) {
+		this.metrics = metrics;
+	}
+
+	/**
+	 * Stops the running search at the next expansion. May be called from any thread. The flag is
+	 * reset by {@link #initialize(int, int, GalaxyIndex, FuelAndJumpRangeLookup)}.
+	 */
+	public void cancel() {
+		this.cancelled = true;
+	}
+
+	/**
+	 * @return
+	 *      The number of systems expanded so far
+	 */
+	public int getNumberOfExpansions() {
+		return this.counter;
+	}
+
+	public SearchStatus getStatus() {
+		return this.status;
+	}
+
+	/**
+	 * @return
+	 *      The path to the goal, or null if it has not been found (yet)
+	 */
+	public Path getPath() {
+		return this.nodes.toPath(this.galaxy, this.goalNode);
+	}
+
+	/**
+	 * @return
+	 *      The path to the goal if it has been found, otherwise the path closest to the goal so far
+	 */
+	public Path getBestPath() {
+		return this.nodes.toPath(this.galaxy, this.goalNode >= 0 ? this.goalNode : this.closestToGoalSoFar);
+	}
+
+	/**
+	 * Runs or continues the search. If it stopped because of the budget, it can be continued with
+	 * another call, which gets a new budget.
+	 */
+	public SearchStatus search() {
+		if (this.status != SearchStatus.RUNNING && !this.status.isResumable()) {
+			return this.status;
+		}
+		this.status = SearchStatus.RUNNING;
+		this.startNanos = System.nanoTime();
+		this.lastProgressNanos = this.startNanos;
+		this.lastProgressCounter = this.counter;
+		final int expansionLimit = this.maxExpansions > 0 ? this.counter + this.maxExpansions : Integer.MAX_VALUE;
+		long lapNanos = this.startNanos;
+
+		while (!this.open.isEmpty()) {
+			if (this.cancelled) {
+				return this.stop(SearchStatus.CANCELLED);
+			} else if (this.counter >= expansionLimit) {
+				return this.stop(SearchStatus.BUDGET_EXHAUSTED);
 			}
 
-			if (this.closed.contains(path.getMinimizedStarSystem().getName())) {
-				// We already found a better path
-				continue;
-			} else {
-				// Because we always poll the best path so far, the current path is
-				// the best path to this system
-				this.closed.add(path.getMinimizedStarSystem().getName());
-				this.removeFromSector(path.getMinimizedStarSystem(), this.starSystemsWithScoopableStarsBySector);
-				this.removeFromSector(path.getMinimizedStarSystem(), this.starSystemsWithNeutronStarsBySector);
+			final int node = this.open.poll();
+			final long polledNanos = System.nanoTime();
+			final int starSystemId = this.nodes.getStarSystemId(node);
+
+			if (starSystemId == this.goal) {
+				// We reached our destination
+				this.goalNode = node;
+				return this.stop(SearchStatus.FOUND);
 			}
 
-			if (this.closestToGoalSoFar == null || path.getRemainingDistanceLy() < this.closestToGoalSoFar.getRemainingDistanceLy()) {
-				this.closestToGoalSoFar = path;
+			// Because we always poll the best path so far, the current path is
+			// the best path to this system. There are no stale duplicates in the
+			// open list, as better paths replace the old entry (decrease-key).
+			this.closed.set(starSystemId);
+
+			if (this.closestToGoalSoFar < 0 || this.nodes.getRemainingDistanceLy(node) < this.nodes.getRemainingDistanceLy(this.closestToGoalSoFar)) {
+				this.closestToGoalSoFar = node;
 			}
 
-			//            if (this.closed.size() % 10000 == 0) {
-			//                // Periodic cleanup. Open queue may still contain systems which in the meantime have been reached. Remove those as they are now useless.
-			//                Path[] temp = this.open.toArray(new Path[this.open.size()]);
-			//                this.open.clear();
-			//                for (Path p : temp) {
-			//                    if (!this.closed.contains(p.getMinimizedStarSystem().getId())) {
-			//                        this.open.offer(p);
-			//                    }
-			//                }
-			//                logger.debug("Reduced open queue from " + temp.length + " to " + this.open.size() + " entries");
-			//
-			//                if (logger.isTraceEnabled()) {
-			//                    logger.trace(String.format("Open: %,15d / Closed: %,15d || Closest so far: %s with %d jump(s), %.0fly travelled, %.0fly remaining", this.open.size(), this.closed.size(), this.closestToGoalSoFar.getMinimizedStarSystem().toString(),
-			//                            this.closestToGoalSoFar.getTotalJumps(), this.closestToGoalSoFar.getTravelledDistanceLy(), this.closestToGoalSoFar.getRemainingDistanceLy()));
-			//                }
-			//            }
-
-			List<MinimizedStarSystem> neighbours = this.findNeighbours(path);
-			//logger.debug(String.format(Locale.US, "%6d neighbours for %s", neighbours.size(), path.getMinimizedStarSystem().getCoord().toString()));
-
-			final float boostValue = this.neutronStarIDs.contains(path.getMinimizedStarSystem().getName()) ? 4.0f : 1.0f;
-			for (int i = 0; i < neighbours.size(); i++) {
-				MinimizedStarSystem neighbour = neighbours.get(i);
-				float remainingDistanceLy = neighbour.distanceTo(this.goal);
-				if (remainingDistanceLy >= path.getRemainingDistanceLy()) {
-					continue;
-				}
-				float extraTravelledDistanceLy = path.getMinimizedStarSystem().distanceTo(neighbour);
-				float fuelLevel = this.fuelJumpLUT.getMaxFuelTons(); // Scoop until full by default
-				if (this.neutronStarIDs.contains(neighbour.getName())) {
-					fuelLevel = path.getFuelLevel() - this.fuelJumpLUT.lookupFuelUsage(extraTravelledDistanceLy / boostValue, path.getFuelLevel()); // Subtract from prev
-				}
-				Path newPath = new Path(path, neighbour, remainingDistanceLy, extraTravelledDistanceLy, fuelLevel);
-				if (newPath.getTravelledDistanceLy() + newPath.getRemainingDistanceLy() <= this.maxTotalDistanceLy) {
-					Path oldPath = this.openBySystem.get(newPath.getMinimizedStarSystem().getName());
-					if (oldPath == null) {
-						this.open.offer(newPath);
-						this.openBySystem.put(newPath.getMinimizedStarSystem().getName(), newPath);
-					} else {
-						int totalJumpsOldPath = oldPath.getTotalJumps() + (int) (oldPath.getRemainingDistanceLy() / this.maxJumpRangeBoosted);
-						int totalJumpsNewPath = newPath.getTotalJumps() + (int) (newPath.getRemainingDistanceLy() / this.maxJumpRangeBoosted);
-						if (totalJumpsNewPath < totalJumpsOldPath) {
-							this.open.remove(oldPath);
-							this.open.offer(newPath);
-							this.openBySystem.put(newPath.getMinimizedStarSystem().getName(), newPath);
-						}
-					}
-				}
+			if (this.prefetcher != null) {
+				this.prefetchTowardsGoal(starSystemId);
 			}
 
-			if (++this.counter % 1000 == 0) {
-				return this.closestToGoalSoFar;
+			this.expandNeighbours(node);
+			final long expandedNanos = System.nanoTime();
+			this.stats.onExpansion(this.expandedScanned, this.expandedAccepted, this.expandedDecreaseKeys, this.open.size(), polledNanos - lapNanos,
+					expandedNanos - polledNanos);
+			lapNanos = expandedNanos;
+
+			if ((++this.counter & 0xFF) == 0 && (this.maxNanos > 0 || this.progressListener != null)) {
+				final long now = System.nanoTime();
+				if (this.maxNanos > 0 && now - this.startNanos >= this.maxNanos) {
+					return this.stop(SearchStatus.BUDGET_EXHAUSTED);
+				} else if (this.progressListener != null && now - this.lastProgressNanos >= this.progressIntervalNanos) {
+					this.fireProgress(now);
+				}
 			}
 		}
 
-		return null;
+		return this.stop(SearchStatus.NO_PATH);
 	}
 
-	private List<MinimizedStarSystem> findNeighbours(Path path) {
-		final MinimizedStarSystem currentStarSystem = path.getMinimizedStarSystem();
-		final Coord currentCoord = currentStarSystem.getCoord();
-		float safeFuelLevel = path.getFuelLevel(); // This is what the calculation says, but as we don't know the formula we should add some safety
-		if (safeFuelLevel > this.fuelJumpLUT.getMaxFuelPerJump()) {
-			safeFuelLevel = Math.min(this.fuelJumpLUT.getMaxFuelTons(), safeFuelLevel + 2.0f); // Add 2 extra tons to reduce the calculated jump distance
-		} else {
-			safeFuelLevel = Math.max(0.1f, safeFuelLevel - 2.0f); // Subtract 2 tons to reduce the calculated jump distance
+	private void prefetchTowardsGoal(int starSystemId) {
+		final float x = this.galaxy.getX(starSystemId);
+		final float y = this.galaxy.getY(starSystemId);
+		final float z = this.galaxy.getZ(starSystemId);
+		final long sector = this.prefetcher.sectorOf(x, y, z);
+		if (sector != this.lastSector) {
+			this.lastSector = sector;
+			this.prefetcher.prefetch(this.galaxy.getBase(), x, y, z, this.galaxy.getX(this.goal), this.galaxy.getY(this.goal), this.galaxy.getZ(this.goal));
 		}
-		final float currentUnboostedJumpRange = this.fuelJumpLUT.lookupMaxJumpRange(safeFuelLevel);
-
-		// Do we have an overcharged FSD?
-		final boolean haveSuperchargedFsd = this.neutronStarIDs.contains(currentStarSystem.getName()) ? true : false;
-
-		// Do we need to scoop?
-		boolean mustScoop = path.getFuelLevel() <= fuelJumpLUT.getMaxFuelPerJump();
+	}
 
-		// Extra jump range because of empty tank?
-		final float currentJumpRange = haveSuperchargedFsd ? 4 * currentUnboostedJumpRange : currentUnboostedJumpRange;
-
-		// Find reachable systems
-		List<MinimizedStarSystem> scoopableSystemsInCloseSectors = findSystemsBySector(this.starSystemsWithScoopableStarsBySector, currentCoord,
-				currentJumpRange);
-		List<MinimizedStarSystem> systemsInRange = new ArrayList<>(scoopableSystemsInCloseSectors.size());
-		for (int i = 0; i < scoopableSystemsInCloseSectors.size(); i++) {
-			MinimizedStarSystem s = scoopableSystemsInCloseSectors.get(i);
-			//            if (!this.closed.contains(s.getId())) {
-			if (s.distanceTo(currentStarSystem) <= currentJumpRange) {
-				systemsInRange.add(s);
-			}
-			//            }
+	private SearchStatus stop(SearchStatus status) {
+		this.status = status;
+		if (this.metrics != null) {
+			this.metrics.recordSearch(this.stats, System.nanoTime() - this.startNanos, status.name());
 		}
-		if (!mustScoop) {
-			List<MinimizedStarSystem> neutronSystemsInCloseSectors = findSystemsBySector(this.starSystemsWithNeutronStarsBySector, currentCoord,
-					currentJumpRange);
-			for (int i = 0; i < neutronSystemsInCloseSectors.size(); i++) {
-				MinimizedStarSystem s = neutronSystemsInCloseSectors.get(i);
-				//                if (!this.closed.contains(s.getId())) {
-				if (s.distanceTo(currentStarSystem) <= currentJumpRange) {
-					systemsInRange.add(s);
-				}
-				//                }
-			}
+		if (this.progressListener != null) {
+			this.fireProgress(System.nanoTime());
 		}
+		return status;
+	}
 
-		// Finished
-		return systemsInRange;
-	}
-
-	private static List<MinimizedStarSystem> findSystemsBySector(Map<Coord, List<MinimizedStarSystem>> systemsBySector, Coord currentCoord,
-			float currentJumpRange) {
-		List<MinimizedStarSystem> result = new ArrayList<>();
-
-		Coord currentSector = coordToSector(currentCoord);
-		int nSideSectors = (int) Math.ceil(currentJumpRange / SECTOR_SIZE);
-		for (int x = -nSideSectors; x <= nSideSectors; x++) {
-			for (int y = -nSideSectors; y <= nSideSectors; y++) {
-				for (int z = -nSideSectors; z <= nSideSectors; z++) {
-					Coord sector = new Coord(currentSector.getX() + x * SECTOR_SIZE, currentSector.getY() + y * SECTOR_SIZE,
-							currentSector.getZ() + z * SECTOR_SIZE);
-					List<MinimizedStarSystem> systems = systemsBySector.get(sector);
-					if (systems != null) {
-						result.addAll(systems);
-					}
-				}
-			}
-		}
-		//logger.debug("Found " + result.size() + " systems around sector " + currentSector + " with jump range = " + currentJumpRange);
+	private void fireProgress(long now) {
+		final float seconds = (now - this.lastProgressNanos) / 1e9f;
+		final float expansionsPerSecond = seconds > 0 ? (this.counter - this.lastProgressCounter) / seconds : 0;
+		this.lastProgressNanos = now;
+		this.lastProgressCounter = this.counter;
+		// Every expansion closes exactly one system
+		this.progressListener.onProgress(new SearchProgress(this.status, this.getBestPath(), this.open.size(), this.counter, this.counter,
+				(now - this.startNanos) / 1000000L, expansionsPerSecond));
+	}
 
-		return result;
+	/**
+	 * Estimated total number of jumps, refined by the remaining distance. Paths with the same number
+	 * of jumps are expanded closest to the goal first instead of in arbitrary order.
+	 */
+	int priorityOf(int totalJumps, float remainingDistanceLy) {
+		return priorityOf(totalJumps, remainingDistanceLy, this.maxJumpRangeBoosted, this.directDistanceLy);
 	}
 
-	private void removeFromSector(MinimizedStarSystem starSystemToRemove, Map<Coord, List<MinimizedStarSystem>> starSystemsBySector) {
-		Coord sector = coordToSector(starSystemToRemove.getCoord());
-		List<MinimizedStarSystem> systemsInThisSector = starSystemsBySector.get(sector);
-		if (systemsInThisSector != null) {
-			systemsInThisSector.remove(starSystemToRemove);
+	public static int priorityOf(int totalJumps, float remainingDistanceLy, float maxJumpRangeBoosted, float directDistanceLy) {
+		final int estimatedTotalJumps = totalJumps + (int) (remainingDistanceLy / maxJumpRangeBoosted);
+		int tieBreak = directDistanceLy <= 0 ? 0 : (int) (remainingDistanceLy / directDistanceLy * TIE_BREAK_BUCKETS);
+		tieBreak = Math.max(0, Math.min(TIE_BREAK_BUCKETS - 1, tieBreak));
+		return estimatedTotalJumps * TIE_BREAK_BUCKETS + tieBreak;
+	}
+
+	/**
+	 * @return
+	 *      The jump range with the given fuel level, with some safety margin because we do not know
+	 *      the exact formula
+	 */
+	public static float maxJumpRange(FuelAndJumpRangeLookup fuelJumpLUT, float fuelLevel, boolean haveSuperchargedFsd) {
+		float safeFuelLevel = fuelLevel; // This is what the calculation says, but as we don't know the formula we should add some safety
+		if (safeFuelLevel > fuelJumpLUT.getMaxFuelPerJump()) {
+			safeFuelLevel = Math.min(fuelJumpLUT.getMaxFuelTons(), safeFuelLevel + 2.0f); // Add 2 extra tons to reduce the calculated jump distance
+		} else {
+			safeFuelLevel = Math.max(0.1f, safeFuelLevel - 2.0f); // Subtract 2 tons to reduce the calculated jump distance
 		}
+		final float currentUnboostedJumpRange = fuelJumpLUT.lookupMaxJumpRange(safeFuelLevel);
+
+		// Extra jump range because of empty tank?
+		return haveSuperchargedFsd ? 4 * currentUnboostedJumpRange : currentUnboostedJumpRange;
 	}
 
-	private Map<Coord, List<MinimizedStarSystem>> mapBySector(Collection<MinimizedStarSystem> starSystems) {
-		Map<Coord, List<MinimizedStarSystem>> result = new HashMap<>();
-		for (MinimizedStarSystem starSystem : starSystems) {
-			Coord sector = coordToSector(starSystem.getCoord());
-			List<MinimizedStarSystem> systemsInThisSector = result.get(sector);
-			if (systemsInThisSector == null) {
-				systemsInThisSector = new ArrayList<>();
-				result.put(sector, systemsInThisSector);
-			}
-			systemsInThisSector.add(starSystem);
+	/**
+	 * @return
+	 *      The fuel level after arriving at the next system. We scoop until full at every system
+	 *      except neutron stars.
+	 */
+	public static float fuelLevelAfterJump(FuelAndJumpRangeLookup fuelJumpLUT, float fuelLevel, float jumpDistanceLy, float boostValue, boolean arrivalIsNeutron) {
+		if (arrivalIsNeutron) {
+			return fuelLevel - fuelJumpLUT.lookupFuelUsage(jumpDistanceLy / boostValue, fuelLevel); // Subtract from prev
+		} else {
+			return fuelJumpLUT.getMaxFuelTons(); // Scoop until full by default
 		}
-		logger.debug(String.format(Locale.US, "Mapped %,d systems into %,d sectors", starSystems.size(), result.size()));
-		return result;
 	}
 
-	private static Coord coordToSector(Coord coord) {
-		return new Coord(((int) coord.getX() / SECTOR_SIZE) * SECTOR_SIZE, ((int) coord.getY() / SECTOR_SIZE) * SECTOR_SIZE,
-				((int) coord.getZ() / SECTOR_SIZE) * SECTOR_SIZE);
+	/**
+	 * Streams all reachable systems from the index into {@link #neighbourExpander}, which creates
+	 * the new open paths. No lists are built in between. Closed systems are passed as tombstones,
+	 * so the index skips them without the visitor ever seeing them.
+	 */
+	private void expandNeighbours(int node) {
+		final int currentStarSystem = this.nodes.getStarSystemId(node);
+		final float currentFuelLevel = this.nodes.getFuelLevel(node);
+
+		// Do we have an overcharged FSD?
+		final boolean haveSuperchargedFsd = this.galaxy.isNeutron(currentStarSystem);
+		final float currentJumpRange = maxJumpRange(this.fuelJumpLUT, currentFuelLevel, haveSuperchargedFsd);
+
+		this.expandedNode = node;
+		this.expandedBoostValue = haveSuperchargedFsd ? 4.0f : 1.0f;
+		this.expandedMustScoop = currentFuelLevel <= fuelJumpLUT.getMaxFuelPerJump(); // Do we need to scoop?
+		this.expandedScanned = 0;
+		this.expandedAccepted = 0;
+		this.expandedDecreaseKeys = 0;
+		this.galaxy.forEachInRange(this.galaxy.getX(currentStarSystem), this.galaxy.getY(currentStarSystem), this.galaxy.getZ(currentStarSystem), currentJumpRange,
+				this.closed, this.neighbourExpander);
+		this.expandedNode = -1;
 	}
 
+	private final NeighbourVisitor neighbourExpander = new NeighbourVisitor() {
+		@Override
+		public void visit(int neighbour, float extraTravelledDistanceLy) {
+			final SearchNodeArena nodes = AyStar.this.nodes;
+			final int node = AyStar.this.expandedNode;
+			AyStar.this.expandedScanned++;
+			if (AyStar.this.expandedMustScoop && !AyStar.this.galaxy.isScoopable(neighbour)) {
+				return;
+			}
+			float remainingDistanceLy = AyStar.this.galaxy.distance(neighbour, AyStar.this.goal);
+			if (remainingDistanceLy >= nodes.getRemainingDistanceLy(node)) {
+				return;
+			}
+			float travelledDistanceLy = nodes.getTravelledDistanceLy(node) + extraTravelledDistanceLy;
+			if (travelledDistanceLy + remainingDistanceLy > AyStar.this.maxTotalDistanceLy) {
+				return;
+			}
+			int totalJumps = nodes.getTotalJumps(node) + 1;
+			int newPriority = AyStar.this.priorityOf(totalJumps, remainingDistanceLy);
+			int oldNode = AyStar.this.openNodeBySystem.get(neighbour);
+			if (oldNode >= 0 && newPriority >= AyStar.this.open.getKey(oldNode)) {
+				// Not better than the path we already have
+				return;
+			}
+			float fuelLevel = fuelLevelAfterJump(AyStar.this.fuelJumpLUT, nodes.getFuelLevel(node), extraTravelledDistanceLy, AyStar.this.expandedBoostValue,
+					AyStar.this.galaxy.isNeutron(neighbour));
+			int newNode = nodes.add(node, neighbour, totalJumps, travelledDistanceLy, remainingDistanceLy, fuelLevel);
+			if (oldNode >= 0) {
+				// Better path (decrease-key)
+				AyStar.this.open.remove(oldNode);
+				AyStar.this.expandedDecreaseKeys++;
+			}
+			AyStar.this.open.put(newNode, newPriority);
+			AyStar.this.openNodeBySystem.put(neighbour, newNode);
+			AyStar.this.expandedAccepted++;
+		}
+	};
+
 }
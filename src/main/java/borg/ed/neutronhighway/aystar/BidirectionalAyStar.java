@@ -0,0 +1,391 @@
+package borg.ed.neutronhighway.aystar;
+
+import java.util.Arrays;
+import java.util.BitSet;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import borg.ed.galaxy.model.StarSystem;
+import borg.ed.neutronhighway.helper.FuelAndJumpRangeLookup;
+import borg.ed.neutronhighway.helper.IntIntHashMap;
+import borg.ed.neutronhighway.index.GalaxyIndex;
+import borg.ed.neutronhighway.index.NeighbourVisitor;
+
+/**
+ * Least-jumps search from both ends.
+ * <p>
+ * The forward search is the same as in {@link AyStar}, including fuel and scooping. The backward
+ * search cannot know the fuel level, so it is a conservative relaxation: it runs breadth-first
+ * from the goal over reversed jumps, assuming that every system can be left with the best jump
+ * range of the ship (times four at neutron stars) and ignoring fuel and scooping altogether.
+ * It keeps the geometric restrictions of the forward search (every jump gets closer to the goal,
+ * and the detour is limited), so every forward jump is also a backward jump.
+ * <p>
+ * The backward depth of a system is therefore a proven lower bound for the number of jumps from
+ * there to the goal, and every system the backward search has not reached yet needs at least one
+ * jump more than its deepest completed layer. Where the two frontiers meet the forward search is
+ * guided by these bounds instead of the straight-line estimate of {@link AyStar}. As the bounds
+ * never overestimate, the first time the goal is polled its path has the least possible number
+ * of jumps. The side with the smaller frontier is expanded next.
+ * <p>
+ * Far fewer forward expansions are needed than by {@link AyStar}, but the backward expansions
+ * count as well. Short of the core they usually pay off; right through a dense core the backward
+ * search labels more systems than {@link AyStar} expands, and the search is slower. So it is not
+ * used by the routing engine.
+ *
+ * @author <a href="mailto:b.guenther@xsite.de">Boris Guenther</a>
+ */
+public class BidirectionalAyStar {
+
+	static final Logger logger = LoggerFactory.getLogger(BidirectionalAyStar.class);
+
+	private static final int UNKNOWN = Integer.MAX_VALUE;
+
+	private GalaxyIndex galaxy = null;
+	private FuelAndJumpRangeLookup fuelJumpLUT = null;
+	private int source = -1;
+	private int goal = -1;
+	private float directDistanceLy = 0;
+	private float maxTotalDistanceLy = 0;
+	private float maxJumpRangeBoosted = 0;
+	private float maxJumpRangeUnboosted = 0;
+
+	// Forward search
+	private SearchNodeArena nodes = null;
+	private BucketQueue open = null;
+	private IntIntHashMap openNodeBySystem = null;
+	private IntIntHashMap bestJumpsBySystem = null;
+	private BitSet closed = null;
+	private int forwardExpansions = 0;
+	private int closestToGoalSoFar = -1;
+	private int goalNode = -1;
+	private SearchStatus status = null;
+
+	// Backward search, breadth-first
+	private BitSet labelled = null;
+	private BitSet labelledOrNotNeutron = null;
+	private IntIntHashMap backwardJumpsBySystem = null;
+	private int[] backwardQueue = null;
+	private int backwardHead = 0;
+	private int backwardTail = 0;
+	private int backwardExpansions = 0;
+	private GalaxyIndex notNeutronGalaxy = null;
+	private BitSet notNeutron = null;
+
+	// Settings, kept between searches
+	private long maxNanos = 0;
+	private int maxExpansions = 0;
+	private volatile boolean cancelled = false;
+
+	// State of the current expansion
+	private int expandedNode = -1;
+	private int expandedBackwardSystem = -1;
+	private float expandedBoostValue = 1.0f;
+	private boolean expandedMustScoop = false;
+
+	public void initialize(StarSystem source, StarSystem goal, GalaxyIndex galaxy, FuelAndJumpRangeLookup fuelJumpLUT) {
+		this.initialize(galaxy.findId(source), galaxy.findId(goal), galaxy, fuelJumpLUT);
+	}
+
+	/**
+	 * Resets the search state. Like in {@link AyStar}, the structures of the previous search are
+	 * reused, so one instance can serve any number of queries.
+	 */
+	public void initialize(int sourceId, int goalId, GalaxyIndex galaxy, FuelAndJumpRangeLookup fuelJumpLUT) {
+		if (sourceId < 0) {
+			throw new IllegalArgumentException("source not in useable star systems");
+		} else if (goalId < 0) {
+			throw new IllegalArgumentException("goal not in useable star systems");
+		}
+		this.galaxy = galaxy;
+		this.fuelJumpLUT = fuelJumpLUT;
+		this.source = sourceId;
+		this.goal = goalId;
+		this.directDistanceLy = galaxy.distance(sourceId, goalId);
+		this.maxTotalDistanceLy = 10.0f * this.directDistanceLy;
+		this.maxJumpRangeUnboosted = fuelJumpLUT.getJumpRangeFuelOpt();
+		this.maxJumpRangeBoosted = 4f * this.maxJumpRangeUnboosted;
+
+		if (this.nodes == null) {
+			this.nodes = new SearchNodeArena();
+			this.open = new BucketQueue();
+			this.openNodeBySystem = new IntIntHashMap(1024, -1);
+			this.bestJumpsBySystem = new IntIntHashMap(1024, UNKNOWN);
+			this.closed = new BitSet(galaxy.size());
+			this.labelled = new BitSet(galaxy.size());
+			this.labelledOrNotNeutron = new BitSet(galaxy.size());
+			this.backwardJumpsBySystem = new IntIntHashMap(1024, UNKNOWN);
+			this.backwardQueue = new int[1024];
+		} else {
+			this.nodes.clear();
+			this.open.clear();
+			this.openNodeBySystem.clear();
+			this.bestJumpsBySystem.clear();
+			this.closed.clear();
+			this.labelled.clear();
+			this.labelledOrNotNeutron.clear();
+			this.backwardJumpsBySystem.clear();
+		}
+		if (galaxy != this.notNeutronGalaxy) {
+			// Once per epoch, not per search
+			this.notNeutron = galaxy.getNeutronStars();
+			this.notNeutron.flip(0, galaxy.size());
+			this.notNeutronGalaxy = galaxy;
+		}
+		this.labelledOrNotNeutron.or(this.notNeutron);
+		this.forwardExpansions = 0;
+		this.closestToGoalSoFar = -1;
+		this.goalNode = -1;
+		this.backwardHead = 0;
+		this.backwardTail = 0;
+		this.backwardExpansions = 0;
+		this.status = SearchStatus.RUNNING;
+		this.cancelled = false;
+		this.label(goalId, 0);
+
+		this.offer(SearchNodeArena.NO_PARENT, sourceId, 0, 0, this.directDistanceLy, fuelJumpLUT.getMaxFuelTons());
+	}
+
+	/**
+	 * Limits every call of {@link #search()}, counting forward and backward expansions. 0 means
+	 * unlimited.
+	 */
+	public void setBudget(long maxMillis, int maxExpansions) {
+		this.maxNanos = maxMillis * 1000000L;
+		this.maxExpansions = maxExpansions;
+	}
+
+	/**
+	 * Stops the running search at the next expansion. May be called from any thread. The flag is
+	 * reset by {@link #initialize(int, int, GalaxyIndex, FuelAndJumpRangeLookup)}.
+	 */
+	public void cancel() {
+		this.cancelled = true;
+	}
+
+	/**
+	 * Runs or continues the search. If it stopped because of the budget, it can be continued with
+	 * another call, which gets a new budget.
+	 */
+	public SearchStatus search() {
+		if (this.status != SearchStatus.RUNNING && !this.status.isResumable()) {
+			return this.status;
+		}
+		this.status = SearchStatus.RUNNING;
+		final long startNanos = System.nanoTime();
+		final int expansionLimit = this.maxExpansions > 0 ? this.getNumberOfExpansions() + this.maxExpansions : Integer.MAX_VALUE;
+		int iterations = 0;
+
+		while (!this.open.isEmpty()) {
+			if (this.cancelled) {
+				return this.status = SearchStatus.CANCELLED;
+			} else if (this.getNumberOfExpansions() >= expansionLimit) {
+				return this.status = SearchStatus.BUDGET_EXHAUSTED;
+			} else if ((++iterations & 0xFF) == 0 && this.maxNanos > 0 && System.nanoTime() - startNanos >= this.maxNanos) {
+				return this.status = SearchStatus.BUDGET_EXHAUSTED;
+			}
+
+			if (this.backwardHead < this.backwardTail && this.backwardTail - this.backwardHead <= this.open.size()) {
+				this.expandBackward();
+				continue;
+			}
+
+			final int queuedPriority = this.open.peekKey();
+			final int node = this.open.poll();
+			final int starSystemId = this.nodes.getStarSystemId(node);
+
+			// The bounds only get better while the backward search goes on, so re-check the priority
+			final int jumpsToGoal = this.lowerBoundJumpsToGoal(starSystemId, this.nodes.getRemainingDistanceLy(node));
+			if (jumpsToGoal == UNKNOWN) {
+				// The goal cannot be reached from here
+				this.openNodeBySystem.put(starSystemId, -1);
+				continue;
+			}
+			final int priority = this.priorityOf(this.nodes.getTotalJumps(node), jumpsToGoal, this.nodes.getRemainingDistanceLy(node));
+			if (priority > queuedPriority) {
+				this.open.put(node, priority);
+				continue;
+			}
+			this.openNodeBySystem.put(starSystemId, -1);
+
+			if (starSystemId == this.goal) {
+				// We reached our destination
+				this.goalNode = node;
+				return this.status = SearchStatus.FOUND;
+			}
+
+			this.closed.set(starSystemId);
+			if (this.closestToGoalSoFar < 0 || this.nodes.getRemainingDistanceLy(node) < this.nodes.getRemainingDistanceLy(this.closestToGoalSoFar)) {
+				this.closestToGoalSoFar = node;
+			}
+
+			this.expandForward(node);
+			this.forwardExpansions++;
+		}
+
+		return this.status = SearchStatus.NO_PATH;
+	}
+
+	public SearchStatus getStatus() {
+		return this.status;
+	}
+
+	/**
+	 * @return
+	 *      The path to the goal, or null if it has not been found (yet)
+	 */
+	public Path getPath() {
+		return this.nodes.toPath(this.galaxy, this.goalNode);
+	}
+
+	/**
+	 * @return
+	 *      The path to the goal if it has been found, otherwise the path closest to the goal so far
+	 */
+	public Path getBestPath() {
+		return this.nodes.toPath(this.galaxy, this.goalNode >= 0 ? this.goalNode : this.closestToGoalSoFar);
+	}
+
+	/**
+	 * @return
+	 *      The number of forward and backward expansions so far. Both cost about the same, a
+	 *      backward expansion does two range queries instead of one.
+	 */
+	public int getNumberOfExpansions() {
+		return this.forwardExpansions + this.backwardExpansions;
+	}
+
+	public int getNumberOfForwardExpansions() {
+		return this.forwardExpansions;
+	}
+
+	public int getNumberOfBackwardExpansions() {
+		return this.backwardExpansions;
+	}
+
+	/**
+	 * @return
+	 *      The least number of jumps which is needed from the given system to the goal, or
+	 *      {@link #UNKNOWN} if the goal cannot be reached from there at all
+	 */
+	int lowerBoundJumpsToGoal(int starSystemId, float remainingDistanceLy) {
+		final int geometric = (int) (remainingDistanceLy / this.maxJumpRangeBoosted);
+		final int backward = this.backwardJumpsBySystem.get(starSystemId);
+		if (backward != UNKNOWN) {
+			return Math.max(geometric, backward);
+		} else if (this.backwardHead >= this.backwardTail) {
+			// The backward search is complete and has not found this system
+			return UNKNOWN;
+		} else {
+			// All layers up to the one currently expanded are complete
+			final int completedDepth = this.backwardJumpsBySystem.get(this.backwardQueue[this.backwardHead]);
+			return Math.max(geometric, completedDepth + 1);
+		}
+	}
+
+	private int priorityOf(int totalJumps, int jumpsToGoal, float remainingDistanceLy) {
+		int tieBreak = this.directDistanceLy <= 0 ? 0 : (int) (remainingDistanceLy / this.directDistanceLy * AyStar.TIE_BREAK_BUCKETS);
+		tieBreak = Math.max(0, Math.min(AyStar.TIE_BREAK_BUCKETS - 1, tieBreak));
+		return (totalJumps + jumpsToGoal) * AyStar.TIE_BREAK_BUCKETS + tieBreak;
+	}
+
+	private void offer(int parent, int starSystemId, int totalJumps, float travelledDistanceLy, float remainingDistanceLy, float fuelLevel) {
+		if (totalJumps >= this.bestJumpsBySystem.get(starSystemId)) {
+			return;
+		}
+		final int jumpsToGoal = this.lowerBoundJumpsToGoal(starSystemId, remainingDistanceLy);
+		if (jumpsToGoal == UNKNOWN) {
+			return;
+		}
+		this.bestJumpsBySystem.put(starSystemId, totalJumps);
+		int oldNode = this.openNodeBySystem.get(starSystemId);
+		if (oldNode >= 0) {
+			this.open.remove(oldNode);
+		}
+		this.closed.clear(starSystemId);
+		int node = this.nodes.add(parent, starSystemId, totalJumps, travelledDistanceLy, remainingDistanceLy, fuelLevel);
+		this.open.put(node, this.priorityOf(totalJumps, jumpsToGoal, remainingDistanceLy));
+		this.openNodeBySystem.put(starSystemId, node);
+	}
+
+	private void expandForward(int node) {
+		final int starSystemId = this.nodes.getStarSystemId(node);
+		final float fuelLevel = this.nodes.getFuelLevel(node);
+		final boolean haveSuperchargedFsd = this.galaxy.isNeutron(starSystemId);
+		this.expandedNode = node;
+		this.expandedBoostValue = haveSuperchargedFsd ? 4.0f : 1.0f;
+		this.expandedMustScoop = fuelLevel <= this.fuelJumpLUT.getMaxFuelPerJump(); // Do we need to scoop?
+		this.galaxy.forEachInRange(this.galaxy.getX(starSystemId), this.galaxy.getY(starSystemId), this.galaxy.getZ(starSystemId),
+				AyStar.maxJumpRange(this.fuelJumpLUT, fuelLevel, haveSuperchargedFsd), this.closed, this.forwardExpander);
+		this.expandedNode = -1;
+	}
+
+	private final NeighbourVisitor forwardExpander = new NeighbourVisitor() {
+		@Override
+		public void visit(int neighbour, float extraTravelledDistanceLy) {
+			final BidirectionalAyStar search = BidirectionalAyStar.this;
+			final SearchNodeArena nodes = search.nodes;
+			final int node = search.expandedNode;
+			if (search.expandedMustScoop && !search.galaxy.isScoopable(neighbour)) {
+				return;
+			}
+			float remainingDistanceLy = search.galaxy.distance(neighbour, search.goal);
+			if (remainingDistanceLy >= nodes.getRemainingDistanceLy(node)) {
+				return;
+			}
+			float travelledDistanceLy = nodes.getTravelledDistanceLy(node) + extraTravelledDistanceLy;
+			if (travelledDistanceLy + remainingDistanceLy > search.maxTotalDistanceLy) {
+				return;
+			}
+			float fuelLevel = AyStar.fuelLevelAfterJump(search.fuelJumpLUT, nodes.getFuelLevel(node), extraTravelledDistanceLy, search.expandedBoostValue,
+					search.galaxy.isNeutron(neighbour));
+			search.offer(node, neighbour, nodes.getTotalJumps(node) + 1, travelledDistanceLy, remainingDistanceLy, fuelLevel);
+		}
+	};
+
+	private void label(int starSystemId, int jumpsToGoal) {
+		this.labelled.set(starSystemId);
+		this.labelledOrNotNeutron.set(starSystemId);
+		this.backwardJumpsBySystem.put(starSystemId, jumpsToGoal);
+		if (this.backwardTail == this.backwardQueue.length) {
+			this.backwardQueue = Arrays.copyOf(this.backwardQueue, this.backwardTail * 2);
+		}
+		this.backwardQueue[this.backwardTail++] = starSystemId;
+	}
+
+	/**
+	 * Finds all systems which could jump to the next system of the backward queue with the best
+	 * possible jump range. Only neutron stars can be further away than the unboosted range, so
+	 * the wide query skips all other systems as tombstones.
+	 */
+	private void expandBackward() {
+		final int starSystemId = this.backwardQueue[this.backwardHead++];
+		final float x = this.galaxy.getX(starSystemId);
+		final float y = this.galaxy.getY(starSystemId);
+		final float z = this.galaxy.getZ(starSystemId);
+		this.backwardExpansions++;
+		this.expandedBackwardSystem = starSystemId;
+		this.galaxy.forEachInRange(x, y, z, this.maxJumpRangeUnboosted, this.labelled, this.backwardExpander);
+		this.galaxy.forEachInRange(x, y, z, this.maxJumpRangeBoosted, this.labelledOrNotNeutron, this.backwardExpander);
+		this.expandedBackwardSystem = -1;
+	}
+
+	private final NeighbourVisitor backwardExpander = new NeighbourVisitor() {
+		@Override
+		public void visit(int predecessor, float jumpDistanceLy) {
+			final BidirectionalAyStar search = BidirectionalAyStar.this;
+			final int target = search.expandedBackwardSystem;
+			float remainingDistanceLy = search.galaxy.distance(predecessor, search.goal);
+			if (remainingDistanceLy <= search.galaxy.distance(target, search.goal)) {
+				// The forward search only jumps closer to the goal
+				return;
+			}
+			if (search.galaxy.distance(search.source, predecessor) + remainingDistanceLy > search.maxTotalDistanceLy) {
+				return;
+			}
+			search.label(predecessor, search.backwardJumpsBySystem.get(target) + 1);
+		}
+	};
+
+}
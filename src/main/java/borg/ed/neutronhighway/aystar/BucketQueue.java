@@ -0,0 +1,169 @@
+package borg.ed.neutronhighway.aystar;
+
+import java.util.Arrays;
+
+/**
+ * Monotone bucket queue for small non-negative integer keys.
+ * <p>
+ * Every key has its own bucket, which is an intrusive doubly linked list over the handles. Adding,
+ * changing the key of and removing a handle are O(1). Polling scans forward from the smallest
+ * non-empty bucket, which only moves backwards if a smaller key is added, so for A* style
+ * searches it is amortized O(1) as well.
+ * <p>
+ * A handle can be queued at most once. Handles and keys must be &gt;= 0, the arrays grow as
+ * needed.
+ *
+ * @author <a href="mailto:b.guenther@xsite.de">Boris Guenther</a>
+ */
+public class BucketQueue {
+
+	private static final int NONE = -1;
+
+	private int[] heads = new int[64];
+	private int[] keys = new int[1024];
+	private int[] nexts = new int[1024];
+	private int[] prevs = new int[1024];
+	private int minKey = Integer.MAX_VALUE;
+	private int size = 0;
+
+	public BucketQueue() {
+		Arrays.fill(this.heads, NONE);
+		Arrays.fill(this.keys, NONE);
+	}
+
+	/**
+	 * Adds the handle, or moves it to the new key if it is already queued.
+	 */
+	public void put(int handle, int key) {
+		if (key < 0) {
+			throw new IllegalArgumentException("key must be >= 0, was " + key);
+		}
+		this.ensureHandleCapacity(handle);
+		this.ensureKeyCapacity(key);
+		if (this.keys[handle] != NONE) {
+			this.unlink(handle);
+		} else {
+			this.size++;
+		}
+		this.link(handle, key);
+	}
+
+	/**
+	 * @return
+	 *      The handle with the smallest key, or -1 if the queue is empty. Handles with equal keys
+	 *      are returned last in, first out.
+	 */
+	public int poll() {
+		if (this.size == 0) {
+			return NONE;
+		}
+		int handle = this.heads[this.peekKey()];
+		this.unlink(handle);
+		this.size--;
+		return handle;
+	}
+
+	/**
+	 * @return
+	 *      The smallest key in the queue, or -1 if the queue is empty
+	 */
+	public int peekKey() {
+		if (this.size == 0) {
+			return NONE;
+		}
+		while (this.heads[this.minKey] == NONE) {
+			this.minKey++;
+		}
+		return this.minKey;
+	}
+
+	public boolean remove(int handle) {
+		if (!this.contains(handle)) {
+			return false;
+		}
+		this.unlink(handle);
+		this.size--;
+		return true;
+	}
+
+	public boolean contains(int handle) {
+		return handle < this.keys.length && this.keys[handle] != NONE;
+	}
+
+	/**
+	 * @return
+	 *      The key of the handle, or -1 if it is not queued
+	 */
+	public int getKey(int handle) {
+		return handle < this.keys.length ? this.keys[handle] : NONE;
+	}
+
+	/**
+	 * Empties the queue but keeps the arrays for reuse.
+	 */
+	public void clear() {
+		if (this.size > 0) {
+			Arrays.fill(this.keys, NONE);
+			Arrays.fill(this.heads, NONE);
+		}
+		this.size = 0;
+		this.minKey = Integer.MAX_VALUE;
+	}
+
+	public int size() {
+		return this.size;
+	}
+
+	public boolean isEmpty() {
+		return this.size == 0;
+	}
+
+	private void link(int handle, int key) {
+		int head = this.heads[key];
+		this.keys[handle] = key;
+		this.prevs[handle] = NONE;
+		this.nexts[handle] = head;
+		if (head != NONE) {
+			this.prevs[head] = handle;
+		}
+		this.heads[key] = handle;
+		if (key < this.minKey) {
+			this.minKey = key;
+		}
+	}
+
+	private void unlink(int handle) {
+		int prev = this.prevs[handle];
+		int next = this.nexts[handle];
+		if (prev != NONE) {
+			this.nexts[prev] = next;
+		} else {
+			this.heads[this.keys[handle]] = next;
+		}
+		if (next != NONE) {
+			this.prevs[next] = prev;
+		}
+		this.keys[handle] = NONE;
+	}
+
+	private void ensureHandleCapacity(int handle) {
+		if (handle >= this.keys.length) {
+			int oldCapacity = this.keys.length;
+			int capacity = Math.max(handle + 1, oldCapacity * 2);
+			this.keys = Arrays.copyOf(this.keys, capacity);
+			this.nexts = Arrays.copyOf(this.nexts, capacity);
+			this.prevs = Arrays.copyOf(this.prevs, capacity);
+			Arrays.fill(this.keys, oldCapacity, capacity, NONE);
+		}
+	}
+
+	private void ensureKeyCapacity(int key) {
+		if (key >= this.heads.length) {
+			int oldCapacity = this.heads.length;
+			int capacity = Math.max(key + 1, oldCapacity * 2);
+			this.heads = Arrays.copyOf(this.heads, capacity);
+			Arrays.fill(this.heads, oldCapacity, capacity, NONE);
+		}
+	}
+
+}
@@ -0,0 +1,22 @@
+package borg.ed.neutronhighway.aystar;
+
+/**
+ * Receives every route found by {@link AnytimeAyStar}, together with how far from the optimum it
+ * can be at most.
+ * <p>
+ * Called on the searching thread, so implementations should return quickly.
+ *
+ * @author <a href="mailto:b.guenther@xsite.de">Boris Guenther</a>
+ */
+public interface ImprovedRouteListener {
+
+	/**
+	 * @param suboptimalityBound
+	 *      The route has at most this many times the jumps of the best route, 1.0 if it is proven
+	 *      to be the best
+	 * @param elapsedMillis
+	 *      Since the search has been initialized
+	 */
+	void onImprovedRoute(Path path, float suboptimalityBound, long elapsedMillis);
+
+}
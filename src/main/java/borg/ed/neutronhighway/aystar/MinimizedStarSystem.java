@@ -20,6 +20,11 @@ public class MinimizedStarSystem implements Serializable {
 	private final String name;
 	private final Coord coord;
 
+	public MinimizedStarSystem(String name, Coord coord) {
+		this.name = name;
+		this.coord = coord;
+	}
+
 	public MinimizedStarSystem(StarSystem starSystem) {
 		this.name = starSystem.getName();
 		this.coord = starSystem.getCoord();
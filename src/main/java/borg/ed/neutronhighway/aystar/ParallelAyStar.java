@@ -0,0 +1,417 @@
+package borg.ed.neutronhighway.aystar;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.LockSupport;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import borg.ed.galaxy.model.StarSystem;
+import borg.ed.neutronhighway.helper.FuelAndJumpRangeLookup;
+import borg.ed.neutronhighway.helper.IntIntHashMap;
+import borg.ed.neutronhighway.index.GalaxyIndex;
+import borg.ed.neutronhighway.index.NeighbourVisitor;
+
+/**
+ * Hash-distributed A* (HDA*) over the same search space as {@link AyStar}.
+ * <p>
+ * Every system is owned by exactly one worker thread, chosen by a hash of its ID. A worker only
+ * expands the systems it owns. Successors of other workers are collected in batches and sent
+ * through lock-free queues. Because the workers do not expand in global priority order, an
+ * expanded system is reopened if a better path to it arrives later.
+ * <p>
+ * Like {@link AyStar}, every worker keeps one path per system. Paths with the same number of jumps
+ * can arrive at a neutron star with different fuel levels, and which one is kept depends on the
+ * order of expansion. So if the fuel level limits the jump range, the route may have a different
+ * number of jumps than the one of {@link AyStar}.
+ * <p>
+ * When the owner of the goal pops it, the priority becomes the incumbent, and every worker drops
+ * nodes which cannot beat it. The search is over when all workers are idle and no batch is in
+ * flight. This is tracked by a single counter of active workers plus batches in flight, which can
+ * only reach zero when there is no work left anywhere.
+ * <p>
+ * {@link AyStar} remains the single-threaded reference implementation.
+ *
+ * @author <a href="mailto:b.guenther@xsite.de">Boris Guenther</a>
+ */
+public class ParallelAyStar {
+
+	static final Logger logger = LoggerFactory.getLogger(ParallelAyStar.class);
+
+	private static final int BATCH_SIZE = 128;
+	private static final long IDLE_PARK_NANOS = 50_000L;
+
+	private final int nThreads;
+
+	private GalaxyIndex galaxy = null;
+	private FuelAndJumpRangeLookup fuelJumpLUT = null;
+	private int source = -1;
+	private int goal = -1;
+	private float directDistanceLy = 0;
+	private float maxTotalDistanceLy = 0;
+	private float maxJumpRangeBoosted = 0;
+
+	private Worker[] workers = null;
+	private final AtomicInteger work = new AtomicInteger();
+	private final AtomicInteger incumbentPriority = new AtomicInteger(Integer.MAX_VALUE);
+	private volatile long incumbentNode = -1;
+	private long expansions = 0;
+
+	public ParallelAyStar(int nThreads) {
+		if (nThreads < 1) {
+			throw new IllegalArgumentException("nThreads must be >= 1, was " + nThreads);
+		}
+		this.nThreads = nThreads;
+	}
+
+	public void initialize(StarSystem source, StarSystem goal, GalaxyIndex galaxy, FuelAndJumpRangeLookup fuelJumpLUT) {
+		this.initialize(galaxy.findId(source), galaxy.findId(goal), galaxy, fuelJumpLUT);
+	}
+
+	public void initialize(int sourceId, int goalId, GalaxyIndex galaxy, FuelAndJumpRangeLookup fuelJumpLUT) {
+		if (sourceId < 0) {
+			throw new IllegalArgumentException("source not in useable star systems");
+		} else if (goalId < 0) {
+			throw new IllegalArgumentException("goal not in useable star systems");
+		}
+		this.galaxy = galaxy;
+		this.fuelJumpLUT = fuelJumpLUT;
+		this.source = sourceId;
+		this.goal = goalId;
+		this.directDistanceLy = galaxy.distance(sourceId, goalId);
+		this.maxTotalDistanceLy = 10.0f * this.directDistanceLy;
+		this.maxJumpRangeBoosted = 4f * fuelJumpLUT.getJumpRangeFuelOpt();
+	}
+
+	/**
+	 * Runs the search to the end on {@link #getNumberOfThreads()} new threads and waits for it.
+	 *
+	 * @return
+	 *      The path with the least jumps, or null if there is none
+	 */
+	public Path findPath() throws InterruptedException {
+		final long start = System.currentTimeMillis();
+		this.workers = new Worker[this.nThreads];
+		for (int i = 0; i < this.nThreads; i++) {
+			this.workers[i] = new Worker(i);
+		}
+		this.work.set(this.nThreads);
+		this.incumbentPriority.set(Integer.MAX_VALUE);
+		this.incumbentNode = -1;
+		this.expansions = 0;
+
+		this.workers[this.ownerOf(this.source)].accept(this.source, -1, 0, 0, this.directDistanceLy, this.fuelJumpLUT.getMaxFuelTons());
+
+		List<Thread> threads = new ArrayList<>(this.nThreads);
+		for (Worker worker : this.workers) {
+			Thread thread = new Thread(worker, "hda-worker-" + worker.index);
+			thread.setDaemon(true);
+			thread.start();
+			threads.add(thread);
+		}
+		try {
+			for (Thread thread : threads) {
+				thread.join();
+			}
+		} catch (InterruptedException e) {
+			for (Thread thread : threads) {
+				thread.interrupt();
+			}
+			throw e;
+		}
+		for (Worker worker : this.workers) {
+			if (worker.failure != null) {
+				throw new IllegalStateException("Worker " + worker.index + " failed", worker.failure);
+			}
+			this.expansions += worker.expansions;
+		}
+
+		Path path = this.toPath(this.incumbentNode);
+		if (logger.isDebugEnabled()) {
+			logger.debug(String.format(Locale.US, "HDA* with %d thread(s) expanded %,d systems in %,d ms", this.nThreads, this.expansions,
+					System.currentTimeMillis() - start));
+		}
+		return path;
+	}
+
+	public int getNumberOfThreads() {
+		return this.nThreads;
+	}
+
+	/**
+	 * @return
+	 *      The number of systems expanded by all workers together in the last search
+	 */
+	public long getNumberOfExpansions() {
+		return this.expansions;
+	}
+
+	int ownerOf(int starSystemId) {
+		int h = starSystemId * 0x9E3779B9;
+		h ^= h >>> 16;
+		return (h & Integer.MAX_VALUE) % this.nThreads;
+	}
+
+	private static long ref(int worker, int node) {
+		return ((long) worker << 32) | (node & 0xFFFFFFFFL);
+	}
+
+	/**
+	 * Must only be called after all workers have finished.
+	 */
+	private Path toPath(long nodeRef) {
+		if (nodeRef < 0) {
+			return null;
+		}
+		// Every jump along the chain adds exactly one to the total
+		long[] chain = new long[this.workers[(int) (nodeRef >>> 32)].nodes.getTotalJumps((int) nodeRef) + 1];
+		int length = 0;
+		for (long ref = nodeRef; ref >= 0; ref = this.workers[(int) (ref >>> 32)].parentRefs.get((int) ref)) {
+			chain[length++] = ref;
+		}
+		Path path = null;
+		for (int i = length - 1; i >= 0; i--) {
+			SearchNodeArena nodes = this.workers[(int) (chain[i] >>> 32)].nodes;
+			int node = (int) chain[i];
+			path = new Path(path, this.galaxy, nodes.getStarSystemId(node), nodes.getTotalJumps(node), nodes.getTravelledDistanceLy(node),
+					nodes.getRemainingDistanceLy(node), nodes.getFuelLevel(node));
+		}
+		return path;
+	}
+
+	/**
+	 * Successors for one worker, in primitive arrays
+	 */
+	private static class SuccessorBatch {
+
+		int size = 0;
+		final int[] starSystemIds = new int[BATCH_SIZE];
+		final long[] parentRefs = new long[BATCH_SIZE];
+		final int[] totalJumps = new int[BATCH_SIZE];
+		final float[] travelledDistancesLy = new float[BATCH_SIZE];
+		final float[] remainingDistancesLy = new float[BATCH_SIZE];
+		final float[] fuelLevels = new float[BATCH_SIZE];
+
+	}
+
+	/**
+	 * Parent references (worker and node) of the nodes of one worker. The parent may belong to
+	 * another worker, so the int parents of the {@link SearchNodeArena} are not used.
+	 */
+	private static class LongArrayList {
+
+		private long[] values = new long[1024];
+
+		long get(int index) {
+			return this.values[index];
+		}
+
+		void set(int index, long value) {
+			if (index >= this.values.length) {
+				long[] newValues = new long[Math.max(index + 1, this.values.length * 2)];
+				System.arraycopy(this.values, 0, newValues, 0, this.values.length);
+				this.values = newValues;
+			}
+			this.values[index] = value;
+		}
+
+	}
+
+	private class Worker implements Runnable, NeighbourVisitor {
+
+		final int index;
+		final SearchNodeArena nodes = new SearchNodeArena();
+		final LongArrayList parentRefs = new LongArrayList();
+		final BucketQueue open = new BucketQueue();
+		final IntIntHashMap openNodeBySystem = new IntIntHashMap(1024, -1);
+		final IntIntHashMap bestPriorityBySystem = new IntIntHashMap(1024, Integer.MAX_VALUE);
+		final ConcurrentLinkedQueue<SuccessorBatch> inbox = new ConcurrentLinkedQueue<>();
+		final SuccessorBatch[] outbox = new SuccessorBatch[ParallelAyStar.this.nThreads];
+		volatile Throwable failure = null;
+		/** Only written by this worker, summed up after all have finished */
+		long expansions = 0;
+
+		// State of the current expansion
+		private int expandedNode = -1;
+		private float expandedBoostValue = 1.0f;
+		private boolean expandedMustScoop = false;
+
+		Worker(int index) {
+			this.index = index;
+		}
+
+		@Override
+		public void run() {
+			try {
+				this.search();
+			} catch (Throwable e) {
+				this.failure = e;
+				logger.error("HDA* worker " + this.index + " failed", e);
+				// Do not let the others wait forever
+				ParallelAyStar.this.work.set(0);
+			}
+		}
+
+		private void search() {
+			final AtomicInteger work = ParallelAyStar.this.work;
+			while (!Thread.currentThread().isInterrupted()) {
+				this.drainInbox();
+				if (!this.open.isEmpty()) {
+					this.expandBest();
+					this.flushOutbox();
+					continue;
+				}
+
+				// Idle until new work arrives or everybody is idle
+				work.decrementAndGet();
+				while (true) {
+					SuccessorBatch batch = this.inbox.poll();
+					if (batch != null) {
+						work.incrementAndGet(); // Active again...
+						this.receive(batch);
+						work.decrementAndGet(); // ...before the batch stops counting
+						break;
+					} else if (work.get() == 0 || Thread.currentThread().isInterrupted()) {
+						return;
+					}
+					LockSupport.parkNanos(IDLE_PARK_NANOS);
+				}
+			}
+		}
+
+		private void drainInbox() {
+			SuccessorBatch batch;
+			while ((batch = this.inbox.poll()) != null) {
+				this.receive(batch);
+				ParallelAyStar.this.work.decrementAndGet();
+			}
+		}
+
+		private void receive(SuccessorBatch batch) {
+			for (int i = 0; i < batch.size; i++) {
+				this.accept(batch.starSystemIds[i], batch.parentRefs[i], batch.totalJumps[i], batch.travelledDistancesLy[i], batch.remainingDistancesLy[i],
+						batch.fuelLevels[i]);
+			}
+		}
+
+		/**
+		 * Adds a path to a system owned by this worker, if it is better than the best one so far.
+		 * Reopens the system if it has already been expanded.
+		 */
+		void accept(int starSystemId, long parentRef, int totalJumps, float travelledDistanceLy, float remainingDistanceLy, float fuelLevel) {
+			final int priority = ParallelAyStar.this.priorityOf(totalJumps, remainingDistanceLy);
+			if (priority >= this.bestPriorityBySystem.get(starSystemId) || priority >= ParallelAyStar.this.incumbentPriority.get()) {
+				return;
+			}
+			this.bestPriorityBySystem.put(starSystemId, priority);
+			int oldNode = this.openNodeBySystem.get(starSystemId);
+			if (oldNode >= 0) {
+				this.open.remove(oldNode);
+			}
+			int node = this.nodes.add(SearchNodeArena.NO_PARENT, starSystemId, totalJumps, travelledDistanceLy, remainingDistanceLy, fuelLevel);
+			this.parentRefs.set(node, parentRef);
+			this.open.put(node, priority);
+			this.openNodeBySystem.put(starSystemId, node);
+		}
+
+		private void expandBest() {
+			final int node = this.open.poll();
+			final int priority = ParallelAyStar.this.priorityOf(this.nodes.getTotalJumps(node), this.nodes.getRemainingDistanceLy(node));
+			final int starSystemId = this.nodes.getStarSystemId(node);
+			this.openNodeBySystem.put(starSystemId, -1);
+
+			if (priority >= ParallelAyStar.this.incumbentPriority.get()) {
+				// Cannot beat the path we already have. Neither can anything else in our open
+				// list, but it is cheaper to let it drain than to keep the maps consistent.
+				return;
+			}
+			if (starSystemId == ParallelAyStar.this.goal) {
+				// Only the owner of the goal gets here, so there is a single writer
+				ParallelAyStar.this.incumbentNode = ref(this.index, node);
+				ParallelAyStar.this.incumbentPriority.set(priority);
+				return;
+			}
+			this.expansions++;
+
+			final GalaxyIndex galaxy = ParallelAyStar.this.galaxy;
+			final boolean haveSuperchargedFsd = galaxy.isNeutron(starSystemId);
+			final float fuelLevel = this.nodes.getFuelLevel(node);
+			this.expandedNode = node;
+			this.expandedBoostValue = haveSuperchargedFsd ? 4.0f : 1.0f;
+			this.expandedMustScoop = fuelLevel <= ParallelAyStar.this.fuelJumpLUT.getMaxFuelPerJump(); // Do we need to scoop?
+			// No tombstones. A node from another worker can have a better priority than systems
+			// this worker has already expanded, so its successors may improve them.
+			galaxy.forEachInRange(galaxy.getX(starSystemId), galaxy.getY(starSystemId), galaxy.getZ(starSystemId),
+					AyStar.maxJumpRange(ParallelAyStar.this.fuelJumpLUT, fuelLevel, haveSuperchargedFsd), null, this);
+			this.expandedNode = -1;
+		}
+
+		@Override
+		public void visit(int neighbour, float extraTravelledDistanceLy) {
+			final ParallelAyStar search = ParallelAyStar.this;
+			final int node = this.expandedNode;
+			if (this.expandedMustScoop && !search.galaxy.isScoopable(neighbour)) {
+				return;
+			}
+			float remainingDistanceLy = search.galaxy.distance(neighbour, search.goal);
+			if (remainingDistanceLy >= this.nodes.getRemainingDistanceLy(node)) {
+				return;
+			}
+			float travelledDistanceLy = this.nodes.getTravelledDistanceLy(node) + extraTravelledDistanceLy;
+			if (travelledDistanceLy + remainingDistanceLy > search.maxTotalDistanceLy) {
+				return;
+			}
+			int totalJumps = this.nodes.getTotalJumps(node) + 1;
+			if (search.priorityOf(totalJumps, remainingDistanceLy) >= search.incumbentPriority.get()) {
+				return;
+			}
+			float fuelLevel = AyStar.fuelLevelAfterJump(search.fuelJumpLUT, this.nodes.getFuelLevel(node), extraTravelledDistanceLy, this.expandedBoostValue,
+					search.galaxy.isNeutron(neighbour));
+
+			int owner = search.ownerOf(neighbour);
+			if (owner == this.index) {
+				this.accept(neighbour, ref(this.index, node), totalJumps, travelledDistanceLy, remainingDistanceLy, fuelLevel);
+			} else {
+				SuccessorBatch batch = this.outbox[owner];
+				if (batch == null) {
+					batch = new SuccessorBatch();
+					this.outbox[owner] = batch;
+				}
+				batch.starSystemIds[batch.size] = neighbour;
+				batch.parentRefs[batch.size] = ref(this.index, node);
+				batch.totalJumps[batch.size] = totalJumps;
+				batch.travelledDistancesLy[batch.size] = travelledDistanceLy;
+				batch.remainingDistancesLy[batch.size] = remainingDistanceLy;
+				batch.fuelLevels[batch.size] = fuelLevel;
+				if (++batch.size == BATCH_SIZE) {
+					this.send(owner);
+				}
+			}
+		}
+
+		private void flushOutbox() {
+			for (int owner = 0; owner < this.outbox.length; owner++) {
+				if (this.outbox[owner] != null) {
+					this.send(owner);
+				}
+			}
+		}
+
+		private void send(int owner) {
+			// Count the batch before it becomes visible, so the receiver can never see zero
+			ParallelAyStar.this.work.incrementAndGet();
+			ParallelAyStar.this.workers[owner].inbox.offer(this.outbox[owner]);
+			this.outbox[owner] = null;
+		}
+
+	}
+
+	int priorityOf(int totalJumps, float remainingDistanceLy) {
+		return AyStar.priorityOf(totalJumps, remainingDistanceLy, this.maxJumpRangeBoosted, this.directDistanceLy);
+	}
+
+}
@@ -7,6 +7,7 @@ import java.util.List;
 import borg.ed.galaxy.exceptions.NonUniqueResultException;
 import borg.ed.galaxy.model.StarSystem;
 import borg.ed.galaxy.service.GalaxyService;
+import borg.ed.neutronhighway.index.GalaxyIndex;
 
 /**
  * Path
@@ -16,14 +17,16 @@ import borg.ed.galaxy.service.GalaxyService;
 public class Path implements Comparable<Path> {
 
 	private Path prev = null;
-	private MinimizedStarSystem minimizedStarSystem = null;
+	private GalaxyIndex galaxy = null;
+	private int starSystemId = -1;
 	private int totalJumps = 0;
 	private float travelledDistanceLy = 0;
 	private float remainingDistanceLy = 0;
 	private float fuelLevel = 0;
 
-	public Path(MinimizedStarSystem minimizedStarSystem, float remainingDistanceLy, float fuelLevel) {
-		this.setMinimizedStarSystem(minimizedStarSystem);
+	public Path(GalaxyIndex galaxy, int starSystemId, float remainingDistanceLy, float fuelLevel) {
+		this.galaxy = galaxy;
+		this.setStarSystemId(starSystemId);
 		this.setRemainingDistanceLy(remainingDistanceLy);
 		this.setFuelLevel(fuelLevel);
 	}
@@ -32,15 +35,29 @@ public class Path implements Comparable<Path> {
 	 * @param extraTravelledDistanceLy
 	 *            From prev to starSystem, NOT in total
 	 */
-	public Path(Path prev, MinimizedStarSystem minimizedStarSystem, float remainingDistanceLy, float extraTravelledDistanceLy, float fuelLevel) {
+	public Path(Path prev, int starSystemId, float remainingDistanceLy, float extraTravelledDistanceLy, float fuelLevel) {
 		this.setPrev(prev);
-		this.setMinimizedStarSystem(minimizedStarSystem);
+		this.galaxy = prev.galaxy;
+		this.setStarSystemId(starSystemId);
 		this.setRemainingDistanceLy(remainingDistanceLy);
 		this.setTotalJumps(prev.getTotalJumps() + 1);
 		this.setTravelledDistanceLy(prev.getTravelledDistanceLy() + extraTravelledDistanceLy);
 		this.setFuelLevel(fuelLevel);
 	}
 
+	/**
+	 * Used by {@link SearchNodeArena#toPath(GalaxyIndex, int)}, which already has all totals.
+	 */
+	Path(Path prev, GalaxyIndex galaxy, int starSystemId, int totalJumps, float travelledDistanceLy, float remainingDistanceLy, float fuelLevel) {
+		this.setPrev(prev);
+		this.galaxy = galaxy;
+		this.setStarSystemId(starSystemId);
+		this.setTotalJumps(totalJumps);
+		this.setTravelledDistanceLy(travelledDistanceLy);
+		this.setRemainingDistanceLy(remainingDistanceLy);
+		this.setFuelLevel(fuelLevel);
+	}
+
 	@Override
 	public boolean equals(Object obj) {
 		if (this == obj) {
@@ -53,7 +70,7 @@ public class Path implements Comparable<Path> {
 			return false;
 		}
 		Path other = (Path) obj;
-		if (!this.minimizedStarSystem.getName().equals(other.minimizedStarSystem.getName())) {
+		if (this.starSystemId != other.starSystemId) {
 			return false;
 		}
 		//        if (this.totalJumps != other.totalJumps) {
@@ -73,7 +90,7 @@ public class Path implements Comparable<Path> {
 		//        result = prime * result + this.totalJumps;
 		//        result = prime * result + Float.floatToIntBits(this.travelledDistanceLy);
 		//        return result;
-		return this.minimizedStarSystem.getName().hashCode();
+		return this.starSystemId;
 	}
 
 	@Override
@@ -110,12 +127,19 @@ public class Path implements Comparable<Path> {
 		this.prev = prev;
 	}
 
+	/**
+	 * Creates a view of the system from the galaxy store, so better do not call this in hot loops.
+	 */
 	public MinimizedStarSystem getMinimizedStarSystem() {
-		return this.minimizedStarSystem;
+		return this.galaxy.getMinimizedStarSystem(this.starSystemId);
+	}
+
+	public int getStarSystemId() {
+		return this.starSystemId;
 	}
 
-	public void setMinimizedStarSystem(MinimizedStarSystem minimizedStarSystem) {
-		this.minimizedStarSystem = minimizedStarSystem;
+	public void setStarSystemId(int starSystemId) {
+		this.starSystemId = starSystemId;
 	}
 
 	public int getTotalJumps() {
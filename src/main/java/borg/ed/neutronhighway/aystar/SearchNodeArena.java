@@ -0,0 +1,121 @@
+package borg.ed.neutronhighway.aystar;
+
+import java.util.Arrays;
+
+import borg.ed.neutronhighway.index.GalaxyIndex;
+
+/**
+ * Search nodes of one {@link AyStar} run, stored column-wise in primitive arrays and addressed by
+ * node ID.
+ * <p>
+ * A node costs 24 bytes instead of a {@link Path} object with header, prev pointer and galaxy
+ * reference, and the garbage collector does not have to trace millions of parent chains. Only the
+ * result of the search is turned into a linked {@link Path} again, see {@link #toPath(GalaxyIndex, int)}.
+ *
+ * @author <a href="mailto:b.guenther@xsite.de">Boris Guenther</a>
+ */
+public class SearchNodeArena {
+
+	public static final int NO_PARENT = -1;
+
+	private int size = 0;
+	private int[] parents;
+	private int[] starSystemIds;
+	private int[] totalJumps;
+	private float[] travelledDistancesLy;
+	private float[] remainingDistancesLy;
+	private float[] fuelLevels;
+
+	public SearchNodeArena() {
+		this(1024);
+	}
+
+	public SearchNodeArena(int initialCapacity) {
+		int capacity = Math.max(16, initialCapacity);
+		this.parents = new int[capacity];
+		this.starSystemIds = new int[capacity];
+		this.totalJumps = new int[capacity];
+		this.travelledDistancesLy = new float[capacity];
+		this.remainingDistancesLy = new float[capacity];
+		this.fuelLevels = new float[capacity];
+	}
+
+	/**
+	 * @return
+	 *      The ID of the new node
+	 */
+	public int add(int parent, int starSystemId, int totalJumps, float travelledDistanceLy, float remainingDistanceLy, float fuelLevel) {
+		if (this.size == this.parents.length) {
+			int capacity = this.size * 2;
+			this.parents = Arrays.copyOf(this.parents, capacity);
+			this.starSystemIds = Arrays.copyOf(this.starSystemIds, capacity);
+			this.totalJumps = Arrays.copyOf(this.totalJumps, capacity);
+			this.travelledDistancesLy = Arrays.copyOf(this.travelledDistancesLy, capacity);
+			this.remainingDistancesLy = Arrays.copyOf(this.remainingDistancesLy, capacity);
+			this.fuelLevels = Arrays.copyOf(this.fuelLevels, capacity);
+		}
+		this.parents[this.size] = parent;
+		this.starSystemIds[this.size] = starSystemId;
+		this.totalJumps[this.size] = totalJumps;
+		this.travelledDistancesLy[this.size] = travelledDistanceLy;
+		this.remainingDistancesLy[this.size] = remainingDistanceLy;
+		this.fuelLevels[this.size] = fuelLevel;
+		return this.size++;
+	}
+
+	/**
+	 * Forgets all nodes but keeps the arrays for the next search.
+	 */
+	public void clear() {
+		this.size = 0;
+	}
+
+	public int size() {
+		return this.size;
+	}
+
+	public int getParent(int node) {
+		return this.parents[node];
+	}
+
+	public int getStarSystemId(int node) {
+		return this.starSystemIds[node];
+	}
+
+	public int getTotalJumps(int node) {
+		return this.totalJumps[node];
+	}
+
+	public float getTravelledDistanceLy(int node) {
+		return this.travelledDistancesLy[node];
+	}
+
+	public float getRemainingDistanceLy(int node) {
+		return this.remainingDistancesLy[node];
+	}
+
+	public float getFuelLevel(int node) {
+		return this.fuelLevels[node];
+	}
+
+	/**
+	 * Builds the linked {@link Path} from the start of the search to the given node.
+	 */
+	public Path toPath(GalaxyIndex galaxy, int node) {
+		if (node < 0) {
+			return null;
+		}
+		int[] chain = new int[this.totalJumps[node] + 1];
+		int length = 0;
+		for (int n = node; n != NO_PARENT; n = this.parents[n]) {
+			chain[length++] = n;
+		}
+		Path path = null;
+		for (int i = length - 1; i >= 0; i--) {
+			int n = chain[i];
+			path = new Path(path, galaxy, this.starSystemIds[n], this.totalJumps[n], this.travelledDistancesLy[n], this.remainingDistancesLy[n], this.fuelLevels[n]);
+		}
+		return path;
+	}
+
+}
@@ -0,0 +1,72 @@
+package borg.ed.neutronhighway.aystar;
+
+import java.util.Locale;
+
+/**
+ * Snapshot of a search, see {@link SearchProgressListener}.
+ *
+ * @author <a href="mailto:b.guenther@xsite.de">Boris Guenther</a>
+ */
+public class SearchProgress {
+
+	private final SearchStatus status;
+	private final Path bestPath;
+	private final int openSize;
+	private final int closedSize;
+	private final int expansions;
+	private final long elapsedMillis;
+	private final float expansionsPerSecond;
+
+	public SearchProgress(SearchStatus status, Path bestPath, int openSize, int closedSize, int expansions, long elapsedMillis, float expansionsPerSecond) {
+		this.status = status;
+		this.bestPath = bestPath;
+		this.openSize = openSize;
+		this.closedSize = closedSize;
+		this.expansions = expansions;
+		this.elapsedMillis = elapsedMillis;
+		this.expansionsPerSecond = expansionsPerSecond;
+	}
+
+	@Override
+	public String toString() {
+		return String.format(Locale.US, "%s: %,d expansions (%,.0f/s), %,d open, %,d closed, best %s after %,d ms", this.status, this.expansions, this.expansionsPerSecond,
+				this.openSize, this.closedSize, this.bestPath == null ? "-" : this.bestPath.getMinimizedStarSystem().getName(), this.elapsedMillis);
+	}
+
+	public SearchStatus getStatus() {
+		return this.status;
+	}
+
+	/**
+	 * @return
+	 *      The path to the goal if it has been found, otherwise the path which got closest to it
+	 */
+	public Path getBestPath() {
+		return this.bestPath;
+	}
+
+	public int getOpenSize() {
+		return this.openSize;
+	}
+
+	public int getClosedSize() {
+		return this.closedSize;
+	}
+
+	public int getExpansions() {
+		return this.expansions;
+	}
+
+	public long getElapsedMillis() {
+		return this.elapsedMillis;
+	}
+
+	/**
+	 * @return
+	 *      Expansions per second since the previous snapshot
+	 */
+	public float getExpansionsPerSecond() {
+		return this.expansionsPerSecond;
+	}
+
+}
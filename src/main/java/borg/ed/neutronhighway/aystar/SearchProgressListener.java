@@ -0,0 +1,14 @@
+package borg.ed.neutronhighway.aystar;
+
+/**
+ * Receives throttled snapshots of a running search, and a last one when it stops.
+ * <p>
+ * Called on the searching thread, so implementations should return quickly.
+ *
+ * @author <a href="mailto:b.guenther@xsite.de">Boris Guenther</a>
+ */
+public interface SearchProgressListener {
+
+	void onProgress(SearchProgress progress);
+
+}
@@ -0,0 +1,29 @@
+package borg.ed.neutronhighway.aystar;
+
+/**
+ * State of an {@link AyStar} search.
+ *
+ * @author <a href="mailto:b.guenther@xsite.de">Boris Guenther</a>
+ */
+public enum SearchStatus {
+
+	/** Still searching */
+	RUNNING,
+	/** The goal has been reached */
+	FOUND,
+	/** The open list is empty, there is no path to the goal */
+	NO_PATH,
+	/** The time or expansion budget has been used up. The search can be continued. */
+	BUDGET_EXHAUSTED,
+	/** {@link AyStar#cancel()} has been called */
+	CANCELLED;
+
+	/**
+	 * @return
+	 *      true if calling {@link AyStar#search()} again would continue the search
+	 */
+	public boolean isResumable() {
+		return this == BUDGET_EXHAUSTED;
+	}
+
+}
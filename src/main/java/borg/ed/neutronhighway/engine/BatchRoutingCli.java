@@ -0,0 +1,109 @@
+package borg.ed.neutronhighway.engine;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.CompletableFuture;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import borg.ed.neutronhighway.aystar.Path;
+import borg.ed.neutronhighway.index.GalaxyIndex;
+import borg.ed.neutronhighway.index.GalaxySnapshot;
+import borg.ed.neutronhighway.ship.ShipProfileRegistry;
+
+/**
+ * Routes many requests in one go, without a database.
+ * <p>
+ * Usage: <code>BatchRoutingCli [requests.tsv|-] [threads] [galaxy snapshot] [route cache dir]</code>
+ * <p>
+ * Every input line is a {@link RouteRequest#parse(String, FuelAndJumpRangeLookupCache, ShipProfileRegistry) route request},
+ * empty lines and lines starting with # are skipped. Ship names refer to the profiles in
+ * ~/.eddbdata/ships.tsv. Results are written to stdout as soon as they are
+ * finished, so their order may differ from the input. Each result line is tab-separated: source,
+ * destination, jumps, distance, milliseconds, and either the route or the error. Routes go through
+ * a {@link RouteCache}, so repeated trips are only searched once.
+ *
+ * @author <a href="mailto:b.guenther@xsite.de">Boris Guenther</a>
+ */
+public class BatchRoutingCli {
+
+	static final Logger logger = LoggerFactory.getLogger(BatchRoutingCli.class);
+
+	private static final File GALAXY_SNAPSHOT_FILE = new File(System.getProperty("user.home"), ".eddbdata/neutronhighway.galaxy");
+
+	private static final File SHIP_PROFILES_FILE = new File(System.getProperty("user.home"), ".eddbdata/ships.tsv");
+
+	private static final File ROUTE_CACHE_DIR = new File(System.getProperty("user.home"), ".eddbdata/routecache");
+
+	public static void main(String[] args) throws IOException {
+		final String requestsFilename = args.length > 0 ? args[0] : "-";
+		final int nThreads = args.length > 1 ? Integer.parseInt(args[1]) : Runtime.getRuntime().availableProcessors();
+		final File snapshotFile = args.length > 2 ? new File(args[2]) : GALAXY_SNAPSHOT_FILE;
+		final File routeCacheDir = args.length > 3 ? new File(args[3]) : ROUTE_CACHE_DIR;
+
+		GalaxySnapshot snapshot = GalaxySnapshot.open(snapshotFile);
+		final GalaxyIndex galaxy = new GalaxyIndex(snapshot.getGalaxy(), snapshot.getOctreeIndex());
+		final PrintStream out = System.out;
+		final FuelAndJumpRangeLookupCache lutCache = new FuelAndJumpRangeLookupCache();
+		final ShipProfileRegistry ships = SHIP_PROFILES_FILE.exists() ? ShipProfileRegistry.load(SHIP_PROFILES_FILE) : new ShipProfileRegistry();
+		final List<CompletableFuture<Void>> futures = new ArrayList<>();
+
+		final long start = System.currentTimeMillis();
+		try (RoutingEngine engine = new RoutingEngine(() -> galaxy, nThreads, 4 * nThreads);
+				InputStream in = "-".equals(requestsFilename) ? System.in : new FileInputStream(requestsFilename);
+				BufferedReader reader = new BufferedReader(new InputStreamReader(in, StandardCharsets.UTF_8))) {
+			RouteCache routeCache = new RouteCache(engine, routeCacheDir, 10000);
+			String line = null;
+			int lineNo = 0;
+			while ((line = reader.readLine()) != null) {
+				lineNo++;
+				if (line.trim().isEmpty() || line.startsWith("#")) {
+					continue;
+				}
+				try {
+					futures.add(routeCache.submit(RouteRequest.parse(line, lutCache, ships)).thenAccept(result -> print(out, result)));
+				} catch (IllegalArgumentException e) {
+					logger.warn("Line " + lineNo + ": " + e.getMessage());
+				}
+			}
+			CompletableFuture.allOf(futures.toArray(new CompletableFuture<?>[futures.size()])).join();
+			logger.info(String.format(Locale.US, "Route cache: %,d memory hits, %,d disk hits, %,d coalesced, %,d searched, %,d searched for the exact ship",
+					routeCache.getMemoryHits(), routeCache.getDiskHits(), routeCache.getCoalesced(), routeCache.getMisses(), routeCache.getExactSearches()));
+		}
+		logger.info(String.format(Locale.US, "Routed %,d requests with %d threads in %,d ms", futures.size(), nThreads, System.currentTimeMillis() - start));
+	}
+
+	private static void print(PrintStream out, RouteResult result) {
+		StringBuilder sb = new StringBuilder();
+		sb.append(result.getRequest().getSourceName()).append('\t');
+		sb.append(result.getRequest().getGoalName()).append('\t');
+		if (result.isFound()) {
+			Path path = result.getPath();
+			sb.append(path.getTotalJumps()).append('\t');
+			sb.append(String.format(Locale.US, "%.1f", path.getTravelledDistanceLy())).append('\t');
+			sb.append(result.getMillis()).append('\t');
+			List<Path> sortedPaths = path.toSortedList();
+			for (int i = 0; i < sortedPaths.size(); i++) {
+				sb.append(i == 0 ? "" : " > ").append(sortedPaths.get(i).getMinimizedStarSystem().getName());
+			}
+		} else {
+			sb.append("-\t-\t");
+			sb.append(result.getMillis()).append('\t');
+			sb.append(result.getError() != null ? result.getError() : "No route");
+		}
+		synchronized (out) {
+			out.println(sb.toString());
+		}
+	}
+
+}
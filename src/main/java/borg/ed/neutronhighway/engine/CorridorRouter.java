@@ -0,0 +1,112 @@
+package borg.ed.neutronhighway.engine;
+
+import java.util.Locale;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import borg.ed.galaxy.model.StarSystem;
+import borg.ed.neutronhighway.aystar.AyStar;
+import borg.ed.neutronhighway.aystar.Path;
+import borg.ed.neutronhighway.aystar.SearchStatus;
+import borg.ed.neutronhighway.helper.FuelAndJumpRangeLookup;
+import borg.ed.neutronhighway.index.Corridor;
+import borg.ed.neutronhighway.index.GalaxyIndex;
+import borg.ed.neutronhighway.index.GalaxyLoader;
+import borg.ed.neutronhighway.index.MinimizedGalaxy;
+import borg.ed.neutronhighway.index.OctreeIndex;
+
+/**
+ * Searches a route in a {@link Corridor} around the line between source and goal, which is loaded
+ * from the galaxy service just for this route. This is much faster than loading the whole galaxy
+ * for short trips.
+ * <p>
+ * The first corridor is a few boosted jumps wide. If there is no route within it, or the route
+ * comes closer than one boosted jump to the boundary, there could be a better route outside.
+ * Then the corridor is widened and the search is repeated, until the corridor is
+ * {@link Corridor#isComplete() complete}.
+ *
+ * @author <a href="mailto:b.guenther@xsite.de">Boris Guenther</a>
+ */
+public class CorridorRouter {
+
+	static final Logger logger = LoggerFactory.getLogger(CorridorRouter.class);
+
+	/** Min radius of the first corridor, in boosted jumps */
+	public static final float MIN_RADIUS_JUMPS = 2f;
+	/** Min radius of the first corridor, relative to the direct distance */
+	public static final float MIN_RADIUS_FRACTION = 0.25f;
+	public static final float WIDEN_FACTOR = 2f;
+
+	private final GalaxyLoader loader;
+	private final FuelAndJumpRangeLookup fuelJumpLUT;
+	private final AyStar ayStar = new AyStar();
+
+	private Corridor corridor = null;
+	private GalaxyIndex galaxy = null;
+
+	public CorridorRouter(GalaxyLoader loader, FuelAndJumpRangeLookup fuelJumpLUT) {
+		this.loader = loader;
+		this.fuelJumpLUT = fuelJumpLUT;
+	}
+
+	/**
+	 * @return
+	 *      The route, or null if there is none
+	 */
+	public Path findPath(StarSystem source, StarSystem goal) {
+		final float maxJumpRangeBoosted = 4f * this.fuelJumpLUT.getJumpRangeFuelOpt();
+		final float radius = Math.max(MIN_RADIUS_JUMPS * maxJumpRangeBoosted, MIN_RADIUS_FRACTION * source.distanceTo(goal));
+		Corridor corridor = new Corridor(source.getCoord(), goal.getCoord(), radius).widen(1f); // At most complete
+		for (;;) {
+			final long start = System.currentTimeMillis();
+			MinimizedGalaxy minimizedGalaxy = this.loader.loadCorridor(corridor);
+			this.corridor = corridor;
+			this.galaxy = new GalaxyIndex(minimizedGalaxy, OctreeIndex.build(minimizedGalaxy));
+			this.ayStar.initialize(source, goal, this.galaxy, this.fuelJumpLUT);
+			SearchStatus status = this.ayStar.search();
+			Path path = this.ayStar.getPath();
+			logger.debug(String.format(Locale.US, "%s with %,d systems: %s after %,d ms", corridor, this.galaxy.size(), status, System.currentTimeMillis() - start));
+			if (corridor.isComplete() || (status != SearchStatus.FOUND && status != SearchStatus.NO_PATH)) {
+				return path;
+			} else if (status == SearchStatus.FOUND && !this.isNearBoundary(path, maxJumpRangeBoosted)) {
+				return path;
+			}
+			corridor = corridor.widen(WIDEN_FACTOR);
+		}
+	}
+
+	/**
+	 * Gives access to the search, e.g. to set a progress listener.
+	 */
+	public AyStar getAyStar() {
+		return this.ayStar;
+	}
+
+	/**
+	 * @return
+	 *      The corridor of the last search
+	 */
+	public Corridor getCorridor() {
+		return this.corridor;
+	}
+
+	/**
+	 * @return
+	 *      The galaxy within the corridor of the last search
+	 */
+	public GalaxyIndex getGalaxy() {
+		return this.galaxy;
+	}
+
+	private boolean isNearBoundary(Path path, float marginLy) {
+		for (Path p = path; p != null; p = p.getPrev()) {
+			final int id = p.getStarSystemId();
+			if (this.corridor.distanceToBoundary(this.galaxy.getX(id), this.galaxy.getY(id), this.galaxy.getZ(id)) < marginLy) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+}
@@ -0,0 +1,38 @@
+package borg.ed.neutronhighway.engine;
+
+import java.util.Arrays;
+import java.util.Locale;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import borg.ed.neutronhighway.helper.FuelAndJumpRangeLookup;
+
+/**
+ * Building the lookup tables of a ship is much more expensive than a short route, so requests for
+ * the same ship share them.
+ *
+ * @author <a href="mailto:b.guenther@xsite.de">Boris Guenther</a>
+ */
+public class FuelAndJumpRangeLookupCache {
+
+	private final ConcurrentMap<String, FuelAndJumpRangeLookup> lutsByShip = new ConcurrentHashMap<>();
+
+	public FuelAndJumpRangeLookup get(final int maxFuelTons, final float maxFuelPerJump, final float jumpRangeFuelFull, final float jumpRangeFuelOpt) {
+		String key = String.format(Locale.US, "%d/%s/%s/%s", maxFuelTons, maxFuelPerJump, jumpRangeFuelFull, jumpRangeFuelOpt);
+		return this.lutsByShip.computeIfAbsent(key, k -> new FuelAndJumpRangeLookup(maxFuelTons, maxFuelPerJump, jumpRangeFuelFull, jumpRangeFuelOpt));
+	}
+
+	/**
+	 * @param jumpRangeByFuelStep
+	 *      See {@link FuelAndJumpRangeLookup#FuelAndJumpRangeLookup(int, float, float, float[])}
+	 */
+	public FuelAndJumpRangeLookup get(final int maxFuelTons, final float maxFuelPerJump, final float fuelPower, final float[] jumpRangeByFuelStep) {
+		String key = String.format(Locale.US, "%d/%s/%s/%s", maxFuelTons, maxFuelPerJump, fuelPower, Arrays.toString(jumpRangeByFuelStep));
+		return this.lutsByShip.computeIfAbsent(key, k -> new FuelAndJumpRangeLookup(maxFuelTons, maxFuelPerJump, fuelPower, jumpRangeByFuelStep));
+	}
+
+	public int size() {
+		return this.lutsByShip.size();
+	}
+
+}
@@ -0,0 +1,451 @@
+package borg.ed.neutronhighway.engine;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.commons.io.FileUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import borg.ed.neutronhighway.aystar.AyStar;
+import borg.ed.neutronhighway.aystar.Path;
+import borg.ed.neutronhighway.aystar.SearchNodeArena;
+import borg.ed.neutronhighway.helper.FuelAndJumpRangeLookup;
+import borg.ed.neutronhighway.index.GalaxyIndex;
+
+/**
+ * Caches routes in front of a {@link RoutingEngine}.
+ * <p>
+ * Ships are quantized to a profile, and the route is searched for the profile instead of the exact
+ * ship. The profile keeps the fuel model of the ship: every entry of its jump range table is
+ * rounded down, the max fuel per jump is rounded up and the exponent of the fuel usage is rounded
+ * down. So the profile jumps no farther and burns no less fuel than any ship in it, almost
+ * identical ships share their routes, and a route of the profile is almost always flyable by every
+ * ship in it. Only the system IDs of a route are cached. On every hit they are replayed with the
+ * fuel model of the requesting ship, which gives the exact fuel levels and drops routes which are
+ * no longer flyable. A request whose ship cannot fly the route of its profile, or whose profile
+ * has no route at all, is searched for the exact ship instead.
+ * <p>
+ * There are two tiers: an in-memory LRU which is cleared whenever a new galaxy epoch is published,
+ * and a directory with one small file per route and one sub directory per base galaxy. The disk
+ * tier is only used as long as no live changes have been published: epochs are not stable between
+ * runs, and a route searched before a change may no longer be the best one. Identical requests
+ * which arrive while the route is being searched wait for the same search instead of starting
+ * their own.
+ *
+ * @author <a href="mailto:b.guenther@xsite.de">Boris Guenther</a>
+ */
+public class RouteCache {
+
+	static final Logger logger = LoggerFactory.getLogger(RouteCache.class);
+
+	public static final float JUMP_RANGE_STEP_LY = 0.25f;
+	public static final float FUEL_PER_JUMP_STEP_TONS = 0.1f;
+	public static final float FUEL_POWER_STEP = 0.05f;
+
+	private static final byte[] MAGIC = "NHROUTE ".getBytes(StandardCharsets.US_ASCII);
+	private static final int FORMAT_VERSION = 1;
+
+	private final RoutingEngine engine;
+	private final File directory;
+	private final Map<Key, int[]> memory;
+	private final ConcurrentMap<Key, RouteSearch> inFlight = new ConcurrentHashMap<>();
+	private final FuelAndJumpRangeLookupCache lutCache = new FuelAndJumpRangeLookupCache();
+
+	// Version of the memory tier, guarded by memory
+	private GalaxyIndex memoryGalaxy = null;
+
+	private final AtomicLong memoryHits = new AtomicLong();
+	private final AtomicLong diskHits = new AtomicLong();
+	private final AtomicLong coalesced = new AtomicLong();
+	private final AtomicLong misses = new AtomicLong();
+	private final AtomicLong exactSearches = new AtomicLong();
+
+	/**
+	 * @param directory
+	 *      Where the disk tier is kept, or null for a memory-only cache
+	 * @param memoryCapacity
+	 *      Max number of routes in the memory tier
+	 */
+	public RouteCache(RoutingEngine engine, File directory, final int memoryCapacity) {
+		this.engine = engine;
+		this.directory = directory;
+		this.memory = new LinkedHashMap<Key, int[]>(64, 0.75f, true) {
+			private static final long serialVersionUID = 1L;
+
+			@Override
+			protected boolean removeEldestEntry(Map.Entry<Key, int[]> eldest) {
+				return this.size() > memoryCapacity;
+			}
+		};
+	}
+
+	public CompletableFuture<RouteResult> submit(RouteRequest request) {
+		return this.start(request).getResult();
+	}
+
+	/**
+	 * Like {@link #submit(RouteRequest)}, but returns a handle which can also cancel the search. A
+	 * search which is shared with other requests keeps running until all of them are cancelled.
+	 */
+	public RouteSearch start(final RouteRequest request) {
+		final long start = System.currentTimeMillis();
+		final GalaxyIndex galaxy = this.engine.currentGalaxy();
+		final int sourceId = galaxy.findId(request.getSourceName());
+		final int goalId = galaxy.findId(request.getGoalName());
+		if (sourceId < 0 || goalId < 0) {
+			return RouteSearch.completed(this.engine.route(request, galaxy));
+		}
+
+		final FuelAndJumpRangeLookup profile = this.toProfile(request.getFuelJumpLUT());
+		final Key key = new Key(sourceId, goalId, profile);
+
+		int[] ids = this.getFromMemory(galaxy, key);
+		if (ids != null) {
+			Path path = replay(galaxy, request.getFuelJumpLUT(), ids);
+			if (path != null) {
+				this.memoryHits.incrementAndGet();
+				return RouteSearch.completed(new RouteResult(request, galaxy.getEpoch(), path, null, 0, System.currentTimeMillis() - start));
+			}
+		}
+
+		final RouteSearch search = new RouteSearch();
+		final RouteSearch view = search.view(result -> this.toSearch(request, galaxy, result));
+		final RouteSearch running = this.inFlight.putIfAbsent(key, search);
+		if (running != null) {
+			RouteSearch runningView = running.view(result -> this.toSearch(request, galaxy, result));
+			if (runningView != null) {
+				this.coalesced.incrementAndGet();
+				return runningView;
+			}
+			// Cancelled by all its requests, but still running. Searched again below.
+			this.inFlight.replace(key, running, search);
+		}
+
+		try {
+			ids = this.getFromDisk(galaxy, key);
+			if (ids != null) {
+				Path path = replay(galaxy, request.getFuelJumpLUT(), ids);
+				if (path != null) {
+					this.diskHits.incrementAndGet();
+					this.putIntoMemory(galaxy, key, ids);
+					RouteResult result = new RouteResult(request, galaxy.getEpoch(), path, null, 0, System.currentTimeMillis() - start);
+					this.inFlight.remove(key, search);
+					search.complete(result);
+					return RouteSearch.completed(result);
+				}
+			}
+
+			this.misses.incrementAndGet();
+			RouteRequest profileRequest = new RouteRequest(request.getSourceName(), request.getGoalName(), profile);
+			search.getResult().whenComplete((result, e) -> {
+				if (result != null && result.isFound()) {
+					int[] routeIds = toIds(result.getPath());
+					this.putIntoMemory(galaxy, key, routeIds);
+					this.putOntoDisk(galaxy, key, routeIds);
+				}
+				this.inFlight.remove(key, search);
+			});
+			this.engine.start(profileRequest, galaxy, search);
+			return view;
+		} catch (RuntimeException e) {
+			this.inFlight.remove(key, search);
+			search.completeExceptionally(e);
+			throw e;
+		}
+	}
+
+	public long getMemoryHits() {
+		return this.memoryHits.get();
+	}
+
+	public long getDiskHits() {
+		return this.diskHits.get();
+	}
+
+	public long getCoalesced() {
+		return this.coalesced.get();
+	}
+
+	public long getMisses() {
+		return this.misses.get();
+	}
+
+	/**
+	 * @return
+	 *      Number of requests which have been searched for the exact ship, because the route of
+	 *      their profile did not work for them
+	 */
+	public long getExactSearches() {
+		return this.exactSearches.get();
+	}
+
+	/**
+	 * Rounds the ship down to the next profile. The tables of the ship are quantized as they are,
+	 * so that ships with a real FSD keep their fuel usage and their range with a nearly empty tank.
+	 */
+	private FuelAndJumpRangeLookup toProfile(FuelAndJumpRangeLookup lut) {
+		final float maxFuelPerJump = (float) Math.ceil(lut.getMaxFuelPerJump() / FUEL_PER_JUMP_STEP_TONS - 0.001f) * FUEL_PER_JUMP_STEP_TONS;
+		final float fuelPower = (float) Math.floor(lut.getFuelPower() / FUEL_POWER_STEP + 0.001f) * FUEL_POWER_STEP;
+		final float[] jumpRangeByFuelStep = lut.getJumpRangeByFuelStep();
+		for (int i = 0; i < jumpRangeByFuelStep.length; i++) {
+			jumpRangeByFuelStep[i] = (float) Math.floor(jumpRangeByFuelStep[i] / JUMP_RANGE_STEP_LY + 0.001f) * JUMP_RANGE_STEP_LY;
+		}
+		return this.lutCache.get(lut.getMaxFuelTons(), maxFuelPerJump, fuelPower, jumpRangeByFuelStep);
+	}
+
+	private int[] getFromMemory(GalaxyIndex galaxy, Key key) {
+		synchronized (this.memory) {
+			if (this.memoryGalaxy != galaxy) {
+				return null;
+			}
+			return this.memory.get(key);
+		}
+	}
+
+	/**
+	 * Only routes searched in the current epoch are accepted. A new epoch clears the memory tier.
+	 */
+	private void putIntoMemory(GalaxyIndex galaxy, Key key, int[] ids) {
+		synchronized (this.memory) {
+			if (this.memoryGalaxy != galaxy) {
+				if (galaxy != this.engine.currentGalaxy()) {
+					return;
+				}
+				if (this.memoryGalaxy != null) {
+					logger.debug("Galaxy epoch " + galaxy.getEpoch() + " published, clearing " + this.memory.size() + " cached routes");
+				}
+				this.memory.clear();
+				this.memoryGalaxy = galaxy;
+			}
+			this.memory.put(key, ids);
+		}
+	}
+
+	private File getVersionDirectory(GalaxyIndex galaxy) {
+		return new File(this.directory, String.format(Locale.US, "%d-%d", galaxy.getBase().getCreatedAt(), galaxy.getBase().size()));
+	}
+
+	private File getRouteFile(GalaxyIndex galaxy, Key key) {
+		return new File(this.getVersionDirectory(galaxy), key.toString() + ".route");
+	}
+
+	private int[] getFromDisk(GalaxyIndex galaxy, Key key) {
+		if (this.directory == null || !galaxy.isBaseOnly()) {
+			return null;
+		}
+		File file = this.getRouteFile(galaxy, key);
+		if (!file.exists()) {
+			return null;
+		}
+		try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)))) {
+			byte[] magic = new byte[MAGIC.length];
+			in.readFully(magic);
+			for (int i = 0; i < MAGIC.length; i++) {
+				if (magic[i] != MAGIC[i]) {
+					throw new IOException(file + " is not a cached route");
+				}
+			}
+			int formatVersion = in.readInt();
+			if (formatVersion != FORMAT_VERSION) {
+				throw new IOException(file + " has format version " + formatVersion + ", expected " + FORMAT_VERSION);
+			}
+			int[] ids = new int[in.readInt()];
+			for (int i = 0; i < ids.length; i++) {
+				ids[i] = in.readInt();
+			}
+			return ids;
+		} catch (IOException e) {
+			logger.warn("Failed to read cached route " + file + ": " + e);
+			return null;
+		}
+	}
+
+	/**
+	 * Writes to a temp file and moves it into place, so that concurrent readers never see a half
+	 * written route. Directories of older base galaxies are deleted.
+	 */
+	private void putOntoDisk(GalaxyIndex galaxy, Key key, int[] ids) {
+		if (this.directory == null || !galaxy.isBaseOnly()) {
+			return;
+		}
+		File versionDirectory = this.getVersionDirectory(galaxy);
+		File file = this.getRouteFile(galaxy, key);
+		File tempFile = new File(versionDirectory, file.getName() + ".tmp");
+		try {
+			if (!versionDirectory.exists()) {
+				this.deleteOtherVersions(versionDirectory);
+				versionDirectory.mkdirs();
+			}
+			try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tempFile)))) {
+				out.write(MAGIC);
+				out.writeInt(FORMAT_VERSION);
+				out.writeInt(ids.length);
+				for (int id : ids) {
+					out.writeInt(id);
+				}
+			}
+			Files.move(tempFile.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+		} catch (IOException e) {
+			logger.warn("Failed to write cached route " + file + ": " + e);
+			tempFile.delete();
+		}
+	}
+
+	private void deleteOtherVersions(File versionDirectory) throws IOException {
+		File[] files = this.directory.listFiles();
+		if (files != null) {
+			for (File file : files) {
+				if (file.isDirectory() && !file.equals(versionDirectory)) {
+					logger.debug("Deleting cached routes of outdated galaxy " + file.getName());
+					FileUtils.deleteDirectory(file);
+				}
+			}
+		}
+	}
+
+	/**
+	 * Turns the result of a profile search into the search of one of the waiting requests. If the
+	 * ship cannot fly the route of its profile, or the profile has no route at all, the exact ship
+	 * is searched. Its route is not cached, it would not be the route of the profile.
+	 */
+	private RouteSearch toSearch(RouteRequest request, GalaxyIndex galaxy, RouteResult profileResult) {
+		if (profileResult.isFound()) {
+			Path path = replay(galaxy, request.getFuelJumpLUT(), toIds(profileResult.getPath()));
+			if (path != null) {
+				return RouteSearch.completed(new RouteResult(request, profileResult.getGalaxyEpoch(), path, null, profileResult.getExpansions(), profileResult.getMillis()));
+			}
+		} else if (profileResult.getError() != null) {
+			return RouteSearch.completed(profileResult.withRequest(request));
+		}
+		this.exactSearches.incrementAndGet();
+		return this.engine.start(request, galaxy);
+	}
+
+	private static int[] toIds(Path path) {
+		List<Path> sortedPaths = path.toSortedList();
+		int[] ids = new int[sortedPaths.size()];
+		for (int i = 0; i < ids.length; i++) {
+			ids[i] = sortedPaths.get(i).getStarSystemId();
+		}
+		return ids;
+	}
+
+	/**
+	 * Flies the route again with the given ship, using the same rules as {@link AyStar}.
+	 *
+	 * @return
+	 *      The path, or null if any of the jumps is not possible in the given galaxy
+	 */
+	static Path replay(GalaxyIndex galaxy, FuelAndJumpRangeLookup fuelJumpLUT, int[] ids) {
+		if (ids.length == 0) {
+			return null;
+		}
+		for (int id : ids) {
+			if (id < 0 || id >= galaxy.size()) {
+				return null;
+			}
+		}
+		final int goalId = ids[ids.length - 1];
+		SearchNodeArena nodes = new SearchNodeArena(ids.length);
+		int node = nodes.add(SearchNodeArena.NO_PARENT, ids[0], 0, 0, galaxy.distance(ids[0], goalId), fuelJumpLUT.getMaxFuelTons());
+		for (int i = 1; i < ids.length; i++) {
+			final int fromId = ids[i - 1];
+			final int toId = ids[i];
+			final float fuelLevel = nodes.getFuelLevel(node);
+			if (fuelLevel <= fuelJumpLUT.getMaxFuelPerJump() && !galaxy.isScoopable(toId)) {
+				return null;
+			}
+			final boolean haveSuperchargedFsd = galaxy.isNeutron(fromId);
+			final float distance = galaxy.distance(fromId, toId);
+			if (distance > AyStar.maxJumpRange(fuelJumpLUT, fuelLevel, haveSuperchargedFsd)) {
+				return null;
+			}
+			final float fuelLevelAfterJump = AyStar.fuelLevelAfterJump(fuelJumpLUT, fuelLevel, distance, haveSuperchargedFsd ? 4.0f : 1.0f, galaxy.isNeutron(toId));
+			node = nodes.add(node, toId, i, nodes.getTravelledDistanceLy(node) + distance, galaxy.distance(toId, goalId), fuelLevelAfterJump);
+		}
+		return nodes.toPath(galaxy, node);
+	}
+
+	private static class Key {
+
+		private final int sourceId;
+		private final int goalId;
+		private final int maxFuelTons;
+		private final float maxFuelPerJump;
+		private final float fuelPower;
+		/** The jump range table of the profile in multiples of {@link RouteCache#JUMP_RANGE_STEP_LY} */
+		private final int[] jumpRangeSteps;
+
+		Key(int sourceId, int goalId, FuelAndJumpRangeLookup profile) {
+			this.sourceId = sourceId;
+			this.goalId = goalId;
+			this.maxFuelTons = profile.getMaxFuelTons();
+			this.maxFuelPerJump = profile.getMaxFuelPerJump();
+			this.fuelPower = profile.getFuelPower();
+			final float[] jumpRangeByFuelStep = profile.getJumpRangeByFuelStep();
+			this.jumpRangeSteps = new int[jumpRangeByFuelStep.length];
+			for (int i = 0; i < jumpRangeByFuelStep.length; i++) {
+				this.jumpRangeSteps[i] = Math.round(jumpRangeByFuelStep[i] / JUMP_RANGE_STEP_LY);
+			}
+		}
+
+		@Override
+		public boolean equals(Object obj) {
+			if (this == obj) {
+				return true;
+			}
+			if (obj == null || this.getClass() != obj.getClass()) {
+				return false;
+			}
+			Key other = (Key) obj;
+			return this.sourceId == other.sourceId && this.goalId == other.goalId && this.maxFuelTons == other.maxFuelTons && this.maxFuelPerJump == other.maxFuelPerJump
+					&& this.fuelPower == other.fuelPower && Arrays.equals(this.jumpRangeSteps, other.jumpRangeSteps);
+		}
+
+		@Override
+		public int hashCode() {
+			int result = this.sourceId;
+			result = 31 * result + this.goalId;
+			result = 31 * result + this.maxFuelTons;
+			result = 31 * result + Float.floatToIntBits(this.maxFuelPerJump);
+			result = 31 * result + Float.floatToIntBits(this.fuelPower);
+			result = 31 * result + Arrays.hashCode(this.jumpRangeSteps);
+			return result;
+		}
+
+		/**
+		 * Also used as file name. The jump range table is too long for a file name and is
+		 * replaced by a name based UUID of it.
+		 */
+		@Override
+		public String toString() {
+			ByteBuffer table = ByteBuffer.allocate(4 * this.jumpRangeSteps.length);
+			table.asIntBuffer().put(this.jumpRangeSteps);
+			return String.format(Locale.US, "%d-%d-%d-%.1f-%.2f-%s", this.sourceId, this.goalId, this.maxFuelTons, this.maxFuelPerJump, this.fuelPower,
+					UUID.nameUUIDFromBytes(table.array()));
+		}
+
+	}
+
+}
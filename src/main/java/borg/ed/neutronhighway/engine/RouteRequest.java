@@ -0,0 +1,88 @@
+package borg.ed.neutronhighway.engine;
+
+import java.util.Locale;
+
+import org.apache.commons.lang.StringUtils;
+
+import borg.ed.neutronhighway.helper.FuelAndJumpRangeLookup;
+import borg.ed.neutronhighway.ship.ShipProfileRegistry;
+
+/**
+ * A route from one system to another for one ship.
+ *
+ * @author <a href="mailto:b.guenther@xsite.de">Boris Guenther</a>
+ */
+public class RouteRequest {
+
+	private final String sourceName;
+	private final String goalName;
+	private final FuelAndJumpRangeLookup fuelJumpLUT;
+
+	public RouteRequest(String sourceName, String goalName, FuelAndJumpRangeLookup fuelJumpLUT) {
+		this.sourceName = sourceName;
+		this.goalName = goalName;
+		this.fuelJumpLUT = fuelJumpLUT;
+	}
+
+	/**
+	 * Parses a tab-separated line <code>source destination maxFuelTons maxFuelPerJump jumpRangeFuelFull jumpRangeFuelOpt</code>.
+	 *
+	 * @param lutCache
+	 *      Used to share the lookup tables between requests for the same ship. May be null.
+	 * @throws IllegalArgumentException
+	 *      If the line is malformed
+	 */
+	public static RouteRequest parse(String line, FuelAndJumpRangeLookupCache lutCache) {
+		return parse(line, lutCache, null);
+	}
+
+	/**
+	 * Like {@link #parse(String, FuelAndJumpRangeLookupCache)}, but also accepts lines
+	 * <code>source destination ship</code> with the name of a registered ship profile.
+	 *
+	 * @param ships
+	 *      May be null
+	 */
+	public static RouteRequest parse(String line, FuelAndJumpRangeLookupCache lutCache, ShipProfileRegistry ships) {
+		String[] fields = line.split("\t", -1);
+		if (fields.length < 3 || StringUtils.isBlank(fields[0]) || StringUtils.isBlank(fields[1])) {
+			throw new IllegalArgumentException("Malformed route request: " + line);
+		}
+		if (fields.length < 6) {
+			FuelAndJumpRangeLookup fuelJumpLUT = ships == null ? null : ships.getLookup(fields[2]);
+			if (fuelJumpLUT == null) {
+				throw new IllegalArgumentException("Unknown ship profile in route request: " + line);
+			}
+			return new RouteRequest(fields[0].trim(), fields[1].trim(), fuelJumpLUT);
+		}
+		try {
+			int maxFuelTons = Integer.parseInt(fields[2].trim());
+			float maxFuelPerJump = Float.parseFloat(fields[3].trim());
+			float jumpRangeFuelFull = Float.parseFloat(fields[4].trim());
+			float jumpRangeFuelOpt = Float.parseFloat(fields[5].trim());
+			FuelAndJumpRangeLookup fuelJumpLUT = lutCache != null ? lutCache.get(maxFuelTons, maxFuelPerJump, jumpRangeFuelFull, jumpRangeFuelOpt)
+					: new FuelAndJumpRangeLookup(maxFuelTons, maxFuelPerJump, jumpRangeFuelFull, jumpRangeFuelOpt);
+			return new RouteRequest(fields[0].trim(), fields[1].trim(), fuelJumpLUT);
+		} catch (NumberFormatException e) {
+			throw new IllegalArgumentException("Malformed route request: " + line, e);
+		}
+	}
+
+	@Override
+	public String toString() {
+		return String.format(Locale.US, "%s → %s", this.getSourceName(), this.getGoalName());
+	}
+
+	public String getSourceName() {
+		return this.sourceName;
+	}
+
+	public String getGoalName() {
+		return this.goalName;
+	}
+
+	public FuelAndJumpRangeLookup getFuelJumpLUT() {
+		return this.fuelJumpLUT;
+	}
+
+}
@@ -0,0 +1,94 @@
+package borg.ed.neutronhighway.engine;
+
+import borg.ed.neutronhighway.aystar.Path;
+
+/**
+ * Outcome of a {@link RouteRequest}. Exactly one of path and error is set, unless there simply is
+ * no route.
+ *
+ * @author <a href="mailto:b.guenther@xsite.de">Boris Guenther</a>
+ */
+public class RouteResult {
+
+	private final RouteRequest request;
+	private final long galaxyEpoch;
+	private final Path path;
+	private final String error;
+	private final int expansions;
+	private final long millis;
+	private final float suboptimalityBound;
+
+	public RouteResult(RouteRequest request, long galaxyEpoch, Path path, String error, int expansions, long millis) {
+		this(request, galaxyEpoch, path, error, expansions, millis, 1.0f);
+	}
+
+	/**
+	 * @param suboptimalityBound
+	 *      See {@link #getSuboptimalityBound()}
+	 */
+	public RouteResult(RouteRequest request, long galaxyEpoch, Path path, String error, int expansions, long millis, float suboptimalityBound) {
+		this.request = request;
+		this.galaxyEpoch = galaxyEpoch;
+		this.path = path;
+		this.error = error;
+		this.expansions = expansions;
+		this.millis = millis;
+		this.suboptimalityBound = suboptimalityBound;
+	}
+
+	/**
+	 * @return
+	 *      The same result for another request, e.g. one which has been coalesced with this one
+	 */
+	public RouteResult withRequest(RouteRequest otherRequest) {
+		return otherRequest == this.request ? this : new RouteResult(otherRequest, this.galaxyEpoch, this.path, this.error, this.expansions, this.millis,
+				this.suboptimalityBound);
+	}
+
+	public boolean isFound() {
+		return this.path != null;
+	}
+
+	public RouteRequest getRequest() {
+		return this.request;
+	}
+
+	/**
+	 * @return
+	 *      The epoch of the galaxy the route has been searched in
+	 */
+	public long getGalaxyEpoch() {
+		return this.galaxyEpoch;
+	}
+
+	/**
+	 * @return
+	 *      The last system of the route, or null if none has been found
+	 */
+	public Path getPath() {
+		return this.path;
+	}
+
+	public String getError() {
+		return this.error;
+	}
+
+	public int getExpansions() {
+		return this.expansions;
+	}
+
+	public long getMillis() {
+		return this.millis;
+	}
+
+	/**
+	 * @return
+	 *      How many times the optimal number of jumps the route has at most. 1 for routes which
+	 *      are known to be optimal, infinite if an anytime search was stopped before it could
+	 *      bound its first route.
+	 */
+	public float getSuboptimalityBound() {
+		return this.suboptimalityBound;
+	}
+
+}
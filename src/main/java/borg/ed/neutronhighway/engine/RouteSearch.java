@@ -0,0 +1,167 @@
+package borg.ed.neutronhighway.engine;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.function.Function;
+
+/**
+ * Handle of a route search which has been started by a {@link RoutingEngine}.
+ * <p>
+ * Cancelling it skips the search if it is still queued, or stops it at its next expansion. The
+ * result completes in both cases, but only once the search has actually stopped, so callers which
+ * limit the number of running searches should wait for it. Requests which share a search through
+ * the {@link RouteCache} each get their own view of it, and the search itself is only cancelled
+ * when all views have been cancelled. A view can hand its request over to another search when the
+ * shared one is done, cancelling the view then cancels that one.
+ *
+ * @author <a href="mailto:b.guenther@xsite.de">Boris Guenther</a>
+ */
+public class RouteSearch {
+
+	private final CompletableFuture<RouteResult> result;
+	/** The search this is a view of, or null if this is the search itself */
+	private final RouteSearch shared;
+
+	// Guarded by this
+	private boolean cancelled = false;
+	/** Stops the running search, null while it is queued */
+	private Runnable canceller = null;
+	private int views = 0;
+	/** The search a view has handed its request over to, null until the shared search is done */
+	private RouteSearch handover = null;
+
+	RouteSearch() {
+		this(null, new CompletableFuture<RouteResult>());
+	}
+
+	private RouteSearch(RouteSearch shared, CompletableFuture<RouteResult> result) {
+		this.shared = shared;
+		this.result = result;
+	}
+
+	/**
+	 * @return
+	 *      A handle for a result which is already known, e.g. a cache hit
+	 */
+	public static RouteSearch completed(RouteResult result) {
+		return new RouteSearch(null, CompletableFuture.completedFuture(result));
+	}
+
+	public CompletableFuture<RouteResult> getResult() {
+		return this.result;
+	}
+
+	public void cancel() {
+		if (this.shared != null) {
+			RouteSearch handover;
+			synchronized (this) {
+				if (this.cancelled) {
+					return;
+				}
+				this.cancelled = true;
+				handover = this.handover;
+			}
+			if (handover != null) {
+				handover.cancel();
+			}
+			this.shared.leave();
+		} else {
+			synchronized (this) {
+				this.cancelled = true;
+				if (this.canceller != null) {
+					this.canceller.run();
+				}
+			}
+		}
+	}
+
+	public synchronized boolean isCancelled() {
+		return this.cancelled;
+	}
+
+	/**
+	 * @param toSearch
+	 *      Turns the result of this search into the search of the request, which is usually
+	 *      {@link #completed(RouteResult) completed} already
+	 * @return
+	 *      A view of this search for one more request, or null if this search has already been
+	 *      cancelled
+	 */
+	synchronized RouteSearch view(final Function<RouteResult, RouteSearch> toSearch) {
+		if (this.cancelled) {
+			return null;
+		}
+		this.views++;
+		final RouteSearch view = new RouteSearch(this, new CompletableFuture<RouteResult>());
+		this.result.whenComplete((sharedResult, e) -> {
+			if (e != null) {
+				view.completeExceptionally(e);
+				return;
+			}
+			try {
+				view.handOver(toSearch.apply(sharedResult));
+			} catch (RuntimeException e2) {
+				view.completeExceptionally(e2);
+			}
+		});
+		return view;
+	}
+
+	/**
+	 * Completes this view with the result of the given search.
+	 */
+	private void handOver(RouteSearch search) {
+		boolean cancelled;
+		synchronized (this) {
+			this.handover = search;
+			cancelled = this.cancelled;
+		}
+		if (cancelled) {
+			search.cancel();
+		}
+		search.getResult().whenComplete((routeResult, e) -> {
+			if (e != null) {
+				this.completeExceptionally(e);
+			} else {
+				this.complete(routeResult);
+			}
+		});
+	}
+
+	private void leave() {
+		boolean noMoreViews;
+		synchronized (this) {
+			noMoreViews = --this.views == 0;
+		}
+		if (noMoreViews) {
+			this.cancel();
+		}
+	}
+
+	/**
+	 * Called by the router thread after the search has been initialized. A search which has been
+	 * cancelled in the meantime is stopped right away.
+	 */
+	synchronized void attach(Runnable canceller) {
+		this.canceller = canceller;
+		if (this.cancelled) {
+			canceller.run();
+		}
+	}
+
+	/**
+	 * Called by the router thread once the search has stopped, before the same search instance is
+	 * used for the next request.
+	 */
+	synchronized void detach() {
+		this.canceller = null;
+	}
+
+	void complete(RouteResult routeResult) {
+		this.result.complete(routeResult);
+	}
+
+	void completeExceptionally(Throwable e) {
+		this.result.completeExceptionally(e);
+	}
+
+}
@@ -0,0 +1,285 @@
+package borg.ed.neutronhighway.engine;
+
+import java.io.Closeable;
+import java.util.Locale;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import borg.ed.neutronhighway.aystar.AnytimeAyStar;
+import borg.ed.neutronhighway.aystar.AyStar;
+import borg.ed.neutronhighway.aystar.Path;
+import borg.ed.neutronhighway.aystar.SearchStatus;
+import borg.ed.neutronhighway.index.GalaxyIndex;
+import borg.ed.neutronhighway.index.LiveGalaxyIndex;
+import borg.ed.neutronhighway.index.SectorPrefetcher;
+import borg.ed.neutronhighway.metrics.SearchMetrics;
+import borg.ed.neutronhighway.metrics.SearchPhase;
+
+/**
+ * Runs many route requests concurrently against one shared, immutable {@link GalaxyIndex}.
+ * <p>
+ * The executor has a fixed number of threads and a bounded queue. If the queue is full, the
+ * submitting thread runs the request itself, which slows down producers instead of piling up
+ * requests. Servers which must not block their own threads can have such requests rejected
+ * instead. Every started search returns a {@link RouteSearch}, which can be cancelled. Every
+ * thread keeps its own {@link AyStar}, whose search state is reset for each request instead of
+ * being reallocated. Each request searches the galaxy epoch which is current when it starts.
+ *
+ * @author <a href="mailto:b.guenther@xsite.de">Boris Guenther</a>
+ */
+public class RoutingEngine implements Closeable {
+
+	static final Logger logger = LoggerFactory.getLogger(RoutingEngine.class);
+
+	private final Supplier<GalaxyIndex> galaxySupplier;
+	private final ThreadPoolExecutor executor;
+	private final ThreadLocal<AyStar> ayStars = ThreadLocal.withInitial(AyStar::new);
+	private final ThreadLocal<AnytimeAyStar> anytimeAyStars = ThreadLocal.withInitial(AnytimeAyStar::new);
+	private volatile long maxSearchMillis = 0;
+	private volatile int maxSearchExpansions = 0;
+	private volatile SectorPrefetcher prefetcher = null;
+
+	public RoutingEngine(LiveGalaxyIndex liveIndex, int nThreads, int queueCapacity) {
+		this(liveIndex::current, nThreads, queueCapacity);
+	}
+
+	public RoutingEngine(Supplier<GalaxyIndex> galaxySupplier, int nThreads, int queueCapacity) {
+		this(galaxySupplier, nThreads, queueCapacity, true);
+	}
+
+	/**
+	 * @param callerRuns
+	 *      What to do if the queue is full: true runs the request on the submitting thread, false
+	 *      throws a {@link RejectedExecutionException}
+	 */
+	public RoutingEngine(Supplier<GalaxyIndex> galaxySupplier, int nThreads, int queueCapacity, boolean callerRuns) {
+		this.galaxySupplier = galaxySupplier;
+		this.executor = new ThreadPoolExecutor(nThreads, nThreads, 0L, TimeUnit.MILLISECONDS, new ArrayBlockingQueue<Runnable>(queueCapacity), new RouterThreadFactory(),
+				callerRuns ? new ThreadPoolExecutor.CallerRunsPolicy() : new ThreadPoolExecutor.AbortPolicy());
+	}
+
+	public CompletableFuture<RouteResult> submit(final RouteRequest request) {
+		return this.start(request).getResult();
+	}
+
+	/**
+	 * Like {@link #submit(RouteRequest)}, but searches the given epoch instead of the current one.
+	 */
+	public CompletableFuture<RouteResult> submit(final RouteRequest request, final GalaxyIndex galaxy) {
+		return this.start(request, galaxy).getResult();
+	}
+
+	/**
+	 * Like {@link #submit(RouteRequest)}, but returns a handle which can also cancel the search.
+	 */
+	public RouteSearch start(RouteRequest request) {
+		return this.start(request, this.galaxySupplier.get());
+	}
+
+	public RouteSearch start(RouteRequest request, GalaxyIndex galaxy) {
+		RouteSearch search = new RouteSearch();
+		this.start(request, galaxy, search);
+		return search;
+	}
+
+	/**
+	 * Searches with {@link AnytimeAyStar} instead. A first route is found quickly and then improved
+	 * until it is optimal. Cancelling the search completes it with the best route so far, see
+	 * {@link RouteResult#getSuboptimalityBound()}.
+	 */
+	public RouteSearch startAnytime(final RouteRequest request) {
+		final GalaxyIndex galaxy = this.galaxySupplier.get();
+		final RouteSearch search = new RouteSearch();
+		final long submitted = System.nanoTime();
+		this.executor.execute(() -> {
+			SearchMetrics.SHARED.recordPhaseSince(SearchPhase.QUEUE_WAIT, submitted, 1, null);
+			try {
+				search.complete(this.routeAnytime(request, galaxy, search));
+			} catch (Throwable e) {
+				search.completeExceptionally(e);
+			}
+		});
+		return search;
+	}
+
+	/**
+	 * Runs the request on the executor and completes the given search with its result.
+	 */
+	void start(final RouteRequest request, final GalaxyIndex galaxy, final RouteSearch search) {
+		final long submitted = System.nanoTime();
+		this.executor.execute(() -> {
+			SearchMetrics.SHARED.recordPhaseSince(SearchPhase.QUEUE_WAIT, submitted, 1, null);
+			try {
+				search.complete(this.route(request, galaxy, search));
+			} catch (Throwable e) {
+				search.completeExceptionally(e);
+			}
+		});
+	}
+
+	/**
+	 * @return
+	 *      The galaxy epoch which new requests will search
+	 */
+	public GalaxyIndex currentGalaxy() {
+		return this.galaxySupplier.get();
+	}
+
+	/**
+	 * Searches the route on the calling thread.
+	 */
+	public RouteResult route(RouteRequest request) {
+		return this.route(request, this.galaxySupplier.get());
+	}
+
+	/**
+	 * Searches the route in the given epoch on the calling thread.
+	 */
+	public RouteResult route(RouteRequest request, GalaxyIndex galaxy) {
+		return this.route(request, galaxy, null);
+	}
+
+	private RouteResult route(RouteRequest request, GalaxyIndex galaxy, RouteSearch search) {
+		final long start = System.currentTimeMillis();
+		final int sourceId = galaxy.findId(request.getSourceName());
+		final int goalId = galaxy.findId(request.getGoalName());
+		if (sourceId < 0) {
+			return new RouteResult(request, galaxy.getEpoch(), null, "Unknown source " + request.getSourceName(), 0, System.currentTimeMillis() - start);
+		} else if (goalId < 0) {
+			return new RouteResult(request, galaxy.getEpoch(), null, "Unknown destination " + request.getGoalName(), 0, System.currentTimeMillis() - start);
+		} else if (search != null && search.isCancelled()) {
+			return new RouteResult(request, galaxy.getEpoch(), null, "Search cancelled", 0, System.currentTimeMillis() - start);
+		}
+
+		AyStar ayStar = this.ayStars.get();
+		try {
+			ayStar.initialize(sourceId, goalId, galaxy, request.getFuelJumpLUT());
+			ayStar.setBudget(this.maxSearchMillis, this.maxSearchExpansions);
+			ayStar.setPrefetcher(this.prefetcher);
+			SearchStatus status;
+			if (search == null) {
+				status = ayStar.search();
+			} else {
+				search.attach(ayStar::cancel);
+				try {
+					status = ayStar.search();
+				} finally {
+					search.detach();
+				}
+			}
+			Path path = ayStar.getPath();
+			long millis = System.currentTimeMillis() - start;
+			if (logger.isTraceEnabled()) {
+				logger.trace(String.format(Locale.US, "%s: %s after %,d expansions in %,d ms", request, path == null ? status : path.getTotalJumps() + " jumps",
+						ayStar.getNumberOfExpansions(), millis));
+			}
+			String error = status == SearchStatus.BUDGET_EXHAUSTED ? "Search budget exhausted" : status == SearchStatus.CANCELLED ? "Search cancelled" : null;
+			return new RouteResult(request, galaxy.getEpoch(), path, error, ayStar.getNumberOfExpansions(), millis);
+		} catch (RuntimeException e) {
+			logger.warn("Failed to route " + request, e);
+			return new RouteResult(request, galaxy.getEpoch(), null, e.toString(), ayStar.getNumberOfExpansions(), System.currentTimeMillis() - start);
+		}
+	}
+
+	private RouteResult routeAnytime(RouteRequest request, GalaxyIndex galaxy, RouteSearch search) {
+		final long start = System.currentTimeMillis();
+		final int sourceId = galaxy.findId(request.getSourceName());
+		final int goalId = galaxy.findId(request.getGoalName());
+		if (sourceId < 0) {
+			return new RouteResult(request, galaxy.getEpoch(), null, "Unknown source " + request.getSourceName(), 0, System.currentTimeMillis() - start);
+		} else if (goalId < 0) {
+			return new RouteResult(request, galaxy.getEpoch(), null, "Unknown destination " + request.getGoalName(), 0, System.currentTimeMillis() - start);
+		} else if (search.isCancelled()) {
+			return new RouteResult(request, galaxy.getEpoch(), null, "Search cancelled", 0, System.currentTimeMillis() - start);
+		}
+
+		AnytimeAyStar ayStar = this.anytimeAyStars.get();
+		try {
+			ayStar.initialize(sourceId, goalId, galaxy, request.getFuelJumpLUT());
+			ayStar.setBudget(this.maxSearchMillis, this.maxSearchExpansions);
+			SearchStatus status;
+			search.attach(ayStar::cancel);
+			try {
+				status = ayStar.search();
+			} finally {
+				search.detach();
+			}
+			Path path = ayStar.getPath();
+			long millis = System.currentTimeMillis() - start;
+			if (logger.isTraceEnabled()) {
+				logger.trace(String.format(Locale.US, "%s: %s with bound %.2f after %,d expansions in %,d ms", request, path == null ? status : path.getTotalJumps() + " jumps",
+						ayStar.getSuboptimalityBound(), ayStar.getNumberOfExpansions(), millis));
+			}
+			String error = null;
+			if (path == null && status == SearchStatus.BUDGET_EXHAUSTED) {
+				error = "Search budget exhausted";
+			} else if (path == null && status == SearchStatus.CANCELLED) {
+				error = "Search cancelled";
+			}
+			return new RouteResult(request, galaxy.getEpoch(), path, error, ayStar.getNumberOfExpansions(), millis, ayStar.getSuboptimalityBound());
+		} catch (RuntimeException e) {
+			logger.warn("Failed to route " + request, e);
+			return new RouteResult(request, galaxy.getEpoch(), null, e.toString(), ayStar.getNumberOfExpansions(), System.currentTimeMillis() - start);
+		}
+	}
+
+	/**
+	 * Limits every search, so that a single request cannot block a thread forever. 0 means
+	 * unlimited.
+	 */
+	public void setSearchBudget(long maxMillis, int maxExpansions) {
+		this.maxSearchMillis = maxMillis;
+		this.maxSearchExpansions = maxExpansions;
+	}
+
+	/**
+	 * @param prefetcher
+	 *      Used by every search to load the sectors ahead of it. Null to disable.
+	 */
+	public void setPrefetcher(SectorPrefetcher prefetcher) {
+		this.prefetcher = prefetcher;
+	}
+
+	public int getNumberOfThreads() {
+		return this.executor.getCorePoolSize();
+	}
+
+	/**
+	 * Finishes all submitted requests, then stops the threads.
+	 */
+	@Override
+	public void close() {
+		this.executor.shutdown();
+		try {
+			while (!this.executor.awaitTermination(1, TimeUnit.MINUTES)) {
+				logger.info("Waiting for " + this.executor.getQueue().size() + " queued route requests");
+			}
+		} catch (InterruptedException e) {
+			this.executor.shutdownNow();
+			Thread.currentThread().interrupt();
+		}
+	}
+
+	private static class RouterThreadFactory implements ThreadFactory {
+
+		private final AtomicInteger counter = new AtomicInteger();
+
+		@Override
+		public Thread newThread(Runnable r) {
+			Thread thread = new Thread(r, "router-" + this.counter.incrementAndGet());
+			thread.setDaemon(true);
+			return thread;
+		}
+
+	}
+
+}
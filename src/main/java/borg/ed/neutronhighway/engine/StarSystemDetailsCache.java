@@ -0,0 +1,195 @@
+package borg.ed.neutronhighway.engine;
+
+import java.io.Closeable;
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import borg.ed.galaxy.exceptions.NonUniqueResultException;
+import borg.ed.galaxy.model.Body;
+import borg.ed.galaxy.model.StarSystem;
+import borg.ed.galaxy.service.GalaxyService;
+
+/**
+ * Looks up the full systems and bodies of a route in front of a {@link GalaxyService}.
+ * <p>
+ * The galaxy service can only look up one system or one list of bodies per call. All systems of a
+ * route are therefore collected first, every system is looked up only once, and the lookups run
+ * concurrently instead of one after the other. Looked up systems are kept in an LRU, so routes
+ * through the same systems, e.g. along the same part of the highway, do not look them up again.
+ * Systems which are not found are not kept, they may be added to the galaxy later.
+ *
+ * @author <a href="mailto:b.guenther@xsite.de">Boris Guenther</a>
+ */
+public class StarSystemDetailsCache implements Closeable {
+
+	static final Logger logger = LoggerFactory.getLogger(StarSystemDetailsCache.class);
+
+	public static final int DEFAULT_CAPACITY = 100000;
+	public static final int DEFAULT_PARALLELISM = 8;
+
+	private final GalaxyService galaxyService;
+	private final ExecutorService executor;
+	private final Map<String, StarSystemDetails> memory;
+
+	private final AtomicLong hits = new AtomicLong();
+	private final AtomicLong misses = new AtomicLong();
+
+	public StarSystemDetailsCache(GalaxyService galaxyService) {
+		this(galaxyService, DEFAULT_CAPACITY, DEFAULT_PARALLELISM);
+	}
+
+	/**
+	 * @param capacity
+	 *      Max number of systems to keep
+	 * @param parallelism
+	 *      Max number of concurrent lookups
+	 */
+	public StarSystemDetailsCache(GalaxyService galaxyService, final int capacity, int parallelism) {
+		this.galaxyService = galaxyService;
+		this.executor = Executors.newFixedThreadPool(parallelism, new LookupThreadFactory());
+		this.memory = new LinkedHashMap<String, StarSystemDetails>(64, 0.75f, true) {
+			private static final long serialVersionUID = 1L;
+
+			@Override
+			protected boolean removeEldestEntry(Map.Entry<String, StarSystemDetails> eldest) {
+				return this.size() > capacity;
+			}
+		};
+	}
+
+	/**
+	 * @return
+	 *      The details of all given systems, in the order of the names. Systems which are not
+	 *      found have a null system and no bodies.
+	 */
+	public Map<String, StarSystemDetails> getAll(Collection<String> names) throws NonUniqueResultException {
+		final Map<String, StarSystemDetails> result = new LinkedHashMap<>(names.size() * 2);
+		final List<String> missing = new ArrayList<>();
+		synchronized (this.memory) {
+			for (String name : names) {
+				if (!result.containsKey(name)) {
+					StarSystemDetails details = this.memory.get(name);
+					result.put(name, details);
+					if (details == null) {
+						missing.add(name);
+					}
+				}
+			}
+		}
+		this.hits.addAndGet(result.size() - missing.size());
+		this.misses.addAndGet(missing.size());
+		if (missing.isEmpty()) {
+			return result;
+		}
+
+		final long start = System.currentTimeMillis();
+		List<CompletableFuture<StarSystemDetails>> lookups = new ArrayList<>(missing.size());
+		for (String name : missing) {
+			lookups.add(CompletableFuture.supplyAsync(() -> this.lookup(name), this.executor));
+		}
+		try {
+			for (int i = 0; i < missing.size(); i++) {
+				result.put(missing.get(i), lookups.get(i).join());
+			}
+		} catch (CompletionException e) {
+			if (e.getCause() instanceof NonUniqueResultException) {
+				throw (NonUniqueResultException) e.getCause();
+			}
+			throw e;
+		}
+		synchronized (this.memory) {
+			for (String name : missing) {
+				StarSystemDetails details = result.get(name);
+				if (details.getStarSystem() != null) {
+					this.memory.put(name, details);
+				}
+			}
+		}
+		logger.debug("Looked up " + missing.size() + " of " + result.size() + " systems in " + (System.currentTimeMillis() - start) + " ms");
+		return result;
+	}
+
+	public StarSystemDetails get(String name) throws NonUniqueResultException {
+		return this.getAll(Collections.singletonList(name)).get(name);
+	}
+
+	public int size() {
+		synchronized (this.memory) {
+			return this.memory.size();
+		}
+	}
+
+	public long getHits() {
+		return this.hits.get();
+	}
+
+	public long getMisses() {
+		return this.misses.get();
+	}
+
+	@Override
+	public void close() {
+		this.executor.shutdown();
+	}
+
+	private StarSystemDetails lookup(String name) {
+		try {
+			StarSystem starSystem = this.galaxyService.findStarSystemByName(name);
+			List<Body> bodies = starSystem == null ? Collections.<Body> emptyList() : this.galaxyService.findBodiesByStarSystemName(name);
+			return new StarSystemDetails(starSystem, bodies);
+		} catch (NonUniqueResultException e) {
+			throw new CompletionException(e);
+		}
+	}
+
+	public static class StarSystemDetails implements Serializable {
+
+		private static final long serialVersionUID = -1823749521876251037L;
+
+		private final StarSystem starSystem;
+		private final List<Body> bodies;
+
+		public StarSystemDetails(StarSystem starSystem, List<Body> bodies) {
+			this.starSystem = starSystem;
+			this.bodies = Collections.unmodifiableList(bodies);
+		}
+
+		public StarSystem getStarSystem() {
+			return this.starSystem;
+		}
+
+		public List<Body> getBodies() {
+			return this.bodies;
+		}
+
+	}
+
+	private static class LookupThreadFactory implements ThreadFactory {
+
+		private final AtomicInteger counter = new AtomicInteger();
+
+		@Override
+		public Thread newThread(Runnable r) {
+			Thread thread = new Thread(r, "system-lookup-" + this.counter.incrementAndGet());
+			thread.setDaemon(true);
+			return thread;
+		}
+
+	}
+
+}
@@ -0,0 +1,56 @@
+package borg.ed.neutronhighway.export;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.util.Formatter;
+import java.util.Locale;
+
+import borg.ed.neutronhighway.NeutronHighwayApplication.Route;
+import borg.ed.neutronhighway.NeutronHighwayApplication.RouteElement;
+
+/**
+ * One line per jump with a header line, for spreadsheets. Names are quoted as in RFC 4180 when
+ * needed.
+ *
+ * @author <a href="mailto:b.guenther@xsite.de">Boris Guenther</a>
+ */
+public class CsvRouteExporter implements RouteExporter {
+
+	@Override
+	public String getFileSuffix() {
+		return " Route.csv";
+	}
+
+	@Override
+	public void export(Route route, Writer out) throws IOException {
+		Formatter formatter = new Formatter(out, Locale.US);
+		out.write("jump,from,fromClass,to,toClass,jumpLy,fuelLevelOnArrival,travelledLy,remainingLy,dryPeriod\r\n");
+		for (RouteElement e : route.getElements()) {
+			formatter.format("%d,", e.getJumpNo());
+			writeField(out, e.getFromSystem().getName());
+			out.write(',');
+			writeField(out, e.getFromSpectralClass());
+			out.write(',');
+			writeField(out, e.getToSystem().getName());
+			out.write(',');
+			writeField(out, e.getToSpectralClass());
+			formatter.format(",%.2f,%.2f,%.2f,%.2f,%s\r\n", e.getFromSystem().distanceTo(e.getToSystem()), e.getFuelLevelOnArrival(), e.getTravelledLy(), e.getRemainingLy(),
+					e.getDryPeriod());
+		}
+		formatter.flush();
+		if (formatter.ioException() != null) {
+			throw formatter.ioException();
+		}
+	}
+
+	private static void writeField(Writer out, String value) throws IOException {
+		if (value.indexOf(',') < 0 && value.indexOf('"') < 0 && value.indexOf('\n') < 0 && value.indexOf('\r') < 0) {
+			out.write(value);
+		} else {
+			out.write('"');
+			out.write(value.replace("\"", "\"\""));
+			out.write('"');
+		}
+	}
+
+}
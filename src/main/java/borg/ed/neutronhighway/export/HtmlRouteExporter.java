@@ -0,0 +1,157 @@
+package borg.ed.neutronhighway.export;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.util.Date;
+import java.util.Formatter;
+import java.util.Locale;
+
+import org.apache.commons.lang.StringEscapeUtils;
+
+import borg.ed.galaxy.model.StarSystem;
+import borg.ed.neutronhighway.NeutronHighwayApplication.DryPeriod;
+import borg.ed.neutronhighway.NeutronHighwayApplication.Route;
+import borg.ed.neutronhighway.NeutronHighwayApplication.RouteElement;
+import borg.ed.neutronhighway.helper.FuelAndJumpRangeLookup;
+
+/**
+ * Human readable HTML page with one table row per jump, styled by <code>route.css</code>.
+ *
+ * @author <a href="mailto:b.guenther@xsite.de">Boris Guenther</a>
+ */
+public class HtmlRouteExporter implements RouteExporter {
+
+	private final Date eddbDumpDate;
+	private final int nKnownArrivalNeutronStars;
+
+	/**
+	 * @param eddbDumpDate
+	 *      Age of the galaxy data, shown in the page header
+	 * @param nKnownArrivalNeutronStars
+	 *      Shown in the page header
+	 */
+	public HtmlRouteExporter(Date eddbDumpDate, int nKnownArrivalNeutronStars) {
+		this.eddbDumpDate = eddbDumpDate;
+		this.nKnownArrivalNeutronStars = nKnownArrivalNeutronStars;
+	}
+
+	@Override
+	public String getFileSuffix() {
+		return " Route.html";
+	}
+
+	@Override
+	public void export(Route route, Writer out) throws IOException {
+		final FuelAndJumpRangeLookup fuelJumpLUT = route.getFuelJumpLUT();
+		StarSystem fromSystem = route.getElements().get(0).getFromSystem();
+		StarSystem toSystem = route.getElements().get(route.getElements().size() - 1).getToSystem();
+		String fromName = fromSystem.getName();
+		String toName = toSystem.getName();
+		float directDistance = fromSystem.distanceTo(toSystem);
+		int jumpsUsingHighway = route.getElements().get(route.getElements().size() - 1).getJumpNo();
+		int jumpsTraditional = Math.round(directDistance / fuelJumpLUT.getJumpRangeFuelFull());
+		int jumpsSaved = jumpsTraditional - jumpsUsingHighway;
+		float jumpsSavedPercent = 100f * jumpsSaved / jumpsTraditional;
+
+		String title = StringEscapeUtils.escapeHtml(String.format(Locale.US, "%s → %s (%.0f Ly, %d jumps)", fromName, toName, directDistance, jumpsUsingHighway));
+
+		Formatter formatter = new Formatter(out, Locale.US);
+		out.write("<html>\n");
+		out.write("<head>\n");
+		out.write("<meta http-equiv=\"content-type\" content=\"text/html; charset=utf-8\" />\n");
+		out.write("<link href=\"route.css\" rel=\"stylesheet\" type=\"text/css\" />\n");
+		out.write("<title>" + title + "</title>\n");
+		out.write("</head>\n");
+		out.write("<body>\n");
+		out.write("<h1>" + title + "</h1>\n");
+		formatter.format("<h2>EDDB data from %td-%tb-%tY, %d known neutron star systems</h2>\n", this.eddbDumpDate, this.eddbDumpDate, this.eddbDumpDate,
+				this.nKnownArrivalNeutronStars);
+		formatter.format("<h3>Jump range: %.1f to %.1f Ly | Fuel usage: Max %.2f of %d tons | Jumps saved: %d of %d (%.0f%%)</h3>\n", fuelJumpLUT.getJumpRangeFuelFull(),
+				fuelJumpLUT.getJumpRangeFuelOpt(), fuelJumpLUT.getMaxFuelPerJump(), fuelJumpLUT.getMaxFuelTons(), jumpsSaved, jumpsTraditional, jumpsSavedPercent);
+		out.write("<table id=\"jumpTable\">\n");
+		writeTableHeadline(out);
+		for (RouteElement e : route.getElements()) {
+			writeTableRow(formatter, e);
+		}
+		out.write("</table>\n");
+		out.write("</body>\n");
+		out.write("</html>");
+		formatter.flush();
+		if (formatter.ioException() != null) {
+			throw formatter.ioException();
+		}
+	}
+
+	private static void writeTableHeadline(Writer out) throws IOException {
+		out.write("<tr>");
+		out.write("<th class=\"numeric jumpNo\">#</th>");
+		out.write("<th class=\"starName\">From</th>");
+		out.write("<th class=\"starClass\">Class</th>");
+		out.write("<th class=\"numeric jumpDistance\">Jump</th>");
+		out.write("<th class=\"starClass\">Class</th>");
+		out.write("<th class=\"starName\">To</th>");
+		out.write("<th class=\"notes\">Notes</th>");
+		out.write("<th class=\"numeric distance\">Dist</th>");
+		out.write("</tr>\n");
+	}
+
+	private static void writeTableRow(Formatter formatter, RouteElement e) {
+		String evenOddCss = e.getJumpNo() % 2 == 0 ? "even" : "odd";
+		String neutronJumpCss = "NS".equals(e.getFromSpectralClass()) ? "neutronJump" : "normalJump";
+		//			String firstDiscoveredCss = e.getFromStar() != null && e.getRoute().getJournal().getFirstDiscoveries().contains(e.getFromStar().getName())
+		//					? " firstDiscovered"
+		//					: "";
+		String firstDiscoveredCss = "";
+		//			String prevKnownCss = e.getRoute().getJournal().getVisitedSystems().contains(e.getFromSystem().getName()) ? " known" : "";
+		//			String currKnownCss = e.getRoute().getJournal().getVisitedSystems().contains(e.getToSystem().getName()) ? " known" : "";
+		String prevKnownCss = "";
+		String currKnownCss = "";
+		String flags = "";
+		String notes = "";
+		if (e.getDryPeriod() == DryPeriod.END) {
+			flags += "R";
+			notes += "&lt;Route END&gt;&nbsp;";
+		} else if (e.getDryPeriod() == DryPeriod.START) {
+			//flags += "R";
+			notes += "&lt;Route START&gt;&nbsp;";
+		} else if (e.getDryPeriod() == DryPeriod.PART_OF) {
+			//flags += "R";
+			notes += "&lt;Route PART&gt;&nbsp;";
+		}
+		if (e.getToSystem().getName().replaceAll("[^\\-]", "").length() < 2) {
+			flags += "N"; // Pron name
+		}
+		if (e.getFuelLevelOnArrival() <= (e.getRoute().getFuelJumpLUT().getMaxFuelPerJump() * 1.25f)) {
+			flags += "F";
+			notes += "<span class=\"fuelWarning\">" + String.format(Locale.US, "%.1ft", e.getFuelLevelOnArrival()) + "</span>";
+		}
+		//			List<Body> valuableBodies = findValuableBodies(e.getToBodies());
+		//			if (valuableBodies.size() > 0) {
+		//				int unknown = 0;
+		//				for (Body body : valuableBodies) {
+		//					if (!e.getRoute().getJournal().getScannedBodies().contains(body.getName())) {
+		//						unknown++;
+		//					}
+		//					String knownCss = e.getRoute().getJournal().getScannedBodies().contains(body.getName()) ? "known" : "";
+		//					String typeCss = body.getTypeName() == null ? "" : body.getTypeName().toLowerCase().replaceAll("\\W", "-");
+		//					notes += "<span class=\"valuablePlanet " + typeCss + " " + knownCss + "\">"
+		//							+ StringEscapeUtils.escapeHtml(body.getName().replace(e.getToSystem().getName() + " ", "")) + "</span>";
+		//				}
+		//				if (unknown > 0) {
+		//					flags += "P"; // Planets
+		//				}
+		//			}
+
+		formatter.format("<tr class=\"%s %s %s\">", evenOddCss, neutronJumpCss, firstDiscoveredCss);
+		formatter.format("<td class=\"numeric jumpNo\">%d</td>", e.getJumpNo());
+		formatter.format("<td class=\"starName %s\">%s</td>", prevKnownCss, StringEscapeUtils.escapeHtml(e.getFromSystem().getName()));
+		formatter.format("<td class=\"starClass spectralClass-%s\">%s</td>", e.getFromSpectralClass(), e.getFromSpectralClass());
+		formatter.format("<td class=\"numeric jumpDistance\">%.1f Ly</td>", e.getFromSystem().distanceTo(e.getToSystem()));
+		formatter.format("<td class=\"starClass spectralClass-%s\">%s</td>", e.getToSpectralClass(), e.getToSpectralClass());
+		formatter.format("<td class=\"starName %s\">%s</td>", currKnownCss, StringEscapeUtils.escapeHtml(e.getToSystem().getName()));
+		formatter.format("<td class=\"notes\">[%s] %s</td>", flags, notes);
+		formatter.format("<td class=\"numeric distance\">%.0f Ly</td>", e.getTravelledLy());
+		formatter.format("</tr>\n");
+	}
+
+}
@@ -0,0 +1,61 @@
+package borg.ed.neutronhighway.export;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.util.Formatter;
+import java.util.Locale;
+
+import borg.ed.neutronhighway.NeutronHighwayApplication.Route;
+import borg.ed.neutronhighway.NeutronHighwayApplication.RouteElement;
+import borg.ed.neutronhighway.helper.FuelAndJumpRangeLookup;
+import borg.ed.neutronhighway.helper.JsonHelper;
+
+/**
+ * The route with the ship and one object per jump, for other tools. Only from, to and jumps at the
+ * top are the same as in the route responses of the routing server. The server lists the systems of
+ * the route, this lists the jumps with both ends, their spectral classes and the dry periods.
+ *
+ * @author <a href="mailto:b.guenther@xsite.de">Boris Guenther</a>
+ */
+public class JsonRouteExporter implements RouteExporter {
+
+	@Override
+	public String getFileSuffix() {
+		return " Route.json";
+	}
+
+	@Override
+	public void export(Route route, Writer out) throws IOException {
+		final FuelAndJumpRangeLookup fuelJumpLUT = route.getFuelJumpLUT();
+		final int nElements = route.getElements().size();
+		Formatter formatter = new Formatter(out, Locale.US);
+		out.write("{\"from\":");
+		out.write(JsonHelper.quote(nElements == 0 ? null : route.getElements().get(0).getFromSystem().getName()));
+		out.write(",\"to\":");
+		out.write(JsonHelper.quote(nElements == 0 ? null : route.getElements().get(nElements - 1).getToSystem().getName()));
+		formatter.format(",\"jumps\":%d", nElements == 0 ? 0 : route.getElements().get(nElements - 1).getJumpNo());
+		formatter.format(",\"maxFuelTons\":%d,\"maxFuelPerJump\":%.2f,\"jumpRangeFuelFull\":%.2f,\"jumpRangeFuelOpt\":%.2f", fuelJumpLUT.getMaxFuelTons(),
+				fuelJumpLUT.getMaxFuelPerJump(), fuelJumpLUT.getJumpRangeFuelFull(), fuelJumpLUT.getJumpRangeFuelOpt());
+		out.write(",\"route\":[");
+		for (int i = 0; i < nElements; i++) {
+			RouteElement e = route.getElements().get(i);
+			out.write(i == 0 ? "\n" : ",\n");
+			formatter.format("{\"jump\":%d,\"from\":", e.getJumpNo());
+			out.write(JsonHelper.quote(e.getFromSystem().getName()));
+			out.write(",\"fromClass\":");
+			out.write(JsonHelper.quote(e.getFromSpectralClass()));
+			out.write(",\"to\":");
+			out.write(JsonHelper.quote(e.getToSystem().getName()));
+			out.write(",\"toClass\":");
+			out.write(JsonHelper.quote(e.getToSpectralClass()));
+			formatter.format(",\"jumpLy\":%.2f,\"fuelLevel\":%.2f,\"travelledLy\":%.2f,\"remainingLy\":%.2f,\"dryPeriod\":\"%s\"}", e.getFromSystem().distanceTo(e.getToSystem()),
+					e.getFuelLevelOnArrival(), e.getTravelledLy(), e.getRemainingLy(), e.getDryPeriod());
+		}
+		out.write("\n]}\n");
+		formatter.flush();
+		if (formatter.ioException() != null) {
+			throw formatter.ioException();
+		}
+	}
+
+}
@@ -0,0 +1,115 @@
+package borg.ed.neutronhighway.export;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import borg.ed.neutronhighway.NeutronHighwayApplication.Route;
+
+/**
+ * Writes routes in several formats at once, one file per route and format.
+ * <p>
+ * Every file is written by its own task on a fixed number of threads, streamed through a buffered
+ * writer into a temp file which is then moved into place. Like in the routing engine, the queue
+ * is bounded and a full queue makes the submitting thread write the file itself. So a batch job
+ * which produces routes faster than they can be written slows down instead of keeping all pending
+ * routes in memory.
+ *
+ * @author <a href="mailto:b.guenther@xsite.de">Boris Guenther</a>
+ */
+public class RouteExportPipeline implements Closeable {
+
+	static final Logger logger = LoggerFactory.getLogger(RouteExportPipeline.class);
+
+	private final ThreadPoolExecutor executor;
+
+	public RouteExportPipeline(int nThreads, int queueCapacity) {
+		this.executor = new ThreadPoolExecutor(nThreads, nThreads, 0L, TimeUnit.MILLISECONDS, new ArrayBlockingQueue<Runnable>(queueCapacity), new ExportThreadFactory(),
+				new ThreadPoolExecutor.CallerRunsPolicy());
+	}
+
+	/**
+	 * @return
+	 *      Completes when all files of the route have been written
+	 */
+	public CompletableFuture<Void> export(final Route route, final File directory, final String baseFilename, List<RouteExporter> exporters) {
+		CompletableFuture<?>[] files = new CompletableFuture<?>[exporters.size()];
+		for (int i = 0; i < files.length; i++) {
+			final RouteExporter exporter = exporters.get(i);
+			files[i] = CompletableFuture.runAsync(() -> {
+				try {
+					write(route, exporter, new File(directory, baseFilename + exporter.getFileSuffix()));
+				} catch (IOException e) {
+					throw new UncheckedIOException(e);
+				}
+			}, this.executor);
+		}
+		return CompletableFuture.allOf(files);
+	}
+
+	/**
+	 * Writes to a temp file and moves it into place, so that readers never see a half written
+	 * route.
+	 */
+	public static void write(Route route, RouteExporter exporter, File file) throws IOException {
+		File directory = file.getAbsoluteFile().getParentFile();
+		if (!directory.exists() && !directory.mkdirs()) {
+			throw new IOException("Cannot create " + directory);
+		}
+		File tempFile = new File(directory, file.getName() + ".tmp");
+		try {
+			try (Writer out = Files.newBufferedWriter(tempFile.toPath(), StandardCharsets.UTF_8)) {
+				exporter.export(route, out);
+			}
+			Files.move(tempFile.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+		} catch (IOException | RuntimeException e) {
+			tempFile.delete();
+			throw e;
+		}
+	}
+
+	/**
+	 * Finishes all submitted files, then stops the threads.
+	 */
+	@Override
+	public void close() {
+		this.executor.shutdown();
+		try {
+			while (!this.executor.awaitTermination(1, TimeUnit.MINUTES)) {
+				logger.info("Waiting for " + this.executor.getQueue().size() + " queued route files");
+			}
+		} catch (InterruptedException e) {
+			this.executor.shutdownNow();
+			Thread.currentThread().interrupt();
+		}
+	}
+
+	private static class ExportThreadFactory implements ThreadFactory {
+
+		private final AtomicInteger counter = new AtomicInteger();
+
+		@Override
+		public Thread newThread(Runnable r) {
+			Thread thread = new Thread(r, "route-export-" + this.counter.incrementAndGet());
+			thread.setDaemon(true);
+			return thread;
+		}
+
+	}
+
+}
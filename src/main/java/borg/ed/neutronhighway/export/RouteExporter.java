@@ -0,0 +1,28 @@
+package borg.ed.neutronhighway.export;
+
+import java.io.IOException;
+import java.io.Writer;
+
+import borg.ed.neutronhighway.NeutronHighwayApplication.Route;
+
+/**
+ * Writes a route in one file format. The route is written element by element straight to the
+ * writer, so the whole document never has to be kept in memory. Implementations have no state of
+ * their own and can export any number of routes concurrently.
+ *
+ * @author <a href="mailto:b.guenther@xsite.de">Boris Guenther</a>
+ */
+public interface RouteExporter {
+
+	/**
+	 * @return
+	 *      Appended to the base file name of the route, e.g. <code>" Route.html"</code>
+	 */
+	String getFileSuffix();
+
+	/**
+	 * Does not close the writer.
+	 */
+	void export(Route route, Writer out) throws IOException;
+
+}
@@ -0,0 +1,70 @@
+package borg.ed.neutronhighway.export;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.util.Formatter;
+import java.util.Locale;
+
+import borg.ed.neutronhighway.NeutronHighwayApplication.DryPeriod;
+import borg.ed.neutronhighway.NeutronHighwayApplication.Route;
+import borg.ed.neutronhighway.NeutronHighwayApplication.RouteElement;
+
+/**
+ * One fixed width line per jump for VoiceAttack: target system, jump distance, arrival star class
+ * and flags. Jumps within a dry period are left out, the line after it has the distance from the
+ * last written system.
+ *
+ * @author <a href="mailto:b.guenther@xsite.de">Boris Guenther</a>
+ */
+public class VoiceAttackRouteExporter implements RouteExporter {
+
+	@Override
+	public String getFileSuffix() {
+		return " Route.txt";
+	}
+
+	@Override
+	public void export(Route route, Writer out) throws IOException {
+		Formatter formatter = new Formatter(out, Locale.US);
+		RouteElement last = null;
+		for (RouteElement curr : route.getElements()) {
+			if (curr.getDryPeriod() != DryPeriod.PART_OF) {
+				writeRow(formatter, curr, last);
+				last = curr;
+			}
+		}
+		formatter.flush();
+		if (formatter.ioException() != null) {
+			throw formatter.ioException();
+		}
+	}
+
+	/**
+	 * @param last
+	 *      The last written element, or null for the first one
+	 */
+	private static void writeRow(Formatter formatter, RouteElement e, RouteElement last) {
+		float jumpDistance = last != null ? last.getToSystem().distanceTo(e.getToSystem()) : e.getFromSystem().distanceTo(e.getToSystem());
+		String flags = "";
+		if (e.getDryPeriod() == DryPeriod.END) {
+			flags += "R";
+		}
+		if (e.getToSystem().getName().replaceAll("[^\\-]", "").length() < 2) {
+			flags += "N"; // Pron name
+		}
+		if (e.getFuelLevelOnArrival() <= (e.getRoute().getFuelJumpLUT().getMaxFuelPerJump() * 1.25f)) {
+			flags += "F";
+		}
+		//			List<Body> valuableBodies = findValuableBodies(e.getToBodies());
+		//			if (valuableBodies.size() > 0) {
+		//				for (Body body : valuableBodies) {
+		//					if (!e.getRoute().getJournal().getScannedBodies().contains(body.getName())) {
+		//						flags += "P"; // Planets
+		//						break;
+		//					}
+		//				}
+		//			}
+		formatter.format("%-50s%5.0f%10s%10s\n", e.getToSystem().getName().replace("'", " "), jumpDistance, e.getToSpectralClass(), flags);
+	}
+
+}
@@ -1,26 +1,69 @@
 package borg.ed.neutronhighway.helper;
 
-import java.util.SortedMap;
-import java.util.TreeMap;
-
+/**
+ * Jump range and fuel usage of one ship as primitive lookup tables.
+ * <p>
+ * The jump range is tabulated for every 100 kg of fuel in the tank, the fuel usage for every 0.1%
+ * of the current max jump range. Values in between are interpolated linearly. Instances are
+ * immutable and can be shared by any number of concurrent searches.
+ */
 public class FuelAndJumpRangeLookup {
 
+	/** Legacy exponent of the fuel usage if the FSD is not known */
+	public static final float DEFAULT_FUEL_POWER = 2.5f;
+
+	private static final int KG_PER_FUEL_STEP = 100;
+	private static final float FUEL_STEPS_PER_TON = 1000f / KG_PER_FUEL_STEP;
+	private static final int FUEL_USAGE_STEPS = 1000;
+
 	private final int maxFuelTons;
 	private final int maxFuelKg;
 	private final float maxFuelPerJump;
+	private final float fuelPower;
 	private final float jumpRangeFuelFull;
 	private final float jumpRangeFuelOpt;
-	private final SortedMap<Integer, Float> fuelUsageByJumpPercent;
-	private final SortedMap<Integer, Float> jumpRangeByFuelKg;
+	private final float[] jumpRangeByFuelStep;
+	private final float[] fuelUsageByJumpPermille;
 
+	/**
+	 * Estimates the tables from the jump ranges shown in the outfitting screen.
+	 */
 	public FuelAndJumpRangeLookup(int maxFuelTons, float maxFuelPerJump, float jumpRangeFuelFull, float jumpRangeFuelOpt) {
+		this(maxFuelTons, maxFuelPerJump, DEFAULT_FUEL_POWER, buildJumpRangeLUT(maxFuelTons, maxFuelPerJump, jumpRangeFuelFull, jumpRangeFuelOpt), jumpRangeFuelFull,
+				jumpRangeFuelOpt);
+	}
+
+	/**
+	 * @param fuelPower
+	 *      Exponent of the fuel usage by jump distance, i.e. the power constant of the FSD
+	 * @param jumpRangeByFuelStep
+	 *      Max jump range for 0, 100, 200, ... kg of fuel up to a full tank
+	 */
+	public FuelAndJumpRangeLookup(int maxFuelTons, float maxFuelPerJump, float fuelPower, float[] jumpRangeByFuelStep) {
+		this(maxFuelTons, maxFuelPerJump, fuelPower, jumpRangeByFuelStep.clone(), jumpRangeByFuelStep[jumpRangeByFuelStep.length - 1], max(jumpRangeByFuelStep));
+	}
+
+	private FuelAndJumpRangeLookup(int maxFuelTons, float maxFuelPerJump, float fuelPower, float[] jumpRangeByFuelStep, float jumpRangeFuelFull,
+			float jumpRangeFuelOpt) {
+		if (jumpRangeByFuelStep.length != maxFuelTons * (int) FUEL_STEPS_PER_TON + 1) {
+			throw new IllegalArgumentException("expected " + (maxFuelTons * (int) FUEL_STEPS_PER_TON + 1) + " jump ranges, got " + jumpRangeByFuelStep.length);
+		}
 		this.maxFuelTons = maxFuelTons;
 		this.maxFuelKg = maxFuelTons * 1000;
 		this.maxFuelPerJump = maxFuelPerJump;
+		this.fuelPower = fuelPower;
 		this.jumpRangeFuelFull = jumpRangeFuelFull;
 		this.jumpRangeFuelOpt = jumpRangeFuelOpt;
-		this.fuelUsageByJumpPercent = buildFuelUsageLUT(maxFuelPerJump);
-		this.jumpRangeByFuelKg = buildJumpRangeLUT(maxFuelTons, maxFuelPerJump, jumpRangeFuelFull, jumpRangeFuelOpt);
+		this.jumpRangeByFuelStep = jumpRangeByFuelStep;
+		this.fuelUsageByJumpPermille = buildFuelUsageLUT(maxFuelPerJump, fuelPower);
+	}
+
+	private static float max(float[] values) {
+		float max = 0f;
+		for (float value : values) {
+			max = Math.max(max, value);
+		}
+		return max;
 	}
 
 	public int getMaxFuelTons() {
@@ -35,32 +78,58 @@ public class FuelAndJumpRangeLookup {
 		return this.maxFuelPerJump;
 	}
 
+	/**
+	 * @return
+	 *      Exponent of the fuel usage by jump distance
+	 */
+	public float getFuelPower() {
+		return this.fuelPower;
+	}
+
+	/**
+	 * @return
+	 *      A copy of the max jump ranges for 0, 100, 200, ... kg of fuel up to a full tank
+	 */
+	public float[] getJumpRangeByFuelStep() {
+		return this.jumpRangeByFuelStep.clone();
+	}
+
 	public float getJumpRangeFuelFull() {
 		return this.jumpRangeFuelFull;
 	}
 
+	/**
+	 * @return
+	 *      The best jump range, which is reached with just enough fuel for a max jump
+	 */
 	public float getJumpRangeFuelOpt() {
 		return this.jumpRangeFuelOpt;
 	}
 
 	public float lookupMaxJumpRange(float fuelLevel) {
-		int kgRounded = ((int) (fuelLevel * 10f)) * 100;
-		if (kgRounded < 0) {
+		final float step = fuelLevel * FUEL_STEPS_PER_TON;
+		if (!(step > 0f)) {
 			return 0f;
-		} else if (kgRounded > this.maxFuelKg) {
-			return this.jumpRangeByFuelKg.get(this.maxFuelKg);
-		} else {
-			return this.jumpRangeByFuelKg.get(kgRounded);
 		}
+		final int i = (int) step;
+		final float[] table = this.jumpRangeByFuelStep;
+		if (i >= table.length - 1) {
+			return table[table.length - 1];
+		}
+		return table[i] + (step - i) * (table[i + 1] - table[i]);
 	}
 
 	/**
 	 * Convenience method which lookups the max jump range by the given fuel level, then simply
 	 * calls {@link #lookupFuelUsageWithKnownMaxJumpRange(float, float)}. If you already know your
 	 * current max jump range use the other method directly.
+	 * <p>
+	 * With less than a max jump worth of fuel in the tank, a jump of the current max range uses
+	 * all of it, so the usage is scaled down accordingly.
 	 */
 	public float lookupFuelUsage(float jumpDistance, float fuelLevel) {
-		return this.lookupFuelUsageWithKnownMaxJumpRange(jumpDistance, this.lookupMaxJumpRange(fuelLevel));
+		final float fuelUsage = this.lookupFuelUsageWithKnownMaxJumpRange(jumpDistance, this.lookupMaxJumpRange(fuelLevel));
+		return fuelLevel < this.maxFuelPerJump ? fuelUsage * Math.max(0f, fuelLevel) / this.maxFuelPerJump : fuelUsage;
 	}
 
 	/**
@@ -72,34 +141,36 @@ public class FuelAndJumpRangeLookup {
 	 *      Fuel usage in tons
 	 */
 	public float lookupFuelUsageWithKnownMaxJumpRange(float jumpDistance, float currentMaxJumpRange) {
-		int jumpPercent = ((int) (jumpDistance / currentMaxJumpRange * 1000f));
-		if (jumpPercent < 0) {
+		final float permille = jumpDistance / currentMaxJumpRange * FUEL_USAGE_STEPS;
+		if (!(permille > 0f)) {
 			return 0f;
-		} else if (jumpPercent > 1000) {
-			return this.fuelUsageByJumpPercent.get(1000);
-		} else {
-			return this.fuelUsageByJumpPercent.get(jumpPercent);
 		}
+		final int i = (int) permille;
+		final float[] table = this.fuelUsageByJumpPermille;
+		if (i >= FUEL_USAGE_STEPS) {
+			return table[FUEL_USAGE_STEPS];
+		}
+		return table[i] + (permille - i) * (table[i + 1] - table[i]);
 	}
 
 	/**
-	 * percent of max current jump range -&gt; fuel usage in tons
+	 * permille of max current jump range -&gt; fuel usage in tons
 	 */
-	private static SortedMap<Integer, Float> buildFuelUsageLUT(float maxFuelPerJump) {
-		SortedMap<Integer, Float> result = new TreeMap<>();
-		for (int percent = 0; percent <= 1000; percent += 1) {
-			result.put(percent, estimateFuelUsage(percent / 1000f, maxFuelPerJump));
+	private static float[] buildFuelUsageLUT(float maxFuelPerJump, float fuelPower) {
+		float[] result = new float[FUEL_USAGE_STEPS + 1];
+		for (int permille = 0; permille <= FUEL_USAGE_STEPS; permille++) {
+			result[permille] = maxFuelPerJump * (float) Math.pow(permille / (float) FUEL_USAGE_STEPS, fuelPower);
 		}
 		return result;
 	}
 
 	/**
-	 * current fuel level in kg -&gt; max current jump range
+	 * current fuel level in steps of 100 kg -&gt; max current jump range
 	 */
-	private static SortedMap<Integer, Float> buildJumpRangeLUT(int maxFuelTons, float maxFuelPerJump, float jumpRangeFuelFull, float jumpRangeFuelOpt) {
-		SortedMap<Integer, Float> result = new TreeMap<>();
-		for (int kg = 0; kg <= (maxFuelTons * 1000); kg += 100) {
-			result.put(kg, estimateCurrentJumpRange(kg / 1000f, maxFuelTons, maxFuelPerJump, jumpRangeFuelFull, jumpRangeFuelOpt));
+	private static float[] buildJumpRangeLUT(int maxFuelTons, float maxFuelPerJump, float jumpRangeFuelFull, float jumpRangeFuelOpt) {
+		float[] result = new float[maxFuelTons * (int) FUEL_STEPS_PER_TON + 1];
+		for (int step = 0; step < result.length; step++) {
+			result[step] = estimateCurrentJumpRange(step / FUEL_STEPS_PER_TON, maxFuelTons, maxFuelPerJump, jumpRangeFuelFull, jumpRangeFuelOpt);
 		}
 		return result;
 	}
@@ -109,7 +180,7 @@ public class FuelAndJumpRangeLookup {
 	}
 
 	private static float estimateFuelUsage(float jumpDistancePercentOfMax, float maxFuelPerJump) {
-		return maxFuelPerJump * (float) Math.pow(jumpDistancePercentOfMax, 2.5);
+		return maxFuelPerJump * (float) Math.pow(jumpDistancePercentOfMax, DEFAULT_FUEL_POWER);
 	}
 
 	public static float estimateCurrentJumpRange(float currentFuelLevel, int maxFuelTons, float maxFuelPerJump, float jumpRangeFuelFull,
@@ -119,7 +190,7 @@ public class FuelAndJumpRangeLookup {
 			float extraJumpRange = jumpRangeFuelOpt - jumpRangeFuelFull;
 			return jumpRangeFuelFull + ((1 - fuelPercentOfMax) * extraJumpRange);
 		} else {
-			// TODO: Need formula for less than maxFuelPerJump in tank
+			// Use a ShipProfile for the real formula with less than maxFuelPerJump in tank
 			float fuelPercentOfOpt = currentFuelLevel / maxFuelPerJump;
 			return (float) Math.pow(fuelPercentOfOpt, 2.5) * jumpRangeFuelOpt;
 		}
@@ -0,0 +1,98 @@
+package borg.ed.neutronhighway.helper;
+
+import java.util.Arrays;
+
+/**
+ * Open addressing hash map from non-negative int keys to int values, without boxing.
+ *
+ * @author <a href="mailto:b.guenther@xsite.de">Boris Guenther</a>
+ */
+public class IntIntHashMap {
+
+	private static final int FREE = -1;
+
+	private final int missingValue;
+	private int[] keys;
+	private int[] values;
+	private int size = 0;
+
+	/**
+	 * @param missingValue
+	 *      Returned by {@link #get(int)} for keys which are not in the map
+	 */
+	public IntIntHashMap(int expectedSize, int missingValue) {
+		this.missingValue = missingValue;
+		this.allocate(Integer.highestOneBit(Math.max(16, expectedSize * 2) - 1) << 1);
+	}
+
+	public int get(int key) {
+		int mask = this.keys.length - 1;
+		for (int slot = mix(key) & mask;; slot = (slot + 1) & mask) {
+			int k = this.keys[slot];
+			if (k == key) {
+				return this.values[slot];
+			} else if (k == FREE) {
+				return this.missingValue;
+			}
+		}
+	}
+
+	public void put(int key, int value) {
+		if (key < 0) {
+			throw new IllegalArgumentException("key must be >= 0, was " + key);
+		}
+		int mask = this.keys.length - 1;
+		for (int slot = mix(key) & mask;; slot = (slot + 1) & mask) {
+			int k = this.keys[slot];
+			if (k == key) {
+				this.values[slot] = value;
+				return;
+			} else if (k == FREE) {
+				this.keys[slot] = key;
+				this.values[slot] = value;
+				if (++this.size * 2 > this.keys.length) {
+					this.rehash();
+				}
+				return;
+			}
+		}
+	}
+
+	public int size() {
+		return this.size;
+	}
+
+	public void clear() {
+		Arrays.fill(this.keys, FREE);
+		this.size = 0;
+	}
+
+	private void rehash() {
+		int[] oldKeys = this.keys;
+		int[] oldValues = this.values;
+		this.allocate(oldKeys.length * 2);
+		int mask = this.keys.length - 1;
+		for (int i = 0; i < oldKeys.length; i++) {
+			if (oldKeys[i] != FREE) {
+				int slot = mix(oldKeys[i]) & mask;
+				while (this.keys[slot] != FREE) {
+					slot = (slot + 1) & mask;
+				}
+				this.keys[slot] = oldKeys[i];
+				this.values[slot] = oldValues[i];
+			}
+		}
+	}
+
+	private void allocate(int capacity) {
+		this.keys = new int[capacity];
+		this.values = new int[capacity];
+		Arrays.fill(this.keys, FREE);
+	}
+
+	private static int mix(int key) {
+		int h = key * 0x9E3779B9;
+		return h ^ (h >>> 16);
+	}
+
+}
@@ -0,0 +1,34 @@
+package borg.ed.neutronhighway.helper;
+
+import java.util.Locale;
+
+/**
+ * The little JSON which is written by hand, for the routing server and the route export.
+ *
+ * @author <a href="mailto:b.guenther@xsite.de">Boris Guenther</a>
+ */
+public class JsonHelper {
+
+	/**
+	 * @return
+	 *      The string as a quoted JSON string, or null as JSON null
+	 */
+	public static String quote(String s) {
+		if (s == null) {
+			return "null";
+		}
+		StringBuilder sb = new StringBuilder(s.length() + 2).append('"');
+		for (int i = 0; i < s.length(); i++) {
+			char c = s.charAt(i);
+			if (c == '"' || c == '\\') {
+				sb.append('\\').append(c);
+			} else if (c < 0x20) {
+				sb.append(String.format(Locale.US, "\\u%04x", (int) c));
+			} else {
+				sb.append(c);
+			}
+		}
+		return sb.append('"').toString();
+	}
+
+}
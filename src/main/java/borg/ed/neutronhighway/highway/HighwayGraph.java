@@ -0,0 +1,224 @@
+package borg.ed.neutronhighway.highway;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.IntBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileChannel.MapMode;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.Locale;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import borg.ed.neutronhighway.helper.FuelAndJumpRangeLookup;
+import borg.ed.neutronhighway.index.GalaxyIndex;
+
+/**
+ * Precomputed neutron highway of a base galaxy for one ship profile, as a compressed sparse row
+ * (CSR) graph. Live deltas are not part of it, so it stays valid while new epochs are published.
+ * <p>
+ * The nodes are the neutron stars, sorted by system ID. The outgoing edges of node n are
+ * {@code targets[offsets[n]..offsets[n+1])}. An edge is either a single boosted jump to another
+ * neutron star ({@code via == -1}), or a boosted jump to a scoopable refuel star {@code via}
+ * followed by an unboosted jump from there to the target, which arrives with an almost full tank.
+ *
+ * <pre>
+ *   0  magic "NHHIGHWY"
+ *   8  int   format version
+ *  12  int   number of nodes
+ *  16  int   number of edges
+ *  20  int   base galaxy size
+ *  24  long  galaxy created at (millis)
+ *  32  int   max fuel (tons)
+ *  36  float max fuel per jump
+ *  40  float jump range with full tank
+ *  44  float jump range with optimal fuel
+ *  48  node system IDs, offsets (nodes + 1), targets, vias
+ * </pre>
+ *
+ * @author <a href="mailto:b.guenther@xsite.de">Boris Guenther</a>
+ */
+public class HighwayGraph {
+
+	static final Logger logger = LoggerFactory.getLogger(HighwayGraph.class);
+
+	public static final int FORMAT_VERSION = 1;
+
+	private static final byte[] MAGIC = "NHHIGHWY".getBytes(StandardCharsets.US_ASCII);
+	private static final int HEADER_SIZE = 48;
+
+	private final int nNodes;
+	private final int nEdges;
+	private final int galaxySize;
+	private final long galaxyCreatedAt;
+	private final int maxFuelTons;
+	private final float maxFuelPerJump;
+	private final float jumpRangeFuelFull;
+	private final float jumpRangeFuelOpt;
+	private final IntBuffer nodeSystemIds;
+	private final IntBuffer offsets;
+	private final IntBuffer targets;
+	private final IntBuffer vias;
+
+	HighwayGraph(int galaxySize, long galaxyCreatedAt, int maxFuelTons, float maxFuelPerJump, float jumpRangeFuelFull, float jumpRangeFuelOpt, IntBuffer nodeSystemIds,
+			IntBuffer offsets, IntBuffer targets, IntBuffer vias) {
+		this.nNodes = nodeSystemIds.limit();
+		this.nEdges = targets.limit();
+		this.galaxySize = galaxySize;
+		this.galaxyCreatedAt = galaxyCreatedAt;
+		this.maxFuelTons = maxFuelTons;
+		this.maxFuelPerJump = maxFuelPerJump;
+		this.jumpRangeFuelFull = jumpRangeFuelFull;
+		this.jumpRangeFuelOpt = jumpRangeFuelOpt;
+		this.nodeSystemIds = nodeSystemIds;
+		this.offsets = offsets;
+		this.targets = targets;
+		this.vias = vias;
+	}
+
+	/**
+	 * @return
+	 *      true if this graph has been built for the base of the given galaxy and for the ship
+	 */
+	public boolean isBuiltFor(GalaxyIndex galaxy, FuelAndJumpRangeLookup fuelJumpLUT) {
+		return this.galaxySize == galaxy.getBase().size() && this.galaxyCreatedAt == galaxy.getBase().getCreatedAt() && this.maxFuelTons == fuelJumpLUT.getMaxFuelTons()
+				&& this.maxFuelPerJump == fuelJumpLUT.getMaxFuelPerJump() && this.jumpRangeFuelFull == fuelJumpLUT.getJumpRangeFuelFull()
+				&& this.jumpRangeFuelOpt == fuelJumpLUT.getJumpRangeFuelOpt();
+	}
+
+	public int getNumberOfNodes() {
+		return this.nNodes;
+	}
+
+	public int getNumberOfEdges() {
+		return this.nEdges;
+	}
+
+	public int getStarSystemId(int node) {
+		return this.nodeSystemIds.get(node);
+	}
+
+	/**
+	 * @return
+	 *      The node of the given system, or -1 if it is not a neutron star
+	 */
+	public int findNode(int starSystemId) {
+		int low = 0;
+		int high = this.nNodes - 1;
+		while (low <= high) {
+			int mid = (low + high) >>> 1;
+			int midId = this.nodeSystemIds.get(mid);
+			if (midId < starSystemId) {
+				low = mid + 1;
+			} else if (midId > starSystemId) {
+				high = mid - 1;
+			} else {
+				return mid;
+			}
+		}
+		return -1;
+	}
+
+	public int getFirstEdge(int node) {
+		return this.offsets.get(node);
+	}
+
+	public int getEndEdge(int node) {
+		return this.offsets.get(node + 1);
+	}
+
+	public int getTarget(int edge) {
+		return this.targets.get(edge);
+	}
+
+	/**
+	 * @return
+	 *      The system ID of the refuel star, or -1 for a direct jump
+	 */
+	public int getVia(int edge) {
+		return this.vias.get(edge);
+	}
+
+	public static HighwayGraph open(File file) throws IOException {
+		try (RandomAccessFile raf = new RandomAccessFile(file, "r"); FileChannel channel = raf.getChannel()) {
+			ByteBuffer buffer = channel.map(MapMode.READ_ONLY, 0, channel.size()).order(ByteOrder.LITTLE_ENDIAN);
+			byte[] magic = new byte[MAGIC.length];
+			buffer.get(magic);
+			for (int i = 0; i < MAGIC.length; i++) {
+				if (magic[i] != MAGIC[i]) {
+					throw new IOException(file + " is not a highway graph");
+				}
+			}
+			int formatVersion = buffer.getInt(8);
+			if (formatVersion != FORMAT_VERSION) {
+				throw new IOException(file + " has format version " + formatVersion + ", expected " + FORMAT_VERSION);
+			}
+			int nNodes = buffer.getInt(12);
+			int nEdges = buffer.getInt(16);
+			int offset = HEADER_SIZE;
+			IntBuffer nodeSystemIds = slice(buffer, offset, nNodes);
+			offset += nNodes * 4;
+			IntBuffer offsets = slice(buffer, offset, nNodes + 1);
+			offset += (nNodes + 1) * 4;
+			IntBuffer targets = slice(buffer, offset, nEdges);
+			offset += nEdges * 4;
+			IntBuffer vias = slice(buffer, offset, nEdges);
+			return new HighwayGraph(buffer.getInt(20), buffer.getLong(24), buffer.getInt(32), buffer.getFloat(36), buffer.getFloat(40), buffer.getFloat(44), nodeSystemIds,
+					offsets, targets, vias);
+		}
+	}
+
+	/**
+	 * Writes the graph to a temp file and moves it into place, like {@link borg.ed.neutronhighway.index.GalaxySnapshot}.
+	 */
+	public void write(File file) throws IOException {
+		final long start = System.currentTimeMillis();
+		File tempFile = new File(file.getParentFile(), file.getName() + ".tmp");
+		try (RandomAccessFile raf = new RandomAccessFile(tempFile, "rw"); FileChannel channel = raf.getChannel()) {
+			raf.setLength(0);
+			ByteBuffer buffer = ByteBuffer.allocate(HEADER_SIZE + (2 * this.nNodes + 1 + 2 * this.nEdges) * 4).order(ByteOrder.LITTLE_ENDIAN);
+			buffer.put(MAGIC);
+			buffer.putInt(FORMAT_VERSION);
+			buffer.putInt(this.nNodes);
+			buffer.putInt(this.nEdges);
+			buffer.putInt(this.galaxySize);
+			buffer.putLong(this.galaxyCreatedAt);
+			buffer.putInt(this.maxFuelTons);
+			buffer.putFloat(this.maxFuelPerJump);
+			buffer.putFloat(this.jumpRangeFuelFull);
+			buffer.putFloat(this.jumpRangeFuelOpt);
+			put(buffer, this.nodeSystemIds);
+			put(buffer, this.offsets);
+			put(buffer, this.targets);
+			put(buffer, this.vias);
+			buffer.flip();
+			while (buffer.hasRemaining()) {
+				channel.write(buffer);
+			}
+			channel.force(true);
+		}
+		Files.move(tempFile.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+		logger.debug(String.format(Locale.US, "Wrote highway graph with %,d nodes and %,d edges to %s in %,d ms", this.nNodes, this.nEdges, file.getName(),
+				System.currentTimeMillis() - start));
+	}
+
+	private static IntBuffer slice(ByteBuffer buffer, int offset, int length) {
+		ByteBuffer slice = buffer.duplicate();
+		slice.position(offset);
+		slice.limit(offset + length * 4);
+		return slice.slice().order(ByteOrder.LITTLE_ENDIAN).asIntBuffer();
+	}
+
+	private static void put(ByteBuffer buffer, IntBuffer values) {
+		for (int i = 0; i < values.limit(); i++) {
+			buffer.putInt(values.get(i));
+		}
+	}
+
+}
@@ -0,0 +1,244 @@
+package borg.ed.neutronhighway.highway;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.IntBuffer;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Locale;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import borg.ed.neutronhighway.aystar.AyStar;
+import borg.ed.neutronhighway.helper.FuelAndJumpRangeLookup;
+import borg.ed.neutronhighway.index.GalaxyIndex;
+import borg.ed.neutronhighway.index.NeighbourVisitor;
+
+/**
+ * Builds the {@link HighwayGraph} of a base galaxy for a ship profile, in parallel on a
+ * {@link ForkJoinPool}. The live deltas of the epoch are left out: their IDs are not stable, and
+ * the graph would have to be rebuilt whenever a new epoch is published. {@link HighwayRouter}
+ * handles them at query time.
+ * <p>
+ * The ranges are conservative: boosted jumps are planned with the range of a full tank, and the
+ * refuel star of every neutron star is the nearest scoopable non-neutron star within unboosted
+ * range, which is reached after scooping full.
+ *
+ * @author <a href="mailto:b.guenther@xsite.de">Boris Guenther</a>
+ */
+public class HighwayGraphBuilder {
+
+	static final Logger logger = LoggerFactory.getLogger(HighwayGraphBuilder.class);
+
+	/** Number of neutron stars per fork-join leaf */
+	private static final int CHUNK_SIZE = 256;
+
+	private final GalaxyIndex galaxy;
+	private final FuelAndJumpRangeLookup fuelJumpLUT;
+	private final float boostedRange;
+	private final float unboostedRange;
+	private final BitSet notNeutron;
+	private int[] nodeSystemIds = null;
+	private int[] refuelStars = null;
+	private int[][] chunkTargets = null;
+	private int[][] chunkVias = null;
+	private int[][] chunkCounts = null;
+
+	public HighwayGraphBuilder(GalaxyIndex galaxy, FuelAndJumpRangeLookup fuelJumpLUT) {
+		this.galaxy = new GalaxyIndex(galaxy.getBase(), galaxy.getBaseOctree());
+		this.fuelJumpLUT = fuelJumpLUT;
+		this.boostedRange = AyStar.maxJumpRange(fuelJumpLUT, fuelJumpLUT.getMaxFuelTons(), true);
+		this.unboostedRange = AyStar.maxJumpRange(fuelJumpLUT, fuelJumpLUT.getMaxFuelTons(), false);
+		this.notNeutron = this.galaxy.getNeutronStars();
+		this.notNeutron.flip(0, this.galaxy.size());
+	}
+
+	/**
+	 * Opens the graph file if it has been built for the base of this galaxy and for the ship,
+	 * otherwise builds the graph on the common pool and saves it.
+	 */
+	public static HighwayGraph loadOrBuild(File file, GalaxyIndex galaxy, FuelAndJumpRangeLookup fuelJumpLUT) throws IOException {
+		if (file.exists()) {
+			try {
+				HighwayGraph graph = HighwayGraph.open(file);
+				if (graph.isBuiltFor(galaxy, fuelJumpLUT)) {
+					return graph;
+				}
+				logger.info("Highway graph " + file + " is outdated, rebuilding");
+			} catch (IOException e) {
+				logger.warn("Failed to open highway graph " + file + ", rebuilding", e);
+			}
+		}
+		HighwayGraph graph = new HighwayGraphBuilder(galaxy, fuelJumpLUT).build(ForkJoinPool.commonPool());
+		if (!file.getParentFile().exists()) {
+			file.getParentFile().mkdirs();
+		}
+		graph.write(file);
+		return graph;
+	}
+
+	public HighwayGraph build(ForkJoinPool pool) {
+		final long start = System.currentTimeMillis();
+		BitSet neutronStars = this.galaxy.getNeutronStars();
+		this.nodeSystemIds = new int[neutronStars.cardinality()];
+		for (int id = neutronStars.nextSetBit(0), node = 0; id >= 0 && id < this.galaxy.size(); id = neutronStars.nextSetBit(id + 1)) {
+			this.nodeSystemIds[node++] = id;
+		}
+		final int nChunks = (this.nodeSystemIds.length + CHUNK_SIZE - 1) / CHUNK_SIZE;
+		this.refuelStars = new int[this.nodeSystemIds.length];
+		this.chunkTargets = new int[nChunks][];
+		this.chunkVias = new int[nChunks][];
+		this.chunkCounts = new int[nChunks][];
+
+		// Refuel stars first, as the edges of every node need those of its neighbours
+		pool.invoke(new ChunkTask(0, nChunks, false));
+		pool.invoke(new ChunkTask(0, nChunks, true));
+
+		int[] offsets = new int[this.nodeSystemIds.length + 1];
+		int nEdges = 0;
+		for (int chunk = 0; chunk < nChunks; chunk++) {
+			for (int i = 0; i < this.chunkCounts[chunk].length; i++) {
+				offsets[chunk * CHUNK_SIZE + i] = nEdges;
+				nEdges += this.chunkCounts[chunk][i];
+			}
+		}
+		offsets[this.nodeSystemIds.length] = nEdges;
+		int[] targets = new int[nEdges];
+		int[] vias = new int[nEdges];
+		for (int chunk = 0; chunk < nChunks; chunk++) {
+			int offset = offsets[chunk * CHUNK_SIZE];
+			int length = this.chunkTargets[chunk].length;
+			System.arraycopy(this.chunkTargets[chunk], 0, targets, offset, length);
+			System.arraycopy(this.chunkVias[chunk], 0, vias, offset, length);
+		}
+
+		HighwayGraph graph = new HighwayGraph(this.galaxy.size(), this.galaxy.getBase().getCreatedAt(), this.fuelJumpLUT.getMaxFuelTons(),
+				this.fuelJumpLUT.getMaxFuelPerJump(), this.fuelJumpLUT.getJumpRangeFuelFull(), this.fuelJumpLUT.getJumpRangeFuelOpt(), IntBuffer.wrap(this.nodeSystemIds),
+				IntBuffer.wrap(offsets), IntBuffer.wrap(targets), IntBuffer.wrap(vias));
+		logger.debug(String.format(Locale.US, "Built highway graph with %,d nodes and %,d edges on %d thread(s) in %,d ms", graph.getNumberOfNodes(), graph.getNumberOfEdges(),
+				pool.getParallelism(), System.currentTimeMillis() - start));
+		return graph;
+	}
+
+	private int findNode(int starSystemId) {
+		return Arrays.binarySearch(this.nodeSystemIds, starSystemId);
+	}
+
+	/**
+	 * Splits the chunks in halves until a single one is left
+	 */
+	private class ChunkTask extends RecursiveAction {
+
+		private static final long serialVersionUID = 1L;
+
+		private final int fromChunk;
+		private final int toChunk;
+		private final boolean edges;
+
+		ChunkTask(int fromChunk, int toChunk, boolean edges) {
+			this.fromChunk = fromChunk;
+			this.toChunk = toChunk;
+			this.edges = edges;
+		}
+
+		@Override
+		protected void compute() {
+			if (this.toChunk - this.fromChunk > 1) {
+				int mid = (this.fromChunk + this.toChunk) >>> 1;
+				invokeAll(new ChunkTask(this.fromChunk, mid, this.edges), new ChunkTask(mid, this.toChunk, this.edges));
+			} else if (this.toChunk > this.fromChunk) {
+				if (this.edges) {
+					new EdgeCollector().collect(this.fromChunk);
+				} else {
+					new RefuelStarFinder().find(this.fromChunk);
+				}
+			}
+		}
+
+	}
+
+	private class RefuelStarFinder implements NeighbourVisitor {
+
+		private int nearest = -1;
+		private float nearestDistance = Float.MAX_VALUE;
+
+		void find(int chunk) {
+			final GalaxyIndex galaxy = HighwayGraphBuilder.this.galaxy;
+			final int to = Math.min(HighwayGraphBuilder.this.nodeSystemIds.length, (chunk + 1) * CHUNK_SIZE);
+			for (int node = chunk * CHUNK_SIZE; node < to; node++) {
+				int id = HighwayGraphBuilder.this.nodeSystemIds[node];
+				this.nearest = -1;
+				this.nearestDistance = Float.MAX_VALUE;
+				galaxy.forEachInRange(galaxy.getX(id), galaxy.getY(id), galaxy.getZ(id), HighwayGraphBuilder.this.unboostedRange, this);
+				HighwayGraphBuilder.this.refuelStars[node] = this.nearest;
+			}
+		}
+
+		@Override
+		public void visit(int id, float distance) {
+			if (distance < this.nearestDistance && HighwayGraphBuilder.this.galaxy.isScoopable(id) && !HighwayGraphBuilder.this.galaxy.isNeutron(id)) {
+				this.nearest = id;
+				this.nearestDistance = distance;
+			}
+		}
+
+	}
+
+	private class EdgeCollector implements NeighbourVisitor {
+
+		private int[] targets = new int[1024];
+		private int[] vias = new int[1024];
+		private int size = 0;
+		private int sourceId = -1;
+
+		void collect(int chunk) {
+			final GalaxyIndex galaxy = HighwayGraphBuilder.this.galaxy;
+			final int from = chunk * CHUNK_SIZE;
+			final int to = Math.min(HighwayGraphBuilder.this.nodeSystemIds.length, from + CHUNK_SIZE);
+			final int[] counts = new int[to - from];
+			for (int node = from; node < to; node++) {
+				int sizeBefore = this.size;
+				this.sourceId = HighwayGraphBuilder.this.nodeSystemIds[node];
+				galaxy.forEachInRange(galaxy.getX(this.sourceId), galaxy.getY(this.sourceId), galaxy.getZ(this.sourceId),
+						HighwayGraphBuilder.this.boostedRange + HighwayGraphBuilder.this.unboostedRange, HighwayGraphBuilder.this.notNeutron, this);
+				counts[node - from] = this.size - sizeBefore;
+			}
+			HighwayGraphBuilder.this.chunkTargets[chunk] = Arrays.copyOf(this.targets, this.size);
+			HighwayGraphBuilder.this.chunkVias[chunk] = Arrays.copyOf(this.vias, this.size);
+			HighwayGraphBuilder.this.chunkCounts[chunk] = counts;
+		}
+
+		@Override
+		public void visit(int id, float distance) {
+			if (id == this.sourceId) {
+				return;
+			}
+			final int target = HighwayGraphBuilder.this.findNode(id);
+			if (target < 0) {
+				return;
+			}
+			if (distance <= HighwayGraphBuilder.this.boostedRange) {
+				this.add(target, -1);
+			}
+			final int refuelStar = HighwayGraphBuilder.this.refuelStars[target];
+			if (refuelStar >= 0 && HighwayGraphBuilder.this.galaxy.distance(this.sourceId, refuelStar) <= HighwayGraphBuilder.this.boostedRange) {
+				this.add(target, refuelStar);
+			}
+		}
+
+		private void add(int target, int via) {
+			if (this.size == this.targets.length) {
+				this.targets = Arrays.copyOf(this.targets, this.size * 2);
+				this.vias = Arrays.copyOf(this.vias, this.size * 2);
+			}
+			this.targets[this.size] = target;
+			this.vias[this.size] = via;
+			this.size++;
+		}
+
+	}
+
+}
@@ -0,0 +1,256 @@
+package borg.ed.neutronhighway.highway;
+
+import java.util.Arrays;
+import java.util.BitSet;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import borg.ed.galaxy.model.StarSystem;
+import borg.ed.neutronhighway.aystar.AyStar;
+import borg.ed.neutronhighway.aystar.BucketQueue;
+import borg.ed.neutronhighway.aystar.Path;
+import borg.ed.neutronhighway.aystar.SearchNodeArena;
+import borg.ed.neutronhighway.helper.FuelAndJumpRangeLookup;
+import borg.ed.neutronhighway.helper.IntIntHashMap;
+import borg.ed.neutronhighway.index.GalaxyIndex;
+import borg.ed.neutronhighway.index.NeighbourVisitor;
+
+/**
+ * Least-jumps routing on a precomputed {@link HighwayGraph}.
+ * <p>
+ * Only the first jump (from the source to a neutron star within unboosted range) and the last jump
+ * (from a neutron star to the goal) are looked up in the galaxy index. Everything in between
+ * follows the CSR edges, with the same fuel model as {@link AyStar}. If the source or the goal
+ * cannot be connected to the highway, no path is returned and the caller should fall back to
+ * {@link AyStar}.
+ * <p>
+ * The graph only knows the base galaxy, the router works on a live epoch. Edges to systems which
+ * are no longer neutron stars, or via systems which are no longer refuel stars, are skipped.
+ * Neutron stars which are not in the graph (new delta systems, or reclassified base systems) are
+ * reached with a plain boosted jump from any node, and left with a range query like the source.
+ * <p>
+ * A router can be reused for many queries, but not concurrently. It is used by the application
+ * only, the routing engine always runs {@link AyStar}.
+ *
+ * @author <a href="mailto:b.guenther@xsite.de">Boris Guenther</a>
+ */
+public class HighwayRouter {
+
+	static final Logger logger = LoggerFactory.getLogger(HighwayRouter.class);
+
+	private final HighwayGraph graph;
+	private final GalaxyIndex galaxy;
+	private final FuelAndJumpRangeLookup fuelJumpLUT;
+	private final BitSet notNeutron;
+	/** Neutron stars of the epoch which are not nodes of the graph */
+	private final int[] offGraphNeutronStars;
+	private final float maxJumpRangeBoosted;
+
+	// Per query
+	private final SearchNodeArena nodes = new SearchNodeArena();
+	private BucketQueue open = null;
+	private IntIntHashMap openNodeBySystem = null;
+	private IntIntHashMap bestJumpsBySystem = null;
+	private int goal = -1;
+	private float directDistanceLy = 0;
+	private int bestGoalNode = -1;
+	private int expansions = 0;
+
+	public HighwayRouter(HighwayGraph graph, GalaxyIndex galaxy, FuelAndJumpRangeLookup fuelJumpLUT) {
+		if (!graph.isBuiltFor(galaxy, fuelJumpLUT)) {
+			throw new IllegalArgumentException("highway graph has been built for another galaxy or ship");
+		}
+		this.graph = graph;
+		this.galaxy = galaxy;
+		this.fuelJumpLUT = fuelJumpLUT;
+		BitSet neutronStars = galaxy.getNeutronStars();
+		int[] offGraph = new int[16];
+		int nOffGraph = 0;
+		for (int id = neutronStars.nextSetBit(0); id >= 0 && id < galaxy.size(); id = neutronStars.nextSetBit(id + 1)) {
+			if (graph.findNode(id) < 0) {
+				if (nOffGraph == offGraph.length) {
+					offGraph = Arrays.copyOf(offGraph, nOffGraph * 2);
+				}
+				offGraph[nOffGraph++] = id;
+			}
+		}
+		this.offGraphNeutronStars = Arrays.copyOf(offGraph, nOffGraph);
+		this.notNeutron = neutronStars;
+		this.notNeutron.flip(0, galaxy.size());
+		this.maxJumpRangeBoosted = 4f * fuelJumpLUT.getJumpRangeFuelOpt();
+	}
+
+	/**
+	 * @return
+	 *      The path with the least jumps along the highway, or null if source or goal are not
+	 *      connected to it
+	 */
+	public Path findPath(StarSystem source, StarSystem goal) {
+		final int sourceId = this.galaxy.findId(source);
+		final int goalId = this.galaxy.findId(goal);
+		if (sourceId < 0) {
+			throw new IllegalArgumentException("source not in useable star systems");
+		} else if (goalId < 0) {
+			throw new IllegalArgumentException("goal not in useable star systems");
+		}
+		this.nodes.clear();
+		this.open = new BucketQueue();
+		this.openNodeBySystem = new IntIntHashMap(1024, -1);
+		this.bestJumpsBySystem = new IntIntHashMap(1024, Integer.MAX_VALUE);
+		this.goal = goalId;
+		this.directDistanceLy = this.galaxy.distance(sourceId, goalId);
+		this.bestGoalNode = -1;
+		this.expansions = 0;
+
+		final int maxFuelTons = this.fuelJumpLUT.getMaxFuelTons();
+		final int sourceNode = this.nodes.add(SearchNodeArena.NO_PARENT, sourceId, 0, 0, this.directDistanceLy, maxFuelTons);
+		this.tryGoal(sourceNode);
+		if (this.galaxy.isNeutron(sourceId)) {
+			this.offer(sourceNode);
+		}
+		this.expandByRange(sourceNode);
+
+		while (!this.open.isEmpty()) {
+			if (this.bestGoalNode >= 0 && this.open.peekKey() / AyStar.TIE_BREAK_BUCKETS >= this.nodes.getTotalJumps(this.bestGoalNode)) {
+				// Nothing left which could beat it
+				break;
+			}
+			final int node = this.open.poll();
+			final int starSystemId = this.nodes.getStarSystemId(node);
+			final int graphNode = this.graph.findNode(starSystemId);
+			this.openNodeBySystem.put(starSystemId, -1);
+			this.expansions++;
+			this.tryGoal(node);
+			if (graphNode >= 0) {
+				this.expand(graphNode, node);
+			} else {
+				this.expandByRange(node);
+			}
+		}
+
+		return this.nodes.toPath(this.galaxy, this.bestGoalNode);
+	}
+
+	/**
+	 * @return
+	 *      The number of highway nodes expanded by the last query
+	 */
+	public int getNumberOfExpansions() {
+		return this.expansions;
+	}
+
+	/**
+	 * Jumps to all neutron stars within range, for the source and for neutron stars which are not
+	 * in the graph.
+	 */
+	private void expandByRange(final int node) {
+		final int starSystemId = this.nodes.getStarSystemId(node);
+		final float fuelLevel = this.nodes.getFuelLevel(node);
+		if (fuelLevel <= this.fuelJumpLUT.getMaxFuelPerJump()) {
+			return; // Must scoop, but neutron stars are not scoopable
+		}
+		final float range = AyStar.maxJumpRange(this.fuelJumpLUT, fuelLevel, this.galaxy.isNeutron(starSystemId));
+		this.galaxy.forEachInRange(this.galaxy.getX(starSystemId), this.galaxy.getY(starSystemId), this.galaxy.getZ(starSystemId), range, this.notNeutron,
+				new NeighbourVisitor() {
+					@Override
+					public void visit(int id, float distance) {
+						if (id != starSystemId) {
+							HighwayRouter.this.jump(node, id, distance);
+						}
+					}
+				});
+	}
+
+	private void expand(int graphNode, int node) {
+		final float fuelLevel = this.nodes.getFuelLevel(node);
+		final boolean mustScoop = fuelLevel <= this.fuelJumpLUT.getMaxFuelPerJump();
+		final float boostedRange = AyStar.maxJumpRange(this.fuelJumpLUT, fuelLevel, true);
+		final int starSystemId = this.nodes.getStarSystemId(node);
+		for (int edge = this.graph.getFirstEdge(graphNode); edge < this.graph.getEndEdge(graphNode); edge++) {
+			final int targetId = this.graph.getStarSystemId(this.graph.getTarget(edge));
+			final int via = this.graph.getVia(edge);
+			if (!this.galaxy.isNeutron(targetId)) {
+				continue; // Reclassified since the graph was built
+			} else if (via < 0) {
+				if (!mustScoop) {
+					float distance = this.galaxy.distance(starSystemId, targetId);
+					if (distance <= boostedRange) {
+						this.jump(node, targetId, distance);
+					}
+				}
+			} else if (!this.galaxy.isScoopable(via) || this.galaxy.isNeutron(via)) {
+				continue; // No refuel star any more
+			} else if (this.nodes.getTotalJumps(node) + 2 < this.bestJumpsBySystem.get(targetId)) {
+				float distance = this.galaxy.distance(starSystemId, via);
+				if (distance <= boostedRange) {
+					int viaNode = this.jumpTo(node, via, distance);
+					this.jump(viaNode, targetId, this.galaxy.distance(via, targetId));
+				}
+			}
+		}
+		if (!mustScoop) {
+			for (int targetId : this.offGraphNeutronStars) {
+				float distance = this.galaxy.distance(starSystemId, targetId);
+				if (distance <= boostedRange) {
+					this.jump(node, targetId, distance);
+				}
+			}
+		}
+	}
+
+	/**
+	 * Adds the jump to a neutron star to the open list, if it is the best way to get there.
+	 */
+	private void jump(int fromNode, int targetId, float distance) {
+		final int jumps = this.nodes.getTotalJumps(fromNode) + 1;
+		if (jumps < this.bestJumpsBySystem.get(targetId)) {
+			this.offer(this.jumpTo(fromNode, targetId, distance));
+		}
+	}
+
+	private int jumpTo(int fromNode, int targetId, float distance) {
+		final int fromId = this.nodes.getStarSystemId(fromNode);
+		final float boostValue = this.galaxy.isNeutron(fromId) ? 4.0f : 1.0f;
+		final float fuelLevel = AyStar.fuelLevelAfterJump(this.fuelJumpLUT, this.nodes.getFuelLevel(fromNode), distance, boostValue, this.galaxy.isNeutron(targetId));
+		return this.nodes.add(fromNode, targetId, this.nodes.getTotalJumps(fromNode) + 1, this.nodes.getTravelledDistanceLy(fromNode) + distance,
+				this.galaxy.distance(targetId, this.goal), fuelLevel);
+	}
+
+	private void offer(int node) {
+		final int starSystemId = this.nodes.getStarSystemId(node);
+		final int jumps = this.nodes.getTotalJumps(node);
+		this.bestJumpsBySystem.put(starSystemId, jumps);
+		final int oldNode = this.openNodeBySystem.get(starSystemId);
+		if (oldNode >= 0) {
+			this.open.remove(oldNode);
+		}
+		this.open.put(node, AyStar.priorityOf(jumps, this.nodes.getRemainingDistanceLy(node), this.maxJumpRangeBoosted, this.directDistanceLy));
+		this.openNodeBySystem.put(starSystemId, node);
+	}
+
+	/**
+	 * Checks if the goal can be reached from the given node with a single jump.
+	 */
+	private void tryGoal(int node) {
+		final int starSystemId = this.nodes.getStarSystemId(node);
+		final int jumps = starSystemId == this.goal ? this.nodes.getTotalJumps(node) : this.nodes.getTotalJumps(node) + 1;
+		if (this.bestGoalNode >= 0 && jumps >= this.nodes.getTotalJumps(this.bestGoalNode)) {
+			return;
+		}
+		if (starSystemId == this.goal) {
+			this.bestGoalNode = node;
+			return;
+		}
+		final float fuelLevel = this.nodes.getFuelLevel(node);
+		final boolean mustScoop = fuelLevel <= this.fuelJumpLUT.getMaxFuelPerJump();
+		if (mustScoop && !this.galaxy.isScoopable(this.goal)) {
+			return;
+		}
+		final float distance = this.galaxy.distance(starSystemId, this.goal);
+		if (distance <= AyStar.maxJumpRange(this.fuelJumpLUT, fuelLevel, this.galaxy.isNeutron(starSystemId))) {
+			this.bestGoalNode = this.jumpTo(node, this.goal, distance);
+		}
+	}
+
+}
@@ -0,0 +1,128 @@
+package borg.ed.neutronhighway.index;
+
+import java.util.Locale;
+
+import borg.ed.galaxy.data.Coord;
+
+/**
+ * Capsule around the line between source and goal, i.e. all points which are at most
+ * {@link #getRadiusLy()} away from that line segment. Used to load only the part of the galaxy
+ * which a route between the two can go through.
+ * <p>
+ * The search never looks at systems whose travelled plus remaining distance exceeds 10 times the
+ * direct distance. These systems all lie within an ellipsoid around the segment, which is
+ * contained in a capsule of 5 times the direct distance. A corridor this wide is
+ * {@link #isComplete() complete}, widening it further cannot give a better route.
+ *
+ * @author <a href="mailto:b.guenther@xsite.de">Boris Guenther</a>
+ */
+public class Corridor {
+
+	/** See the max total distance of the search */
+	private static final float COMPLETE_RADIUS_FACTOR = 5f;
+
+	private final float ax;
+	private final float ay;
+	private final float az;
+	private final float bx;
+	private final float by;
+	private final float bz;
+	private final float radiusLy;
+	private final float lengthSquared;
+
+	public Corridor(Coord source, Coord goal, float radiusLy) {
+		this.ax = source.getX();
+		this.ay = source.getY();
+		this.az = source.getZ();
+		this.bx = goal.getX();
+		this.by = goal.getY();
+		this.bz = goal.getZ();
+		this.radiusLy = radiusLy;
+		this.lengthSquared = (this.bx - this.ax) * (this.bx - this.ax) + (this.by - this.ay) * (this.by - this.ay) + (this.bz - this.az) * (this.bz - this.az);
+	}
+
+	/**
+	 * @return
+	 *      A corridor with the same line and factor times the radius, but no wider than
+	 *      complete
+	 */
+	public Corridor widen(float factor) {
+		float radius = Math.min(this.radiusLy * factor, this.getCompleteRadiusLy());
+		return new Corridor(new Coord(this.ax, this.ay, this.az), new Coord(this.bx, this.by, this.bz), radius);
+	}
+
+	public boolean contains(float x, float y, float z) {
+		return this.distanceToLineSquared(x, y, z) <= this.radiusLy * this.radiusLy;
+	}
+
+	/**
+	 * @return
+	 *      How far the point is inside the corridor, negative if it is outside
+	 */
+	public float distanceToBoundary(float x, float y, float z) {
+		return this.radiusLy - (float) Math.sqrt(this.distanceToLineSquared(x, y, z));
+	}
+
+	public boolean isComplete() {
+		return this.radiusLy >= this.getCompleteRadiusLy();
+	}
+
+	public float getCompleteRadiusLy() {
+		return COMPLETE_RADIUS_FACTOR * (float) Math.sqrt(this.lengthSquared);
+	}
+
+	public float getRadiusLy() {
+		return this.radiusLy;
+	}
+
+	public float getMinX() {
+		return Math.min(this.ax, this.bx) - this.radiusLy;
+	}
+
+	public float getMaxX() {
+		return Math.max(this.ax, this.bx) + this.radiusLy;
+	}
+
+	public float getMinY() {
+		return Math.min(this.ay, this.by) - this.radiusLy;
+	}
+
+	public float getMaxY() {
+		return Math.max(this.ay, this.by) + this.radiusLy;
+	}
+
+	public float getMinZ() {
+		return Math.min(this.az, this.bz) - this.radiusLy;
+	}
+
+	public float getMaxZ() {
+		return Math.max(this.az, this.bz) + this.radiusLy;
+	}
+
+	/**
+	 * @return
+	 *      Approximate volume in Ly³, i.e. a cylinder plus a sphere
+	 */
+	public double getVolumeLy3() {
+		final double r = this.radiusLy;
+		return Math.PI * r * r * Math.sqrt(this.lengthSquared) + 4.0 / 3.0 * Math.PI * r * r * r;
+	}
+
+	private float distanceToLineSquared(float x, float y, float z) {
+		float t = 0;
+		if (this.lengthSquared > 0) {
+			t = ((x - this.ax) * (this.bx - this.ax) + (y - this.ay) * (this.by - this.ay) + (z - this.az) * (this.bz - this.az)) / this.lengthSquared;
+			t = Math.max(0, Math.min(1, t));
+		}
+		final float dx = x - (this.ax + t * (this.bx - this.ax));
+		final float dy = y - (this.ay + t * (this.by - this.ay));
+		final float dz = z - (this.az + t * (this.bz - this.az));
+		return dx * dx + dy * dy + dz * dz;
+	}
+
+	@Override
+	public String toString() {
+		return String.format(Locale.US, "Corridor of %.0f Ly around %.0f Ly", this.radiusLy, Math.sqrt(this.lengthSquared));
+	}
+
+}
@@ -0,0 +1,224 @@
+package borg.ed.neutronhighway.index;
+
+import java.nio.LongBuffer;
+import java.util.BitSet;
+
+import borg.ed.galaxy.data.Coord;
+import borg.ed.galaxy.model.StarSystem;
+import borg.ed.neutronhighway.aystar.MinimizedStarSystem;
+
+/**
+ * Immutable view of the routable galaxy which is used by one search from start to end.
+ * <p>
+ * It consists of the (usually memory-mapped) base galaxy, a small delta galaxy with systems
+ * discovered after the base has been built, and optional copies of the neutron/scoopable bitsets
+ * if base systems have been reclassified. IDs 0..baseSize-1 are base systems, the delta systems
+ * follow after them. New epochs are published by {@link LiveGalaxyIndex}.
+ *
+ * @author <a href="mailto:b.guenther@xsite.de">Boris Guenther</a>
+ */
+public class GalaxyIndex {
+
+	private final long epoch;
+	private final MinimizedGalaxy base;
+	private final OctreeIndex baseOctree;
+	private final int baseSize;
+	private final MinimizedGalaxy delta;
+	private final OctreeIndex deltaOctree;
+	private final long[] neutronOverride;
+	private final long[] scoopableOverride;
+
+	public GalaxyIndex(MinimizedGalaxy base, OctreeIndex baseOctree) {
+		this(0, base, baseOctree, null, null, null, null);
+	}
+
+	GalaxyIndex(long epoch, MinimizedGalaxy base, OctreeIndex baseOctree, MinimizedGalaxy delta, OctreeIndex deltaOctree, long[] neutronOverride,
+			long[] scoopableOverride) {
+		this.epoch = epoch;
+		this.base = base;
+		this.baseOctree = baseOctree;
+		this.baseSize = base.size();
+		this.delta = delta;
+		this.deltaOctree = deltaOctree;
+		this.neutronOverride = neutronOverride;
+		this.scoopableOverride = scoopableOverride;
+	}
+
+	/**
+	 * @return
+	 *      Incremented every time {@link LiveGalaxyIndex} publishes a new version
+	 */
+	public long getEpoch() {
+		return this.epoch;
+	}
+
+	public MinimizedGalaxy getBase() {
+		return this.base;
+	}
+
+	public OctreeIndex getBaseOctree() {
+		return this.baseOctree;
+	}
+
+	MinimizedGalaxy getDelta() {
+		return this.delta;
+	}
+
+	OctreeIndex getDeltaOctree() {
+		return this.deltaOctree;
+	}
+
+	long[] getNeutronOverride() {
+		return this.neutronOverride;
+	}
+
+	long[] getScoopableOverride() {
+		return this.scoopableOverride;
+	}
+
+	/**
+	 * @return
+	 *      true if no system has been added or reclassified since the base galaxy was loaded
+	 */
+	public boolean isBaseOnly() {
+		return this.delta == null && this.neutronOverride == null && this.scoopableOverride == null;
+	}
+
+	public int size() {
+		return this.delta == null ? this.baseSize : this.baseSize + this.delta.size();
+	}
+
+	public int getDeltaSize() {
+		return this.delta == null ? 0 : this.delta.size();
+	}
+
+	public float getX(int id) {
+		return id < this.baseSize ? this.base.getX(id) : this.delta.getX(id - this.baseSize);
+	}
+
+	public float getY(int id) {
+		return id < this.baseSize ? this.base.getY(id) : this.delta.getY(id - this.baseSize);
+	}
+
+	public float getZ(int id) {
+		return id < this.baseSize ? this.base.getZ(id) : this.delta.getZ(id - this.baseSize);
+	}
+
+	public Coord getCoord(int id) {
+		return new Coord(this.getX(id), this.getY(id), this.getZ(id));
+	}
+
+	public boolean isNeutron(int id) {
+		if (id >= this.baseSize) {
+			return this.delta.isNeutron(id - this.baseSize);
+		} else if (this.neutronOverride != null) {
+			return (this.neutronOverride[id >>> 6] & (1L << id)) != 0;
+		} else {
+			return this.base.isNeutron(id);
+		}
+	}
+
+	public boolean isScoopable(int id) {
+		if (id >= this.baseSize) {
+			return this.delta.isScoopable(id - this.baseSize);
+		} else if (this.scoopableOverride != null) {
+			return (this.scoopableOverride[id >>> 6] & (1L << id)) != 0;
+		} else {
+			return this.base.isScoopable(id);
+		}
+	}
+
+	public int countNeutronStars() {
+		int count = this.delta == null ? 0 : this.delta.countNeutronStars();
+		if (this.neutronOverride != null) {
+			for (long bits : this.neutronOverride) {
+				count += Long.bitCount(bits);
+			}
+		} else {
+			count += this.base.countNeutronStars();
+		}
+		return count;
+	}
+
+	/**
+	 * @return
+	 *      A new bitset with the IDs of all neutron stars in this epoch, which the caller may modify
+	 */
+	public BitSet getNeutronStars() {
+		BitSet neutronStars;
+		if (this.neutronOverride != null) {
+			neutronStars = BitSet.valueOf(this.neutronOverride);
+		} else {
+			LongBuffer bits = this.base.neutronBits.duplicate();
+			bits.clear();
+			neutronStars = BitSet.valueOf(bits);
+		}
+		if (this.delta != null) {
+			for (int id = 0; id < this.delta.size(); id++) {
+				if (this.delta.isNeutron(id)) {
+					neutronStars.set(this.baseSize + id);
+				}
+			}
+		}
+		return neutronStars;
+	}
+
+	public String getName(int id) {
+		return id < this.baseSize ? this.base.getName(id) : this.delta.getName(id - this.baseSize);
+	}
+
+	public MinimizedStarSystem getMinimizedStarSystem(int id) {
+		return new MinimizedStarSystem(this.getName(id), this.getCoord(id));
+	}
+
+	public float distance(int id1, int id2) {
+		if (id1 < this.baseSize && id2 < this.baseSize) {
+			return this.base.distance(id1, id2);
+		} else {
+			return this.distanceTo(id1, this.getX(id2), this.getY(id2), this.getZ(id2));
+		}
+	}
+
+	public float distanceTo(int id, float x, float y, float z) {
+		return id < this.baseSize ? this.base.distanceTo(id, x, y, z) : this.delta.distanceTo(id - this.baseSize, x, y, z);
+	}
+
+	/**
+	 * @return
+	 *      The ID of the system with the given name, or -1 if unknown
+	 */
+	public int findId(String name) {
+		int id = this.base.findId(name);
+		if (id < 0 && this.delta != null) {
+			id = this.delta.findId(name);
+			if (id >= 0) {
+				id += this.baseSize;
+			}
+		}
+		return id;
+	}
+
+	public int findId(StarSystem starSystem) {
+		return this.findId(starSystem.getName());
+	}
+
+	/**
+	 * Calls the visitor for every system within range of the given coord, see
+	 * {@link OctreeIndex#forEachInRange(MinimizedGalaxy, float, float, float, float, int, BitSet, NeighbourVisitor)}.
+	 */
+	public void forEachInRange(float x, float y, float z, float range, NeighbourVisitor visitor) {
+		this.forEachInRange(x, y, z, range, null, visitor);
+	}
+
+	/**
+	 * @param tombstones
+	 *      IDs to skip, usually the closed systems of a search. May be null.
+	 */
+	public void forEachInRange(float x, float y, float z, float range, BitSet tombstones, NeighbourVisitor visitor) {
+		this.baseOctree.forEachInRange(this.base, x, y, z, range, 0, tombstones, visitor);
+		if (this.delta != null) {
+			this.deltaOctree.forEachInRange(this.delta, x, y, z, range, this.baseSize, tombstones, visitor);
+		}
+	}
+
+}
@@ -0,0 +1,282 @@
+package borg.ed.neutronhighway.index;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.commons.lang.StringUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.data.util.CloseableIterator;
+
+import borg.ed.galaxy.constants.StarClass;
+import borg.ed.galaxy.data.Coord;
+import borg.ed.galaxy.model.Body;
+import borg.ed.galaxy.model.StarSystem;
+import borg.ed.galaxy.service.GalaxyService;
+import borg.ed.neutronhighway.metrics.SearchMetrics;
+import borg.ed.neutronhighway.metrics.SearchPhase;
+
+/**
+ * Loads the classified neutron and scoopable systems from the galaxy database, or from a
+ * {@link GalaxySnapshot} if there is one which is newer than the database dump.
+ * <p>
+ * The galaxy service is read in slabs along the x axis, several at the same time. Main stars are
+ * classified by a precomputed set of scoopable star classes. Short trips can load just a
+ * {@link Corridor} around the line between source and goal instead of the whole galaxy.
+ *
+ * @author <a href="mailto:b.guenther@xsite.de">Boris Guenther</a>
+ */
+public class GalaxyLoader {
+
+	static final Logger logger = LoggerFactory.getLogger(GalaxyLoader.class);
+
+	/** Half the edge length of the cube which contains the whole galaxy */
+	public static final float GALAXY_EXTENT_LY = 100000f;
+	public static final int DEFAULT_THREADS = 4;
+	public static final int DEFAULT_SLABS = 64;
+
+	private static final float SLAB_BORDER_OFFSET_LY = 1f / 64;
+	private static final EnumSet<StarClass> SCOOPABLE_STAR_CLASSES = scoopableStarClasses();
+
+	private final GalaxyService galaxyService;
+	private final int nThreads;
+	private final int nSlabs;
+
+	public GalaxyLoader(GalaxyService galaxyService) {
+		this(galaxyService, DEFAULT_THREADS, DEFAULT_SLABS);
+	}
+
+	/**
+	 * @param nThreads
+	 *      Number of slabs which are streamed from the galaxy service at the same time
+	 * @param nSlabs
+	 *      Number of slabs the galaxy is split into. More slabs than threads even out the
+	 *      uneven density of the galaxy.
+	 */
+	public GalaxyLoader(GalaxyService galaxyService, int nThreads, int nSlabs) {
+		this.galaxyService = galaxyService;
+		this.nThreads = nThreads;
+		this.nSlabs = nSlabs;
+	}
+
+	/**
+	 * Opens the snapshot file if it exists and is newer than the given data dump. Otherwise loads
+	 * everything from the galaxy service and exports it into the snapshot file for the next run.
+	 *
+	 * @param dataDumpFile
+	 *      The dump the galaxy database has been filled from, used to detect outdated snapshots. May be null.
+	 */
+	public GalaxySnapshot loadSnapshot(File snapshotFile, File dataDumpFile) throws IOException {
+		if (snapshotFile.exists() && (dataDumpFile == null || snapshotFile.lastModified() >= dataDumpFile.lastModified())) {
+			try {
+				return GalaxySnapshot.open(snapshotFile);
+			} catch (IOException e) {
+				logger.warn("Failed to open galaxy snapshot " + snapshotFile + ", reloading from galaxy service", e);
+			}
+		}
+
+		MinimizedGalaxy galaxy = this.loadFromGalaxyService();
+		OctreeIndex octreeIndex = OctreeIndex.build(galaxy);
+		if (!snapshotFile.getParentFile().exists()) {
+			snapshotFile.getParentFile().mkdirs();
+		}
+		GalaxySnapshot.write(snapshotFile, galaxy, octreeIndex);
+		return GalaxySnapshot.open(snapshotFile);
+	}
+
+	/**
+	 * Loads the galaxy in {@link #nSlabs} slabs along the x axis, which are streamed concurrently
+	 * by {@link #nThreads} threads. Every slab is collected into a builder of its own, so the
+	 * threads share nothing until the slabs are merged at the end.
+	 */
+	public MinimizedGalaxy loadFromGalaxyService() {
+		return this.load(null, this.nSlabs);
+	}
+
+	/**
+	 * Loads only the systems within the corridor. The bounding box of the corridor is streamed
+	 * from the galaxy service, in one slab per thread, and everything outside of the capsule is
+	 * dropped before it is added to the galaxy.
+	 */
+	public MinimizedGalaxy loadCorridor(Corridor corridor) {
+		return this.load(corridor, this.nThreads);
+	}
+
+	/**
+	 * @param corridor
+	 *      null for the whole galaxy
+	 */
+	private MinimizedGalaxy load(Corridor corridor, int nSlabs) {
+		final long start = System.currentTimeMillis();
+		final long startNanos = System.nanoTime();
+		final String source = corridor == null ? "galaxy service" : corridor.toString();
+		logger.debug(String.format(Locale.US, "Loading known entry stars and systems from %s in %d slabs using %d threads...", source, nSlabs, this.nThreads));
+		List<Callable<Slab>> tasks = new ArrayList<>(nSlabs);
+		for (int i = 0; i < nSlabs; i++) {
+			tasks.add(new Slab(i, nSlabs, corridor));
+		}
+		ExecutorService executor = Executors.newFixedThreadPool(this.nThreads, new LoaderThreadFactory());
+		MinimizedGalaxy.Builder galaxyBuilder = new MinimizedGalaxy.Builder();
+		long nStars = 0;
+		long nSystems = 0;
+		try {
+			for (Future<Slab> future : executor.invokeAll(tasks)) {
+				Slab slab = future.get();
+				galaxyBuilder.addAll(slab.builder);
+				nStars += slab.nStars;
+				nSystems += slab.nSystems;
+			}
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new IllegalStateException("Interrupted while loading the galaxy", e);
+		} catch (ExecutionException e) {
+			if (e.getCause() instanceof RuntimeException) {
+				throw (RuntimeException) e.getCause();
+			}
+			throw new IllegalStateException("Failed to load the galaxy", e.getCause());
+		} finally {
+			executor.shutdownNow();
+		}
+		MinimizedGalaxy galaxy = galaxyBuilder.build();
+		final long millis = System.currentTimeMillis() - start;
+		logger.debug(String.format(Locale.US, "Loaded %,d systems from %,d stars and %,d system rows from %s in %,d ms (%,.0f rows/s)", galaxy.size(), nStars, nSystems,
+				source, millis, (nStars + nSystems) * 1000.0 / Math.max(1, millis)));
+		// Taken before the first use of SearchMetrics.SHARED, whose class initialization registers the
+		// MBean and the JFR listener and would otherwise be counted as load time
+		final long elapsedNanos = System.nanoTime() - startNanos;
+		SearchMetrics.SHARED.recordPhase(SearchPhase.LOAD, elapsedNanos, galaxy.size(), source);
+		return galaxy;
+	}
+
+	/**
+	 * @return
+	 *      true if a system with this arrival star is marked as neutron
+	 */
+	public static boolean isNeutron(StarClass starClass) {
+		return StarClass.N.equals(starClass);
+	}
+
+	/**
+	 * @return
+	 *      true if a system with this arrival star is marked as scoopable, false for null
+	 */
+	public static boolean isScoopable(StarClass starClass) {
+		return starClass != null && SCOOPABLE_STAR_CLASSES.contains(starClass);
+	}
+
+	private static EnumSet<StarClass> scoopableStarClasses() {
+		EnumSet<StarClass> scoopable = EnumSet.noneOf(StarClass.class);
+		for (StarClass starClass : StarClass.values()) {
+			if (!StarClass.N.equals(starClass) && !StarClass.AEBE.equals(starClass) && !starClass.name().startsWith("C") && !starClass.name().startsWith("D")
+					&& !starClass.name().startsWith("W") && !StarClass.H.equals(starClass) && !StarClass.L.equals(starClass) && !StarClass.MS.equals(starClass)
+					&& !StarClass.S.equals(starClass) && !StarClass.T.equals(starClass) && !StarClass.TTS.equals(starClass) && !StarClass.Y.equals(starClass)) {
+				scoopable.add(starClass);
+			}
+		}
+		return scoopable;
+	}
+
+	/**
+	 * One slab of the galaxy or of the bounding box of a corridor along the x axis, loaded into
+	 * its own builder.
+	 */
+	private class Slab implements Callable<Slab> {
+
+		private final int index;
+		private final Corridor corridor;
+		private final float xmin;
+		private final float xmax;
+		private final float ymin;
+		private final float ymax;
+		private final float zmin;
+		private final float zmax;
+		private final MinimizedGalaxy.Builder builder = new MinimizedGalaxy.Builder();
+		private long nStars = 0;
+		private long nSystems = 0;
+
+		Slab(int index, int nSlabs, Corridor corridor) {
+			this.index = index;
+			this.corridor = corridor;
+			final float e = GALAXY_EXTENT_LY;
+			final float from = corridor == null ? -e : Math.max(-e, corridor.getMinX());
+			final float to = corridor == null ? e : Math.min(e, corridor.getMaxX());
+			this.xmin = index == 0 ? from : slabBorder(from, to, index, nSlabs);
+			this.xmax = index == nSlabs - 1 ? to : slabBorder(from, to, index + 1, nSlabs);
+			this.ymin = corridor == null ? -e : Math.max(-e, corridor.getMinY());
+			this.ymax = corridor == null ? e : Math.min(e, corridor.getMaxY());
+			this.zmin = corridor == null ? -e : Math.max(-e, corridor.getMinZ());
+			this.zmax = corridor == null ? e : Math.min(e, corridor.getMaxZ());
+		}
+
+		@Override
+		public Slab call() {
+			final long start = System.currentTimeMillis();
+			final GalaxyService galaxyService = GalaxyLoader.this.galaxyService;
+			try (CloseableIterator<Body> stream = galaxyService.streamStarsWithin(this.xmin, this.xmax, this.ymin, this.ymax, this.zmin, this.zmax, /* isMainStar = */ true,
+					null)) {
+				while (stream.hasNext()) {
+					Body star = stream.next();
+					this.nStars++;
+					if (StringUtils.isNotEmpty(star.getStarSystemName()) && star.getCoord() != null && star.getStarClass() != null && this.inCorridor(star.getCoord())) {
+						if (isNeutron(star.getStarClass())) {
+							this.builder.add(star, /* neutron = */ true, /* scoopable = */ false);
+						} else if (isScoopable(star.getStarClass())) {
+							this.builder.add(star, /* neutron = */ false, /* scoopable = */ true);
+						}
+					}
+				}
+			}
+			try (CloseableIterator<StarSystem> stream = galaxyService.streamAllSystemsWithin(this.xmin, this.xmax, this.ymin, this.ymax, this.zmin, this.zmax)) {
+				while (stream.hasNext()) {
+					StarSystem starSystem = stream.next();
+					this.nSystems++;
+					if (this.inCorridor(starSystem.getCoord())) {
+						this.builder.add(starSystem, /* neutron = */ false, /* scoopable = */ true);
+					}
+				}
+			}
+			final long millis = System.currentTimeMillis() - start;
+			logger.debug(String.format(Locale.US, "Slab %d x=%.0f..%.0f: %,d stars and %,d systems in %,d ms (%,.0f rows/s)", this.index, this.xmin, this.xmax, this.nStars,
+					this.nSystems, millis, (this.nStars + this.nSystems) * 1000.0 / Math.max(1, millis)));
+			return this;
+		}
+
+		private boolean inCorridor(Coord coord) {
+			return this.corridor == null || this.corridor.contains(coord.getX(), coord.getY(), coord.getZ());
+		}
+
+	}
+
+	/**
+	 * Coordinates are multiples of 1/32 Ly, so borders in between never hit a system twice.
+	 */
+	private static float slabBorder(float from, float to, int index, int nSlabs) {
+		float border = from + index * (to - from) / nSlabs;
+		return (float) Math.floor(border * MinimizedGalaxy.COORD_SCALE) / MinimizedGalaxy.COORD_SCALE + SLAB_BORDER_OFFSET_LY;
+	}
+
+	private static class LoaderThreadFactory implements ThreadFactory {
+
+		private final AtomicInteger counter = new AtomicInteger();
+
+		@Override
+		public Thread newThread(Runnable r) {
+			Thread thread = new Thread(r, "galaxy-loader-" + this.counter.incrementAndGet());
+			thread.setDaemon(true);
+			return thread;
+		}
+
+	}
+
+}
@@ -0,0 +1,257 @@
+package borg.ed.neutronhighway.index;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.IntBuffer;
+import java.nio.LongBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileChannel.MapMode;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.Locale;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import borg.ed.neutronhighway.metrics.SearchMetrics;
+import borg.ed.neutronhighway.metrics.SearchPhase;
+
+/**
+ * Versioned binary file containing a {@link MinimizedGalaxy} and its {@link OctreeIndex}.
+ * <p>
+ * The file is a little-endian header followed by one section per buffer, each 8-byte aligned.
+ * Because the galaxy is already in Morton order we can simply memory-map the sections read-only
+ * and use them as they are, without any parsing. Several JVMs opening the same file share the
+ * pages in the OS page cache.
+ *
+ * <pre>
+ *   0  magic "NHGALAXY"
+ *   8  int  format version
+ *  12  int  number of systems
+ *  16  long created at (millis)
+ *  24  int  number of octree nodes
+ *  28  int  reserved
+ *  32  14 x (long offset, long length) for the sections in {@link Section} order
+ * </pre>
+ *
+ * Every section must be smaller than 2 GiB, which is about 100 million systems.
+ *
+ * @author <a href="mailto:b.guenther@xsite.de">Boris Guenther</a>
+ */
+public class GalaxySnapshot {
+
+	static final Logger logger = LoggerFactory.getLogger(GalaxySnapshot.class);
+
+	public static final int FORMAT_VERSION = 2;
+
+	private static final byte[] MAGIC = "NHGALAXY".getBytes(StandardCharsets.US_ASCII);
+	private static final int HEADER_SIZE = 32 + Section.values().length * 16;
+
+	private enum Section {
+		XS, YS, ZS, NEUTRON_BITS, SCOOPABLE_BITS, NAME_OFFSETS, NAME_TABLE, NODE_CODES, NODE_STARTS, NODE_ENDS, NODE_FIRST_CHILDREN, NODE_LEVELS,
+		NODE_CHILD_COUNTS, NAME_BYTES;
+	}
+
+	private final MinimizedGalaxy galaxy;
+	private final OctreeIndex octreeIndex;
+
+	private GalaxySnapshot(MinimizedGalaxy galaxy, OctreeIndex octreeIndex) {
+		this.galaxy = galaxy;
+		this.octreeIndex = octreeIndex;
+	}
+
+	public MinimizedGalaxy getGalaxy() {
+		return this.galaxy;
+	}
+
+	public OctreeIndex getOctreeIndex() {
+		return this.octreeIndex;
+	}
+
+	/**
+	 * Maps the snapshot into memory. Nothing is read until the pages are actually accessed.
+	 *
+	 * @throws IOException
+	 *      If the file cannot be read or has an unknown format version
+	 */
+	public static GalaxySnapshot open(File file) throws IOException {
+		final long start = System.currentTimeMillis();
+		final long startNanos = System.nanoTime();
+		try (RandomAccessFile raf = new RandomAccessFile(file, "r"); FileChannel channel = raf.getChannel()) {
+			ByteBuffer header = channel.map(MapMode.READ_ONLY, 0, HEADER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+			byte[] magic = new byte[MAGIC.length];
+			header.get(magic);
+			for (int i = 0; i < MAGIC.length; i++) {
+				if (magic[i] != MAGIC[i]) {
+					throw new IOException(file + " is not a galaxy snapshot");
+				}
+			}
+			int formatVersion = header.getInt(8);
+			if (formatVersion != FORMAT_VERSION) {
+				throw new IOException(file + " has format version " + formatVersion + ", expected " + FORMAT_VERSION);
+			}
+			int size = header.getInt(12);
+			long createdAt = header.getLong(16);
+
+			MappedByteBuffer[] sections = new MappedByteBuffer[Section.values().length];
+			for (Section section : Section.values()) {
+				long offset = header.getLong(32 + section.ordinal() * 16);
+				long length = header.getLong(32 + section.ordinal() * 16 + 8);
+				sections[section.ordinal()] = channel.map(MapMode.READ_ONLY, offset, length);
+				sections[section.ordinal()].order(ByteOrder.LITTLE_ENDIAN);
+			}
+
+			MinimizedGalaxy galaxy = new MinimizedGalaxy(size, createdAt, ints(sections, Section.XS), ints(sections, Section.YS), ints(sections, Section.ZS),
+					longs(sections, Section.NEUTRON_BITS), longs(sections, Section.SCOOPABLE_BITS), sections[Section.NAME_BYTES.ordinal()],
+					ints(sections, Section.NAME_OFFSETS), ints(sections, Section.NAME_TABLE));
+			OctreeIndex octreeIndex = new OctreeIndex(longs(sections, Section.NODE_CODES), sections[Section.NODE_LEVELS.ordinal()], ints(sections, Section.NODE_STARTS),
+					ints(sections, Section.NODE_ENDS), ints(sections, Section.NODE_FIRST_CHILDREN), sections[Section.NODE_CHILD_COUNTS.ordinal()]);
+			logger.debug(String.format(Locale.US, "Mapped %,d systems in %,d octree nodes from %s in %,d ms", size, octreeIndex.getNumberOfNodes(), file.getName(),
+					System.currentTimeMillis() - start));
+			final long elapsedNanos = System.nanoTime() - startNanos;
+			SearchMetrics.SHARED.recordPhase(SearchPhase.LOAD, elapsedNanos, size, file.getName());
+			return new GalaxySnapshot(galaxy, octreeIndex);
+		}
+	}
+
+	/**
+	 * Writes the galaxy to a temp file next to the target, then atomically moves it into place so
+	 * that other processes never map a half-written snapshot.
+	 */
+	public static void write(File file, MinimizedGalaxy galaxy, OctreeIndex octreeIndex) throws IOException {
+		final long start = System.currentTimeMillis();
+		File tempFile = new File(file.getParentFile(), file.getName() + ".tmp");
+		try (RandomAccessFile raf = new RandomAccessFile(tempFile, "rw"); FileChannel channel = raf.getChannel()) {
+			raf.setLength(0);
+			ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+			header.put(MAGIC);
+			header.putInt(FORMAT_VERSION);
+			header.putInt(galaxy.size());
+			header.putLong(galaxy.getCreatedAt());
+			header.putInt(octreeIndex.getNumberOfNodes());
+			header.putInt(0);
+
+			long offset = HEADER_SIZE;
+			channel.position(offset);
+			for (Section section : Section.values()) {
+				long length;
+				switch (section) {
+				case XS:
+					length = writeInts(channel, galaxy.xs);
+					break;
+				case YS:
+					length = writeInts(channel, galaxy.ys);
+					break;
+				case ZS:
+					length = writeInts(channel, galaxy.zs);
+					break;
+				case NEUTRON_BITS:
+					length = writeLongs(channel, galaxy.neutronBits);
+					break;
+				case SCOOPABLE_BITS:
+					length = writeLongs(channel, galaxy.scoopableBits);
+					break;
+				case NAME_OFFSETS:
+					length = writeInts(channel, galaxy.nameOffsets);
+					break;
+				case NAME_TABLE:
+					length = writeInts(channel, galaxy.nameTable);
+					break;
+				case NODE_CODES:
+					length = writeLongs(channel, octreeIndex.getNodeCodes());
+					break;
+				case NODE_STARTS:
+					length = writeInts(channel, octreeIndex.getNodeStarts());
+					break;
+				case NODE_ENDS:
+					length = writeInts(channel, octreeIndex.getNodeEnds());
+					break;
+				case NODE_FIRST_CHILDREN:
+					length = writeInts(channel, octreeIndex.getNodeFirstChildren());
+					break;
+				case NODE_LEVELS:
+					length = writeBytes(channel, octreeIndex.getNodeLevels());
+					break;
+				case NODE_CHILD_COUNTS:
+					length = writeBytes(channel, octreeIndex.getNodeChildCounts());
+					break;
+				case NAME_BYTES:
+					length = writeBytes(channel, galaxy.nameBytes);
+					break;
+				default:
+					throw new IllegalStateException("Unknown section " + section);
+				}
+				header.putLong(32 + section.ordinal() * 16, offset);
+				header.putLong(32 + section.ordinal() * 16 + 8, length);
+				offset = (offset + length + 7) & ~7L;
+				channel.position(offset);
+			}
+
+			header.rewind();
+			channel.write(header, 0);
+			channel.force(true);
+		}
+		Files.move(tempFile.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+		logger.debug(String.format(Locale.US, "Wrote %,d systems to %s (%,d bytes) in %,d ms", galaxy.size(), file.getName(), file.length(),
+				System.currentTimeMillis() - start));
+	}
+
+	private static IntBuffer ints(ByteBuffer[] sections, Section section) {
+		return sections[section.ordinal()].asIntBuffer();
+	}
+
+	private static LongBuffer longs(ByteBuffer[] sections, Section section) {
+		return sections[section.ordinal()].asLongBuffer();
+	}
+
+	private static long writeInts(FileChannel channel, IntBuffer values) throws IOException {
+		ByteBuffer chunk = newChunk();
+		for (int i = 0; i < values.limit(); i++) {
+			if (chunk.remaining() < 4) {
+				flush(channel, chunk);
+			}
+			chunk.putInt(values.get(i));
+		}
+		flush(channel, chunk);
+		return values.limit() * 4L;
+	}
+
+	private static long writeLongs(FileChannel channel, LongBuffer values) throws IOException {
+		ByteBuffer chunk = newChunk();
+		for (int i = 0; i < values.limit(); i++) {
+			if (chunk.remaining() < 8) {
+				flush(channel, chunk);
+			}
+			chunk.putLong(values.get(i));
+		}
+		flush(channel, chunk);
+		return values.limit() * 8L;
+	}
+
+	private static long writeBytes(FileChannel channel, ByteBuffer values) throws IOException {
+		ByteBuffer source = values.duplicate();
+		source.clear();
+		while (source.hasRemaining()) {
+			channel.write(source);
+		}
+		return values.limit();
+	}
+
+	private static ByteBuffer newChunk() {
+		return ByteBuffer.allocateDirect(1024 * 1024).order(ByteOrder.LITTLE_ENDIAN);
+	}
+
+	private static void flush(FileChannel channel, ByteBuffer chunk) throws IOException {
+		chunk.flip();
+		while (chunk.hasRemaining()) {
+			channel.write(chunk);
+		}
+		chunk.clear();
+	}
+
+}
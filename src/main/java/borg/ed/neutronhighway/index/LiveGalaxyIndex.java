@@ -0,0 +1,211 @@
+package borg.ed.neutronhighway.index;
+
+import java.nio.LongBuffer;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicReference;
+
+import borg.ed.galaxy.data.Coord;
+
+/**
+ * Publishes new {@link GalaxyIndex} epochs while searches keep running on older ones.
+ * <p>
+ * Writers call {@link #upsert(String, Coord, boolean, boolean)} or
+ * {@link #merge(String, Coord, boolean, boolean)} for every discovered or reclassified system and
+ * then {@link #publish()}. Changes are copy-on-write: the delta galaxy and the flag overrides of
+ * a published epoch are never modified again, so readers only need a volatile read of
+ * {@link #current()} and never block.
+ *
+ * @author <a href="mailto:b.guenther@xsite.de">Boris Guenther</a>
+ */
+public class LiveGalaxyIndex {
+
+	private final AtomicReference<GalaxyIndex> current;
+
+	// Writer state, guarded by this
+	private final Map<String, DeltaSystem> deltaSystems = new LinkedHashMap<>();
+	private boolean deltaDirty = false;
+	private long[] pendingNeutronBits = null;
+	private long[] pendingScoopableBits = null;
+	private long inserts = 0;
+	private long reclassifications = 0;
+
+	public LiveGalaxyIndex(GalaxyIndex initial) {
+		this.current = new AtomicReference<>(initial);
+	}
+
+	/**
+	 * @return
+	 *      The latest published epoch. Keep using the same instance for the whole search.
+	 */
+	public GalaxyIndex current() {
+		return this.current.get();
+	}
+
+	/**
+	 * Inserts a new system or reclassifies a known one. Not visible to readers until
+	 * {@link #publish()} is called.
+	 *
+	 * @return
+	 *      true if this changed anything
+	 */
+	public synchronized boolean upsert(String name, Coord coord, boolean neutron, boolean scoopable) {
+		final GalaxyIndex published = this.current.get();
+		final MinimizedGalaxy base = published.getBase();
+		final int baseId = base.findId(name);
+		if (baseId >= 0) {
+			if (this.isNeutron(published, baseId) == neutron && this.isScoopable(published, baseId) == scoopable) {
+				return false;
+			}
+			if (this.pendingNeutronBits == null) {
+				this.pendingNeutronBits = published.getNeutronOverride() != null ? published.getNeutronOverride().clone() : copyBits(base.neutronBits);
+				this.pendingScoopableBits = published.getScoopableOverride() != null ? published.getScoopableOverride().clone() : copyBits(base.scoopableBits);
+			}
+			setBit(this.pendingNeutronBits, baseId, neutron);
+			setBit(this.pendingScoopableBits, baseId, scoopable);
+			this.reclassifications++;
+			return true;
+		} else {
+			DeltaSystem existing = this.deltaSystems.get(name);
+			if (existing == null) {
+				this.deltaSystems.put(name, new DeltaSystem(coord, neutron, scoopable));
+				this.inserts++;
+			} else if (existing.neutron != neutron || existing.scoopable != scoopable) {
+				this.deltaSystems.put(name, new DeltaSystem(existing.coord, neutron, scoopable));
+				this.reclassifications++;
+			} else {
+				return false;
+			}
+			this.deltaDirty = true;
+			return true;
+		}
+	}
+
+	/**
+	 * Adds the flags to those the system already has, like {@link MinimizedGalaxy.Builder} merges
+	 * the rows of the same system when the galaxy is loaded. A new system is inserted with the
+	 * given flags.
+	 *
+	 * @return
+	 *      true if this changed anything
+	 */
+	public synchronized boolean merge(String name, Coord coord, boolean neutron, boolean scoopable) {
+		final GalaxyIndex published = this.current.get();
+		final int baseId = published.getBase().findId(name);
+		if (baseId >= 0) {
+			return this.upsert(name, coord, neutron || this.isNeutron(published, baseId), scoopable || this.isScoopable(published, baseId));
+		}
+		DeltaSystem existing = this.deltaSystems.get(name);
+		if (existing != null) {
+			return this.upsert(name, coord, neutron || existing.neutron, scoopable || existing.scoopable);
+		}
+		return this.upsert(name, coord, neutron, scoopable);
+	}
+
+	/**
+	 * Inserts a system which is neither in the base galaxy nor in the delta yet. Known systems are
+	 * left as they are.
+	 *
+	 * @return
+	 *      true if the system was new
+	 */
+	public synchronized boolean insertIfAbsent(String name, Coord coord, boolean neutron, boolean scoopable) {
+		if (this.current.get().getBase().findId(name) >= 0 || this.deltaSystems.containsKey(name)) {
+			return false;
+		}
+		return this.upsert(name, coord, neutron, scoopable);
+	}
+
+	/**
+	 * Makes all changes since the last call visible to new searches.
+	 *
+	 * @return
+	 *      The new epoch, or the current one if nothing has changed
+	 */
+	public synchronized GalaxyIndex publish() {
+		final GalaxyIndex published = this.current.get();
+		if (!this.deltaDirty && this.pendingNeutronBits == null) {
+			return published;
+		}
+
+		MinimizedGalaxy delta = published.getDelta();
+		OctreeIndex deltaOctree = published.getDeltaOctree();
+		if (this.deltaDirty) {
+			MinimizedGalaxy.Builder builder = new MinimizedGalaxy.Builder();
+			for (Map.Entry<String, DeltaSystem> e : this.deltaSystems.entrySet()) {
+				builder.add(e.getKey(), e.getValue().coord, e.getValue().neutron, e.getValue().scoopable);
+			}
+			delta = builder.build();
+			deltaOctree = OctreeIndex.build(delta);
+		}
+		long[] neutronOverride = this.pendingNeutronBits != null ? this.pendingNeutronBits : published.getNeutronOverride();
+		long[] scoopableOverride = this.pendingScoopableBits != null ? this.pendingScoopableBits : published.getScoopableOverride();
+
+		GalaxyIndex next = new GalaxyIndex(published.getEpoch() + 1, published.getBase(), published.getBaseOctree(), delta, deltaOctree, neutronOverride,
+				scoopableOverride);
+		this.current.set(next);
+		this.deltaDirty = false;
+		this.pendingNeutronBits = null;
+		this.pendingScoopableBits = null;
+		return next;
+	}
+
+	public synchronized long getInserts() {
+		return this.inserts;
+	}
+
+	public synchronized long getReclassifications() {
+		return this.reclassifications;
+	}
+
+	/**
+	 * @return
+	 *      The neutron flag of a base system including the changes which have not been published yet
+	 */
+	private boolean isNeutron(GalaxyIndex published, int baseId) {
+		return this.pendingNeutronBits != null ? isSet(this.pendingNeutronBits, baseId) : published.isNeutron(baseId);
+	}
+
+	/**
+	 * @return
+	 *      The scoopable flag of a base system including the changes which have not been published yet
+	 */
+	private boolean isScoopable(GalaxyIndex published, int baseId) {
+		return this.pendingScoopableBits != null ? isSet(this.pendingScoopableBits, baseId) : published.isScoopable(baseId);
+	}
+
+	private static long[] copyBits(LongBuffer bits) {
+		long[] copy = new long[bits.limit()];
+		for (int i = 0; i < copy.length; i++) {
+			copy[i] = bits.get(i);
+		}
+		return copy;
+	}
+
+	private static boolean isSet(long[] bits, int id) {
+		return (bits[id >>> 6] & (1L << id)) != 0;
+	}
+
+	private static void setBit(long[] bits, int id, boolean value) {
+		if (value) {
+			bits[id >>> 6] |= 1L << id;
+		} else {
+			bits[id >>> 6] &= ~(1L << id);
+		}
+	}
+
+	private static class DeltaSystem {
+
+		final Coord coord;
+		final boolean neutron;
+		final boolean scoopable;
+
+		DeltaSystem(Coord coord, boolean neutron, boolean scoopable) {
+			this.coord = coord;
+			this.neutron = neutron;
+			this.scoopable = scoopable;
+		}
+
+	}
+
+}
@@ -0,0 +1,418 @@
+package borg.ed.neutronhighway.index;
+
+import java.nio.ByteBuffer;
+import java.nio.IntBuffer;
+import java.nio.LongBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+import borg.ed.galaxy.data.Coord;
+import borg.ed.galaxy.model.Body;
+import borg.ed.galaxy.model.StarSystem;
+import borg.ed.neutronhighway.aystar.MinimizedStarSystem;
+
+/**
+ * Compact struct-of-arrays store of all star systems the router knows about.
+ * <p>
+ * Every system gets a dense int ID (0..size-1). Coordinates are kept as fixed-point ints in
+ * separate arrays, the neutron/scoopable classification as two bitsets, and the names in a
+ * UTF-8 dictionary with an open-addressing hash table for name → ID lookups.
+ * <p>
+ * Target is &lt;= 48 bytes per system: 12 bytes coords, 4 bytes name offset, ~20 bytes name,
+ * ~8 bytes hash table slot and 2 bits of flags. The old Set&lt;MinimizedStarSystem&gt; needed
+ * roughly 180 bytes per system and per set (object headers, String, Coord, HashMap.Node).
+ * <p>
+ * IDs are ordered by the Morton code of their {@link OctreeIndex octree} cell, so every octree
+ * node is a contiguous ID range. The arrays are held as NIO buffers, which are either heap
+ * buffers created by the {@link Builder} or read-only views into a memory-mapped
+ * {@link GalaxySnapshot}.
+ *
+ * @author <a href="mailto:b.guenther@xsite.de">Boris Guenther</a>
+ */
+public class MinimizedGalaxy {
+
+	/** Elite coordinates are multiples of 1/32 Ly, so fixed-point with this scale is lossless */
+	public static final float COORD_SCALE = 32f;
+
+	/** IDs and Morton codes are packed into one long while sorting */
+	private static final int ID_BITS = 27;
+	private static final int LOW_CODE_BITS = 15;
+
+	/** Keeps {@link #touchPages(int, int)} from being optimized away */
+	static volatile int touchedSum = 0;
+
+	private final int size;
+	private final long createdAt;
+	final IntBuffer xs;
+	final IntBuffer ys;
+	final IntBuffer zs;
+	final LongBuffer neutronBits;
+	final LongBuffer scoopableBits;
+	final ByteBuffer nameBytes;
+	final IntBuffer nameOffsets;
+	final IntBuffer nameTable;
+
+	MinimizedGalaxy(int size, long createdAt, IntBuffer xs, IntBuffer ys, IntBuffer zs, LongBuffer neutronBits, LongBuffer scoopableBits, ByteBuffer nameBytes,
+			IntBuffer nameOffsets, IntBuffer nameTable) {
+		this.size = size;
+		this.createdAt = createdAt;
+		this.xs = xs;
+		this.ys = ys;
+		this.zs = zs;
+		this.neutronBits = neutronBits;
+		this.scoopableBits = scoopableBits;
+		this.nameBytes = nameBytes;
+		this.nameOffsets = nameOffsets;
+		this.nameTable = nameTable;
+	}
+
+	public int size() {
+		return this.size;
+	}
+
+	/**
+	 * @return
+	 *      When this galaxy was built from the galaxy database, in millis since epoch
+	 */
+	public long getCreatedAt() {
+		return this.createdAt;
+	}
+
+	public float getX(int id) {
+		return this.xs.get(id) / COORD_SCALE;
+	}
+
+	public float getY(int id) {
+		return this.ys.get(id) / COORD_SCALE;
+	}
+
+	public float getZ(int id) {
+		return this.zs.get(id) / COORD_SCALE;
+	}
+
+	public Coord getCoord(int id) {
+		return new Coord(this.getX(id), this.getY(id), this.getZ(id));
+	}
+
+	public boolean isNeutron(int id) {
+		return (this.neutronBits.get(id >>> 6) & (1L << id)) != 0;
+	}
+
+	public boolean isScoopable(int id) {
+		return (this.scoopableBits.get(id >>> 6) & (1L << id)) != 0;
+	}
+
+	public int countNeutronStars() {
+		int count = 0;
+		for (int i = 0; i < this.neutronBits.limit(); i++) {
+			count += Long.bitCount(this.neutronBits.get(i));
+		}
+		return count;
+	}
+
+	public String getName(int id) {
+		int from = this.nameOffsets.get(id);
+		byte[] bytes = new byte[this.nameOffsets.get(id + 1) - from];
+		for (int i = 0; i < bytes.length; i++) {
+			bytes[i] = this.nameBytes.get(from + i);
+		}
+		return new String(bytes, StandardCharsets.UTF_8);
+	}
+
+	/**
+	 * Reads one value per memory page of the coords and flags of the given IDs, so that the pages
+	 * of a mapped snapshot are loaded. Names are not touched, the search does not need them.
+	 *
+	 * @return
+	 *      The number of bytes covered
+	 */
+	long touchPages(int from, int to) {
+		final int intsPerPage = 1024;
+		final int longsPerPage = 512;
+		if (from >= to) {
+			return 0;
+		}
+		int sum = 0;
+		// The last value as well, the range need not start at a page boundary
+		for (int id = from; id < to + intsPerPage - 1; id += intsPerPage) {
+			final int i = Math.min(id, to - 1);
+			sum += this.xs.get(i) + this.ys.get(i) + this.zs.get(i);
+		}
+		final int lastLong = (to - 1) >>> 6;
+		for (int l = from >>> 6; l < lastLong + longsPerPage; l += longsPerPage) {
+			final int i = Math.min(l, lastLong);
+			sum += (int) (this.neutronBits.get(i) ^ this.scoopableBits.get(i));
+		}
+		touchedSum = sum;
+		return 12L * (to - from) + 16L * (lastLong - (from >>> 6) + 1);
+	}
+
+	public MinimizedStarSystem getMinimizedStarSystem(int id) {
+		return new MinimizedStarSystem(this.getName(id), this.getCoord(id));
+	}
+
+	public float distance(int id1, int id2) {
+		float dx = (this.xs.get(id1) - this.xs.get(id2)) / COORD_SCALE;
+		float dy = (this.ys.get(id1) - this.ys.get(id2)) / COORD_SCALE;
+		float dz = (this.zs.get(id1) - this.zs.get(id2)) / COORD_SCALE;
+		return (float) Math.sqrt(dx * dx + dy * dy + dz * dz);
+	}
+
+	public float distanceTo(int id, float x, float y, float z) {
+		float dx = this.getX(id) - x;
+		float dy = this.getY(id) - y;
+		float dz = this.getZ(id) - z;
+		return (float) Math.sqrt(dx * dx + dy * dy + dz * dz);
+	}
+
+	/**
+	 * @return
+	 *      The ID of the system with the given name, or -1 if unknown
+	 */
+	public int findId(String name) {
+		byte[] bytes = name.getBytes(StandardCharsets.UTF_8);
+		int mask = this.nameTable.limit() - 1;
+		for (int slot = hash(bytes, 0, bytes.length) & mask;; slot = (slot + 1) & mask) {
+			int id = this.nameTable.get(slot);
+			if (id < 0) {
+				return -1;
+			} else if (this.nameEquals(id, bytes)) {
+				return id;
+			}
+		}
+	}
+
+	public int findId(StarSystem starSystem) {
+		return this.findId(starSystem.getName());
+	}
+
+	private boolean nameEquals(int id, byte[] other) {
+		int from = this.nameOffsets.get(id);
+		if (this.nameOffsets.get(id + 1) - from != other.length) {
+			return false;
+		}
+		for (int i = 0; i < other.length; i++) {
+			if (this.nameBytes.get(from + i) != other[i]) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	static int toFixed(float coord) {
+		return Math.round(coord * COORD_SCALE);
+	}
+
+	static int hash(byte[] bytes, int from, int to) {
+		int h = 0x811C9DC5;
+		for (int i = from; i < to; i++) {
+			h = (h ^ bytes[i]) * 0x01000193;
+		}
+		return h ^ (h >>> 16);
+	}
+
+	private static boolean nameEquals(byte[] nameBytes, int from, int to, byte[] other, int otherFrom, int otherTo) {
+		if (to - from != otherTo - otherFrom) {
+			return false;
+		}
+		for (int i = 0; i < to - from; i++) {
+			if (nameBytes[from + i] != other[otherFrom + i]) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * Collects systems, merging the classification of duplicate names, and then freezes them
+	 * into a {@link MinimizedGalaxy}. Not thread-safe.
+	 * <p>
+	 * The IDs returned by {@link #add(String, Coord, boolean, boolean)} are only valid within the
+	 * builder, {@link #build()} renumbers all systems into Morton order.
+	 */
+	public static class Builder {
+
+		private int size = 0;
+		private int[] xs = new int[1024];
+		private int[] ys = new int[1024];
+		private int[] zs = new int[1024];
+		private long[] neutronBits = new long[16];
+		private long[] scoopableBits = new long[16];
+		private byte[] nameBytes = new byte[16 * 1024];
+		private int[] nameOffsets = new int[1025];
+		private int[] nameTable = newNameTable(2048);
+
+		public int add(StarSystem starSystem, boolean neutron, boolean scoopable) {
+			return this.add(starSystem.getName(), starSystem.getCoord(), neutron, scoopable);
+		}
+
+		public int add(Body star, boolean neutron, boolean scoopable) {
+			return this.add(star.getStarSystemName(), star.getCoord(), neutron, scoopable);
+		}
+
+		/**
+		 * @return
+		 *      The ID of the system, which is the existing one if the name was already added
+		 */
+		public int add(String name, Coord coord, boolean neutron, boolean scoopable) {
+			byte[] bytes = name.getBytes(StandardCharsets.UTF_8);
+			return this.add(bytes, 0, bytes.length, toFixed(coord.getX()), toFixed(coord.getY()), toFixed(coord.getZ()), neutron, scoopable);
+		}
+
+		/**
+		 * Adds all systems of the other builder, merging duplicate names like
+		 * {@link #add(String, Coord, boolean, boolean)} does. Names and coordinates are copied as
+		 * they are, without decoding them again.
+		 */
+		public void addAll(Builder other) {
+			for (int id = 0; id < other.size; id++) {
+				this.add(other.nameBytes, other.nameOffsets[id], other.nameOffsets[id + 1], other.xs[id], other.ys[id], other.zs[id],
+						(other.neutronBits[id >>> 6] & (1L << id)) != 0, (other.scoopableBits[id >>> 6] & (1L << id)) != 0);
+			}
+		}
+
+		private int add(byte[] bytes, int from, int to, int x, int y, int z, boolean neutron, boolean scoopable) {
+			final int length = to - from;
+			int mask = this.nameTable.length - 1;
+			int slot = hash(bytes, from, to) & mask;
+			for (;; slot = (slot + 1) & mask) {
+				int id = this.nameTable[slot];
+				if (id < 0) {
+					break;
+				} else if (nameEquals(this.nameBytes, this.nameOffsets[id], this.nameOffsets[id + 1], bytes, from, to)) {
+					this.setFlags(id, neutron, scoopable);
+					return id;
+				}
+			}
+
+			final int id = this.size++;
+			if (this.size > (1 << ID_BITS)) {
+				throw new IllegalStateException("Too many systems: " + this.size);
+			}
+			this.ensureCapacity(this.size, length);
+			this.xs[id] = x;
+			this.ys[id] = y;
+			this.zs[id] = z;
+			System.arraycopy(bytes, from, this.nameBytes, this.nameOffsets[id], length);
+			this.nameOffsets[id + 1] = this.nameOffsets[id] + length;
+			this.setFlags(id, neutron, scoopable);
+			this.nameTable[slot] = id;
+			if (this.size * 2 > this.nameTable.length) {
+				this.nameTable = rehash(this.nameBytes, this.nameOffsets, this.size, this.nameTable.length * 2);
+			}
+			return id;
+		}
+
+		public int size() {
+			return this.size;
+		}
+
+		public MinimizedGalaxy build() {
+			final int n = this.size;
+			final int nLongs = (n + 63) >>> 6;
+
+			// Sort by Morton code of the finest octree cell. The code is too long to be packed together
+			// with the ID, so sort by the upper bits first and then sort each group by the lower bits.
+			long[] codeAndId = new long[n];
+			for (int id = 0; id < n; id++) {
+				long code = OctreeIndex.fineCode(this.xs[id] / COORD_SCALE, this.ys[id] / COORD_SCALE, this.zs[id] / COORD_SCALE);
+				codeAndId[id] = ((code >>> LOW_CODE_BITS) << ID_BITS) | id;
+			}
+			Arrays.sort(codeAndId);
+			for (int groupStart = 0; groupStart < n;) {
+				final long upperCode = codeAndId[groupStart] >>> ID_BITS;
+				int groupEnd = groupStart + 1;
+				while (groupEnd < n && (codeAndId[groupEnd] >>> ID_BITS) == upperCode) {
+					groupEnd++;
+				}
+				if (groupEnd - groupStart > 1) {
+					for (int i = groupStart; i < groupEnd; i++) {
+						int id = (int) (codeAndId[i] & ((1L << ID_BITS) - 1));
+						long code = OctreeIndex.fineCode(this.xs[id] / COORD_SCALE, this.ys[id] / COORD_SCALE, this.zs[id] / COORD_SCALE);
+						codeAndId[i] = ((code & ((1L << LOW_CODE_BITS) - 1)) << ID_BITS) | id;
+					}
+					Arrays.sort(codeAndId, groupStart, groupEnd);
+				}
+				groupStart = groupEnd;
+			}
+
+			int[] sortedXs = new int[n];
+			int[] sortedYs = new int[n];
+			int[] sortedZs = new int[n];
+			long[] sortedNeutronBits = new long[nLongs];
+			long[] sortedScoopableBits = new long[nLongs];
+			byte[] sortedNameBytes = new byte[this.nameOffsets[n]];
+			int[] sortedNameOffsets = new int[n + 1];
+			for (int newId = 0; newId < n; newId++) {
+				int oldId = (int) (codeAndId[newId] & ((1L << ID_BITS) - 1));
+				sortedXs[newId] = this.xs[oldId];
+				sortedYs[newId] = this.ys[oldId];
+				sortedZs[newId] = this.zs[oldId];
+				if ((this.neutronBits[oldId >>> 6] & (1L << oldId)) != 0) {
+					sortedNeutronBits[newId >>> 6] |= 1L << newId;
+				}
+				if ((this.scoopableBits[oldId >>> 6] & (1L << oldId)) != 0) {
+					sortedScoopableBits[newId >>> 6] |= 1L << newId;
+				}
+				int nameLength = this.nameOffsets[oldId + 1] - this.nameOffsets[oldId];
+				System.arraycopy(this.nameBytes, this.nameOffsets[oldId], sortedNameBytes, sortedNameOffsets[newId], nameLength);
+				sortedNameOffsets[newId + 1] = sortedNameOffsets[newId] + nameLength;
+			}
+			int[] sortedNameTable = rehash(sortedNameBytes, sortedNameOffsets, n, tableCapacity(n));
+
+			return new MinimizedGalaxy(n, System.currentTimeMillis(), IntBuffer.wrap(sortedXs), IntBuffer.wrap(sortedYs), IntBuffer.wrap(sortedZs),
+					LongBuffer.wrap(sortedNeutronBits), LongBuffer.wrap(sortedScoopableBits), ByteBuffer.wrap(sortedNameBytes), IntBuffer.wrap(sortedNameOffsets),
+					IntBuffer.wrap(sortedNameTable));
+		}
+
+		private void setFlags(int id, boolean neutron, boolean scoopable) {
+			if (neutron) {
+				this.neutronBits[id >>> 6] |= 1L << id;
+			}
+			if (scoopable) {
+				this.scoopableBits[id >>> 6] |= 1L << id;
+			}
+		}
+
+		private void ensureCapacity(int newSize, int extraNameBytes) {
+			if (newSize > this.xs.length) {
+				int capacity = this.xs.length * 2;
+				this.xs = Arrays.copyOf(this.xs, capacity);
+				this.ys = Arrays.copyOf(this.ys, capacity);
+				this.zs = Arrays.copyOf(this.zs, capacity);
+				this.nameOffsets = Arrays.copyOf(this.nameOffsets, capacity + 1);
+				this.neutronBits = Arrays.copyOf(this.neutronBits, (capacity + 63) >>> 6);
+				this.scoopableBits = Arrays.copyOf(this.scoopableBits, (capacity + 63) >>> 6);
+			}
+			int requiredNameBytes = this.nameOffsets[newSize - 1] + extraNameBytes;
+			if (requiredNameBytes > this.nameBytes.length) {
+				this.nameBytes = Arrays.copyOf(this.nameBytes, Math.max(this.nameBytes.length * 2, requiredNameBytes));
+			}
+		}
+
+		private static int[] rehash(byte[] nameBytes, int[] nameOffsets, int size, int capacity) {
+			int[] table = newNameTable(capacity);
+			int mask = capacity - 1;
+			for (int id = 0; id < size; id++) {
+				int slot = hash(nameBytes, nameOffsets[id], nameOffsets[id + 1]) & mask;
+				while (table[slot] >= 0) {
+					slot = (slot + 1) & mask;
+				}
+				table[slot] = id;
+			}
+			return table;
+		}
+
+		private static int tableCapacity(int n) {
+			return Integer.highestOneBit(Math.max(2, n) * 2 - 1) << 1;
+		}
+
+		private static int[] newNameTable(int capacity) {
+			int[] table = new int[capacity];
+			Arrays.fill(table, -1);
+			return table;
+		}
+
+	}
+
+}
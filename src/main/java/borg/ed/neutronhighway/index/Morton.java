@@ -0,0 +1,52 @@
+package borg.ed.neutronhighway.index;
+
+/**
+ * Morton (Z-order) codes for 3D cell coordinates with up to 21 bits per axis.
+ *
+ * @author <a href="mailto:b.guenther@xsite.de">Boris Guenther</a>
+ */
+public class Morton {
+
+	private Morton() {
+	}
+
+	public static long encode(int x, int y, int z) {
+		return spread(x) | (spread(y) << 1) | (spread(z) << 2);
+	}
+
+	public static int decodeX(long code) {
+		return compact(code);
+	}
+
+	public static int decodeY(long code) {
+		return compact(code >>> 1);
+	}
+
+	public static int decodeZ(long code) {
+		return compact(code >>> 2);
+	}
+
+	/**
+	 * Inserts two zero bits between each of the lower 21 bits.
+	 */
+	private static long spread(int value) {
+		long x = value & 0x1FFFFFL;
+		x = (x | (x << 32)) & 0x1F00000000FFFFL;
+		x = (x | (x << 16)) & 0x1F0000FF0000FFL;
+		x = (x | (x << 8)) & 0x100F00F00F00F00FL;
+		x = (x | (x << 4)) & 0x10C30C30C30C30C3L;
+		x = (x | (x << 2)) & 0x1249249249249249L;
+		return x;
+	}
+
+	private static int compact(long code) {
+		long x = code & 0x1249249249249249L;
+		x = (x | (x >>> 2)) & 0x10C30C30C30C30C3L;
+		x = (x | (x >>> 4)) & 0x100F00F00F00F00FL;
+		x = (x | (x >>> 8)) & 0x1F0000FF0000FFL;
+		x = (x | (x >>> 16)) & 0x1F00000000FFFFL;
+		x = (x | (x >>> 32)) & 0x1FFFFFL;
+		return (int) x;
+	}
+
+}
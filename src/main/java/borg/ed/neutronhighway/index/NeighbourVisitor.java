@@ -0,0 +1,21 @@
+package borg.ed.neutronhighway.index;
+
+/**
+ * Callback for systems within jump range, see
+ * {@link GalaxyIndex#forEachInRange(float, float, float, float, NeighbourVisitor)}.
+ * Implementations are usually reused for every expansion, so nothing has to be allocated per
+ * neighbour.
+ *
+ * @author <a href="mailto:b.guenther@xsite.de">Boris Guenther</a>
+ */
+public interface NeighbourVisitor {
+
+	/**
+	 * @param id
+	 *      ID of the system within range
+	 * @param distance
+	 *      Distance from the center of the query to that system
+	 */
+	void visit(int id, float distance);
+
+}
@@ -0,0 +1,295 @@
+package borg.ed.neutronhighway.index;
+
+import java.nio.ByteBuffer;
+import java.nio.IntBuffer;
+import java.nio.LongBuffer;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Locale;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Density-adaptive linear octree over the system IDs of a {@link MinimizedGalaxy}.
+ * <p>
+ * The galaxy is sorted by the Morton code of its {@link #MAX_LEVEL finest cell}, so every octree
+ * node covers a contiguous ID range. A node is only split if it contains more than
+ * {@link #LEAF_CAPACITY} systems. In the sparse rim a single node can span thousands of Ly, while
+ * in the bubble the leaves go down to a few Ly.
+ * <p>
+ * Queries prune by sphere-box intersection: nodes which do not touch the jump sphere are skipped,
+ * and nodes which lie completely inside it are returned as a whole without descending further.
+ *
+ * @author <a href="mailto:b.guenther@xsite.de">Boris Guenther</a>
+ */
+public class OctreeIndex {
+
+	static final Logger logger = LoggerFactory.getLogger(OctreeIndex.class);
+
+	/** The root cell, which covers the ±100,000 Ly loading cube */
+	public static final float ROOT_MIN = -102400f;
+	public static final float ROOT_SIZE = 204800f;
+
+	/** 17 levels give finest cells of 1.5625 Ly */
+	public static final int MAX_LEVEL = 17;
+
+	public static final int LEAF_CAPACITY = 32;
+
+	private static final float CELL_SIZE = ROOT_SIZE / (1 << MAX_LEVEL);
+
+	private final int nNodes;
+	private final LongBuffer nodeCodes;
+	private final ByteBuffer nodeLevels;
+	private final IntBuffer nodeStarts;
+	private final IntBuffer nodeEnds;
+	private final IntBuffer nodeFirstChildren;
+	private final ByteBuffer nodeChildCounts;
+
+	OctreeIndex(LongBuffer nodeCodes, ByteBuffer nodeLevels, IntBuffer nodeStarts, IntBuffer nodeEnds, IntBuffer nodeFirstChildren, ByteBuffer nodeChildCounts) {
+		this.nNodes = nodeStarts.limit();
+		this.nodeCodes = nodeCodes;
+		this.nodeLevels = nodeLevels;
+		this.nodeStarts = nodeStarts;
+		this.nodeEnds = nodeEnds;
+		this.nodeFirstChildren = nodeFirstChildren;
+		this.nodeChildCounts = nodeChildCounts;
+	}
+
+	/**
+	 * Splits the (Morton-sorted) galaxy breadth-first, so that the children of every node are
+	 * stored next to each other.
+	 */
+	public static OctreeIndex build(MinimizedGalaxy galaxy) {
+		final long start = System.currentTimeMillis();
+		NodeList nodes = new NodeList();
+		if (galaxy.size() > 0) {
+			nodes.add(0L, 0, 0, galaxy.size());
+		}
+		for (int node = 0; node < nodes.size; node++) {
+			final int level = nodes.levels[node];
+			final int from = nodes.starts[node];
+			final int to = nodes.ends[node];
+			if (to - from <= LEAF_CAPACITY || level == MAX_LEVEL) {
+				continue;
+			}
+			final int childShift = 3 * (MAX_LEVEL - level - 1);
+			final long parentCode = nodes.codes[node];
+			int childStart = from;
+			int firstChild = -1;
+			int childCount = 0;
+			while (childStart < to) {
+				final long childCode = fineCode(galaxy, childStart) >>> childShift;
+				if ((childCode >>> 3) != parentCode) {
+					throw new IllegalArgumentException("galaxy is not sorted by Morton code");
+				}
+				int childEnd = upperBound(galaxy, childStart, to, childCode, childShift);
+				int child = nodes.add(childCode, level + 1, childStart, childEnd);
+				if (firstChild < 0) {
+					firstChild = child;
+				}
+				childCount++;
+				childStart = childEnd;
+			}
+			nodes.firstChildren[node] = firstChild;
+			nodes.childCounts[node] = (byte) childCount;
+		}
+		OctreeIndex index = nodes.toIndex();
+		logger.debug(String.format(Locale.US, "Indexed %,d systems into %,d octree nodes in %,d ms", galaxy.size(), index.getNumberOfNodes(),
+				System.currentTimeMillis() - start));
+		return index;
+	}
+
+	/**
+	 * Calls the visitor for every system of the galaxy within range of the given coord. Walks the
+	 * tree recursively (it is only {@link #MAX_LEVEL} deep), so nothing is allocated.
+	 * <p>
+	 * The index itself is shared and never modified. Instead, a search can pass the systems it is
+	 * done with as tombstones. Because the IDs of a node are contiguous, runs of tombstones are
+	 * skipped a word at a time, and nodes which only contain tombstones are not descended into.
+	 *
+	 * @param idOffset
+	 *      Added to the IDs passed to the visitor
+	 * @param tombstones
+	 *      IDs (including the offset) to skip. May be null.
+	 */
+	public void forEachInRange(MinimizedGalaxy galaxy, float x, float y, float z, float range, int idOffset, BitSet tombstones, NeighbourVisitor visitor) {
+		if (this.nNodes > 0) {
+			this.visitNode(0, galaxy, x, y, z, range, idOffset, tombstones, visitor);
+		}
+	}
+
+	private void visitNode(int node, MinimizedGalaxy galaxy, float x, float y, float z, float range, int idOffset, BitSet tombstones, NeighbourVisitor visitor) {
+		final float rangeSquared = range * range;
+		final int level = this.nodeLevels.get(node);
+		final long code = this.nodeCodes.get(node);
+		final float size = ROOT_SIZE / (1 << level);
+		final float minX = ROOT_MIN + Morton.decodeX(code) * size;
+		final float minY = ROOT_MIN + Morton.decodeY(code) * size;
+		final float minZ = ROOT_MIN + Morton.decodeZ(code) * size;
+		if (nearestDistanceSquared(x, y, z, minX, minY, minZ, size) > rangeSquared) {
+			return;
+		}
+		final int end = this.nodeEnds.get(node);
+		final int first = nextLive(this.nodeStarts.get(node), idOffset, tombstones);
+		if (first >= end) {
+			// Nothing but tombstones left in here
+			return;
+		}
+		final int childCount = this.nodeChildCounts.get(node);
+		if (childCount == 0 || farthestDistanceSquared(x, y, z, minX, minY, minZ, size) <= rangeSquared) {
+			for (int id = first; id < end; id = nextLive(id + 1, idOffset, tombstones)) {
+				final float distance = galaxy.distanceTo(id, x, y, z);
+				if (distance <= range) {
+					visitor.visit(id + idOffset, distance);
+				}
+			}
+		} else {
+			final int firstChild = this.nodeFirstChildren.get(node);
+			for (int child = firstChild; child < firstChild + childCount; child++) {
+				this.visitNode(child, galaxy, x, y, z, range, idOffset, tombstones, visitor);
+			}
+		}
+	}
+
+	private static int nextLive(int id, int idOffset, BitSet tombstones) {
+		return tombstones == null ? id : tombstones.nextClearBit(id + idOffset) - idOffset;
+	}
+
+	public int getNumberOfNodes() {
+		return this.nNodes;
+	}
+
+	LongBuffer getNodeCodes() {
+		return this.nodeCodes;
+	}
+
+	ByteBuffer getNodeLevels() {
+		return this.nodeLevels;
+	}
+
+	IntBuffer getNodeStarts() {
+		return this.nodeStarts;
+	}
+
+	IntBuffer getNodeEnds() {
+		return this.nodeEnds;
+	}
+
+	IntBuffer getNodeFirstChildren() {
+		return this.nodeFirstChildren;
+	}
+
+	ByteBuffer getNodeChildCounts() {
+		return this.nodeChildCounts;
+	}
+
+	/**
+	 * @return
+	 *      The Morton code of the cell at the given level which contains the given coord
+	 */
+	public static long sectorCode(float x, float y, float z, int level) {
+		return fineCode(x, y, z) >>> (3 * (MAX_LEVEL - level));
+	}
+
+	/**
+	 * IDs are in Morton order, so the systems of every cell are a contiguous ID range. Found by
+	 * binary search over the coords, so no octree nodes are needed.
+	 *
+	 * @return
+	 *      The first ID in the cell and the first ID after it
+	 */
+	public static int[] sectorRange(MinimizedGalaxy galaxy, long sectorCode, int level) {
+		final int shift = 3 * (MAX_LEVEL - level);
+		final int from = sectorCode == 0 ? 0 : upperBound(galaxy, 0, galaxy.size(), sectorCode - 1, shift);
+		final int to = upperBound(galaxy, from, galaxy.size(), sectorCode, shift);
+		return new int[] { from, to };
+	}
+
+	/**
+	 * @return
+	 *      The Morton code of the finest cell containing the given coord
+	 */
+	static long fineCode(float x, float y, float z) {
+		return Morton.encode(cellOf(x), cellOf(y), cellOf(z));
+	}
+
+	private static long fineCode(MinimizedGalaxy galaxy, int id) {
+		return fineCode(galaxy.getX(id), galaxy.getY(id), galaxy.getZ(id));
+	}
+
+	private static int cellOf(float coord) {
+		int cell = (int) Math.floor((coord - ROOT_MIN) / CELL_SIZE);
+		return Math.max(0, Math.min((1 << MAX_LEVEL) - 1, cell));
+	}
+
+	/**
+	 * @return
+	 *      The first ID in [from, to) whose code at the given shift is greater than childCode
+	 */
+	private static int upperBound(MinimizedGalaxy galaxy, int from, int to, long childCode, int childShift) {
+		int low = from;
+		int high = to;
+		while (low < high) {
+			int mid = (low + high) >>> 1;
+			if ((fineCode(galaxy, mid) >>> childShift) <= childCode) {
+				low = mid + 1;
+			} else {
+				high = mid;
+			}
+		}
+		return low;
+	}
+
+	private static float nearestDistanceSquared(float x, float y, float z, float minX, float minY, float minZ, float size) {
+		float dx = Math.max(0, Math.max(minX - x, x - (minX + size)));
+		float dy = Math.max(0, Math.max(minY - y, y - (minY + size)));
+		float dz = Math.max(0, Math.max(minZ - z, z - (minZ + size)));
+		return dx * dx + dy * dy + dz * dz;
+	}
+
+	private static float farthestDistanceSquared(float x, float y, float z, float minX, float minY, float minZ, float size) {
+		float dx = Math.max(Math.abs(x - minX), Math.abs(x - (minX + size)));
+		float dy = Math.max(Math.abs(y - minY), Math.abs(y - (minY + size)));
+		float dz = Math.max(Math.abs(z - minZ), Math.abs(z - (minZ + size)));
+		return dx * dx + dy * dy + dz * dz;
+	}
+
+	private static class NodeList {
+
+		int size = 0;
+		long[] codes = new long[1024];
+		byte[] levels = new byte[1024];
+		int[] starts = new int[1024];
+		int[] ends = new int[1024];
+		int[] firstChildren = new int[1024];
+		byte[] childCounts = new byte[1024];
+
+		int add(long code, int level, int start, int end) {
+			if (this.size == this.codes.length) {
+				int capacity = this.size * 2;
+				this.codes = Arrays.copyOf(this.codes, capacity);
+				this.levels = Arrays.copyOf(this.levels, capacity);
+				this.starts = Arrays.copyOf(this.starts, capacity);
+				this.ends = Arrays.copyOf(this.ends, capacity);
+				this.firstChildren = Arrays.copyOf(this.firstChildren, capacity);
+				this.childCounts = Arrays.copyOf(this.childCounts, capacity);
+			}
+			this.codes[this.size] = code;
+			this.levels[this.size] = (byte) level;
+			this.starts[this.size] = start;
+			this.ends[this.size] = end;
+			this.firstChildren[this.size] = -1;
+			this.childCounts[this.size] = 0;
+			return this.size++;
+		}
+
+		OctreeIndex toIndex() {
+			return new OctreeIndex(LongBuffer.wrap(Arrays.copyOf(this.codes, this.size)), ByteBuffer.wrap(Arrays.copyOf(this.levels, this.size)),
+					IntBuffer.wrap(Arrays.copyOf(this.starts, this.size)), IntBuffer.wrap(Arrays.copyOf(this.ends, this.size)),
+					IntBuffer.wrap(Arrays.copyOf(this.firstChildren, this.size)), ByteBuffer.wrap(Arrays.copyOf(this.childCounts, this.size)));
+		}
+
+	}
+
+}
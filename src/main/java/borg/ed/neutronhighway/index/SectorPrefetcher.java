@@ -0,0 +1,220 @@
+package borg.ed.neutronhighway.index;
+
+import java.io.Closeable;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Loads the pages of a mapped {@link GalaxySnapshot} ahead of the search, sector by sector.
+ * <p>
+ * The snapshot is mapped, not read, so the OS loads its pages only when the search first touches
+ * them. On a cold node every new region the frontier reaches stalls the search on disk reads.
+ * Whenever the search enters a new sector, the sectors from there towards the goal are touched on
+ * background threads, so that their pages are usually resident when the search gets there.
+ * <p>
+ * Warm sectors are kept in an LRU with a cap on their total size. A sector which is evicted is
+ * only forgotten: its pages are clean and the OS reclaims them under memory pressure, so the heap
+ * does not grow with the galaxy. If the search comes back to it, it is touched again. The queue
+ * is bounded, and prefetches which do not fit are dropped, the search never waits for them.
+ *
+ * @author <a href="mailto:b.guenther@xsite.de">Boris Guenther</a>
+ */
+public class SectorPrefetcher implements Closeable {
+
+	static final Logger logger = LoggerFactory.getLogger(SectorPrefetcher.class);
+
+	/** 800 Ly, a few boosted jumps */
+	public static final int DEFAULT_SECTOR_LEVEL = 8;
+	/** Number of sectors towards the goal, after the current one */
+	public static final int DEFAULT_LOOKAHEAD_SECTORS = 2;
+	public static final long DEFAULT_MAX_WARM_BYTES = 512L * 1024 * 1024;
+
+	private final int sectorLevel;
+	private final float sectorSizeLy;
+	private final int lookaheadSectors;
+	private final long maxWarmBytes;
+	private final ThreadPoolExecutor executor;
+
+	/** Sector code to bytes, in access order. Guarded by itself. */
+	private final LinkedHashMap<Long, Long> warmSectors = new LinkedHashMap<>(256, 0.75f, true);
+	private final Set<Long> inFlight = new HashSet<>();
+	private MinimizedGalaxy warmGalaxy = null;
+	private long warmBytes = 0;
+
+	private final AtomicLong prefetched = new AtomicLong();
+	private final AtomicLong prefetchedBytes = new AtomicLong();
+	private final AtomicLong alreadyWarm = new AtomicLong();
+	private final AtomicLong dropped = new AtomicLong();
+	private final AtomicLong evicted = new AtomicLong();
+
+	public SectorPrefetcher(int nThreads, long maxWarmBytes) {
+		this(nThreads, maxWarmBytes, DEFAULT_SECTOR_LEVEL, DEFAULT_LOOKAHEAD_SECTORS);
+	}
+
+	public SectorPrefetcher(int nThreads, long maxWarmBytes, int sectorLevel, int lookaheadSectors) {
+		this.sectorLevel = sectorLevel;
+		this.sectorSizeLy = OctreeIndex.ROOT_SIZE / (1 << sectorLevel);
+		this.lookaheadSectors = lookaheadSectors;
+		this.maxWarmBytes = maxWarmBytes;
+		this.executor = new ThreadPoolExecutor(nThreads, nThreads, 0L, TimeUnit.MILLISECONDS, new ArrayBlockingQueue<Runnable>(16 * nThreads), new PrefetchThreadFactory(),
+				new ThreadPoolExecutor.AbortPolicy());
+	}
+
+	/**
+	 * @return
+	 *      The sector which contains the given coord. Cheap enough to be called for every
+	 *      expansion, so that callers only prefetch when it changes.
+	 */
+	public long sectorOf(float x, float y, float z) {
+		return OctreeIndex.sectorCode(x, y, z, this.sectorLevel);
+	}
+
+	/**
+	 * Touches the sector of x/y/z and the next sectors in the direction of the goal in the
+	 * background. Returns immediately.
+	 */
+	public void prefetch(MinimizedGalaxy galaxy, float x, float y, float z, float goalX, float goalY, float goalZ) {
+		final float dx = goalX - x;
+		final float dy = goalY - y;
+		final float dz = goalZ - z;
+		final float distance = (float) Math.sqrt(dx * dx + dy * dy + dz * dz);
+		long prevSector = -1;
+		for (int k = 0; k <= this.lookaheadSectors; k++) {
+			final float t = distance > 0 ? Math.min(1f, k * this.sectorSizeLy / distance) : 0f;
+			final long sector = this.sectorOf(x + t * dx, y + t * dy, z + t * dz);
+			if (sector != prevSector) {
+				this.submit(galaxy, sector);
+				prevSector = sector;
+			}
+			if (t >= 1f) {
+				break;
+			}
+		}
+	}
+
+	private void submit(final MinimizedGalaxy galaxy, final long sector) {
+		final Long key = Long.valueOf(sector);
+		synchronized (this.warmSectors) {
+			if (galaxy != this.warmGalaxy) {
+				// A new snapshot has been swapped in, nothing of it is warm yet
+				this.warmSectors.clear();
+				this.inFlight.clear();
+				this.warmGalaxy = galaxy;
+				this.warmBytes = 0;
+			}
+			if (this.warmSectors.get(key) != null) {
+				this.alreadyWarm.incrementAndGet();
+				return;
+			} else if (!this.inFlight.add(key)) {
+				return;
+			}
+		}
+		try {
+			this.executor.execute(() -> this.touch(galaxy, key));
+		} catch (RejectedExecutionException e) {
+			this.dropped.incrementAndGet();
+			synchronized (this.warmSectors) {
+				this.inFlight.remove(key);
+			}
+		}
+	}
+
+	private void touch(MinimizedGalaxy galaxy, Long key) {
+		long bytes = 0;
+		try {
+			final int[] range = OctreeIndex.sectorRange(galaxy, key.longValue(), this.sectorLevel);
+			bytes = galaxy.touchPages(range[0], range[1]);
+			this.prefetched.incrementAndGet();
+			this.prefetchedBytes.addAndGet(bytes);
+		} catch (RuntimeException e) {
+			logger.warn("Failed to prefetch sector " + Long.toHexString(key.longValue()), e);
+		}
+		synchronized (this.warmSectors) {
+			if (galaxy != this.warmGalaxy || !this.inFlight.remove(key)) {
+				return;
+			}
+			this.warmSectors.put(key, Long.valueOf(bytes));
+			this.warmBytes += bytes;
+			for (Iterator<Map.Entry<Long, Long>> it = this.warmSectors.entrySet().iterator(); this.warmBytes > this.maxWarmBytes && it.hasNext();) {
+				Map.Entry<Long, Long> eldest = it.next();
+				if (!eldest.getKey().equals(key)) {
+					this.warmBytes -= eldest.getValue().longValue();
+					it.remove();
+					this.evicted.incrementAndGet();
+				}
+			}
+		}
+		if (logger.isTraceEnabled()) {
+			logger.trace(String.format(Locale.US, "Prefetched sector %x with %,d bytes", key.longValue(), bytes));
+		}
+	}
+
+	public int getNumberOfWarmSectors() {
+		synchronized (this.warmSectors) {
+			return this.warmSectors.size();
+		}
+	}
+
+	public long getWarmBytes() {
+		synchronized (this.warmSectors) {
+			return this.warmBytes;
+		}
+	}
+
+	public long getPrefetched() {
+		return this.prefetched.get();
+	}
+
+	public long getPrefetchedBytes() {
+		return this.prefetchedBytes.get();
+	}
+
+	public long getAlreadyWarm() {
+		return this.alreadyWarm.get();
+	}
+
+	public long getDropped() {
+		return this.dropped.get();
+	}
+
+	public long getEvicted() {
+		return this.evicted.get();
+	}
+
+	/**
+	 * Stops the threads, queued prefetches are discarded.
+	 */
+	@Override
+	public void close() {
+		this.executor.shutdownNow();
+	}
+
+	private static class PrefetchThreadFactory implements ThreadFactory {
+
+		private final AtomicInteger counter = new AtomicInteger();
+
+		@Override
+		public Thread newThread(Runnable r) {
+			Thread thread = new Thread(r, "sector-prefetch-" + this.counter.incrementAndGet());
+			thread.setDaemon(true);
+			thread.setPriority(Thread.MIN_PRIORITY);
+			return thread;
+		}
+
+	}
+
+}
@@ -0,0 +1,95 @@
+package borg.ed.neutronhighway.ingest;
+
+import java.util.Locale;
+
+import org.apache.commons.lang.StringUtils;
+
+import borg.ed.galaxy.constants.StarClass;
+import borg.ed.galaxy.data.Coord;
+import borg.ed.neutronhighway.index.GalaxyLoader;
+
+/**
+ * A discovered system, optionally with the class of its arrival star.
+ * <p>
+ * The line format is tab-separated: <code>timestampMillis name x y z [starClass]</code>. An empty
+ * star class means the main star is not known yet. Like a system row of the galaxy database, every
+ * event makes its system scoopable, and a neutron main star adds the neutron flag. Flags are never
+ * taken away, a white dwarf does not make a known system unscoopable.
+ *
+ * @author <a href="mailto:b.guenther@xsite.de">Boris Guenther</a>
+ */
+public class DiscoveryEvent {
+
+	private final long timestamp;
+	private final String starSystemName;
+	private final Coord coord;
+	private final StarClass starClass;
+
+	public DiscoveryEvent(long timestamp, String starSystemName, Coord coord, StarClass starClass) {
+		this.timestamp = timestamp;
+		this.starSystemName = starSystemName;
+		this.coord = coord;
+		this.starClass = starClass;
+	}
+
+	/**
+	 * @throws IllegalArgumentException
+	 *      If the line is malformed
+	 */
+	public static DiscoveryEvent parse(String line) {
+		String[] fields = line.split("\t", -1);
+		if (fields.length < 5 || StringUtils.isEmpty(fields[1])) {
+			throw new IllegalArgumentException("Malformed discovery event: " + line);
+		}
+		try {
+			long timestamp = Long.parseLong(fields[0].trim());
+			Coord coord = new Coord(Float.parseFloat(fields[2].trim()), Float.parseFloat(fields[3].trim()), Float.parseFloat(fields[4].trim()));
+			StarClass starClass = fields.length > 5 && StringUtils.isNotBlank(fields[5]) ? StarClass.valueOf(fields[5].trim()) : null;
+			return new DiscoveryEvent(timestamp, fields[1], coord, starClass);
+		} catch (IllegalArgumentException e) {
+			throw new IllegalArgumentException("Malformed discovery event: " + line, e);
+		}
+	}
+
+	public boolean isStarClassKnown() {
+		return this.starClass != null;
+	}
+
+	/**
+	 * @return
+	 *      Classified like by the {@link GalaxyLoader}, false if the star class is not known
+	 */
+	public boolean isNeutron() {
+		return GalaxyLoader.isNeutron(this.starClass);
+	}
+
+	/**
+	 * @return
+	 *      Classified like by the {@link GalaxyLoader}, false if the star class is not known
+	 */
+	public boolean isScoopable() {
+		return GalaxyLoader.isScoopable(this.starClass);
+	}
+
+	@Override
+	public String toString() {
+		return String.format(Locale.US, "%s (%s) %s", this.getStarSystemName(), this.getCoord(), this.getStarClass());
+	}
+
+	public long getTimestamp() {
+		return this.timestamp;
+	}
+
+	public String getStarSystemName() {
+		return this.starSystemName;
+	}
+
+	public Coord getCoord() {
+		return this.coord;
+	}
+
+	public StarClass getStarClass() {
+		return this.starClass;
+	}
+
+}
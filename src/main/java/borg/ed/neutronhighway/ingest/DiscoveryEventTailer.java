@@ -0,0 +1,185 @@
+package borg.ed.neutronhighway.ingest;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.charset.StandardCharsets;
+import java.util.Locale;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import borg.ed.neutronhighway.index.GalaxyIndex;
+import borg.ed.neutronhighway.index.GalaxyLoader;
+import borg.ed.neutronhighway.index.LiveGalaxyIndex;
+
+/**
+ * Tails a file of {@link DiscoveryEvent} lines (like <code>tail -f</code>) and applies them to a
+ * {@link LiveGalaxyIndex}. All lines found in one poll are applied as one batch and published as
+ * one new epoch.
+ * <p>
+ * Events are merged into the flags a system already has, like the {@link GalaxyLoader} merges the
+ * rows of a system. An event which the next reload would not change anything for does not
+ * publish a new epoch either.
+ * <p>
+ * The file stands in for the live feed. Whoever writes it should only append complete lines; an
+ * incomplete last line is left for the next poll. If the file is truncated we start over from the
+ * beginning.
+ *
+ * @author <a href="mailto:b.guenther@xsite.de">Boris Guenther</a>
+ */
+public class DiscoveryEventTailer implements Runnable, Closeable {
+
+	static final Logger logger = LoggerFactory.getLogger(DiscoveryEventTailer.class);
+
+	private final File file;
+	private final LiveGalaxyIndex liveIndex;
+	private final long pollIntervalMillis;
+
+	private volatile boolean closed = false;
+	private long position = 0;
+
+	private final AtomicLong eventsApplied = new AtomicLong();
+	private final AtomicLong eventsMalformed = new AtomicLong();
+	private final AtomicLong batchesPublished = new AtomicLong();
+	private volatile long lastLagMillis = 0;
+	private volatile long maxLagMillis = 0;
+	private volatile float lastEventsPerSecond = 0;
+
+	public DiscoveryEventTailer(File file, LiveGalaxyIndex liveIndex, long pollIntervalMillis) {
+		this.file = file;
+		this.liveIndex = liveIndex;
+		this.pollIntervalMillis = pollIntervalMillis;
+	}
+
+	/**
+	 * Starts tailing in a daemon thread.
+	 */
+	public Thread start() {
+		Thread thread = new Thread(this, "DiscoveryEventTailer");
+		thread.setDaemon(true);
+		thread.start();
+		return thread;
+	}
+
+	@Override
+	public void run() {
+		while (!this.closed) {
+			try {
+				this.poll();
+			} catch (IOException e) {
+				logger.warn("Failed to read discovery events from " + this.file, e);
+			}
+			try {
+				Thread.sleep(this.pollIntervalMillis);
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				break;
+			}
+		}
+	}
+
+	@Override
+	public void close() {
+		this.closed = true;
+	}
+
+	/**
+	 * Reads and applies all complete lines which have been appended since the last poll.
+	 *
+	 * @return
+	 *      Number of applied events
+	 */
+	public int poll() throws IOException {
+		if (!this.file.exists()) {
+			return 0;
+		}
+		byte[] bytes;
+		try (RandomAccessFile raf = new RandomAccessFile(this.file, "r")) {
+			long length = raf.length();
+			if (length < this.position) {
+				logger.info(this.file + " has been truncated, reading from the beginning");
+				this.position = 0;
+			}
+			if (length == this.position) {
+				return 0;
+			}
+			bytes = new byte[(int) Math.min(length - this.position, 16 * 1024 * 1024)];
+			raf.seek(this.position);
+			raf.readFully(bytes);
+		}
+
+		final long start = System.currentTimeMillis();
+		int nEvents = 0;
+		long oldestTimestamp = Long.MAX_VALUE;
+		int lineStart = 0;
+		for (int i = 0; i < bytes.length; i++) {
+			if (bytes[i] == '\n') {
+				String line = new String(bytes, lineStart, i - lineStart, StandardCharsets.UTF_8).trim();
+				lineStart = i + 1;
+				if (line.isEmpty() || line.startsWith("#")) {
+					continue;
+				}
+				try {
+					DiscoveryEvent event = DiscoveryEvent.parse(line);
+					// The loader merges the main star with the system row, which is always scoopable
+					this.liveIndex.merge(event.getStarSystemName(), event.getCoord(), event.isNeutron(), /* scoopable = */ true);
+					oldestTimestamp = Math.min(oldestTimestamp, event.getTimestamp());
+					nEvents++;
+				} catch (IllegalArgumentException e) {
+					this.eventsMalformed.incrementAndGet();
+					logger.warn(e.getMessage());
+				}
+			}
+		}
+		this.position += lineStart;
+
+		if (nEvents > 0) {
+			GalaxyIndex published = this.liveIndex.publish();
+			final long end = System.currentTimeMillis();
+			this.eventsApplied.addAndGet(nEvents);
+			this.batchesPublished.incrementAndGet();
+			this.lastLagMillis = Math.max(0, end - oldestTimestamp);
+			this.maxLagMillis = Math.max(this.maxLagMillis, this.lastLagMillis);
+			this.lastEventsPerSecond = nEvents * 1000f / Math.max(1, end - start);
+			logger.debug(String.format(Locale.US, "Applied %,d discovery events in epoch %d (%,d delta systems): lag %,d ms, %,.0f events/s", nEvents,
+					published.getEpoch(), published.getDeltaSize(), this.lastLagMillis, this.lastEventsPerSecond));
+		}
+		return nEvents;
+	}
+
+	public long getEventsApplied() {
+		return this.eventsApplied.get();
+	}
+
+	public long getEventsMalformed() {
+		return this.eventsMalformed.get();
+	}
+
+	public long getBatchesPublished() {
+		return this.batchesPublished.get();
+	}
+
+	/**
+	 * @return
+	 *      Time from the oldest event of the last batch until it was visible to new searches
+	 */
+	public long getLastLagMillis() {
+		return this.lastLagMillis;
+	}
+
+	public long getMaxLagMillis() {
+		return this.maxLagMillis;
+	}
+
+	/**
+	 * @return
+	 *      Apply throughput of the last batch, including the publication of the new epoch
+	 */
+	public float getLastEventsPerSecond() {
+		return this.lastEventsPerSecond;
+	}
+
+}
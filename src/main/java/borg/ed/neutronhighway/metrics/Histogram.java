@@ -0,0 +1,80 @@
+package borg.ed.neutronhighway.metrics;
+
+import java.util.Arrays;
+
+/**
+ * Histogram of non-negative values in power-of-two buckets. Recording is a few instructions and
+ * never allocates, so it can be used per expansion. Percentiles are the upper bound of their
+ * bucket, i.e. off by less than a factor of two. Not thread-safe.
+ *
+ * @author <a href="mailto:b.guenther@xsite.de">Boris Guenther</a>
+ */
+public class Histogram {
+
+	private final long[] buckets = new long[64];
+	private long count = 0;
+	private long sum = 0;
+	private long max = 0;
+
+	public void record(long value) {
+		final long v = Math.max(0L, value);
+		this.buckets[(64 - Long.numberOfLeadingZeros(v)) & 63]++;
+		this.count++;
+		this.sum += v;
+		if (v > this.max) {
+			this.max = v;
+		}
+	}
+
+	public void add(Histogram other) {
+		for (int i = 0; i < this.buckets.length; i++) {
+			this.buckets[i] += other.buckets[i];
+		}
+		this.count += other.count;
+		this.sum += other.sum;
+		this.max = Math.max(this.max, other.max);
+	}
+
+	public void clear() {
+		Arrays.fill(this.buckets, 0L);
+		this.count = 0;
+		this.sum = 0;
+		this.max = 0;
+	}
+
+	/**
+	 * @param quantile
+	 *      0..1
+	 * @return
+	 *      The upper bound of the bucket which contains the quantile, at most the max value
+	 */
+	public long getPercentile(double quantile) {
+		final long rank = (long) Math.ceil(quantile * this.count);
+		long seen = 0;
+		for (int i = 0; i < this.buckets.length; i++) {
+			seen += this.buckets[i];
+			if (seen >= rank && seen > 0) {
+				return i == 0 ? 0L : Math.min(this.max, (1L << i) - 1);
+			}
+		}
+		return this.max;
+	}
+
+	public HistogramSnapshot snapshot(long divisor) {
+		return new HistogramSnapshot(this.count, this.count == 0 ? 0 : (double) this.sum / this.count / divisor, this.getPercentile(0.5) / divisor,
+				this.getPercentile(0.9) / divisor, this.getPercentile(0.99) / divisor, this.max / divisor);
+	}
+
+	public long getCount() {
+		return this.count;
+	}
+
+	public long getSum() {
+		return this.sum;
+	}
+
+	public long getMax() {
+		return this.max;
+	}
+
+}
@@ -0,0 +1,59 @@
+package borg.ed.neutronhighway.metrics;
+
+import java.beans.ConstructorProperties;
+import java.util.Locale;
+
+/**
+ * Immutable summary of a {@link Histogram}, which JMX clients see as composite data.
+ *
+ * @author <a href="mailto:b.guenther@xsite.de">Boris Guenther</a>
+ */
+public class HistogramSnapshot {
+
+	private final long count;
+	private final double mean;
+	private final long p50;
+	private final long p90;
+	private final long p99;
+	private final long max;
+
+	@ConstructorProperties({ "count", "mean", "p50", "p90", "p99", "max" })
+	public HistogramSnapshot(long count, double mean, long p50, long p90, long p99, long max) {
+		this.count = count;
+		this.mean = mean;
+		this.p50 = p50;
+		this.p90 = p90;
+		this.p99 = p99;
+		this.max = max;
+	}
+
+	@Override
+	public String toString() {
+		return String.format(Locale.US, "n=%,d mean=%,.1f p50=%,d p90=%,d p99=%,d max=%,d", this.count, this.mean, this.p50, this.p90, this.p99, this.max);
+	}
+
+	public long getCount() {
+		return this.count;
+	}
+
+	public double getMean() {
+		return this.mean;
+	}
+
+	public long getP50() {
+		return this.p50;
+	}
+
+	public long getP90() {
+		return this.p90;
+	}
+
+	public long getP99() {
+		return this.p99;
+	}
+
+	public long getMax() {
+		return this.max;
+	}
+
+}
@@ -0,0 +1,18 @@
+package borg.ed.neutronhighway.metrics;
+
+/**
+ * Receives every phase recorded by {@link SearchMetrics}, e.g. to emit JFR events.
+ *
+ * @author <a href="mailto:b.guenther@xsite.de">Boris Guenther</a>
+ */
+public interface PhaseListener {
+
+	/**
+	 * @param count
+	 *      Expansions for the search phases, number of items otherwise
+	 * @param detail
+	 *      Search status, file name or similar, may be null
+	 */
+	void onPhase(SearchPhase phase, long elapsedNanos, long count, String detail);
+
+}
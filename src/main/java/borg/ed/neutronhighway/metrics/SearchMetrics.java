@@ -0,0 +1,192 @@
+package borg.ed.neutronhighway.metrics;
+
+import java.lang.management.ManagementFactory;
+import java.util.EnumMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import javax.management.JMException;
+import javax.management.ObjectName;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Process-wide search telemetry, exposed over JMX as {@value #OBJECT_NAME}.
+ * <p>
+ * Searches count into their own {@link SearchStats} and publish them here once per run of the
+ * search loop, so the lock is taken once per search and not per expansion. The closed set of a
+ * search always has one system per expansion, so expansions per search are its closed size.
+ * <p>
+ * If the JVM has JFR and the JFR listener has been compiled in (JDK 11+ build), every phase is
+ * also emitted as a JFR event. Recording is cheap enough to be always on.
+ *
+ * @author <a href="mailto:b.guenther@xsite.de">Boris Guenther</a>
+ */
+public class SearchMetrics implements SearchMetricsMXBean {
+
+	static final Logger logger = LoggerFactory.getLogger(SearchMetrics.class);
+
+	public static final String OBJECT_NAME = "borg.ed.neutronhighway:type=SearchMetrics";
+
+	private static final String JFR_LISTENER_CLASS = "borg.ed.neutronhighway.metrics.jfr.JfrPhaseListener";
+
+	/** Used by all searches unless they are given another instance */
+	public static final SearchMetrics SHARED = createShared();
+
+	private final PhaseListener phaseListener;
+
+	private long searches = 0;
+	private long expansions = 0;
+	private long candidatesScanned = 0;
+	private long candidatesAccepted = 0;
+	private long decreaseKeys = 0;
+	private final Histogram scannedPerExpansion = new Histogram();
+	private final Histogram acceptedPerExpansion = new Histogram();
+	private final Histogram expansionsPerSearch = new Histogram();
+	private final Histogram peakOpenSizePerSearch = new Histogram();
+	private final Map<SearchPhase, Histogram> phaseNanos = new EnumMap<>(SearchPhase.class);
+
+	public SearchMetrics(PhaseListener phaseListener) {
+		this.phaseListener = phaseListener;
+		for (SearchPhase phase : SearchPhase.values()) {
+			this.phaseNanos.put(phase, new Histogram());
+		}
+	}
+
+	private static SearchMetrics createShared() {
+		SearchMetrics metrics = new SearchMetrics(loadJfrListener());
+		try {
+			ManagementFactory.getPlatformMBeanServer().registerMBean(metrics, new ObjectName(OBJECT_NAME));
+		} catch (JMException | RuntimeException e) {
+			logger.warn("Failed to register " + OBJECT_NAME, e);
+		}
+		return metrics;
+	}
+
+	private static PhaseListener loadJfrListener() {
+		try {
+			Class.forName("jdk.jfr.Event");
+			return (PhaseListener) Class.forName(JFR_LISTENER_CLASS).getConstructor().newInstance();
+		} catch (ReflectiveOperationException | LinkageError e) {
+			logger.debug("No JFR events: " + e);
+			return null;
+		}
+	}
+
+	/**
+	 * Publishes the counters of a search and clears them.
+	 *
+	 * @param status
+	 *      Why this run of the search loop stopped
+	 */
+	public void recordSearch(SearchStats stats, long elapsedNanos, String status) {
+		synchronized (this) {
+			this.searches++;
+			this.expansions += stats.expansions;
+			this.candidatesScanned += stats.candidatesScanned;
+			this.candidatesAccepted += stats.candidatesAccepted;
+			this.decreaseKeys += stats.decreaseKeys;
+			this.scannedPerExpansion.add(stats.scannedPerExpansion);
+			this.acceptedPerExpansion.add(stats.acceptedPerExpansion);
+			this.expansionsPerSearch.record(stats.expansions);
+			this.peakOpenSizePerSearch.record(stats.peakOpenSize);
+			this.phaseNanos.get(SearchPhase.SEARCH).record(elapsedNanos);
+			this.phaseNanos.get(SearchPhase.OPEN_LIST).record(stats.openListNanos);
+			this.phaseNanos.get(SearchPhase.NEIGHBOURS).record(stats.neighbourNanos);
+		}
+		if (this.phaseListener != null) {
+			this.phaseListener.onPhase(SearchPhase.SEARCH, elapsedNanos, stats.expansions, status);
+			this.phaseListener.onPhase(SearchPhase.OPEN_LIST, stats.openListNanos, stats.expansions, status);
+			this.phaseListener.onPhase(SearchPhase.NEIGHBOURS, stats.neighbourNanos, stats.expansions, status);
+		}
+		stats.clear();
+	}
+
+	public void recordPhase(SearchPhase phase, long elapsedNanos, long count, String detail) {
+		synchronized (this) {
+			this.phaseNanos.get(phase).record(elapsedNanos);
+		}
+		if (this.phaseListener != null) {
+			this.phaseListener.onPhase(phase, elapsedNanos, count, detail);
+		}
+	}
+
+	/**
+	 * Convenience for <code>recordPhase(phase, System.nanoTime() - startNanos, count, detail)</code>.
+	 */
+	public void recordPhaseSince(SearchPhase phase, long startNanos, long count, String detail) {
+		this.recordPhase(phase, System.nanoTime() - startNanos, count, detail);
+	}
+
+	@Override
+	public synchronized long getSearches() {
+		return this.searches;
+	}
+
+	@Override
+	public synchronized long getExpansions() {
+		return this.expansions;
+	}
+
+	@Override
+	public synchronized long getCandidatesScanned() {
+		return this.candidatesScanned;
+	}
+
+	@Override
+	public synchronized long getCandidatesAccepted() {
+		return this.candidatesAccepted;
+	}
+
+	@Override
+	public synchronized long getDecreaseKeys() {
+		return this.decreaseKeys;
+	}
+
+	@Override
+	public synchronized HistogramSnapshot getScannedPerExpansion() {
+		return this.scannedPerExpansion.snapshot(1);
+	}
+
+	@Override
+	public synchronized HistogramSnapshot getAcceptedPerExpansion() {
+		return this.acceptedPerExpansion.snapshot(1);
+	}
+
+	@Override
+	public synchronized HistogramSnapshot getExpansionsPerSearch() {
+		return this.expansionsPerSearch.snapshot(1);
+	}
+
+	@Override
+	public synchronized HistogramSnapshot getPeakOpenSizePerSearch() {
+		return this.peakOpenSizePerSearch.snapshot(1);
+	}
+
+	@Override
+	public synchronized Map<String, HistogramSnapshot> getPhaseMicros() {
+		Map<String, HistogramSnapshot> result = new LinkedHashMap<>();
+		for (Map.Entry<SearchPhase, Histogram> entry : this.phaseNanos.entrySet()) {
+			result.put(entry.getKey().name(), entry.getValue().snapshot(1000L));
+		}
+		return result;
+	}
+
+	@Override
+	public synchronized void reset() {
+		this.searches = 0;
+		this.expansions = 0;
+		this.candidatesScanned = 0;
+		this.candidatesAccepted = 0;
+		this.decreaseKeys = 0;
+		this.scannedPerExpansion.clear();
+		this.acceptedPerExpansion.clear();
+		this.expansionsPerSearch.clear();
+		this.peakOpenSizePerSearch.clear();
+		for (Histogram histogram : this.phaseNanos.values()) {
+			histogram.clear();
+		}
+	}
+
+}
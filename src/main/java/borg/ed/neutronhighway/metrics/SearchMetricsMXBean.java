@@ -0,0 +1,35 @@
+package borg.ed.neutronhighway.metrics;
+
+import java.util.Map;
+
+/**
+ * Search counters and histograms since start or the last {@link #reset()}. Phase timings are in
+ * microseconds.
+ *
+ * @author <a href="mailto:b.guenther@xsite.de">Boris Guenther</a>
+ */
+public interface SearchMetricsMXBean {
+
+	long getSearches();
+
+	long getExpansions();
+
+	long getCandidatesScanned();
+
+	long getCandidatesAccepted();
+
+	long getDecreaseKeys();
+
+	HistogramSnapshot getScannedPerExpansion();
+
+	HistogramSnapshot getAcceptedPerExpansion();
+
+	HistogramSnapshot getExpansionsPerSearch();
+
+	HistogramSnapshot getPeakOpenSizePerSearch();
+
+	Map<String, HistogramSnapshot> getPhaseMicros();
+
+	void reset();
+
+}
@@ -0,0 +1,27 @@
+package borg.ed.neutronhighway.metrics;
+
+/**
+ * The phases of answering a route query, from loading the galaxy to writing the route.
+ *
+ * @author <a href="mailto:b.guenther@xsite.de">Boris Guenther</a>
+ */
+public enum SearchPhase {
+
+	/** Opening or building the galaxy snapshot */
+	LOAD,
+	/** Waiting in the queue of the routing engine for a free thread */
+	QUEUE_WAIT,
+	/** Resetting the search state */
+	INITIALIZE,
+	/** One run of the search loop, until found or stopped */
+	SEARCH,
+	/** Part of SEARCH: polling the open list */
+	OPEN_LIST,
+	/** Part of SEARCH: range queries and creating the new open paths */
+	NEIGHBOURS,
+	/** Turning the path into a route with full system data */
+	MATERIALIZE,
+	/** Writing the route files */
+	EXPORT;
+
+}
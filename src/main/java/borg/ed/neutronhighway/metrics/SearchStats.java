@@ -0,0 +1,57 @@
+package borg.ed.neutronhighway.metrics;
+
+/**
+ * Counters of one search, owned by the searching thread and published to {@link SearchMetrics}
+ * when the search stops. Nothing in here is shared, so counting costs no more than an increment.
+ *
+ * @author <a href="mailto:b.guenther@xsite.de">Boris Guenther</a>
+ */
+public class SearchStats {
+
+	long expansions = 0;
+	long candidatesScanned = 0;
+	long candidatesAccepted = 0;
+	long decreaseKeys = 0;
+	int peakOpenSize = 0;
+	long openListNanos = 0;
+	long neighbourNanos = 0;
+	final Histogram scannedPerExpansion = new Histogram();
+	final Histogram acceptedPerExpansion = new Histogram();
+
+	/**
+	 * @param scanned
+	 *      Systems within jump range which were not closed yet
+	 * @param accepted
+	 *      Of those, the ones which became a new open path
+	 */
+	public void onExpansion(int scanned, int accepted, int decreaseKeys, int openSize, long openListNanos, long neighbourNanos) {
+		this.expansions++;
+		this.candidatesScanned += scanned;
+		this.candidatesAccepted += accepted;
+		this.decreaseKeys += decreaseKeys;
+		if (openSize > this.peakOpenSize) {
+			this.peakOpenSize = openSize;
+		}
+		this.openListNanos += openListNanos;
+		this.neighbourNanos += neighbourNanos;
+		this.scannedPerExpansion.record(scanned);
+		this.acceptedPerExpansion.record(accepted);
+	}
+
+	public void clear() {
+		this.expansions = 0;
+		this.candidatesScanned = 0;
+		this.candidatesAccepted = 0;
+		this.decreaseKeys = 0;
+		this.peakOpenSize = 0;
+		this.openListNanos = 0;
+		this.neighbourNanos = 0;
+		this.scannedPerExpansion.clear();
+		this.acceptedPerExpansion.clear();
+	}
+
+	public long getExpansions() {
+		return this.expansions;
+	}
+
+}
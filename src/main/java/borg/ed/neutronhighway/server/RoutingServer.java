@@ -0,0 +1,391 @@
+package borg.ed.neutronhighway.server;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UnsupportedEncodingException;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import borg.ed.neutronhighway.aystar.AnytimeAyStar;
+import borg.ed.neutronhighway.aystar.Path;
+import borg.ed.neutronhighway.engine.FuelAndJumpRangeLookupCache;
+import borg.ed.neutronhighway.engine.RouteCache;
+import borg.ed.neutronhighway.engine.RouteRequest;
+import borg.ed.neutronhighway.engine.RouteResult;
+import borg.ed.neutronhighway.engine.RouteSearch;
+import borg.ed.neutronhighway.engine.RoutingEngine;
+import borg.ed.neutronhighway.helper.FuelAndJumpRangeLookup;
+import borg.ed.neutronhighway.helper.JsonHelper;
+import borg.ed.neutronhighway.index.GalaxyIndex;
+import borg.ed.neutronhighway.index.GalaxySnapshot;
+import borg.ed.neutronhighway.index.SectorPrefetcher;
+import borg.ed.neutronhighway.ship.ShipProfileRegistry;
+
+/**
+ * Keeps the galaxy index resident and answers route requests on a local HTTP port.
+ * <p>
+ * Usage: <code>RoutingServer [port] [threads] [galaxy snapshot] [route cache dir] [prefetch MB]</code>
+ * <ul>
+ * <li><code>GET /route?from=&amp;to=&amp;maxFuelTons=&amp;maxFuelPerJump=&amp;jumpRangeFuelFull=&amp;jumpRangeFuelOpt=[&amp;timeoutMs=][&amp;anytime=true]</code></li>
+ * <li><code>GET /route?from=&amp;to=&amp;ship=[&amp;timeoutMs=][&amp;anytime=true]</code> with a profile from ~/.eddbdata/ships.tsv</li>
+ * <li><code>GET /status</code></li>
+ * <li><code>POST /reload</code></li>
+ * </ul>
+ * At most as many requests as the router threads and their queue can take are accepted at the same
+ * time, more are rejected with 503. A request which takes longer than its timeout is answered with
+ * 504 and its search is cancelled. Its slot is only freed once the search has actually stopped, and
+ * no search runs longer than the max timeout.
+ * <p>
+ * With <code>anytime=true</code> the route is searched with {@link AnytimeAyStar}, bypassing the
+ * route cache. Instead of 504, the best route found before the timeout is returned, together with
+ * its suboptimality bound.
+ * <p>
+ * The snapshot file is checked for changes every minute, and can be reloaded on request. The new
+ * index is opened in the background and then swapped in atomically. Running searches keep the
+ * index they started with.
+ * <p>
+ * The snapshot is mapped, so the node needs little heap even for the whole galaxy. A
+ * {@link SectorPrefetcher} loads the regions ahead of running searches, so that a cold node does
+ * not stall on disk reads. Prefetch MB caps the size of the warm sectors it keeps track of, 0
+ * disables it.
+ *
+ * @author <a href="mailto:b.guenther@xsite.de">Boris Guenther</a>
+ */
+public class RoutingServer {
+
+	static final Logger logger = LoggerFactory.getLogger(RoutingServer.class);
+
+	private static final File GALAXY_SNAPSHOT_FILE = new File(System.getProperty("user.home"), ".eddbdata/neutronhighway.galaxy");
+
+	private static final File SHIP_PROFILES_FILE = new File(System.getProperty("user.home"), ".eddbdata/ships.tsv");
+
+	private static final File ROUTE_CACHE_DIR = new File(System.getProperty("user.home"), ".eddbdata/routecache");
+
+	public static final long DEFAULT_TIMEOUT_MILLIS = 30000L;
+	public static final long MAX_TIMEOUT_MILLIS = 300000L;
+
+	private final File snapshotFile;
+	private final AtomicReference<GalaxyIndex> galaxy = new AtomicReference<>();
+	private final RoutingEngine engine;
+	private final SectorPrefetcher prefetcher;
+	private final RouteCache routeCache;
+	private final FuelAndJumpRangeLookupCache lutCache = new FuelAndJumpRangeLookupCache();
+	private final ShipProfileRegistry ships;
+	private final Semaphore pendingRequests;
+	private final ScheduledExecutorService reloader;
+	private final ExecutorService httpExecutor;
+	private final HttpServer httpServer;
+	private volatile long snapshotLastModified = 0;
+
+	public RoutingServer(int port, int nThreads, File snapshotFile, File routeCacheDir) throws IOException {
+		this(port, nThreads, snapshotFile, routeCacheDir, SectorPrefetcher.DEFAULT_MAX_WARM_BYTES);
+	}
+
+	public RoutingServer(int port, int nThreads, File snapshotFile, File routeCacheDir, long maxPrefetchBytes) throws IOException {
+		this.snapshotFile = snapshotFile;
+		this.ships = SHIP_PROFILES_FILE.exists() ? ShipProfileRegistry.load(SHIP_PROFILES_FILE) : new ShipProfileRegistry();
+		this.reload();
+		final int queueCapacity = 4 * nThreads;
+		this.engine = new RoutingEngine(this.galaxy::get, nThreads, queueCapacity, false);
+		this.engine.setSearchBudget(MAX_TIMEOUT_MILLIS, 0);
+		this.prefetcher = maxPrefetchBytes > 0 ? new SectorPrefetcher(Math.max(1, nThreads / 2), maxPrefetchBytes) : null;
+		this.engine.setPrefetcher(this.prefetcher);
+		this.routeCache = new RouteCache(this.engine, routeCacheDir, 10000);
+		this.pendingRequests = new Semaphore(nThreads + queueCapacity);
+		this.reloader = Executors.newSingleThreadScheduledExecutor(r -> {
+			Thread thread = new Thread(r, "galaxy-reloader");
+			thread.setDaemon(true);
+			return thread;
+		});
+		this.httpExecutor = Executors.newCachedThreadPool();
+		this.httpServer = HttpServer.create(new InetSocketAddress("127.0.0.1", port), 0);
+		this.httpServer.setExecutor(this.httpExecutor);
+		this.httpServer.createContext("/route", this::handleRoute);
+		this.httpServer.createContext("/status", this::handleStatus);
+		this.httpServer.createContext("/reload", this::handleReload);
+	}
+
+	public static void main(String[] args) throws IOException {
+		final int port = args.length > 0 ? Integer.parseInt(args[0]) : 8765;
+		final int nThreads = args.length > 1 ? Integer.parseInt(args[1]) : Runtime.getRuntime().availableProcessors();
+		final File snapshotFile = args.length > 2 ? new File(args[2]) : GALAXY_SNAPSHOT_FILE;
+		final File routeCacheDir = args.length > 3 ? new File(args[3]) : ROUTE_CACHE_DIR;
+		final long maxPrefetchBytes = args.length > 4 ? Long.parseLong(args[4]) * 1024 * 1024 : SectorPrefetcher.DEFAULT_MAX_WARM_BYTES;
+
+		final RoutingServer server = new RoutingServer(port, nThreads, snapshotFile, routeCacheDir, maxPrefetchBytes);
+		Runtime.getRuntime().addShutdownHook(new Thread(server::stop, "routing-server-shutdown"));
+		server.start();
+	}
+
+	public void start() {
+		this.reloader.scheduleWithFixedDelay(this::reloadIfModified, 1, 1, TimeUnit.MINUTES);
+		this.httpServer.start();
+		logger.info("Listening on " + this.httpServer.getAddress() + " with " + this.engine.getNumberOfThreads() + " router threads");
+	}
+
+	/**
+	 * Stops accepting requests and waits for running searches to finish.
+	 */
+	public void stop() {
+		this.httpServer.stop(1);
+		this.reloader.shutdownNow();
+		this.engine.close();
+		if (this.prefetcher != null) {
+			this.prefetcher.close();
+		}
+		this.httpExecutor.shutdown();
+	}
+
+	/**
+	 * Opens the snapshot file and swaps it in.
+	 */
+	public synchronized void reload() throws IOException {
+		final long start = System.currentTimeMillis();
+		final long lastModified = this.snapshotFile.lastModified();
+		GalaxySnapshot snapshot = GalaxySnapshot.open(this.snapshotFile);
+		GalaxyIndex newGalaxy = new GalaxyIndex(snapshot.getGalaxy(), snapshot.getOctreeIndex());
+		GalaxyIndex oldGalaxy = this.galaxy.getAndSet(newGalaxy);
+		this.snapshotLastModified = lastModified;
+		logger.info(String.format(Locale.US, "%s %,d systems in %,d ms", oldGalaxy == null ? "Loaded" : "Swapped in", newGalaxy.size(),
+				System.currentTimeMillis() - start));
+	}
+
+	private void reloadIfModified() {
+		if (this.snapshotFile.lastModified() != this.snapshotLastModified) {
+			try {
+				this.reload();
+			} catch (IOException | RuntimeException e) {
+				logger.warn("Failed to reload " + this.snapshotFile + ", keeping the current galaxy", e);
+			}
+		}
+	}
+
+	private void handleRoute(HttpExchange exchange) throws IOException {
+		try {
+			if (!"GET".equals(exchange.getRequestMethod())) {
+				this.respond(exchange, 405, "{\"error\":\"GET only\"}");
+				return;
+			}
+			final Map<String, String> params = parseQuery(exchange.getRequestURI().getRawQuery());
+			final RouteRequest request;
+			final long timeoutMillis;
+			final boolean anytime = "true".equals(params.get("anytime"));
+			try {
+				request = new RouteRequest(required(params, "from"), required(params, "to"), this.toFuelJumpLUT(params));
+				timeoutMillis = parseTimeoutMillis(params);
+			} catch (IllegalArgumentException e) {
+				this.respond(exchange, 400, "{\"error\":" + JsonHelper.quote(e.getMessage()) + "}");
+				return;
+			}
+
+			if (!this.pendingRequests.tryAcquire()) {
+				this.respond(exchange, 503, "{\"error\":\"Too many requests\"}");
+				return;
+			}
+			final RouteSearch search;
+			try {
+				search = anytime ? this.engine.startAnytime(request) : this.routeCache.start(request);
+			} catch (RejectedExecutionException e) {
+				this.pendingRequests.release();
+				this.respond(exchange, 503, "{\"error\":\"Too many requests\"}");
+				return;
+			} catch (RuntimeException e) {
+				this.pendingRequests.release();
+				throw e;
+			}
+			// Not released before the search has stopped, even if the request times out
+			search.getResult().whenComplete((result, e) -> this.pendingRequests.release());
+			try {
+				RouteResult result;
+				try {
+					result = search.getResult().get(timeoutMillis, TimeUnit.MILLISECONDS);
+				} catch (TimeoutException e) {
+					search.cancel();
+					if (!anytime) {
+						throw e;
+					}
+					// Stops at the next expansion, with the best route so far
+					result = search.getResult().get();
+					if (!result.isFound()) {
+						throw e;
+					}
+				}
+				if (result.isFound()) {
+					this.respond(exchange, 200, toJson(result));
+				} else if (result.getError() != null) {
+					this.respond(exchange, 404, "{\"error\":" + JsonHelper.quote(result.getError()) + "}");
+				} else {
+					this.respond(exchange, 404, "{\"error\":\"No route\"}");
+				}
+			} catch (TimeoutException e) {
+				this.respond(exchange, 504, "{\"error\":\"Timed out after " + timeoutMillis + " ms\"}");
+			} catch (ExecutionException e) {
+				logger.warn("Failed to route " + request, e.getCause());
+				this.respond(exchange, 500, "{\"error\":" + JsonHelper.quote(String.valueOf(e.getCause())) + "}");
+			} catch (InterruptedException e) {
+				search.cancel();
+				Thread.currentThread().interrupt();
+				this.respond(exchange, 503, "{\"error\":\"Shutting down\"}");
+			}
+		} finally {
+			exchange.close();
+		}
+	}
+
+	private FuelAndJumpRangeLookup toFuelJumpLUT(Map<String, String> params) {
+		if (params.containsKey("ship")) {
+			FuelAndJumpRangeLookup fuelJumpLUT = this.ships.getLookup(params.get("ship"));
+			if (fuelJumpLUT == null) {
+				throw new IllegalArgumentException("Unknown ship " + params.get("ship"));
+			}
+			return fuelJumpLUT;
+		}
+		return this.lutCache.get(Integer.parseInt(required(params, "maxFuelTons")), Float.parseFloat(required(params, "maxFuelPerJump")),
+				Float.parseFloat(required(params, "jumpRangeFuelFull")), Float.parseFloat(required(params, "jumpRangeFuelOpt")));
+	}
+
+	private void handleStatus(HttpExchange exchange) throws IOException {
+		try {
+			GalaxyIndex current = this.galaxy.get();
+			StringBuilder sb = new StringBuilder();
+			sb.append("{\"systems\":").append(current.size());
+			sb.append(",\"galaxyCreatedAt\":").append(current.getBase().getCreatedAt());
+			sb.append(",\"threads\":").append(this.engine.getNumberOfThreads());
+			sb.append(",\"availableRequestSlots\":").append(this.pendingRequests.availablePermits());
+			sb.append(",\"cacheMemoryHits\":").append(this.routeCache.getMemoryHits());
+			sb.append(",\"cacheDiskHits\":").append(this.routeCache.getDiskHits());
+			sb.append(",\"cacheCoalesced\":").append(this.routeCache.getCoalesced());
+			sb.append(",\"cacheMisses\":").append(this.routeCache.getMisses());
+			sb.append(",\"cacheExactSearches\":").append(this.routeCache.getExactSearches());
+			if (this.prefetcher != null) {
+				sb.append(",\"prefetchWarmSectors\":").append(this.prefetcher.getNumberOfWarmSectors());
+				sb.append(",\"prefetchWarmBytes\":").append(this.prefetcher.getWarmBytes());
+				sb.append(",\"prefetched\":").append(this.prefetcher.getPrefetched());
+				sb.append(",\"prefetchDropped\":").append(this.prefetcher.getDropped());
+				sb.append(",\"prefetchEvicted\":").append(this.prefetcher.getEvicted());
+			}
+			sb.append("}");
+			this.respond(exchange, 200, sb.toString());
+		} finally {
+			exchange.close();
+		}
+	}
+
+	private void handleReload(HttpExchange exchange) throws IOException {
+		try {
+			if (!"POST".equals(exchange.getRequestMethod())) {
+				this.respond(exchange, 405, "{\"error\":\"POST only\"}");
+				return;
+			}
+			this.reloader.execute(() -> {
+				try {
+					this.reload();
+				} catch (IOException | RuntimeException e) {
+					logger.warn("Failed to reload " + this.snapshotFile + ", keeping the current galaxy", e);
+				}
+			});
+			this.respond(exchange, 202, "{\"reloading\":true}");
+		} finally {
+			exchange.close();
+		}
+	}
+
+	private void respond(HttpExchange exchange, int status, String body) throws IOException {
+		byte[] bytes = body.getBytes(StandardCharsets.UTF_8);
+		exchange.getResponseHeaders().set("Content-Type", "application/json; charset=UTF-8");
+		exchange.sendResponseHeaders(status, bytes.length);
+		try (OutputStream out = exchange.getResponseBody()) {
+			out.write(bytes);
+		}
+	}
+
+	private static String toJson(RouteResult result) {
+		Path path = result.getPath();
+		StringBuilder sb = new StringBuilder();
+		sb.append("{\"from\":").append(JsonHelper.quote(result.getRequest().getSourceName()));
+		sb.append(",\"to\":").append(JsonHelper.quote(result.getRequest().getGoalName()));
+		sb.append(",\"jumps\":").append(path.getTotalJumps());
+		sb.append(",\"distanceLy\":").append(String.format(Locale.US, "%.2f", path.getTravelledDistanceLy()));
+		sb.append(",\"millis\":").append(result.getMillis());
+		if (!Float.isInfinite(result.getSuboptimalityBound())) {
+			sb.append(",\"suboptimalityBound\":").append(String.format(Locale.US, "%.2f", result.getSuboptimalityBound()));
+		}
+		sb.append(",\"galaxyEpoch\":").append(result.getGalaxyEpoch());
+		sb.append(",\"route\":[");
+		List<Path> sortedPaths = path.toSortedList();
+		for (int i = 0; i < sortedPaths.size(); i++) {
+			Path p = sortedPaths.get(i);
+			sb.append(i == 0 ? "" : ",");
+			sb.append("{\"name\":").append(JsonHelper.quote(p.getMinimizedStarSystem().getName()));
+			sb.append(",\"jump\":").append(p.getTotalJumps());
+			sb.append(",\"travelledLy\":").append(String.format(Locale.US, "%.2f", p.getTravelledDistanceLy()));
+			sb.append(",\"fuelLevel\":").append(String.format(Locale.US, "%.2f", p.getFuelLevel()));
+			sb.append("}");
+		}
+		sb.append("]}");
+		return sb.toString();
+	}
+
+	private static Map<String, String> parseQuery(String rawQuery) throws UnsupportedEncodingException {
+		Map<String, String> params = new HashMap<>();
+		if (rawQuery != null) {
+			for (String pair : rawQuery.split("&")) {
+				int eq = pair.indexOf('=');
+				if (eq > 0) {
+					params.put(URLDecoder.decode(pair.substring(0, eq), "UTF-8"), URLDecoder.decode(pair.substring(eq + 1), "UTF-8"));
+				}
+			}
+		}
+		return params;
+	}
+
+	/**
+	 * @return
+	 *      The timeoutMs parameter, capped to the max timeout, or the default timeout if it is missing
+	 */
+	private static long parseTimeoutMillis(Map<String, String> params) {
+		if (!params.containsKey("timeoutMs")) {
+			return DEFAULT_TIMEOUT_MILLIS;
+		}
+		final long timeoutMillis;
+		try {
+			timeoutMillis = Long.parseLong(params.get("timeoutMs").trim());
+		} catch (NumberFormatException e) {
+			throw new IllegalArgumentException("Invalid timeoutMs " + params.get("timeoutMs"));
+		}
+		if (timeoutMillis <= 0) {
+			throw new IllegalArgumentException("timeoutMs must be positive");
+		}
+		return Math.min(MAX_TIMEOUT_MILLIS, timeoutMillis);
+	}
+
+	private static String required(Map<String, String> params, String name) {
+		String value = params.get(name);
+		if (value == null || value.trim().isEmpty()) {
+			throw new IllegalArgumentException("Missing parameter " + name);
+		}
+		return value.trim();
+	}
+
+}
@@ -0,0 +1,97 @@
+package borg.ed.neutronhighway.ship;
+
+import java.util.Locale;
+
+/**
+ * The parameters of a frame shift drive which determine jump range and fuel usage:
+ * <code>fuel = linearConstant / 1000 * (distance * mass / optimalMass) ^ powerConstant</code>.
+ *
+ * @author <a href="mailto:b.guenther@xsite.de">Boris Guenther</a>
+ */
+public class FrameShiftDrive {
+
+	private static final float[] POWER_CONSTANT_BY_SIZE = { 0f, 0f, 2.00f, 2.15f, 2.30f, 2.45f, 2.60f, 2.75f };
+	private static final String RATINGS = "EDCBA";
+	private static final float[] LINEAR_CONSTANT_BY_RATING = { 11f, 10f, 8f, 10f, 12f };
+	// Optimal mass and max fuel per jump by size and rating E..A
+	private static final float[][] OPTIMAL_MASS = { null, null, { 48, 54, 60, 75, 90 }, { 80, 90, 100, 125, 150 }, { 280, 315, 350, 438, 525 },
+			{ 560, 630, 700, 875, 1050 }, { 960, 1080, 1200, 1500, 1800 }, { 1440, 1620, 1800, 2250, 2700 } };
+	private static final float[][] MAX_FUEL_PER_JUMP = { null, null, { 0.6f, 0.6f, 0.6f, 0.8f, 0.9f }, { 1.2f, 1.2f, 1.2f, 1.5f, 1.8f },
+			{ 2.0f, 2.0f, 2.0f, 2.5f, 3.0f }, { 3.3f, 3.3f, 3.3f, 4.1f, 5.0f }, { 5.3f, 5.3f, 5.3f, 6.6f, 8.0f }, { 8.5f, 8.5f, 8.5f, 10.6f, 12.8f } };
+
+	private final String name;
+	private final float optimalMass;
+	private final float maxFuelPerJump;
+	private final float linearConstant;
+	private final float powerConstant;
+
+	public FrameShiftDrive(String name, float optimalMass, float maxFuelPerJump, float linearConstant, float powerConstant) {
+		this.name = name;
+		this.optimalMass = optimalMass;
+		this.maxFuelPerJump = maxFuelPerJump;
+		this.linearConstant = linearConstant;
+		this.powerConstant = powerConstant;
+	}
+
+	/**
+	 * @param classAndRating
+	 *      For example <code>5A</code>
+	 * @throws IllegalArgumentException
+	 *      If there is no such drive
+	 */
+	public static FrameShiftDrive stock(String classAndRating) {
+		String s = classAndRating.trim().toUpperCase(Locale.US);
+		int size = s.length() == 2 ? s.charAt(0) - '0' : -1;
+		int rating = s.length() == 2 ? RATINGS.indexOf(s.charAt(1)) : -1;
+		if (size < 2 || size > 7 || rating < 0) {
+			throw new IllegalArgumentException("Unknown frame shift drive " + classAndRating);
+		}
+		return new FrameShiftDrive(s, OPTIMAL_MASS[size][rating], MAX_FUEL_PER_JUMP[size][rating], LINEAR_CONSTANT_BY_RATING[rating], POWER_CONSTANT_BY_SIZE[size]);
+	}
+
+	/**
+	 * @return
+	 *      The same drive with another optimal mass, e.g. after engineering
+	 */
+	public FrameShiftDrive withOptimalMass(float optimalMass) {
+		return new FrameShiftDrive(this.name + "*", optimalMass, this.maxFuelPerJump, this.linearConstant, this.powerConstant);
+	}
+
+	/**
+	 * @return
+	 *      Max jump distance in Ly with the given total ship mass and fuel for this jump
+	 */
+	public float jumpRange(float massTons, float fuelTons) {
+		final float fuel = Math.min(fuelTons, this.maxFuelPerJump);
+		if (fuel <= 0) {
+			return 0f;
+		}
+		return this.optimalMass / massTons * (float) Math.pow(1000f * fuel / this.linearConstant, 1.0 / this.powerConstant);
+	}
+
+	@Override
+	public String toString() {
+		return String.format(Locale.US, "%s (%.0f t, %.1f t/jump)", this.name, this.optimalMass, this.maxFuelPerJump);
+	}
+
+	public String getName() {
+		return this.name;
+	}
+
+	public float getOptimalMass() {
+		return this.optimalMass;
+	}
+
+	public float getMaxFuelPerJump() {
+		return this.maxFuelPerJump;
+	}
+
+	public float getLinearConstant() {
+		return this.linearConstant;
+	}
+
+	public float getPowerConstant() {
+		return this.powerConstant;
+	}
+
+}
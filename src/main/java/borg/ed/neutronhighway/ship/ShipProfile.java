@@ -0,0 +1,87 @@
+package borg.ed.neutronhighway.ship;
+
+import java.util.Locale;
+
+import borg.ed.neutronhighway.helper.FuelAndJumpRangeLookup;
+
+/**
+ * A ship as far as routing is concerned: its mass, tank and frame shift drive.
+ *
+ * @author <a href="mailto:b.guenther@xsite.de">Boris Guenther</a>
+ */
+public class ShipProfile {
+
+	private final String name;
+	private final float unladenMassTons;
+	private final int fuelCapacityTons;
+	private final float cargoTons;
+	private final FrameShiftDrive fsd;
+	private final float jumpRangeBonusLy;
+
+	/**
+	 * @param unladenMassTons
+	 *      Hull and all modules, without fuel and cargo
+	 * @param jumpRangeBonusLy
+	 *      Flat bonus of a guardian FSD booster, 0 if none is fitted
+	 */
+	public ShipProfile(String name, float unladenMassTons, int fuelCapacityTons, float cargoTons, FrameShiftDrive fsd, float jumpRangeBonusLy) {
+		this.name = name;
+		this.unladenMassTons = unladenMassTons;
+		this.fuelCapacityTons = fuelCapacityTons;
+		this.cargoTons = cargoTons;
+		this.fsd = fsd;
+		this.jumpRangeBonusLy = jumpRangeBonusLy;
+	}
+
+	/**
+	 * @return
+	 *      Max jump distance in Ly with the given amount of fuel in the tank
+	 */
+	public float jumpRange(float fuelTons) {
+		final float jumpRange = this.fsd.jumpRange(this.unladenMassTons + this.cargoTons + fuelTons, fuelTons);
+		return jumpRange > 0 ? jumpRange + this.jumpRangeBonusLy : 0f;
+	}
+
+	/**
+	 * Tabulates {@link #jumpRange(float)} for every 100 kg of fuel. Unlike the estimate from two
+	 * outfitting values, this also covers a tank with less than a max jump worth of fuel.
+	 */
+	public FuelAndJumpRangeLookup toLookup() {
+		float[] jumpRangeByFuelStep = new float[this.fuelCapacityTons * 10 + 1];
+		for (int step = 0; step < jumpRangeByFuelStep.length; step++) {
+			jumpRangeByFuelStep[step] = this.jumpRange(step / 10f);
+		}
+		return new FuelAndJumpRangeLookup(this.fuelCapacityTons, this.fsd.getMaxFuelPerJump(), this.fsd.getPowerConstant(), jumpRangeByFuelStep);
+	}
+
+	@Override
+	public String toString() {
+		return String.format(Locale.US, "%s (%.1f Ly laden, %.1f Ly max, %s)", this.name, this.jumpRange(this.fuelCapacityTons), this.jumpRange(this.fsd.getMaxFuelPerJump()),
+				this.fsd);
+	}
+
+	public String getName() {
+		return this.name;
+	}
+
+	public float getUnladenMassTons() {
+		return this.unladenMassTons;
+	}
+
+	public int getFuelCapacityTons() {
+		return this.fuelCapacityTons;
+	}
+
+	public float getCargoTons() {
+		return this.cargoTons;
+	}
+
+	public FrameShiftDrive getFsd() {
+		return this.fsd;
+	}
+
+	public float getJumpRangeBonusLy() {
+		return this.jumpRangeBonusLy;
+	}
+
+}
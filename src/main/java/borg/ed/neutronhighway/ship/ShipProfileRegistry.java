@@ -0,0 +1,132 @@
+package borg.ed.neutronhighway.ship;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import borg.ed.neutronhighway.helper.FuelAndJumpRangeLookup;
+
+/**
+ * Named ship profiles and their lookup tables, shared by all concurrent queries.
+ * <p>
+ * The tables of a profile are built on first use and then reused. Registering a profile under an
+ * existing name replaces it, searches which already have the old tables keep using them.
+ *
+ * @author <a href="mailto:b.guenther@xsite.de">Boris Guenther</a>
+ */
+public class ShipProfileRegistry {
+
+	static final Logger logger = LoggerFactory.getLogger(ShipProfileRegistry.class);
+
+	private final ConcurrentMap<String, Entry> entriesByName = new ConcurrentHashMap<>();
+
+	/**
+	 * Reads tab-separated lines <code>name unladenMass fuelCapacity fsd [optimalMass] [cargo] [jumpRangeBonus]</code>,
+	 * where fsd is class and rating like <code>5A</code>. Empty lines and lines starting with # are
+	 * skipped.
+	 *
+	 * @throws IllegalArgumentException
+	 *      If a line is malformed
+	 */
+	public static ShipProfileRegistry load(File file) throws IOException {
+		ShipProfileRegistry registry = new ShipProfileRegistry();
+		for (String line : Files.readAllLines(file.toPath(), StandardCharsets.UTF_8)) {
+			if (!line.trim().isEmpty() && !line.startsWith("#")) {
+				registry.register(parse(line));
+			}
+		}
+		logger.debug("Loaded " + registry.size() + " ship profiles from " + file.getName());
+		return registry;
+	}
+
+	static ShipProfile parse(String line) {
+		String[] fields = line.split("\t");
+		if (fields.length < 4) {
+			throw new IllegalArgumentException("Malformed ship profile: " + line);
+		}
+		try {
+			FrameShiftDrive fsd = FrameShiftDrive.stock(fields[3]);
+			if (fields.length > 4 && !fields[4].trim().isEmpty()) {
+				fsd = fsd.withOptimalMass(Float.parseFloat(fields[4].trim()));
+			}
+			float cargoTons = fields.length > 5 && !fields[5].trim().isEmpty() ? Float.parseFloat(fields[5].trim()) : 0f;
+			float jumpRangeBonusLy = fields.length > 6 && !fields[6].trim().isEmpty() ? Float.parseFloat(fields[6].trim()) : 0f;
+			return new ShipProfile(fields[0].trim(), Float.parseFloat(fields[1].trim()), Integer.parseInt(fields[2].trim()), cargoTons, fsd, jumpRangeBonusLy);
+		} catch (NumberFormatException e) {
+			throw new IllegalArgumentException("Malformed ship profile: " + line, e);
+		}
+	}
+
+	public void register(ShipProfile profile) {
+		this.entriesByName.put(key(profile.getName()), new Entry(profile));
+	}
+
+	/**
+	 * @return
+	 *      The profile, or null if there is none with this name
+	 */
+	public ShipProfile get(String name) {
+		Entry entry = this.entriesByName.get(key(name));
+		return entry == null ? null : entry.profile;
+	}
+
+	/**
+	 * @return
+	 *      The shared lookup tables of the profile, or null if there is none with this name
+	 */
+	public FuelAndJumpRangeLookup getLookup(String name) {
+		Entry entry = this.entriesByName.get(key(name));
+		return entry == null ? null : entry.getLookup();
+	}
+
+	public List<String> getNames() {
+		List<String> names = new ArrayList<>();
+		for (Entry entry : this.entriesByName.values()) {
+			names.add(entry.profile.getName());
+		}
+		Collections.sort(names);
+		return names;
+	}
+
+	public int size() {
+		return this.entriesByName.size();
+	}
+
+	private static String key(String name) {
+		return name.trim().toLowerCase(Locale.US);
+	}
+
+	private static class Entry {
+
+		private final ShipProfile profile;
+		private volatile FuelAndJumpRangeLookup lookup = null;
+
+		Entry(ShipProfile profile) {
+			this.profile = profile;
+		}
+
+		/**
+		 * Built on first use. Concurrent first calls may build identical tables twice.
+		 */
+		FuelAndJumpRangeLookup getLookup() {
+			FuelAndJumpRangeLookup result = this.lookup;
+			if (result == null) {
+				result = this.profile.toLookup();
+				this.lookup = result;
+			}
+			return result;
+		}
+
+	}
+
+}
@@ -0,0 +1,27 @@
+package borg.ed.neutronhighway.metrics.jfr;
+
+import borg.ed.neutronhighway.metrics.PhaseListener;
+import borg.ed.neutronhighway.metrics.SearchMetrics;
+import borg.ed.neutronhighway.metrics.SearchPhase;
+
+/**
+ * Emits every phase as a {@link SearchPhaseEvent}. Loaded by {@link SearchMetrics} by name, so
+ * the rest of the code runs on JVMs without JFR.
+ *
+ * @author <a href="mailto:b.guenther@xsite.de">Boris Guenther</a>
+ */
+public class JfrPhaseListener implements PhaseListener {
+
+	@Override
+	public void onPhase(SearchPhase phase, long elapsedNanos, long count, String detail) {
+		SearchPhaseEvent event = new SearchPhaseEvent();
+		if (event.isEnabled()) {
+			event.phase = phase.name();
+			event.elapsed = elapsedNanos;
+			event.count = count;
+			event.detail = detail;
+			event.commit();
+		}
+	}
+
+}
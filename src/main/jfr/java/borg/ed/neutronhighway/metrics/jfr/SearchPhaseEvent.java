@@ -0,0 +1,38 @@
+package borg.ed.neutronhighway.metrics.jfr;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+import jdk.jfr.Timespan;
+
+/**
+ * One phase of a route query. The event is committed when the phase is over, so its own
+ * duration is zero and the phase duration is in {@link #elapsed}.
+ *
+ * @author <a href="mailto:b.guenther@xsite.de">Boris Guenther</a>
+ */
+@Name("borg.ed.neutronhighway.SearchPhase")
+@Label("Search Phase")
+@Category({ "Neutron Highway", "Search" })
+@Description("A phase of a route query: load, queue wait, initialize, search, open list, neighbours, materialize or export")
+@StackTrace(false)
+class SearchPhaseEvent extends Event {
+
+	@Label("Phase")
+	String phase;
+
+	@Label("Elapsed")
+	@Timespan(Timespan.NANOSECONDS)
+	long elapsed;
+
+	@Label("Count")
+	@Description("Expansions for the search phases, number of items otherwise")
+	long count;
+
+	@Label("Detail")
+	String detail;
+
+}
@@ -0,0 +1,153 @@
+package borg.ed.neutronhighway;
+
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyFloat;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Random;
+
+import org.springframework.data.util.CloseableIterator;
+
+import borg.ed.galaxy.constants.StarClass;
+import borg.ed.galaxy.data.Coord;
+import borg.ed.galaxy.model.Body;
+import borg.ed.galaxy.model.StarSystem;
+import borg.ed.galaxy.service.GalaxyService;
+import borg.ed.neutronhighway.helper.FuelAndJumpRangeLookup;
+import borg.ed.neutronhighway.index.GalaxyIndex;
+import borg.ed.neutronhighway.index.MinimizedGalaxy;
+import borg.ed.neutronhighway.index.OctreeIndex;
+
+/**
+ * Small reproducible galaxies for tests: random systems in a flat box of 4000 x 200 x 4000 Ly
+ * around the origin, 2% of them neutron stars, plus a few named anchors to route between.
+ *
+ * @author <a href="mailto:b.guenther@xsite.de">Boris Guenther</a>
+ */
+public class TestGalaxies {
+
+	public static final String WEST = "Test West";
+	public static final String EAST = "Test East";
+	public static final String EAST_NEAR = "Test East Near";
+	public static final String NORTH = "Test North";
+
+	public static final int DEFAULT_SIZE = 60000;
+	public static final long DEFAULT_SEED = 42L;
+
+	private static final float HALF_WIDTH_LY = 2000f;
+	private static final float HALF_HEIGHT_LY = 100f;
+
+	public static MinimizedGalaxy galaxy() {
+		return galaxy(DEFAULT_SEED, DEFAULT_SIZE);
+	}
+
+	public static MinimizedGalaxy galaxy(long seed, int size) {
+		return fill(new MinimizedGalaxy.Builder(), seed, size).build();
+	}
+
+	public static MinimizedGalaxy.Builder fill(MinimizedGalaxy.Builder builder, long seed, int size) {
+		builder.add(WEST, new Coord(-1500, 0, 0), false, true);
+		builder.add(EAST, new Coord(1500, 0, 0), false, true);
+		builder.add(EAST_NEAR, new Coord(1500, 0, 300), false, true);
+		builder.add(NORTH, new Coord(0, 0, 1500), false, true);
+		Random random = new Random(seed);
+		for (int i = 0; i < size; i++) {
+			float x = (random.nextFloat() * 2 - 1) * HALF_WIDTH_LY;
+			float y = (random.nextFloat() * 2 - 1) * HALF_HEIGHT_LY;
+			float z = (random.nextFloat() * 2 - 1) * HALF_WIDTH_LY;
+			boolean neutron = random.nextFloat() < 0.02f;
+			boolean scoopable = !neutron && random.nextFloat() < 0.7f;
+			builder.add("Test " + Integer.toString(i, 36), new Coord(x, y, z), neutron, scoopable);
+		}
+		return builder;
+	}
+
+	public static GalaxyIndex index() {
+		MinimizedGalaxy galaxy = galaxy();
+		return new GalaxyIndex(galaxy, OctreeIndex.build(galaxy));
+	}
+
+	/**
+	 * A galaxy service which streams the systems of the galaxy. Every system has a main star, of
+	 * class N for neutron, K for scoopable and Y for the rest, and a system row like in the galaxy
+	 * database. Loading the galaxy from this service therefore gives back all systems, with the
+	 * neutron flags as they are and every system scoopable.
+	 */
+	public static GalaxyService galaxyService(MinimizedGalaxy galaxy) {
+		GalaxyService galaxyService = mock(GalaxyService.class);
+		when(galaxyService.streamStarsWithin(anyFloat(), anyFloat(), anyFloat(), anyFloat(), anyFloat(), anyFloat(), any(), any())).thenAnswer(invocation -> {
+			List<Body> stars = new ArrayList<>();
+			for (int id : within(galaxy, invocation.getArguments())) {
+				Body star = new Body();
+				star.setName(galaxy.getName(id));
+				star.setStarSystemName(galaxy.getName(id));
+				star.setCoord(galaxy.getCoord(id));
+				star.setStarClass(galaxy.isNeutron(id) ? StarClass.N : galaxy.isScoopable(id) ? StarClass.K : StarClass.Y);
+				stars.add(star);
+			}
+			return closeable(stars.iterator());
+		});
+		when(galaxyService.streamAllSystemsWithin(anyFloat(), anyFloat(), anyFloat(), anyFloat(), anyFloat(), anyFloat())).thenAnswer(invocation -> {
+			List<StarSystem> starSystems = new ArrayList<>();
+			for (int id : within(galaxy, invocation.getArguments())) {
+				StarSystem starSystem = new StarSystem();
+				starSystem.setName(galaxy.getName(id));
+				starSystem.setCoord(galaxy.getCoord(id));
+				starSystems.add(starSystem);
+			}
+			return closeable(starSystems.iterator());
+		});
+		return galaxyService;
+	}
+
+	/**
+	 * @param box
+	 *      xmin, xmax, ymin, ymax, zmin, zmax, followed by anything else
+	 */
+	private static List<Integer> within(MinimizedGalaxy galaxy, Object[] box) {
+		List<Integer> ids = new ArrayList<>();
+		for (int id = 0; id < galaxy.size(); id++) {
+			if (inRange(galaxy.getX(id), box[0], box[1]) && inRange(galaxy.getY(id), box[2], box[3]) && inRange(galaxy.getZ(id), box[4], box[5])) {
+				ids.add(id);
+			}
+		}
+		return ids;
+	}
+
+	private static boolean inRange(float value, Object min, Object max) {
+		return value >= (Float) min && value <= (Float) max;
+	}
+
+	private static <T> CloseableIterator<T> closeable(Iterator<T> iterator) {
+		return new CloseableIterator<T>() {
+
+			@Override
+			public boolean hasNext() {
+				return iterator.hasNext();
+			}
+
+			@Override
+			public T next() {
+				return iterator.next();
+			}
+
+			@Override
+			public void close() {
+				// Nothing to release
+			}
+
+		};
+	}
+
+	/**
+	 * A ship with a jump range of about 50 Ly
+	 */
+	public static FuelAndJumpRangeLookup ship() {
+		return new FuelAndJumpRangeLookup(32, 5f, 46f, 52f);
+	}
+
+}
@@ -0,0 +1,67 @@
+package borg.ed.neutronhighway.aystar;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import borg.ed.neutronhighway.TestGalaxies;
+import borg.ed.neutronhighway.helper.FuelAndJumpRangeLookup;
+import borg.ed.neutronhighway.index.GalaxyIndex;
+
+/**
+ * The anytime search must end with a route with the same number of jumps as {@link AyStar}, and
+ * its first route must be within the initial epsilon of it.
+ *
+ * @author <a href="mailto:b.guenther@xsite.de">Boris Guenther</a>
+ */
+public class AnytimeAyStarTest {
+
+	private static GalaxyIndex galaxy;
+	private static FuelAndJumpRangeLookup fuelJumpLUT;
+
+	@BeforeClass
+	public static void setUpClass() {
+		galaxy = TestGalaxies.index();
+		fuelJumpLUT = TestGalaxies.ship();
+	}
+
+	@Test
+	public void convergesToTheJumpsOfAyStar() {
+		AyStar ayStar = new AyStar();
+		AnytimeAyStar anytime = new AnytimeAyStar();
+		final List<Integer> reportedJumps = new ArrayList<>();
+		final List<Float> reportedBounds = new ArrayList<>();
+		anytime.setImprovedRouteListener((path, suboptimalityBound, elapsedMillis) -> {
+			reportedJumps.add(path.getTotalJumps());
+			reportedBounds.add(suboptimalityBound);
+		});
+		String[][] trips = { { TestGalaxies.WEST, TestGalaxies.EAST }, { TestGalaxies.EAST, TestGalaxies.EAST_NEAR }, { TestGalaxies.WEST, TestGalaxies.NORTH } };
+		for (String[] trip : trips) {
+			final String name = trip[0] + " -> " + trip[1];
+			int source = galaxy.findId(trip[0]);
+			int goal = galaxy.findId(trip[1]);
+			ayStar.initialize(source, goal, galaxy, fuelJumpLUT);
+			assertEquals(SearchStatus.FOUND, ayStar.search());
+			final int optimalJumps = ayStar.getPath().getTotalJumps();
+
+			reportedJumps.clear();
+			reportedBounds.clear();
+			anytime.initialize(source, goal, galaxy, fuelJumpLUT);
+			assertEquals(name, SearchStatus.FOUND, anytime.search());
+			assertEquals(name, 1.0f, anytime.getSuboptimalityBound(), 0f);
+			assertEquals(name, optimalJumps, anytime.getPath().getTotalJumps());
+
+			assertFalse(name, reportedJumps.isEmpty());
+			assertTrue(name, reportedJumps.get(0) <= AnytimeAyStar.DEFAULT_INITIAL_EPSILON * optimalJumps);
+			assertTrue(name, reportedBounds.get(0) <= AnytimeAyStar.DEFAULT_INITIAL_EPSILON);
+			assertEquals(name, optimalJumps, reportedJumps.get(reportedJumps.size() - 1).intValue());
+		}
+	}
+
+}
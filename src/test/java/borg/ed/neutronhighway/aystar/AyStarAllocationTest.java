@@ -0,0 +1,56 @@
+package borg.ed.neutronhighway.aystar;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assume.assumeTrue;
+
+import java.lang.management.ManagementFactory;
+import java.util.Locale;
+
+import org.junit.Test;
+
+import borg.ed.neutronhighway.TestGalaxies;
+import borg.ed.neutronhighway.helper.FuelAndJumpRangeLookup;
+import borg.ed.neutronhighway.index.GalaxyIndex;
+
+/**
+ * Once the arena, open list and closed set of a reused {@link AyStar} have grown to their size, a
+ * search must not allocate per expansion.
+ *
+ * @author <a href="mailto:b.guenther@xsite.de">Boris Guenther</a>
+ */
+public class AyStarAllocationTest {
+
+	/** Allows for a few fixed allocations per search, e.g. by the metrics */
+	private static final double MAX_BYTES_PER_EXPANSION = 0.5;
+
+	@Test
+	public void searchDoesNotAllocatePerExpansion() {
+		java.lang.management.ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+		assumeTrue(threads instanceof com.sun.management.ThreadMXBean);
+		com.sun.management.ThreadMXBean allocations = (com.sun.management.ThreadMXBean) threads;
+		assumeTrue(allocations.isThreadAllocatedMemorySupported());
+		allocations.setThreadAllocatedMemoryEnabled(true);
+
+		GalaxyIndex galaxy = TestGalaxies.index();
+		FuelAndJumpRangeLookup fuelJumpLUT = TestGalaxies.ship();
+		int source = galaxy.findId(TestGalaxies.WEST);
+		int goal = galaxy.findId(TestGalaxies.EAST);
+		AyStar ayStar = new AyStar();
+		for (int i = 0; i < 20; i++) {
+			ayStar.initialize(source, goal, galaxy, fuelJumpLUT);
+			assertEquals(SearchStatus.FOUND, ayStar.search());
+		}
+
+		final long threadId = Thread.currentThread().getId();
+		ayStar.initialize(source, goal, galaxy, fuelJumpLUT);
+		final long before = allocations.getThreadAllocatedBytes(threadId);
+		SearchStatus status = ayStar.search();
+		final long allocated = allocations.getThreadAllocatedBytes(threadId) - before;
+
+		assertEquals(SearchStatus.FOUND, status);
+		double bytesPerExpansion = (double) allocated / ayStar.getNumberOfExpansions();
+		assertTrue(String.format(Locale.US, "%,d bytes for %,d expansions", allocated, ayStar.getNumberOfExpansions()), bytesPerExpansion <= MAX_BYTES_PER_EXPANSION);
+	}
+
+}
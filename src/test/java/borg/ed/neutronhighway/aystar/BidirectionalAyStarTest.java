@@ -0,0 +1,74 @@
+package borg.ed.neutronhighway.aystar;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import borg.ed.neutronhighway.TestGalaxies;
+import borg.ed.neutronhighway.helper.FuelAndJumpRangeLookup;
+import borg.ed.neutronhighway.index.GalaxyIndex;
+
+/**
+ * The bidirectional search must find routes with the same number of jumps as {@link AyStar}.
+ *
+ * @author <a href="mailto:b.guenther@xsite.de">Boris Guenther</a>
+ */
+public class BidirectionalAyStarTest {
+
+	private static GalaxyIndex galaxy;
+	private static FuelAndJumpRangeLookup fuelJumpLUT;
+
+	@BeforeClass
+	public static void setUpClass() {
+		galaxy = TestGalaxies.index();
+		fuelJumpLUT = TestGalaxies.ship();
+	}
+
+	@Test
+	public void sameJumpsAsAyStar() {
+		AyStar ayStar = new AyStar();
+		BidirectionalAyStar bidirectional = new BidirectionalAyStar();
+		String[][] trips = { { TestGalaxies.WEST, TestGalaxies.EAST }, { TestGalaxies.EAST, TestGalaxies.EAST_NEAR }, { TestGalaxies.WEST, TestGalaxies.NORTH } };
+		for (String[] trip : trips) {
+			int source = galaxy.findId(trip[0]);
+			int goal = galaxy.findId(trip[1]);
+			ayStar.initialize(source, goal, galaxy, fuelJumpLUT);
+			assertEquals(SearchStatus.FOUND, ayStar.search());
+			bidirectional.initialize(source, goal, galaxy, fuelJumpLUT);
+			assertEquals(SearchStatus.FOUND, bidirectional.search());
+			assertEquals(trip[0] + " -> " + trip[1], ayStar.getPath().getTotalJumps(), bidirectional.getPath().getTotalJumps());
+		}
+	}
+
+	@Test
+	public void continuesAfterBudget() {
+		int source = galaxy.findId(TestGalaxies.WEST);
+		int goal = galaxy.findId(TestGalaxies.EAST);
+		BidirectionalAyStar unlimited = new BidirectionalAyStar();
+		unlimited.initialize(source, goal, galaxy, fuelJumpLUT);
+		unlimited.search();
+
+		BidirectionalAyStar budgeted = new BidirectionalAyStar();
+		budgeted.setBudget(0, 100);
+		budgeted.initialize(source, goal, galaxy, fuelJumpLUT);
+		assertEquals(SearchStatus.BUDGET_EXHAUSTED, budgeted.search());
+		assertNull(budgeted.getPath());
+		SearchStatus status;
+		while ((status = budgeted.search()) == SearchStatus.BUDGET_EXHAUSTED) {
+			// Next slice
+		}
+		assertEquals(SearchStatus.FOUND, status);
+		assertEquals(unlimited.getPath().getTotalJumps(), budgeted.getPath().getTotalJumps());
+	}
+
+	@Test
+	public void cancel() {
+		BidirectionalAyStar bidirectional = new BidirectionalAyStar();
+		bidirectional.initialize(galaxy.findId(TestGalaxies.WEST), galaxy.findId(TestGalaxies.EAST), galaxy, fuelJumpLUT);
+		bidirectional.cancel();
+		assertEquals(SearchStatus.CANCELLED, bidirectional.search());
+	}
+
+}
@@ -0,0 +1,64 @@
+package borg.ed.neutronhighway.aystar;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+
+import java.util.Arrays;
+
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import borg.ed.neutronhighway.TestGalaxies;
+import borg.ed.neutronhighway.helper.FuelAndJumpRangeLookup;
+import borg.ed.neutronhighway.index.GalaxyIndex;
+import borg.ed.neutronhighway.index.GalaxyLoader;
+import borg.ed.neutronhighway.index.MinimizedGalaxy;
+import borg.ed.neutronhighway.index.OctreeIndex;
+
+/**
+ * HDA* must find routes with the same number of jumps as {@link AyStar}, with any number of
+ * threads.
+ * <p>
+ * Both keep one path per system. Paths to a neutron star with the same number of jumps can arrive
+ * with different fuel levels, and which of them is kept depends on the order of expansion, which
+ * differs between the two. So the ship has the same jump range with any fuel level, and the
+ * galaxy is loaded like in production, where every system can be scooped at. Then the fuel level
+ * does not change which systems can be reached, and the least number of jumps is well defined.
+ *
+ * @author <a href="mailto:b.guenther@xsite.de">Boris Guenther</a>
+ */
+public class ParallelAyStarTest {
+
+	private static GalaxyIndex galaxy;
+	private static FuelAndJumpRangeLookup fuelJumpLUT;
+
+	@BeforeClass
+	public static void setUpClass() {
+		MinimizedGalaxy minimizedGalaxy = new GalaxyLoader(TestGalaxies.galaxyService(TestGalaxies.galaxy())).loadFromGalaxyService();
+		galaxy = new GalaxyIndex(minimizedGalaxy, OctreeIndex.build(minimizedGalaxy));
+		float[] jumpRangeByFuelStep = TestGalaxies.ship().getJumpRangeByFuelStep();
+		Arrays.fill(jumpRangeByFuelStep, TestGalaxies.ship().getJumpRangeFuelFull());
+		fuelJumpLUT = new FuelAndJumpRangeLookup(TestGalaxies.ship().getMaxFuelTons(), TestGalaxies.ship().getMaxFuelPerJump(),
+				FuelAndJumpRangeLookup.DEFAULT_FUEL_POWER, jumpRangeByFuelStep);
+	}
+
+	@Test
+	public void sameJumpsAsAyStar() throws Exception {
+		AyStar ayStar = new AyStar();
+		String[][] trips = { { TestGalaxies.WEST, TestGalaxies.EAST }, { TestGalaxies.EAST, TestGalaxies.EAST_NEAR }, { TestGalaxies.WEST, TestGalaxies.NORTH } };
+		for (String[] trip : trips) {
+			int source = galaxy.findId(trip[0]);
+			int goal = galaxy.findId(trip[1]);
+			ayStar.initialize(source, goal, galaxy, fuelJumpLUT);
+			assertEquals(SearchStatus.FOUND, ayStar.search());
+			for (int nThreads : new int[] { 1, 2, 4 }) {
+				ParallelAyStar parallel = new ParallelAyStar(nThreads);
+				parallel.initialize(source, goal, galaxy, fuelJumpLUT);
+				Path path = parallel.findPath();
+				assertNotNull(trip[0] + " -> " + trip[1] + " with " + nThreads + " thread(s)", path);
+				assertEquals(trip[0] + " -> " + trip[1] + " with " + nThreads + " thread(s)", ayStar.getPath().getTotalJumps(), path.getTotalJumps());
+			}
+		}
+	}
+
+}
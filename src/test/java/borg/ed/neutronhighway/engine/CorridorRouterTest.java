@@ -0,0 +1,132 @@
+package borg.ed.neutronhighway.engine;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import borg.ed.galaxy.model.StarSystem;
+import borg.ed.neutronhighway.TestGalaxies;
+import borg.ed.neutronhighway.aystar.AyStar;
+import borg.ed.neutronhighway.aystar.Path;
+import borg.ed.neutronhighway.aystar.SearchStatus;
+import borg.ed.neutronhighway.helper.FuelAndJumpRangeLookup;
+import borg.ed.neutronhighway.index.Corridor;
+import borg.ed.neutronhighway.index.GalaxyIndex;
+import borg.ed.neutronhighway.index.GalaxyLoader;
+import borg.ed.neutronhighway.index.MinimizedGalaxy;
+import borg.ed.neutronhighway.index.OctreeIndex;
+
+/**
+ * Routing in a corridor must give the same route as routing in the whole galaxy, also when the
+ * corridor has to be widened.
+ *
+ * @author <a href="mailto:b.guenther@xsite.de">Boris Guenther</a>
+ */
+public class CorridorRouterTest {
+
+	/** Half the length of a wall without systems across the line between west and east */
+	private static final float WALL_HALF_LENGTH_LY = 800f;
+
+	private static GalaxyLoader loader;
+	private static GalaxyIndex fullGalaxy;
+	private static GalaxyLoader walledLoader;
+	private static GalaxyIndex walledGalaxy;
+
+	@BeforeClass
+	public static void setUpClass() {
+		MinimizedGalaxy galaxy = TestGalaxies.galaxy();
+		loader = new GalaxyLoader(TestGalaxies.galaxyService(galaxy));
+		fullGalaxy = load(loader);
+
+		MinimizedGalaxy.Builder builder = new MinimizedGalaxy.Builder();
+		for (int id = 0; id < galaxy.size(); id++) {
+			if (Math.abs(galaxy.getX(id)) >= 100f || Math.abs(galaxy.getZ(id)) >= WALL_HALF_LENGTH_LY) {
+				builder.add(galaxy.getName(id), galaxy.getCoord(id), galaxy.isNeutron(id), galaxy.isScoopable(id));
+			}
+		}
+		walledLoader = new GalaxyLoader(TestGalaxies.galaxyService(builder.build()));
+		walledGalaxy = load(walledLoader);
+	}
+
+	@Test
+	public void sameRouteInTheFirstCorridor() {
+		CorridorRouter router = assertSameRoute(loader, fullGalaxy, TestGalaxies.EAST, TestGalaxies.EAST_NEAR);
+		assertEquals(firstRadiusLy(fullGalaxy, TestGalaxies.EAST, TestGalaxies.EAST_NEAR), router.getCorridor().getRadiusLy(), 0.01f);
+		router = assertSameRoute(loader, fullGalaxy, TestGalaxies.WEST, TestGalaxies.NORTH);
+		assertEquals(firstRadiusLy(fullGalaxy, TestGalaxies.WEST, TestGalaxies.NORTH), router.getCorridor().getRadiusLy(), 0.01f);
+	}
+
+	/**
+	 * The wall blocks the first corridor, the route has to go around its end
+	 */
+	@Test
+	public void sameRouteAfterWidening() {
+		CorridorRouter router = assertSameRoute(walledLoader, walledGalaxy, TestGalaxies.WEST, TestGalaxies.EAST);
+		assertTrue(router.getCorridor().getRadiusLy() > firstRadiusLy(walledGalaxy, TestGalaxies.WEST, TestGalaxies.EAST));
+	}
+
+	@Test
+	public void corridorLoadsOnlySystemsWithin() {
+		Corridor corridor = new Corridor(fullGalaxy.getCoord(fullGalaxy.findId(TestGalaxies.WEST)), fullGalaxy.getCoord(fullGalaxy.findId(TestGalaxies.NORTH)), 200f);
+		MinimizedGalaxy galaxy = loader.loadCorridor(corridor);
+		int expected = 0;
+		for (int id = 0; id < fullGalaxy.size(); id++) {
+			if (corridor.contains(fullGalaxy.getX(id), fullGalaxy.getY(id), fullGalaxy.getZ(id))) {
+				expected++;
+				assertTrue(fullGalaxy.getName(id), galaxy.findId(fullGalaxy.getName(id)) >= 0);
+			}
+		}
+		assertEquals(expected, galaxy.size());
+	}
+
+	private static CorridorRouter assertSameRoute(GalaxyLoader loader, GalaxyIndex fullGalaxy, String from, String to) {
+		FuelAndJumpRangeLookup fuelJumpLUT = TestGalaxies.ship();
+		StarSystem source = starSystem(fullGalaxy, from);
+		StarSystem goal = starSystem(fullGalaxy, to);
+		AyStar ayStar = new AyStar();
+		ayStar.initialize(source, goal, fullGalaxy, fuelJumpLUT);
+		assertEquals(SearchStatus.FOUND, ayStar.search());
+		Path expected = ayStar.getPath();
+
+		CorridorRouter router = new CorridorRouter(loader, fuelJumpLUT);
+		Path actual = router.findPath(source, goal);
+		assertNotNull(from + " -> " + to, actual);
+		assertEquals(from + " -> " + to, expected.getTotalJumps(), actual.getTotalJumps());
+		assertEquals(from + " -> " + to, expected.getTravelledDistanceLy(), actual.getTravelledDistanceLy(), 0.01f);
+		assertEquals(from + " -> " + to, names(expected), names(actual));
+		return router;
+	}
+
+	private static GalaxyIndex load(GalaxyLoader loader) {
+		MinimizedGalaxy galaxy = loader.loadFromGalaxyService();
+		return new GalaxyIndex(galaxy, OctreeIndex.build(galaxy));
+	}
+
+	private static float firstRadiusLy(GalaxyIndex galaxy, String from, String to) {
+		final float maxJumpRangeBoosted = 4f * TestGalaxies.ship().getJumpRangeFuelOpt();
+		return Math.max(CorridorRouter.MIN_RADIUS_JUMPS * maxJumpRangeBoosted,
+				CorridorRouter.MIN_RADIUS_FRACTION * starSystem(galaxy, from).distanceTo(starSystem(galaxy, to)));
+	}
+
+	private static StarSystem starSystem(GalaxyIndex galaxy, String name) {
+		StarSystem starSystem = new StarSystem();
+		starSystem.setName(name);
+		starSystem.setCoord(galaxy.getCoord(galaxy.findId(name)));
+		return starSystem;
+	}
+
+	private static List<String> names(Path path) {
+		List<String> names = new ArrayList<>();
+		for (Path p : path.toSortedList()) {
+			names.add(p.getMinimizedStarSystem().getName());
+		}
+		return names;
+	}
+
+}
@@ -0,0 +1,117 @@
+package borg.ed.neutronhighway.engine;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import borg.ed.galaxy.data.Coord;
+import borg.ed.neutronhighway.TestGalaxies;
+import borg.ed.neutronhighway.helper.FuelAndJumpRangeLookup;
+import borg.ed.neutronhighway.index.GalaxyIndex;
+import borg.ed.neutronhighway.index.LiveGalaxyIndex;
+import borg.ed.neutronhighway.index.MinimizedGalaxy;
+import borg.ed.neutronhighway.index.OctreeIndex;
+
+/**
+ * The disk tier must only serve routes of the base galaxy, and the profiles must never turn a
+ * request which has a route into an error.
+ *
+ * @author <a href="mailto:b.guenther@xsite.de">Boris Guenther</a>
+ */
+public class RouteCacheTest {
+
+	@Rule
+	public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+	private LiveGalaxyIndex live;
+	private RoutingEngine engine;
+	private File directory;
+	private RouteRequest request;
+
+	@Before
+	public void setUp() throws Exception {
+		this.live = new LiveGalaxyIndex(TestGalaxies.index());
+		this.engine = new RoutingEngine(this.live, 1, 4);
+		this.directory = this.temporaryFolder.newFolder("routes");
+		this.request = new RouteRequest(TestGalaxies.EAST, TestGalaxies.EAST_NEAR, TestGalaxies.ship());
+	}
+
+	@After
+	public void tearDown() {
+		this.engine.close();
+	}
+
+	@Test
+	public void diskHitForBaseGalaxy() throws Exception {
+		RouteCache first = new RouteCache(this.engine, this.directory, 100);
+		assertTrue(first.submit(this.request).get().isFound());
+		assertEquals(1, first.getMisses());
+
+		RouteCache second = new RouteCache(this.engine, this.directory, 100);
+		assertTrue(second.submit(this.request).get().isFound());
+		assertEquals(1, second.getDiskHits());
+		assertEquals(0, second.getMisses());
+	}
+
+	@Test
+	public void noDiskTierAfterLiveChanges() throws Exception {
+		RouteCache first = new RouteCache(this.engine, this.directory, 100);
+		assertTrue(first.submit(this.request).get().isFound());
+
+		this.live.upsert("Test Delta", new Coord(1500, 0, 150), true, false);
+		this.live.publish();
+
+		RouteCache second = new RouteCache(this.engine, this.directory, 100);
+		assertTrue(second.submit(this.request).get().isFound());
+		assertEquals(0, second.getDiskHits());
+		assertEquals(1, second.getMisses());
+	}
+
+	/**
+	 * Same jump ranges, but another FSD which burns more fuel on short jumps
+	 */
+	@Test
+	public void profileKeepsTheFuelModel() throws Exception {
+		RouteCache routeCache = new RouteCache(this.engine, this.directory, 100);
+		FuelAndJumpRangeLookup estimated = TestGalaxies.ship();
+		FuelAndJumpRangeLookup otherFsd = new FuelAndJumpRangeLookup(estimated.getMaxFuelTons(), estimated.getMaxFuelPerJump(), 2.0f, estimated.getJumpRangeByFuelStep());
+		assertTrue(routeCache.submit(this.request).get().isFound());
+		assertTrue(routeCache.submit(new RouteRequest(TestGalaxies.EAST, TestGalaxies.EAST_NEAR, otherFsd)).get().isFound());
+		assertEquals(2, routeCache.getMisses());
+		assertEquals(0, routeCache.getMemoryHits());
+
+		assertTrue(routeCache.submit(new RouteRequest(TestGalaxies.EAST, TestGalaxies.EAST_NEAR, otherFsd)).get().isFound());
+		assertEquals(1, routeCache.getMemoryHits());
+	}
+
+	/**
+	 * The profile of the ship has a jump range of only 46 Ly, which is not enough for the jump
+	 */
+	@Test
+	public void exactSearchIfTheProfileHasNoRoute() throws Exception {
+		MinimizedGalaxy.Builder builder = new MinimizedGalaxy.Builder();
+		builder.add("Test Here", new Coord(0, 0, 0), false, true);
+		builder.add("Test There", new Coord(46.1f, 0, 0), false, true);
+		MinimizedGalaxy galaxy = builder.build();
+		try (RoutingEngine engine = new RoutingEngine(new LiveGalaxyIndex(new GalaxyIndex(galaxy, OctreeIndex.build(galaxy))), 1, 4)) {
+			RouteCache routeCache = new RouteCache(engine, this.directory, 100);
+			RouteRequest request = new RouteRequest("Test Here", "Test There", new FuelAndJumpRangeLookup(32, 5f, 46.2f, 46.2f));
+			assertEquals(1, engine.route(request).getPath().getTotalJumps());
+
+			assertTrue(routeCache.submit(request).get().isFound());
+			assertEquals(1, routeCache.getExactSearches());
+			// Not cached as the route of the profile
+			assertTrue(routeCache.submit(request).get().isFound());
+			assertEquals(2, routeCache.getMisses());
+			assertEquals(2, routeCache.getExactSearches());
+		}
+	}
+
+}
@@ -0,0 +1,91 @@
+package borg.ed.neutronhighway.engine;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import borg.ed.neutronhighway.TestGalaxies;
+import borg.ed.neutronhighway.helper.FuelAndJumpRangeLookup;
+import borg.ed.neutronhighway.index.LiveGalaxyIndex;
+
+/**
+ * Cancelled searches must stop, and shared searches must keep running for the requests which still
+ * wait for them. The engine has a single thread, so that everything started after the first
+ * search is still queued when it is cancelled.
+ *
+ * @author <a href="mailto:b.guenther@xsite.de">Boris Guenther</a>
+ */
+public class RouteSearchTest {
+
+	private RoutingEngine engine;
+	private FuelAndJumpRangeLookup fuelJumpLUT;
+	private RouteSearch blocker;
+
+	@Before
+	public void setUp() {
+		this.engine = new RoutingEngine(new LiveGalaxyIndex(TestGalaxies.index()), 1, 4);
+		this.fuelJumpLUT = TestGalaxies.ship();
+		this.blocker = this.engine.start(new RouteRequest(TestGalaxies.WEST, TestGalaxies.EAST, this.fuelJumpLUT));
+	}
+
+	@After
+	public void tearDown() {
+		this.engine.close();
+	}
+
+	@Test
+	public void cancelQueuedSearch() throws Exception {
+		RouteSearch search = this.engine.start(new RouteRequest(TestGalaxies.EAST, TestGalaxies.EAST_NEAR, this.fuelJumpLUT));
+		search.cancel();
+		RouteResult result = search.getResult().get();
+		assertFalse(result.isFound());
+		assertEquals("Search cancelled", result.getError());
+		assertEquals(0, result.getExpansions());
+		assertTrue(this.blocker.getResult().get().isFound());
+	}
+
+	@Test
+	public void cancelRunningSearch() throws Exception {
+		this.blocker.cancel();
+		RouteResult result = this.blocker.getResult().get();
+		assertTrue(result.isFound() || "Search cancelled".equals(result.getError()));
+		assertTrue(this.engine.start(new RouteRequest(TestGalaxies.EAST, TestGalaxies.EAST_NEAR, this.fuelJumpLUT)).getResult().get().isFound());
+	}
+
+	@Test
+	public void anytimeSearchEndsWithOptimalRoute() throws Exception {
+		RouteSearch search = this.engine.startAnytime(new RouteRequest(TestGalaxies.WEST, TestGalaxies.EAST, this.fuelJumpLUT));
+		RouteResult result = search.getResult().get();
+		assertEquals(1.0f, result.getSuboptimalityBound(), 0f);
+		assertEquals(this.blocker.getResult().get().getPath().getTotalJumps(), result.getPath().getTotalJumps());
+	}
+
+	@Test
+	public void sharedSearchRunsUntilAllRequestsAreCancelled() throws Exception {
+		RouteCache routeCache = new RouteCache(this.engine, null, 100);
+		RouteRequest request = new RouteRequest(TestGalaxies.EAST, TestGalaxies.EAST_NEAR, this.fuelJumpLUT);
+		RouteSearch first = routeCache.start(request);
+		RouteSearch second = routeCache.start(request);
+		assertEquals(1, routeCache.getCoalesced());
+		first.cancel();
+		assertTrue(second.getResult().get().isFound());
+		assertTrue(first.getResult().get().isFound());
+
+		this.engine.start(new RouteRequest(TestGalaxies.WEST, TestGalaxies.EAST, this.fuelJumpLUT));
+		RouteRequest otherRequest = new RouteRequest(TestGalaxies.WEST, TestGalaxies.NORTH, this.fuelJumpLUT);
+		RouteSearch third = routeCache.start(otherRequest);
+		RouteSearch fourth = routeCache.start(otherRequest);
+		third.cancel();
+		fourth.cancel();
+		assertFalse(fourth.getResult().get().isFound());
+
+		// Nothing has been cached, the next request searches again
+		assertTrue(routeCache.start(otherRequest).getResult().get().isFound());
+		assertEquals(3, routeCache.getMisses());
+	}
+
+}
@@ -0,0 +1,156 @@
+package borg.ed.neutronhighway.engine;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import borg.ed.galaxy.constants.StarClass;
+import borg.ed.galaxy.model.Body;
+import borg.ed.galaxy.model.StarSystem;
+import borg.ed.galaxy.service.GalaxyService;
+import borg.ed.neutronhighway.NeutronHighwayApplication.Route;
+import borg.ed.neutronhighway.NeutronHighwayApplication.RouteElement;
+import borg.ed.neutronhighway.TestGalaxies;
+import borg.ed.neutronhighway.aystar.AyStar;
+import borg.ed.neutronhighway.aystar.Path;
+import borg.ed.neutronhighway.engine.StarSystemDetailsCache.StarSystemDetails;
+import borg.ed.neutronhighway.index.GalaxyIndex;
+
+/**
+ * Looking up the systems of a route through the cache must give the same route as looking up both
+ * ends of every jump one after the other, with every system looked up only once.
+ *
+ * @author <a href="mailto:b.guenther@xsite.de">Boris Guenther</a>
+ */
+public class StarSystemDetailsCacheTest {
+
+	private static final String UNKNOWN = "Test Unknown";
+
+	private static GalaxyIndex galaxy;
+	private static List<Path> sortedPaths;
+
+	private GalaxyService galaxyService;
+	private StarSystemDetailsCache detailsCache;
+
+	@BeforeClass
+	public static void setUpClass() {
+		galaxy = TestGalaxies.index();
+		AyStar ayStar = new AyStar();
+		ayStar.initialize(galaxy.findId(TestGalaxies.WEST), galaxy.findId(TestGalaxies.NORTH), galaxy, TestGalaxies.ship());
+		ayStar.search();
+		sortedPaths = ayStar.getPath().toSortedList();
+	}
+
+	@Before
+	public void setUp() throws Exception {
+		this.galaxyService = mock(GalaxyService.class);
+		when(this.galaxyService.findStarSystemByName(anyString())).thenAnswer(invocation -> starSystem(invocation.getArgument(0)));
+		when(this.galaxyService.findBodiesByStarSystemName(anyString())).thenAnswer(invocation -> bodies(invocation.getArgument(0)));
+		this.detailsCache = new StarSystemDetailsCache(this.galaxyService, 1000, 4);
+	}
+
+	@After
+	public void tearDown() {
+		this.detailsCache.close();
+	}
+
+	@Test
+	public void sameRouteAsLookingUpEveryJump() throws Exception {
+		Route route = Route.fromPath(sortedPaths, TestGalaxies.ship(), this.detailsCache);
+
+		List<RouteElement> expected = new ArrayList<>();
+		for (int i = 1; i < sortedPaths.size(); i++) {
+			String fromName = sortedPaths.get(i - 1).getMinimizedStarSystem().getName();
+			String toName = sortedPaths.get(i).getMinimizedStarSystem().getName();
+			Path currPath = sortedPaths.get(i);
+			expected.add(new RouteElement(null, currPath.getTotalJumps(), starSystem(fromName), bodies(fromName), starSystem(toName), bodies(toName), currPath.getFuelLevel(),
+					currPath.getTravelledDistanceLy(), currPath.getRemainingDistanceLy()));
+		}
+
+		assertEquals(expected.size(), route.getElements().size());
+		for (int i = 0; i < expected.size(); i++) {
+			RouteElement e = expected.get(i);
+			RouteElement a = route.getElements().get(i);
+			assertEquals(e.getJumpNo(), a.getJumpNo());
+			assertEquals(e.getFromSystem().getName(), a.getFromSystem().getName());
+			assertEquals(e.getFromSpectralClass(), a.getFromSpectralClass());
+			assertEquals(e.getToSystem().getName(), a.getToSystem().getName());
+			assertEquals(e.getToSpectralClass(), a.getToSpectralClass());
+			assertEquals(e.getFuelLevelOnArrival(), a.getFuelLevelOnArrival(), 0f);
+			assertEquals(e.getTravelledLy(), a.getTravelledLy(), 0f);
+			assertEquals(e.getRemainingLy(), a.getRemainingLy(), 0f);
+		}
+	}
+
+	@Test
+	public void looksUpEverySystemOnce() throws Exception {
+		Route.fromPath(sortedPaths, TestGalaxies.ship(), this.detailsCache);
+		Route.fromPath(sortedPaths, TestGalaxies.ship(), this.detailsCache);
+		for (Path path : sortedPaths) {
+			String name = path.getMinimizedStarSystem().getName();
+			verify(this.galaxyService, times(1)).findStarSystemByName(name);
+			verify(this.galaxyService, times(1)).findBodiesByStarSystemName(name);
+		}
+		assertEquals(sortedPaths.size(), this.detailsCache.getMisses());
+		assertEquals(sortedPaths.size(), this.detailsCache.getHits());
+	}
+
+	@Test
+	public void unknownSystemsAreNotCached() throws Exception {
+		String known = sortedPaths.get(0).getMinimizedStarSystem().getName();
+		Map<String, StarSystemDetails> details = this.detailsCache.getAll(Arrays.asList(UNKNOWN, known, UNKNOWN));
+		assertEquals(Arrays.asList(UNKNOWN, known), new ArrayList<>(details.keySet()));
+		assertNull(details.get(UNKNOWN).getStarSystem());
+		assertEquals(Collections.emptyList(), details.get(UNKNOWN).getBodies());
+		verify(this.galaxyService, never()).findBodiesByStarSystemName(UNKNOWN);
+		assertEquals(1, this.detailsCache.size());
+
+		StarSystemDetails cached = details.get(known);
+		assertSame(cached, this.detailsCache.get(known));
+		this.detailsCache.get(UNKNOWN);
+		verify(this.galaxyService, times(2)).findStarSystemByName(UNKNOWN);
+	}
+
+	private static StarSystem starSystem(String name) {
+		int id = galaxy.findId(name);
+		if (id < 0) {
+			return null;
+		}
+		StarSystem starSystem = new StarSystem();
+		starSystem.setName(name);
+		starSystem.setCoord(galaxy.getCoord(id));
+		return starSystem;
+	}
+
+	private static List<Body> bodies(String name) {
+		int id = galaxy.findId(name);
+		if (id < 0) {
+			return Collections.emptyList();
+		}
+		Body star = new Body();
+		star.setName(name);
+		star.setStarSystemName(name);
+		star.setDistanceToArrivalLs(BigDecimal.ZERO);
+		star.setStarClass(galaxy.isNeutron(id) ? StarClass.N : galaxy.isScoopable(id) ? StarClass.K : StarClass.Y);
+		return Collections.singletonList(star);
+	}
+
+}
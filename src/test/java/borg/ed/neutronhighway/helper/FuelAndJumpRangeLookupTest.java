@@ -0,0 +1,74 @@
+package borg.ed.neutronhighway.helper;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+import borg.ed.neutronhighway.TestGalaxies;
+import borg.ed.neutronhighway.aystar.AyStar;
+import borg.ed.neutronhighway.aystar.Path;
+import borg.ed.neutronhighway.aystar.SearchStatus;
+import borg.ed.neutronhighway.index.GalaxyIndex;
+
+/**
+ * The primitive tables must give the same routes as the sorted maps they replaced.
+ *
+ * @author <a href="mailto:b.guenther@xsite.de">Boris Guenther</a>
+ */
+public class FuelAndJumpRangeLookupTest {
+
+	private static final int MAX_FUEL_TONS = 32;
+	private static final float MAX_FUEL_PER_JUMP = 5f;
+	private static final float JUMP_RANGE_FUEL_FULL = 46f;
+	private static final float JUMP_RANGE_FUEL_OPT = 52f;
+
+	@Test
+	public void jumpRangeMatchesTheEstimate() {
+		FuelAndJumpRangeLookup lut = TestGalaxies.ship();
+		for (int kg = 0; kg <= MAX_FUEL_TONS * 1000; kg += 100) {
+			float fuelLevel = kg / 1000f;
+			float expected = FuelAndJumpRangeLookup.estimateCurrentJumpRange(fuelLevel, MAX_FUEL_TONS, MAX_FUEL_PER_JUMP, JUMP_RANGE_FUEL_FULL, JUMP_RANGE_FUEL_OPT);
+			assertEquals("fuel " + fuelLevel, expected, lut.lookupMaxJumpRange(fuelLevel), 0.001f);
+		}
+		// Interpolated between the steps
+		float below = lut.lookupMaxJumpRange(10.0f);
+		float above = lut.lookupMaxJumpRange(10.1f);
+		float between = lut.lookupMaxJumpRange(10.05f);
+		assertTrue(between <= Math.max(below, above) && between >= Math.min(below, above));
+		assertEquals(0f, lut.lookupMaxJumpRange(-1f), 0f);
+		assertEquals(JUMP_RANGE_FUEL_FULL, lut.lookupMaxJumpRange(MAX_FUEL_TONS + 10f), 0.001f);
+	}
+
+	@Test
+	public void fuelUsageMatchesTheEstimate() {
+		FuelAndJumpRangeLookup lut = TestGalaxies.ship();
+		for (int permille = 1; permille <= 1000; permille++) {
+			float jumpDistance = JUMP_RANGE_FUEL_FULL * permille / 1000f;
+			float expected = FuelAndJumpRangeLookup.estimateFuelUsage(jumpDistance, JUMP_RANGE_FUEL_FULL, MAX_FUEL_PER_JUMP);
+			assertEquals("permille " + permille, expected, lut.lookupFuelUsageWithKnownMaxJumpRange(jumpDistance, JUMP_RANGE_FUEL_FULL), 0.001f);
+		}
+		assertEquals(MAX_FUEL_PER_JUMP, lut.lookupFuelUsageWithKnownMaxJumpRange(2 * JUMP_RANGE_FUEL_FULL, JUMP_RANGE_FUEL_FULL), 0.001f);
+	}
+
+	/**
+	 * Jumps and distances of the routes searched with the sorted map tables
+	 */
+	@Test
+	public void sameRoutesAsTheSortedMaps() {
+		GalaxyIndex galaxy = TestGalaxies.index();
+		assertRoute(galaxy, TestGalaxies.WEST, TestGalaxies.EAST, 27, 3729.88f);
+		assertRoute(galaxy, TestGalaxies.EAST, TestGalaxies.EAST_NEAR, 10, 462.62f);
+		assertRoute(galaxy, TestGalaxies.WEST, TestGalaxies.NORTH, 20, 2698.45f);
+	}
+
+	private static void assertRoute(GalaxyIndex galaxy, String from, String to, int expectedJumps, float expectedDistanceLy) {
+		AyStar ayStar = new AyStar();
+		ayStar.initialize(galaxy.findId(from), galaxy.findId(to), galaxy, TestGalaxies.ship());
+		assertEquals(SearchStatus.FOUND, ayStar.search());
+		Path path = ayStar.getPath();
+		assertEquals(from + " -> " + to, expectedJumps, path.getTotalJumps());
+		assertEquals(from + " -> " + to, expectedDistanceLy, path.getTravelledDistanceLy(), 0.01f);
+	}
+
+}
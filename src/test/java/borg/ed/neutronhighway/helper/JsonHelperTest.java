@@ -0,0 +1,21 @@
+package borg.ed.neutronhighway.helper;
+
+import static org.junit.Assert.assertEquals;
+
+import org.junit.Test;
+
+/**
+ * @author <a href="mailto:b.guenther@xsite.de">Boris Guenther</a>
+ */
+public class JsonHelperTest {
+
+	@Test
+	public void quote() {
+		assertEquals("null", JsonHelper.quote(null));
+		assertEquals("\"Sol\"", JsonHelper.quote("Sol"));
+		assertEquals("\"Col 285 Sector \\\"AB\\\"\\\\x\"", JsonHelper.quote("Col 285 Sector \"AB\"\\x"));
+		assertEquals("\"a\\u000ab\\u0009\"", JsonHelper.quote("a\nb\t"));
+		assertEquals("\"Mu Koji ä\"", JsonHelper.quote("Mu Koji ä"));
+	}
+
+}
@@ -0,0 +1,150 @@
+package borg.ed.neutronhighway.highway;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.BitSet;
+import java.util.concurrent.ForkJoinPool;
+
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import borg.ed.galaxy.data.Coord;
+import borg.ed.galaxy.model.StarSystem;
+import borg.ed.neutronhighway.TestGalaxies;
+import borg.ed.neutronhighway.aystar.Path;
+import borg.ed.neutronhighway.helper.FuelAndJumpRangeLookup;
+import borg.ed.neutronhighway.index.GalaxyIndex;
+import borg.ed.neutronhighway.index.LiveGalaxyIndex;
+
+/**
+ * The highway graph is built once for the base galaxy and must keep routing on live epochs.
+ *
+ * @author <a href="mailto:b.guenther@xsite.de">Boris Guenther</a>
+ */
+public class HighwayRouterTest {
+
+	private static GalaxyIndex base;
+	private static FuelAndJumpRangeLookup fuelJumpLUT;
+	private static HighwayGraph graph;
+	private static StarSystem source;
+	private static StarSystem goal;
+
+	private LiveGalaxyIndex live;
+
+	@BeforeClass
+	public static void setUpClass() {
+		base = TestGalaxies.index();
+		fuelJumpLUT = TestGalaxies.ship();
+		graph = new HighwayGraphBuilder(base, fuelJumpLUT).build(ForkJoinPool.commonPool());
+		// The anchors are too far from the next neutron star to be connected to the highway
+		source = starSystem(base, nearestNeutronStar(base, -1500f, 0f));
+		goal = starSystem(base, nearestNeutronStar(base, 1500f, 0f));
+	}
+
+	@Before
+	public void setUp() {
+		this.live = new LiveGalaxyIndex(base);
+	}
+
+	@Test
+	public void graphStaysValidForLiveEpochs() {
+		assertTrue(graph.isBuiltFor(base, fuelJumpLUT));
+		this.live.upsert("Test Delta", new Coord(0, 0, 0), true, false);
+		GalaxyIndex epoch = this.live.publish();
+		assertTrue(epoch.getDeltaSize() > 0);
+		assertTrue(graph.isBuiltFor(epoch, fuelJumpLUT));
+	}
+
+	/**
+	 * Reclassified base systems are handled at query time, the graph must not depend on the epoch
+	 * it is built from
+	 */
+	@Test
+	public void graphOfLiveEpochEqualsGraphOfBase() {
+		int reclassified = 0;
+		for (int id = 0; id < base.size() && reclassified < 200; id += 97) {
+			this.live.upsert(base.getName(id), base.getCoord(id), !base.isNeutron(id), base.isScoopable(id));
+			reclassified++;
+		}
+		this.live.upsert("Test Delta", new Coord(0, 0, 0), true, false);
+		GalaxyIndex epoch = this.live.publish();
+
+		HighwayGraph liveGraph = new HighwayGraphBuilder(epoch, fuelJumpLUT).build(ForkJoinPool.commonPool());
+		assertEquals(graph.getNumberOfNodes(), liveGraph.getNumberOfNodes());
+		assertEquals(graph.getNumberOfEdges(), liveGraph.getNumberOfEdges());
+		for (int node = 0; node < graph.getNumberOfNodes(); node++) {
+			assertEquals(graph.getStarSystemId(node), liveGraph.getStarSystemId(node));
+			assertEquals(graph.getFirstEdge(node), liveGraph.getFirstEdge(node));
+		}
+		for (int edge = 0; edge < graph.getNumberOfEdges(); edge++) {
+			assertEquals(graph.getTarget(edge), liveGraph.getTarget(edge));
+			assertEquals(graph.getVia(edge), liveGraph.getVia(edge));
+		}
+	}
+
+	@Test
+	public void avoidsReclassifiedNeutronStars() {
+		Path basePath = new HighwayRouter(graph, base, fuelJumpLUT).findPath(source, goal);
+		assertNotNull(basePath);
+		BitSet reclassified = new BitSet();
+		for (Path path = basePath.getPrev(); path != null && path.getPrev() != null; path = path.getPrev()) {
+			int id = path.getStarSystemId();
+			if (base.isNeutron(id)) {
+				this.live.upsert(base.getName(id), base.getCoord(id), false, false);
+				reclassified.set(id);
+			}
+		}
+		assertFalse(reclassified.isEmpty());
+		GalaxyIndex epoch = this.live.publish();
+
+		Path livePath = new HighwayRouter(graph, epoch, fuelJumpLUT).findPath(source, goal);
+		assertNotNull(livePath);
+		for (Path path = livePath; path != null; path = path.getPrev()) {
+			assertFalse(base.getName(path.getStarSystemId()), reclassified.get(path.getStarSystemId()));
+		}
+	}
+
+	@Test
+	public void usesDeltaNeutronStars() {
+		for (int i = 0; i < 30; i++) {
+			this.live.upsert("Test Delta " + i, new Coord(-1400 + i * 100, 0, 50), true, false);
+		}
+		GalaxyIndex epoch = this.live.publish();
+
+		Path livePath = new HighwayRouter(graph, epoch, fuelJumpLUT).findPath(source, goal);
+		assertNotNull(livePath);
+		boolean viaDelta = false;
+		for (Path path = livePath; path != null; path = path.getPrev()) {
+			viaDelta |= path.getStarSystemId() >= base.size();
+		}
+		assertTrue(viaDelta);
+	}
+
+	private static int nearestNeutronStar(GalaxyIndex galaxy, float x, float z) {
+		int nearest = -1;
+		float nearestDistanceSquared = Float.MAX_VALUE;
+		for (int id = 0; id < galaxy.size(); id++) {
+			if (galaxy.isNeutron(id)) {
+				float dx = galaxy.getX(id) - x;
+				float dz = galaxy.getZ(id) - z;
+				if (dx * dx + dz * dz < nearestDistanceSquared) {
+					nearestDistanceSquared = dx * dx + dz * dz;
+					nearest = id;
+				}
+			}
+		}
+		return nearest;
+	}
+
+	private static StarSystem starSystem(GalaxyIndex galaxy, int id) {
+		StarSystem starSystem = new StarSystem();
+		starSystem.setName(galaxy.getName(id));
+		starSystem.setCoord(galaxy.getCoord(id));
+		return starSystem;
+	}
+
+}
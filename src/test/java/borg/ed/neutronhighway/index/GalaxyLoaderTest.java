@@ -0,0 +1,48 @@
+package borg.ed.neutronhighway.index;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+import borg.ed.galaxy.service.GalaxyService;
+import borg.ed.neutronhighway.TestGalaxies;
+
+/**
+ * Loading the galaxy in many slabs by several threads must give the same galaxy as loading it in
+ * one slab by a single thread.
+ *
+ * @author <a href="mailto:b.guenther@xsite.de">Boris Guenther</a>
+ */
+public class GalaxyLoaderTest {
+
+	@Test
+	public void parallelLoadEqualsSerialLoad() {
+		MinimizedGalaxy source = TestGalaxies.galaxy(7L, 20000);
+		GalaxyService galaxyService = TestGalaxies.galaxyService(source);
+
+		MinimizedGalaxy serial = new GalaxyLoader(galaxyService, 1, 1).loadFromGalaxyService();
+		// Slabs of 400 Ly, so that the 4000 Ly wide test galaxy is split into ten of them
+		MinimizedGalaxy parallel = new GalaxyLoader(galaxyService, 4, 500).loadFromGalaxyService();
+
+		assertEquals(source.size(), serial.size());
+		assertEquals(source.countNeutronStars(), serial.countNeutronStars());
+		assertSameSystems(serial, parallel);
+		assertSameSystems(parallel, serial);
+	}
+
+	private static void assertSameSystems(MinimizedGalaxy expected, MinimizedGalaxy actual) {
+		assertEquals(expected.size(), actual.size());
+		for (int id = 0; id < expected.size(); id++) {
+			String name = expected.getName(id);
+			int actualId = actual.findId(name);
+			assertTrue(name, actualId >= 0);
+			assertEquals(name, expected.getX(id), actual.getX(actualId), 0f);
+			assertEquals(name, expected.getY(id), actual.getY(actualId), 0f);
+			assertEquals(name, expected.getZ(id), actual.getZ(actualId), 0f);
+			assertEquals(name, expected.isNeutron(id), actual.isNeutron(actualId));
+			assertEquals(name, expected.isScoopable(id), actual.isScoopable(actualId));
+		}
+	}
+
+}
@@ -0,0 +1,91 @@
+package borg.ed.neutronhighway.index;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import borg.ed.neutronhighway.TestGalaxies;
+import borg.ed.neutronhighway.aystar.AyStar;
+import borg.ed.neutronhighway.aystar.Path;
+import borg.ed.neutronhighway.aystar.SearchStatus;
+
+/**
+ * Prefetching only touches pages of the mapped snapshot, the routes must be the same with and
+ * without it. The sectors it touches must be exactly the ID ranges of their systems.
+ *
+ * @author <a href="mailto:b.guenther@xsite.de">Boris Guenther</a>
+ */
+public class SectorPrefetcherTest {
+
+	/** 200 Ly, so that a route through the 4000 Ly wide test galaxy crosses many sectors */
+	private static final int SECTOR_LEVEL = 10;
+
+	@Rule
+	public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+	@Test
+	public void sectorRangeContainsExactlyTheSystemsOfTheSector() {
+		MinimizedGalaxy galaxy = TestGalaxies.galaxy(7L, 20000);
+		for (int level : new int[] { 4, SectorPrefetcher.DEFAULT_SECTOR_LEVEL, SECTOR_LEVEL, OctreeIndex.MAX_LEVEL }) {
+			for (int from = 0; from < galaxy.size();) {
+				final long sector = OctreeIndex.sectorCode(galaxy.getX(from), galaxy.getY(from), galaxy.getZ(from), level);
+				int to = from + 1;
+				while (to < galaxy.size() && OctreeIndex.sectorCode(galaxy.getX(to), galaxy.getY(to), galaxy.getZ(to), level) == sector) {
+					to++;
+				}
+				int[] range = OctreeIndex.sectorRange(galaxy, sector, level);
+				assertEquals("level " + level + " sector " + Long.toHexString(sector), from, range[0]);
+				assertEquals("level " + level + " sector " + Long.toHexString(sector), to, range[1]);
+				// The sector after it is empty, unless it is the next one with systems
+				if (to == galaxy.size() || OctreeIndex.sectorCode(galaxy.getX(to), galaxy.getY(to), galaxy.getZ(to), level) != sector + 1) {
+					range = OctreeIndex.sectorRange(galaxy, sector + 1, level);
+					assertEquals(range[0], range[1]);
+				}
+				from = to;
+			}
+		}
+	}
+
+	@Test
+	public void prefetchDoesNotChangeRoutes() throws Exception {
+		MinimizedGalaxy minimizedGalaxy = TestGalaxies.galaxy();
+		File snapshotFile = new File(this.temporaryFolder.getRoot(), "test.galaxy");
+		GalaxySnapshot.write(snapshotFile, minimizedGalaxy, OctreeIndex.build(minimizedGalaxy));
+		GalaxySnapshot snapshot = GalaxySnapshot.open(snapshotFile);
+		GalaxyIndex galaxy = new GalaxyIndex(snapshot.getGalaxy(), snapshot.getOctreeIndex());
+
+		List<String> expected = route(galaxy, null);
+		try (SectorPrefetcher prefetcher = new SectorPrefetcher(2, SectorPrefetcher.DEFAULT_MAX_WARM_BYTES, SECTOR_LEVEL, SectorPrefetcher.DEFAULT_LOOKAHEAD_SECTORS)) {
+			assertEquals(expected, route(galaxy, prefetcher));
+			assertEquals(expected, route(galaxy, prefetcher));
+			for (int i = 0; i < 50 && prefetcher.getPrefetched() == 0; i++) {
+				Thread.sleep(100);
+			}
+			assertTrue(prefetcher.getPrefetched() > 0);
+		}
+		// Everything is evicted again right away
+		try (SectorPrefetcher prefetcher = new SectorPrefetcher(2, 1L, SECTOR_LEVEL, SectorPrefetcher.DEFAULT_LOOKAHEAD_SECTORS)) {
+			assertEquals(expected, route(galaxy, prefetcher));
+		}
+	}
+
+	private static List<String> route(GalaxyIndex galaxy, SectorPrefetcher prefetcher) {
+		AyStar ayStar = new AyStar();
+		ayStar.setPrefetcher(prefetcher);
+		ayStar.initialize(galaxy.findId(TestGalaxies.WEST), galaxy.findId(TestGalaxies.EAST), galaxy, TestGalaxies.ship());
+		assertEquals(SearchStatus.FOUND, ayStar.search());
+		List<String> names = new ArrayList<>();
+		for (Path path : ayStar.getPath().toSortedList()) {
+			names.add(path.getMinimizedStarSystem().getName());
+		}
+		return names;
+	}
+
+}
@@ -0,0 +1,130 @@
+package borg.ed.neutronhighway.ingest;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import borg.ed.galaxy.data.Coord;
+import borg.ed.neutronhighway.TestGalaxies;
+import borg.ed.neutronhighway.index.GalaxyIndex;
+import borg.ed.neutronhighway.index.GalaxyLoader;
+import borg.ed.neutronhighway.index.LiveGalaxyIndex;
+import borg.ed.neutronhighway.index.MinimizedGalaxy;
+import borg.ed.neutronhighway.index.OctreeIndex;
+
+/**
+ * @author <a href="mailto:b.guenther@xsite.de">Boris Guenther</a>
+ */
+public class DiscoveryEventTailerTest {
+
+	@Rule
+	public TemporaryFolder tempFolder = new TemporaryFolder();
+
+	private LiveGalaxyIndex liveIndex;
+	private File file;
+	private DiscoveryEventTailer tailer;
+
+	@Before
+	public void setUp() throws IOException {
+		MinimizedGalaxy.Builder builder = new MinimizedGalaxy.Builder();
+		builder.add("Known Neutron", new Coord(0, 0, 0), true, false);
+		builder.add("Known Scoopable", new Coord(10, 0, 0), false, true);
+		builder.add("Known Brown Dwarf", new Coord(20, 0, 0), false, false);
+		// Classified by the loader, so that the events are checked against the flags it gives
+		MinimizedGalaxy base = new GalaxyLoader(TestGalaxies.galaxyService(builder.build()), 1, 1).loadFromGalaxyService();
+		this.liveIndex = new LiveGalaxyIndex(new GalaxyIndex(base, OctreeIndex.build(base)));
+		this.file = this.tempFolder.newFile("discoveries.tsv");
+		this.tailer = new DiscoveryEventTailer(this.file, this.liveIndex, 1000L);
+	}
+
+	@Test
+	public void eventWithoutStarClassKeepsKnownNeutron() throws IOException {
+		GalaxyIndex loaded = this.liveIndex.current();
+		this.append("1\tKnown Neutron\t0\t0\t0\t\n");
+		assertEquals(1, this.tailer.poll());
+
+		GalaxyIndex galaxy = this.liveIndex.current();
+		assertSame(loaded, galaxy);
+		int id = galaxy.findId("Known Neutron");
+		assertTrue(galaxy.isNeutron(id));
+		assertTrue(galaxy.isScoopable(id));
+		assertEquals(1, galaxy.countNeutronStars());
+		assertEquals(0, galaxy.getDeltaSize());
+	}
+
+	@Test
+	public void eventWithoutStarClassInsertsNewSystemAsScoopable() throws IOException {
+		this.append("1\tNew System\t20\t0\t0\n");
+		this.tailer.poll();
+
+		GalaxyIndex galaxy = this.liveIndex.current();
+		int id = galaxy.findId("New System");
+		assertTrue(id >= 0);
+		assertFalse(galaxy.isNeutron(id));
+		assertTrue(galaxy.isScoopable(id));
+	}
+
+	@Test
+	public void replayedStarClassesChangeNothing() throws IOException {
+		GalaxyIndex loaded = this.liveIndex.current();
+		assertTrue(loaded.isBaseOnly());
+		this.append("1\tKnown Neutron\t0\t0\t0\tN\n2\tKnown Scoopable\t10\t0\t0\tK\n3\tKnown Brown Dwarf\t20\t0\t0\tY\n");
+		assertEquals(3, this.tailer.poll());
+
+		GalaxyIndex galaxy = this.liveIndex.current();
+		assertSame(loaded, galaxy);
+		assertEquals(loaded.getEpoch(), galaxy.getEpoch());
+		assertTrue(galaxy.isBaseOnly());
+		assertEquals(0, this.liveIndex.getReclassifications());
+	}
+
+	@Test
+	public void knownStarClassIsClassifiedLikeTheLoader() throws IOException {
+		this.append("1\tKnown Scoopable\t10\t0\t0\tDA\n2\tNew Neutron\t30\t0\t0\tN\n3\tNew Main Sequence\t40\t0\t0\tK\n");
+		this.tailer.poll();
+
+		// A white dwarf does not take away what the system row of the next reload gives back
+		GalaxyIndex galaxy = this.liveIndex.current();
+		int whiteDwarf = galaxy.findId("Known Scoopable");
+		assertFalse(galaxy.isNeutron(whiteDwarf));
+		assertTrue(galaxy.isScoopable(whiteDwarf));
+		assertEquals(0, this.liveIndex.getReclassifications());
+		int neutron = galaxy.findId("New Neutron");
+		assertTrue(galaxy.isNeutron(neutron));
+		assertTrue(galaxy.isScoopable(neutron));
+		int mainSequence = galaxy.findId("New Main Sequence");
+		assertFalse(galaxy.isNeutron(mainSequence));
+		assertTrue(galaxy.isScoopable(mainSequence));
+	}
+
+	@Test
+	public void newNeutronStarOfKnownSystem() throws IOException {
+		this.append("1\tKnown Brown Dwarf\t20\t0\t0\tN\n");
+		this.tailer.poll();
+
+		GalaxyIndex galaxy = this.liveIndex.current();
+		assertFalse(galaxy.isBaseOnly());
+		int id = galaxy.findId("Known Brown Dwarf");
+		assertTrue(galaxy.isNeutron(id));
+		assertTrue(galaxy.isScoopable(id));
+		assertEquals(2, galaxy.countNeutronStars());
+		assertEquals(1, this.liveIndex.getReclassifications());
+	}
+
+	private void append(String lines) throws IOException {
+		Files.write(this.file.toPath(), lines.getBytes(StandardCharsets.UTF_8), StandardOpenOption.APPEND);
+	}
+
+}